@@ -0,0 +1,539 @@
+package org.knime.base.node.io.database.looper;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.Box;
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import org.apache.commons.lang.StringUtils;
+import org.knime.base.node.io.database.looper.util.PersistentResultCache;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentButtonGroup;
+import org.knime.core.node.defaultnodesettings.DialogComponentFileChooser;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * Panel with the options that define how the looped SQL statement is sent to the database.
+ */
+public class DBLoopingExecutionPanel extends JPanel {
+
+    /**
+     * Automatically generated Serial Version UID
+     */
+    private static final long serialVersionUID = -2305826149162035529L;
+
+    private final SettingsModelString m_loopingModeModel = DBLoopingNodeModel.createLoopingModeModel();
+
+    private final SettingsModelIntegerBounded m_batchSizeModel = DBLoopingNodeModel.createBatchSizeModel();
+
+    private final SettingsModelIntegerBounded m_parallelismModel = DBLoopingNodeModel.createParallelismModel();
+
+    private final SettingsModelBoolean m_keepOrderModel = DBLoopingNodeModel.createKeepOrderModel();
+
+    private final SettingsModelBoolean m_cacheStatementsModel = DBLoopingNodeModel.createCacheStatementsModel();
+
+    private final SettingsModelBoolean m_memoizeResultsModel = DBLoopingNodeModel.createMemoizeResultsModel();
+
+    private final SettingsModelIntegerBounded m_memoMemoryModel = DBLoopingNodeModel.createMemoMemoryModel();
+
+    private final SettingsModelBoolean m_persistentCacheModel = DBLoopingNodeModel.createPersistentCacheModel();
+
+    private final SettingsModelString m_persistentCacheDirModel = DBLoopingNodeModel.createPersistentCacheDirModel();
+
+    private final SettingsModelIntegerBounded m_persistentCacheTTLModel =
+        DBLoopingNodeModel.createPersistentCacheTTLModel();
+
+    private final SettingsModelIntegerBounded m_persistentCacheSizeModel =
+        DBLoopingNodeModel.createPersistentCacheSizeModel();
+
+    private final JTextField m_invalidateTablesField = new JTextField(30);
+
+    private final JButton m_clearCacheButton = new JButton("Clear cached results");
+
+    private final JLabel m_clearCacheStatus = new JLabel(" ");
+
+    /** The identity of the connection and the SQL statement of the node, which identify its cached results */
+    private String m_connectionId;
+
+    private String m_sqlStatement;
+
+    private final SettingsModelIntegerBounded m_pipelineDepthModel = DBLoopingNodeModel.createPipelineDepthModel();
+
+    private final SettingsModelBoolean m_useTransactionsModel = DBLoopingNodeModel.createUseTransactionsModel();
+
+    private final SettingsModelIntegerBounded m_commitRowsModel = DBLoopingNodeModel.createCommitRowsModel();
+
+    private final SettingsModelIntegerBounded m_commitMillisModel = DBLoopingNodeModel.createCommitMillisModel();
+
+    private final SettingsModelBoolean m_adaptiveBatchSizeModel = DBLoopingNodeModel.createAdaptiveBatchSizeModel();
+
+    private final SettingsModelIntegerBounded m_maxBatchSizeModel = DBLoopingNodeModel.createMaxBatchSizeModel();
+
+    private final SettingsModelIntegerBounded m_batchLatencyModel = DBLoopingNodeModel.createBatchLatencyModel();
+
+    private final SettingsModelBoolean m_adaptiveParallelismModel = DBLoopingNodeModel.createAdaptiveParallelismModel();
+
+    private final SettingsModelIntegerBounded m_minParallelismModel = DBLoopingNodeModel.createMinParallelismModel();
+
+    private final SettingsModelBoolean m_collectStatisticsModel = DBLoopingNodeModel.createCollectStatisticsModel();
+
+    private final SettingsModelIntegerBounded m_queryTimeoutModel = DBLoopingNodeModel.createQueryTimeoutModel();
+
+    private final SettingsModelBoolean m_retryModel = DBLoopingNodeModel.createRetryModel();
+
+    private final SettingsModelIntegerBounded m_retryAttemptsModel = DBLoopingNodeModel.createRetryAttemptsModel();
+
+    private final SettingsModelIntegerBounded m_retryDelayModel = DBLoopingNodeModel.createRetryDelayModel();
+
+    private final SettingsModelIntegerBounded m_retryMaxDelayModel = DBLoopingNodeModel.createRetryMaxDelayModel();
+
+    private final SettingsModelIntegerBounded m_circuitBreakerPauseModel =
+        DBLoopingNodeModel.createCircuitBreakerPauseModel();
+
+    private final SettingsModelBoolean m_checkpointModel = DBLoopingNodeModel.createCheckpointModel();
+
+    private final SettingsModelIntegerBounded m_checkpointIntervalModel =
+        DBLoopingNodeModel.createCheckpointIntervalModel();
+
+    private final SettingsModelString m_checkpointDirModel = DBLoopingNodeModel.createCheckpointDirModel();
+
+    private final SettingsModelBoolean m_incrementalModel = DBLoopingNodeModel.createIncrementalModel();
+
+    private final SettingsModelString m_incrementalKeyColumnModel =
+        DBLoopingNodeModel.createIncrementalKeyColumnModel();
+
+    private final SettingsModelString m_incrementalDirModel = DBLoopingNodeModel.createIncrementalDirModel();
+
+    private final SettingsModelBoolean m_reorderInputModel = DBLoopingNodeModel.createReorderInputModel();
+
+    private final SettingsModelBoolean m_mergeRangesModel = DBLoopingNodeModel.createMergeRangesModel();
+
+    private final SettingsModelIntegerBounded m_preloadMaxRowsModel = DBLoopingNodeModel.createPreloadMaxRowsModel();
+
+    private final SettingsModelBoolean m_prefilterModel = DBLoopingNodeModel.createPrefilterModel();
+
+    /**
+     * Creates a new instance of DBLoopingExecutionPanel
+     */
+    DBLoopingExecutionPanel() {
+        setLayout(new BorderLayout());
+        final Box box = Box.createVerticalBox();
+        box.add(createLoopingModePanel());
+        box.add(createParallelismPanel());
+        box.add(createCachingPanel());
+        box.add(createPersistentCachePanel());
+        box.add(createTransactionPanel());
+        box.add(createTimeoutPanel());
+        box.add(createRetryPanel());
+        box.add(createCheckpointPanel());
+        box.add(createIncrementalPanel());
+        box.add(createStatisticsPanel());
+        box.add(Box.createVerticalGlue());
+        add(box, BorderLayout.NORTH);
+    }
+
+    private JPanel createLoopingModePanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLoweredBevelBorder(),
+            BorderFactory.createTitledBorder("Looping Mode")));
+        final Box box = Box.createVerticalBox();
+        box.add(new DialogComponentButtonGroup(m_loopingModeModel, null, true, LoopingMode.values())
+            .getComponentPanel());
+        final Box sizeBox = Box.createHorizontalBox();
+        sizeBox.add(new DialogComponentNumber(m_batchSizeModel, "Rows per batch", 10).getComponentPanel());
+        sizeBox.add(new DialogComponentNumber(m_pipelineDepthModel, "Pipeline depth", 4).getComponentPanel());
+        sizeBox.add(new DialogComponentNumber(m_preloadMaxRowsModel, "Max preloaded rows", 10000)
+            .getComponentPanel());
+        box.add(sizeBox);
+        box.add(new DialogComponentBoolean(m_mergeRangesModel, "Query runs of consecutive values as BETWEEN range")
+            .getComponentPanel());
+        final Box adaptiveBox = Box.createHorizontalBox();
+        adaptiveBox.add(new DialogComponentBoolean(m_adaptiveBatchSizeModel, "Adapt batch size")
+            .getComponentPanel());
+        adaptiveBox.add(new DialogComponentNumber(m_maxBatchSizeModel, "Max rows per batch", 100)
+            .getComponentPanel());
+        adaptiveBox.add(new DialogComponentNumber(m_batchLatencyModel, "Latency ceiling (ms, 0 = off)", 100)
+            .getComponentPanel());
+        box.add(adaptiveBox);
+        box.add(new DialogComponentBoolean(m_reorderInputModel, "Sort input rows by parameter values (output keeps "
+            + "input order)").getComponentPanel());
+        panel.add(box, BorderLayout.CENTER);
+        m_loopingModeModel.addChangeListener(l -> updateEnabledState());
+        m_adaptiveBatchSizeModel.addChangeListener(l -> updateEnabledState());
+        updateEnabledState();
+        return panel;
+    }
+
+    private JPanel createParallelismPanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLoweredBevelBorder(),
+            BorderFactory.createTitledBorder("Parallelism")));
+        final Box box = Box.createVerticalBox();
+        final Box parallelismBox = Box.createHorizontalBox();
+        parallelismBox.add(new DialogComponentNumber(m_parallelismModel, "Parallel connections", 1)
+            .getComponentPanel());
+        parallelismBox.add(new DialogComponentBoolean(m_keepOrderModel, "Keep input order").getComponentPanel());
+        box.add(parallelismBox);
+        final Box adaptiveBox = Box.createHorizontalBox();
+        adaptiveBox.add(new DialogComponentBoolean(m_adaptiveParallelismModel,
+            "Adapt concurrent queries to latency").getComponentPanel());
+        adaptiveBox.add(new DialogComponentNumber(m_minParallelismModel, "Minimum concurrent queries", 1)
+            .getComponentPanel());
+        box.add(adaptiveBox);
+        panel.add(box, BorderLayout.CENTER);
+        m_parallelismModel.addChangeListener(l -> updateEnabledState());
+        m_adaptiveParallelismModel.addChangeListener(l -> updateEnabledState());
+        return panel;
+    }
+
+    private JPanel createCachingPanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLoweredBevelBorder(),
+            BorderFactory.createTitledBorder("Caching")));
+        final Box box = Box.createVerticalBox();
+        box.add(new DialogComponentBoolean(m_cacheStatementsModel, "Reuse prepared statements")
+            .getComponentPanel());
+        final Box memoBox = Box.createHorizontalBox();
+        memoBox.add(new DialogComponentBoolean(m_memoizeResultsModel, "Reuse results of repeated values")
+            .getComponentPanel());
+        memoBox.add(new DialogComponentNumber(m_memoMemoryModel, "Memory limit (MB)", 16).getComponentPanel());
+        box.add(memoBox);
+        box.add(new DialogComponentBoolean(m_prefilterModel, "Skip queries of values missing in the key column "
+            + "(Bloom filter, integer keys only)").getComponentPanel());
+        panel.add(box, BorderLayout.CENTER);
+        m_memoizeResultsModel.addChangeListener(l -> updateEnabledState());
+        return panel;
+    }
+
+    private JPanel createPersistentCachePanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLoweredBevelBorder(),
+            BorderFactory.createTitledBorder("Persistent Result Cache")));
+        final Box box = Box.createVerticalBox();
+        box.add(new DialogComponentBoolean(m_persistentCacheModel, "Cache results across executions")
+            .getComponentPanel());
+        box.add(new DialogComponentFileChooser(m_persistentCacheDirModel, "db_looper_cache_dir",
+            JFileChooser.OPEN_DIALOG, true).getComponentPanel());
+        final Box limitsBox = Box.createHorizontalBox();
+        limitsBox.add(new DialogComponentNumber(m_persistentCacheTTLModel, "Time to live (hours)", 1)
+            .getComponentPanel());
+        limitsBox.add(new DialogComponentNumber(m_persistentCacheSizeModel, "Size limit (MB)", 128)
+            .getComponentPanel());
+        box.add(limitsBox);
+        // Clearing the cache is an action of the dialog and not a setting, so that it happens exactly once
+        final JPanel clearPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        clearPanel.add(new JLabel("Tables (comma separated, empty for the statement of this node)"));
+        clearPanel.add(m_invalidateTablesField);
+        clearPanel.add(m_clearCacheButton);
+        box.add(clearPanel);
+        final JPanel statusPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        statusPanel.add(m_clearCacheStatus);
+        box.add(statusPanel);
+        panel.add(box, BorderLayout.CENTER);
+        m_persistentCacheModel.addChangeListener(l -> updateEnabledState());
+        m_clearCacheButton.addActionListener(e -> clearCache());
+        return panel;
+    }
+
+    /**
+     * Removes the cached results of the statements of the connection that reference one of the entered tables or of
+     * the SQL statement of this node if no table is entered
+     */
+    private void clearCache() {
+        if (m_connectionId == null) {
+            m_clearCacheStatus.setText("The database connection is not available.");
+            return;
+        }
+        final String dir = m_persistentCacheDirModel.getStringValue();
+        final File root = StringUtils.isBlank(dir) ? null : new File(dir.trim());
+        final List<String> tableNames = new ArrayList<String>();
+        for (final String tableName : m_invalidateTablesField.getText().split(",")) {
+            if (!StringUtils.isBlank(tableName)) {
+                tableNames.add(tableName.trim());
+            }
+        }
+        final int count = tableNames.isEmpty() ? PersistentResultCache.clear(root, m_connectionId, m_sqlStatement)
+            : PersistentResultCache.invalidateTables(root, m_connectionId, tableNames);
+        m_clearCacheStatus.setText("Removed the cached results of " + count + " statements.");
+    }
+
+    private JPanel createTransactionPanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLoweredBevelBorder(),
+            BorderFactory.createTitledBorder("Transactions")));
+        final Box box = Box.createVerticalBox();
+        box.add(new DialogComponentBoolean(m_useTransactionsModel, "Group statements in transactions")
+            .getComponentPanel());
+        final Box commitBox = Box.createHorizontalBox();
+        commitBox.add(new DialogComponentNumber(m_commitRowsModel, "Commit every rows (0 = off)", 100)
+            .getComponentPanel());
+        commitBox.add(new DialogComponentNumber(m_commitMillisModel, "Commit every ms (0 = off)", 1000)
+            .getComponentPanel());
+        box.add(commitBox);
+        panel.add(box, BorderLayout.CENTER);
+        m_useTransactionsModel.addChangeListener(l -> updateEnabledState());
+        return panel;
+    }
+
+    private JPanel createTimeoutPanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLoweredBevelBorder(),
+            BorderFactory.createTitledBorder("Timeout")));
+        final Box box = Box.createVerticalBox();
+        box.add(new DialogComponentNumber(m_queryTimeoutModel, "Query timeout (s, 0 = off)", 1).getComponentPanel());
+        panel.add(box, BorderLayout.CENTER);
+        return panel;
+    }
+
+    private JPanel createRetryPanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLoweredBevelBorder(),
+            BorderFactory.createTitledBorder("Retries")));
+        final Box box = Box.createVerticalBox();
+        box.add(new DialogComponentBoolean(m_retryModel,
+            "Retry queries on transient errors (deadlocks, connection errors), updates are never retried")
+            .getComponentPanel());
+        final Box attemptsBox = Box.createHorizontalBox();
+        attemptsBox.add(new DialogComponentNumber(m_retryAttemptsModel, "Max attempts", 1).getComponentPanel());
+        attemptsBox.add(new DialogComponentNumber(m_retryDelayModel, "Initial backoff (ms)", 100)
+            .getComponentPanel());
+        attemptsBox.add(new DialogComponentNumber(m_retryMaxDelayModel, "Max backoff (ms)", 1000)
+            .getComponentPanel());
+        box.add(attemptsBox);
+        box.add(new DialogComponentNumber(m_circuitBreakerPauseModel, "Pause on high error rate (ms, 0 = off)", 1000)
+            .getComponentPanel());
+        panel.add(box, BorderLayout.CENTER);
+        m_retryModel.addChangeListener(l -> updateEnabledState());
+        return panel;
+    }
+
+    private JPanel createCheckpointPanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLoweredBevelBorder(),
+            BorderFactory.createTitledBorder("Checkpoints")));
+        final Box box = Box.createVerticalBox();
+        box.add(new DialogComponentBoolean(m_checkpointModel, "Resume failed executions from checkpoints")
+            .getComponentPanel());
+        box.add(new DialogComponentNumber(m_checkpointIntervalModel, "Save checkpoint every rows", 1000)
+            .getComponentPanel());
+        box.add(new DialogComponentFileChooser(m_checkpointDirModel, "db_looper_checkpoint_dir",
+            JFileChooser.OPEN_DIALOG, true).getComponentPanel());
+        panel.add(box, BorderLayout.CENTER);
+        m_checkpointModel.addChangeListener(l -> updateEnabledState());
+        return panel;
+    }
+
+    private JPanel createIncrementalPanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLoweredBevelBorder(),
+            BorderFactory.createTitledBorder("Incremental")));
+        final Box box = Box.createVerticalBox();
+        box.add(new DialogComponentBoolean(m_incrementalModel, "Only loop new or changed rows")
+            .getComponentPanel());
+        box.add(new DialogComponentString(m_incrementalKeyColumnModel, "Key column (empty = row ID)", false, 20)
+            .getComponentPanel());
+        box.add(new DialogComponentFileChooser(m_incrementalDirModel, "db_looper_incremental_dir",
+            JFileChooser.OPEN_DIALOG, true).getComponentPanel());
+        panel.add(box, BorderLayout.CENTER);
+        m_incrementalModel.addChangeListener(l -> updateEnabledState());
+        return panel;
+    }
+
+    private JPanel createStatisticsPanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLoweredBevelBorder(),
+            BorderFactory.createTitledBorder("Statistics")));
+        final Box box = Box.createVerticalBox();
+        box.add(new DialogComponentBoolean(m_collectStatisticsModel, "Time the phases of every iteration")
+            .getComponentPanel());
+        panel.add(box, BorderLayout.CENTER);
+        return panel;
+    }
+
+    private void updateEnabledState() {
+        final LoopingMode mode = LoopingMode.get(m_loopingModeModel.getStringValue());
+        final boolean batched = mode != LoopingMode.ROW_BY_ROW && mode != LoopingMode.PIPELINED
+            && mode != LoopingMode.PRELOADED_LOOKUP;
+        m_batchSizeModel.setEnabled(batched);
+        m_adaptiveBatchSizeModel.setEnabled(batched);
+        m_maxBatchSizeModel.setEnabled(batched && m_adaptiveBatchSizeModel.getBooleanValue());
+        m_batchLatencyModel.setEnabled(batched && m_adaptiveBatchSizeModel.getBooleanValue());
+        m_pipelineDepthModel.setEnabled(mode == LoopingMode.PIPELINED);
+        m_mergeRangesModel.setEnabled(mode == LoopingMode.BATCHED_IN_LIST);
+        m_preloadMaxRowsModel.setEnabled(mode == LoopingMode.PRELOADED_LOOKUP);
+        m_parallelismModel.setEnabled(mode == LoopingMode.ROW_BY_ROW);
+        final boolean parallel = mode == LoopingMode.ROW_BY_ROW && m_parallelismModel.getIntValue() > 1;
+        m_keepOrderModel.setEnabled(parallel);
+        m_adaptiveParallelismModel.setEnabled(parallel);
+        m_minParallelismModel.setEnabled(parallel && m_adaptiveParallelismModel.getBooleanValue());
+        m_memoMemoryModel.setEnabled(m_memoizeResultsModel.getBooleanValue());
+        final boolean persistentCache = m_persistentCacheModel.getBooleanValue();
+        m_persistentCacheDirModel.setEnabled(persistentCache);
+        m_persistentCacheTTLModel.setEnabled(persistentCache);
+        m_persistentCacheSizeModel.setEnabled(persistentCache);
+        m_invalidateTablesField.setEnabled(persistentCache);
+        m_clearCacheButton.setEnabled(persistentCache);
+        m_commitRowsModel.setEnabled(m_useTransactionsModel.getBooleanValue());
+        m_commitMillisModel.setEnabled(m_useTransactionsModel.getBooleanValue());
+        final boolean retry = m_retryModel.getBooleanValue();
+        m_retryAttemptsModel.setEnabled(retry);
+        m_retryDelayModel.setEnabled(retry);
+        m_retryMaxDelayModel.setEnabled(retry);
+        m_circuitBreakerPauseModel.setEnabled(retry);
+        m_checkpointIntervalModel.setEnabled(m_checkpointModel.getBooleanValue());
+        m_checkpointDirModel.setEnabled(m_checkpointModel.getBooleanValue());
+        m_incrementalKeyColumnModel.setEnabled(m_incrementalModel.getBooleanValue());
+        m_incrementalDirModel.setEnabled(m_incrementalModel.getBooleanValue());
+    }
+
+    void loadSettingsFrom(final NodeSettingsRO settings, final String connectionId) {
+        m_connectionId = connectionId;
+        m_sqlStatement = settings.getString(DBLoopingNodeModel.CFG_SQL_STATEMENT, "");
+        try {
+            m_loopingModeModel.loadSettingsFrom(settings);
+            m_batchSizeModel.loadSettingsFrom(settings);
+            m_parallelismModel.loadSettingsFrom(settings);
+            m_keepOrderModel.loadSettingsFrom(settings);
+            m_cacheStatementsModel.loadSettingsFrom(settings);
+            m_memoizeResultsModel.loadSettingsFrom(settings);
+            m_memoMemoryModel.loadSettingsFrom(settings);
+            m_persistentCacheModel.loadSettingsFrom(settings);
+            m_persistentCacheDirModel.loadSettingsFrom(settings);
+            m_persistentCacheTTLModel.loadSettingsFrom(settings);
+            m_persistentCacheSizeModel.loadSettingsFrom(settings);
+            m_pipelineDepthModel.loadSettingsFrom(settings);
+            m_useTransactionsModel.loadSettingsFrom(settings);
+            m_commitRowsModel.loadSettingsFrom(settings);
+            m_commitMillisModel.loadSettingsFrom(settings);
+            m_adaptiveBatchSizeModel.loadSettingsFrom(settings);
+            m_maxBatchSizeModel.loadSettingsFrom(settings);
+            m_batchLatencyModel.loadSettingsFrom(settings);
+            m_adaptiveParallelismModel.loadSettingsFrom(settings);
+            m_minParallelismModel.loadSettingsFrom(settings);
+            m_collectStatisticsModel.loadSettingsFrom(settings);
+            m_queryTimeoutModel.loadSettingsFrom(settings);
+            m_retryModel.loadSettingsFrom(settings);
+            m_retryAttemptsModel.loadSettingsFrom(settings);
+            m_retryDelayModel.loadSettingsFrom(settings);
+            m_retryMaxDelayModel.loadSettingsFrom(settings);
+            m_circuitBreakerPauseModel.loadSettingsFrom(settings);
+            m_checkpointModel.loadSettingsFrom(settings);
+            m_checkpointIntervalModel.loadSettingsFrom(settings);
+            m_checkpointDirModel.loadSettingsFrom(settings);
+            m_incrementalModel.loadSettingsFrom(settings);
+            m_incrementalKeyColumnModel.loadSettingsFrom(settings);
+            m_incrementalDirModel.loadSettingsFrom(settings);
+            m_reorderInputModel.loadSettingsFrom(settings);
+            m_mergeRangesModel.loadSettingsFrom(settings);
+            m_preloadMaxRowsModel.loadSettingsFrom(settings);
+            m_prefilterModel.loadSettingsFrom(settings);
+        } catch (InvalidSettingsException ex) {
+            m_loopingModeModel.setStringValue(LoopingMode.getDefault().getActionCommand());
+            m_batchSizeModel.setIntValue(DBLoopingNodeModel.DEF_BATCH_SIZE);
+            m_parallelismModel.setIntValue(DBLoopingNodeModel.DEF_PARALLELISM);
+            m_keepOrderModel.setBooleanValue(DBLoopingNodeModel.DEF_KEEP_ORDER);
+            m_cacheStatementsModel.setBooleanValue(DBLoopingNodeModel.DEF_CACHE_STATEMENTS);
+            m_memoizeResultsModel.setBooleanValue(DBLoopingNodeModel.DEF_MEMOIZE_RESULTS);
+            m_memoMemoryModel.setIntValue(DBLoopingNodeModel.DEF_MEMO_MEMORY_MB);
+            m_persistentCacheModel.setBooleanValue(DBLoopingNodeModel.DEF_PERSISTENT_CACHE);
+            m_persistentCacheDirModel.setStringValue("");
+            m_persistentCacheTTLModel.setIntValue(DBLoopingNodeModel.DEF_PERSISTENT_CACHE_TTL_HOURS);
+            m_persistentCacheSizeModel.setIntValue(DBLoopingNodeModel.DEF_PERSISTENT_CACHE_SIZE_MB);
+            m_pipelineDepthModel.setIntValue(DBLoopingNodeModel.DEF_PIPELINE_DEPTH);
+            m_useTransactionsModel.setBooleanValue(DBLoopingNodeModel.DEF_USE_TRANSACTIONS);
+            m_commitRowsModel.setIntValue(DBLoopingNodeModel.DEF_COMMIT_ROWS);
+            m_commitMillisModel.setIntValue(DBLoopingNodeModel.DEF_COMMIT_MILLIS);
+            m_adaptiveBatchSizeModel.setBooleanValue(DBLoopingNodeModel.DEF_ADAPTIVE_BATCH_SIZE);
+            m_maxBatchSizeModel.setIntValue(DBLoopingNodeModel.DEF_MAX_BATCH_SIZE);
+            m_batchLatencyModel.setIntValue(DBLoopingNodeModel.DEF_BATCH_LATENCY_MS);
+            m_adaptiveParallelismModel.setBooleanValue(DBLoopingNodeModel.DEF_ADAPTIVE_PARALLELISM);
+            m_minParallelismModel.setIntValue(DBLoopingNodeModel.DEF_MIN_PARALLELISM);
+            m_collectStatisticsModel.setBooleanValue(DBLoopingNodeModel.DEF_COLLECT_STATISTICS);
+            m_queryTimeoutModel.setIntValue(DBLoopingNodeModel.DEF_QUERY_TIMEOUT);
+            m_retryModel.setBooleanValue(DBLoopingNodeModel.DEF_RETRY);
+            m_retryAttemptsModel.setIntValue(DBLoopingNodeModel.DEF_RETRY_ATTEMPTS);
+            m_retryDelayModel.setIntValue(DBLoopingNodeModel.DEF_RETRY_DELAY_MS);
+            m_retryMaxDelayModel.setIntValue(DBLoopingNodeModel.DEF_RETRY_MAX_DELAY_MS);
+            m_circuitBreakerPauseModel.setIntValue(DBLoopingNodeModel.DEF_CIRCUIT_BREAKER_PAUSE_MS);
+            m_checkpointModel.setBooleanValue(DBLoopingNodeModel.DEF_CHECKPOINT);
+            m_checkpointIntervalModel.setIntValue(DBLoopingNodeModel.DEF_CHECKPOINT_INTERVAL);
+            m_checkpointDirModel.setStringValue("");
+            m_incrementalModel.setBooleanValue(DBLoopingNodeModel.DEF_INCREMENTAL);
+            m_incrementalKeyColumnModel.setStringValue("");
+            m_incrementalDirModel.setStringValue("");
+            m_reorderInputModel.setBooleanValue(DBLoopingNodeModel.DEF_REORDER_INPUT);
+            m_mergeRangesModel.setBooleanValue(DBLoopingNodeModel.DEF_MERGE_RANGES);
+            m_preloadMaxRowsModel.setIntValue(DBLoopingNodeModel.DEF_PRELOAD_MAX_ROWS);
+            m_prefilterModel.setBooleanValue(DBLoopingNodeModel.DEF_PREFILTER);
+        }
+        updateEnabledState();
+    }
+
+    void saveSettingsTo(final NodeSettingsWO settings) {
+        m_loopingModeModel.saveSettingsTo(settings);
+        m_batchSizeModel.saveSettingsTo(settings);
+        m_parallelismModel.saveSettingsTo(settings);
+        m_keepOrderModel.saveSettingsTo(settings);
+        m_cacheStatementsModel.saveSettingsTo(settings);
+        m_memoizeResultsModel.saveSettingsTo(settings);
+        m_memoMemoryModel.saveSettingsTo(settings);
+        m_persistentCacheModel.saveSettingsTo(settings);
+        m_persistentCacheDirModel.saveSettingsTo(settings);
+        m_persistentCacheTTLModel.saveSettingsTo(settings);
+        m_persistentCacheSizeModel.saveSettingsTo(settings);
+        m_pipelineDepthModel.saveSettingsTo(settings);
+        m_useTransactionsModel.saveSettingsTo(settings);
+        m_commitRowsModel.saveSettingsTo(settings);
+        m_commitMillisModel.saveSettingsTo(settings);
+        m_adaptiveBatchSizeModel.saveSettingsTo(settings);
+        m_maxBatchSizeModel.saveSettingsTo(settings);
+        m_batchLatencyModel.saveSettingsTo(settings);
+        m_adaptiveParallelismModel.saveSettingsTo(settings);
+        m_minParallelismModel.saveSettingsTo(settings);
+        m_collectStatisticsModel.saveSettingsTo(settings);
+        m_queryTimeoutModel.saveSettingsTo(settings);
+        m_retryModel.saveSettingsTo(settings);
+        m_retryAttemptsModel.saveSettingsTo(settings);
+        m_retryDelayModel.saveSettingsTo(settings);
+        m_retryMaxDelayModel.saveSettingsTo(settings);
+        m_circuitBreakerPauseModel.saveSettingsTo(settings);
+        m_checkpointModel.saveSettingsTo(settings);
+        m_checkpointIntervalModel.saveSettingsTo(settings);
+        m_checkpointDirModel.saveSettingsTo(settings);
+        m_incrementalModel.saveSettingsTo(settings);
+        m_incrementalKeyColumnModel.saveSettingsTo(settings);
+        m_incrementalDirModel.saveSettingsTo(settings);
+        m_reorderInputModel.saveSettingsTo(settings);
+        m_mergeRangesModel.saveSettingsTo(settings);
+        m_preloadMaxRowsModel.saveSettingsTo(settings);
+        m_prefilterModel.saveSettingsTo(settings);
+    }
+
+}
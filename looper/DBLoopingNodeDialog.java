@@ -1,5 +1,6 @@
 package org.knime.base.node.io.database.looper;
 
+import org.knime.base.node.io.database.looper.util.DBLoopingUtil;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeDialogPane;
@@ -8,6 +9,7 @@ import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.NotConfigurableException;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.database.DatabasePortObjectSpec;
 
 /**
  * <code>NodeDialog</code> for the "DBLooper" Node.
@@ -24,11 +26,14 @@ public class DBLoopingNodeDialog extends NodeDialogPane {
 
     private DBLoopingPanel m_panel = new DBLoopingPanel();
 
+    private DBLoopingExecutionPanel m_executionPanel = new DBLoopingExecutionPanel();
+
     /**
      * New pane for configuring the DBLooper node.
      */
     protected DBLoopingNodeDialog() {
         addTab("DB Looper", m_panel);
+        addTab("Execution", m_executionPanel);
     }
 
     /**
@@ -38,6 +43,7 @@ public class DBLoopingNodeDialog extends NodeDialogPane {
     protected void saveSettingsTo(final NodeSettingsWO settings)
             throws InvalidSettingsException {
         m_panel.saveSettingsTo(settings);
+        m_executionPanel.saveSettingsTo(settings);
     }
 
 
@@ -58,6 +64,14 @@ public class DBLoopingNodeDialog extends NodeDialogPane {
         }
 
         m_panel.loadSettingsFrom(settings, specs, getAvailableFlowVariables().values());
+        String connectionId;
+        try {
+            connectionId = DBLoopingUtil.getConnectionId(((DatabasePortObjectSpec)specs[1])
+                .getConnectionSettings(getCredentialsProvider()), getCredentialsProvider());
+        } catch (InvalidSettingsException ex) {
+            connectionId = null;
+        }
+        m_executionPanel.loadSettingsFrom(settings, connectionId);
 
     }
 }
@@ -26,7 +26,7 @@ public class DBLoopingNodeFactory
      */
     @Override
     public int getNrNodeViews() {
-        return 0;
+        return 1;
     }
 
     /**
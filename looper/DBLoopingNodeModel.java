@@ -1,20 +1,51 @@
 package org.knime.base.node.io.database.looper;
 
-import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.commons.lang.StringUtils;
 import org.knime.base.node.io.database.DBNodeModel;
+import org.knime.base.node.io.database.looper.util.AbstractLoopingExecutor;
+import org.knime.base.node.io.database.looper.util.AdaptiveBatchSizer;
+import org.knime.base.node.io.database.looper.util.AdaptiveConcurrencyLimiter;
+import org.knime.base.node.io.database.looper.util.BatchedLoopingExecutor;
+import org.knime.base.node.io.database.looper.util.BatchedUpdateExecutor;
+import org.knime.base.node.io.database.looper.util.CircuitBreaker;
+import org.knime.base.node.io.database.looper.util.DBLoopingUtil;
+import org.knime.base.node.io.database.looper.util.IncrementalResultStore;
+import org.knime.base.node.io.database.looper.util.LatencyHistogram;
+import org.knime.base.node.io.database.looper.util.LoopingCheckpoint;
+import org.knime.base.node.io.database.looper.util.LoopingOptions;
+import org.knime.base.node.io.database.looper.util.LoopingMonitor;
+import org.knime.base.node.io.database.looper.util.LoopingRowAssembler;
+import org.knime.base.node.io.database.looper.util.LoopingStatistics;
+import org.knime.base.node.io.database.looper.util.LoopingStatistics.Phase;
+import org.knime.base.node.io.database.looper.util.ParallelLoopingExecutor;
+import org.knime.base.node.io.database.looper.util.PersistentResultCache;
+import org.knime.base.node.io.database.looper.util.PipelinedLoopingExecutor;
+import org.knime.base.node.io.database.looper.util.PreloadedLookupExecutor;
+import org.knime.base.node.io.database.looper.util.ResultMemo;
+import org.knime.base.node.io.database.looper.util.ResultSpecCache;
+import org.knime.base.node.io.database.looper.util.RetryPolicy;
+import org.knime.base.node.io.database.looper.util.RowByRowLoopingExecutor;
+import org.knime.base.node.io.database.looper.util.SQLTemplate;
+import org.knime.base.node.io.database.looper.util.StagingTableLoopingExecutor;
 import org.knime.base.util.flowvariable.FlowVariableProvider;
-import org.knime.base.util.flowvariable.FlowVariableResolver;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettings;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModel;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
@@ -23,6 +54,15 @@ import org.knime.core.node.port.database.DatabasePortObjectSpec;
 import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
 import org.knime.core.node.port.database.reader.DBLooper;
 import org.knime.core.node.streamable.DataTableRowInput;
+import org.knime.core.node.streamable.InputPortRole;
+import org.knime.core.node.streamable.OutputPortRole;
+import org.knime.core.node.streamable.PartitionInfo;
+import org.knime.core.node.streamable.PortInput;
+import org.knime.core.node.streamable.PortObjectInput;
+import org.knime.core.node.streamable.PortOutput;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.node.streamable.StreamableOperator;
 
 /**
  * This is the model implementation of DBLooper.
@@ -42,8 +82,126 @@ public class DBLoopingNodeModel extends DBNodeModel implements FlowVariableProvi
 
     static final boolean DEF_FAIL_IF_EXCEPTION = false;
 
+    static final int DEF_BATCH_SIZE = 100;
+
+    static final int DEF_PARALLELISM = 1;
+
+    static final boolean DEF_KEEP_ORDER = true;
+
+    static final boolean DEF_CACHE_STATEMENTS = false;
+
+    static final boolean DEF_MEMOIZE_RESULTS = false;
+
+    static final int DEF_MEMO_MEMORY_MB = 64;
+
+    static final boolean DEF_PERSISTENT_CACHE = false;
+
+    static final int DEF_PERSISTENT_CACHE_TTL_HOURS = 24;
+
+    static final int DEF_PERSISTENT_CACHE_SIZE_MB = 1024;
+
+    static final int DEF_PIPELINE_DEPTH = 16;
+
+    static final boolean DEF_USE_TRANSACTIONS = false;
+
+    static final int DEF_COMMIT_ROWS = 1000;
+
+    static final int DEF_COMMIT_MILLIS = 0;
+
+    static final boolean DEF_ADAPTIVE_BATCH_SIZE = false;
+
+    static final int DEF_MAX_BATCH_SIZE = 10000;
+
+    static final int DEF_BATCH_LATENCY_MS = 1000;
+
+    static final boolean DEF_ADAPTIVE_PARALLELISM = false;
+
+    static final int DEF_MIN_PARALLELISM = 1;
+
+    static final boolean DEF_COLLECT_STATISTICS = false;
+
+    static final int DEF_QUERY_TIMEOUT = 0;
+
+    static final boolean DEF_RETRY = false;
+
+    static final int DEF_RETRY_ATTEMPTS = 3;
+
+    static final int DEF_RETRY_DELAY_MS = 100;
+
+    static final int DEF_RETRY_MAX_DELAY_MS = 5000;
+
+    static final int DEF_CIRCUIT_BREAKER_PAUSE_MS = 5000;
+
+    static final boolean DEF_CHECKPOINT = false;
+
+    static final int DEF_CHECKPOINT_INTERVAL = 10000;
+
+    static final boolean DEF_INCREMENTAL = false;
+
+    static final boolean DEF_REORDER_INPUT = false;
+
+    static final boolean DEF_MERGE_RANGES = false;
+
+    static final int DEF_PRELOAD_MAX_ROWS = 100000;
+
+    static final boolean DEF_PREFILTER = false;
+
     static final String CFG_SQL_STATEMENT = "sql_statement";
 
+    private static final String FLOW_VARIABLE_STATEMENT_CACHE_HITS = "statementCacheHits";
+
+    private static final String FLOW_VARIABLE_STATEMENT_CACHE_MISSES = "statementCacheMisses";
+
+    private static final String FLOW_VARIABLE_RESULT_MEMO_HITS = "resultMemoHits";
+
+    private static final String FLOW_VARIABLE_RESULT_MEMO_MISSES = "resultMemoMisses";
+
+    private static final String FLOW_VARIABLE_RESULT_CACHE_HITS = "resultCacheHits";
+
+    private static final String FLOW_VARIABLE_RESULT_CACHE_MISSES = "resultCacheMisses";
+
+    private static final String FLOW_VARIABLE_TRANSACTION_COMMITS = "transactionCommits";
+
+    private static final String FLOW_VARIABLE_BATCH_SIZE = "batchSize";
+
+    private static final String FLOW_VARIABLE_BATCH_SIZE_MIN = "batchSizeMin";
+
+    private static final String FLOW_VARIABLE_BATCH_SIZE_MAX = "batchSizeMax";
+
+    private static final String FLOW_VARIABLE_BATCH_SIZE_MEAN = "batchSizeMean";
+
+    private static final String FLOW_VARIABLE_BATCH_ROWS_PER_SECOND = "batchRowsPerSecond";
+
+    private static final String FLOW_VARIABLE_CONCURRENCY_LIMIT = "concurrencyLimit";
+
+    private static final String FLOW_VARIABLE_CONCURRENCY_LIMIT_MIN = "concurrencyLimitMin";
+
+    private static final String FLOW_VARIABLE_CONCURRENCY_LIMIT_MAX = "concurrencyLimitMax";
+
+    private static final String FLOW_VARIABLE_LATENCY_P95 = "latencyP95Millis";
+
+    private static final String FLOW_VARIABLE_ROWS_PER_SECOND = "rowsPerSecond";
+
+    private static final String FLOW_VARIABLE_RESULT_ROWS_PER_SECOND = "resultRowsPerSecond";
+
+    private static final String FLOW_VARIABLE_QUERY_TIMEOUTS = "queryTimeouts";
+
+    private static final String FLOW_VARIABLE_RETRIES = "retries";
+
+    private static final String FLOW_VARIABLE_CIRCUIT_BREAKER_OPENINGS = "circuitBreakerOpenings";
+
+    private static final String FLOW_VARIABLE_INCREMENTAL_RETAINED_ROWS = "incrementalRetainedRows";
+
+    private static final String FLOW_VARIABLE_INCREMENTAL_LOOPED_ROWS = "incrementalLoopedRows";
+
+    private static final String FLOW_VARIABLE_RANGE_QUERIES = "rangeQueries";
+
+    private static final String FLOW_VARIABLE_RANGE_VALUES = "rangeValues";
+
+    private static final String FLOW_VARIABLE_PRELOADED_ROWS = "preloadedRows";
+
+    private static final String FLOW_VARIABLE_PREFILTERED_QUERIES = "prefilteredQueries";
+
     static final String INPUT_COLUMNS_PLACEHOLDER = "input_columns";
 
     private final SettingsModelBoolean m_appendInputColumnsModel = createAppendInputColsModel();
@@ -54,9 +212,85 @@ public class DBLoopingNodeModel extends DBNodeModel implements FlowVariableProvi
 
     private final SettingsModelBoolean m_failIfExceptionModel = createFailIfExceptionModel();
 
+    private final SettingsModelString m_loopingModeModel = createLoopingModeModel();
+
+    private final SettingsModelIntegerBounded m_batchSizeModel = createBatchSizeModel();
+
+    private final SettingsModelIntegerBounded m_parallelismModel = createParallelismModel();
+
+    private final SettingsModelBoolean m_keepOrderModel = createKeepOrderModel();
+
+    private final SettingsModelBoolean m_cacheStatementsModel = createCacheStatementsModel();
+
+    private final SettingsModelBoolean m_memoizeResultsModel = createMemoizeResultsModel();
+
+    private final SettingsModelIntegerBounded m_memoMemoryModel = createMemoMemoryModel();
+
+    private final SettingsModelBoolean m_persistentCacheModel = createPersistentCacheModel();
+
+    private final SettingsModelString m_persistentCacheDirModel = createPersistentCacheDirModel();
+
+    private final SettingsModelIntegerBounded m_persistentCacheTTLModel = createPersistentCacheTTLModel();
+
+    private final SettingsModelIntegerBounded m_persistentCacheSizeModel = createPersistentCacheSizeModel();
+
+    private final SettingsModelIntegerBounded m_pipelineDepthModel = createPipelineDepthModel();
+
+    private final SettingsModelBoolean m_useTransactionsModel = createUseTransactionsModel();
+
+    private final SettingsModelIntegerBounded m_commitRowsModel = createCommitRowsModel();
+
+    private final SettingsModelIntegerBounded m_commitMillisModel = createCommitMillisModel();
+
+    private final SettingsModelBoolean m_adaptiveBatchSizeModel = createAdaptiveBatchSizeModel();
+
+    private final SettingsModelIntegerBounded m_maxBatchSizeModel = createMaxBatchSizeModel();
+
+    private final SettingsModelIntegerBounded m_batchLatencyModel = createBatchLatencyModel();
+
+    private final SettingsModelBoolean m_adaptiveParallelismModel = createAdaptiveParallelismModel();
+
+    private final SettingsModelIntegerBounded m_minParallelismModel = createMinParallelismModel();
+
+    private final SettingsModelBoolean m_collectStatisticsModel = createCollectStatisticsModel();
+
+    private volatile LoopingMonitor m_monitor;
+
+    private final SettingsModelIntegerBounded m_queryTimeoutModel = createQueryTimeoutModel();
+
+    private final SettingsModelBoolean m_retryModel = createRetryModel();
+
+    private final SettingsModelIntegerBounded m_retryAttemptsModel = createRetryAttemptsModel();
+
+    private final SettingsModelIntegerBounded m_retryDelayModel = createRetryDelayModel();
+
+    private final SettingsModelIntegerBounded m_retryMaxDelayModel = createRetryMaxDelayModel();
+
+    private final SettingsModelIntegerBounded m_circuitBreakerPauseModel = createCircuitBreakerPauseModel();
+
+    private final SettingsModelBoolean m_checkpointModel = createCheckpointModel();
+
+    private final SettingsModelIntegerBounded m_checkpointIntervalModel = createCheckpointIntervalModel();
+
+    private final SettingsModelString m_checkpointDirModel = createCheckpointDirModel();
+
+    private final SettingsModelBoolean m_incrementalModel = createIncrementalModel();
+
+    private final SettingsModelString m_incrementalKeyColumnModel = createIncrementalKeyColumnModel();
+
+    private final SettingsModelString m_incrementalDirModel = createIncrementalDirModel();
+
+    private final SettingsModelBoolean m_reorderInputModel = createReorderInputModel();
+
+    private final SettingsModelBoolean m_mergeRangesModel = createMergeRangesModel();
+
+    private final SettingsModelIntegerBounded m_preloadMaxRowsModel = createPreloadMaxRowsModel();
+
+    private final SettingsModelBoolean m_prefilterModel = createPrefilterModel();
+
     private String m_sqlStatement = getDefaultSQLStatement();
 
-    private List<String> m_dataColumns = new ArrayList<String>();
+    private SQLTemplate m_template;
 
     static SettingsModelBoolean createAppendInputColsModel() {
         return new SettingsModelBoolean("append_input_columns", DEF_APPEND_INPUT_COL);
@@ -74,6 +308,158 @@ public class DBLoopingNodeModel extends DBNodeModel implements FlowVariableProvi
         return new SettingsModelBoolean("fail_if_exception", DEF_FAIL_IF_EXCEPTION);
     }
 
+    static SettingsModelString createLoopingModeModel() {
+        return new SettingsModelString("looping_mode", LoopingMode.getDefault().getActionCommand());
+    }
+
+    static SettingsModelIntegerBounded createBatchSizeModel() {
+        return new SettingsModelIntegerBounded("batch_size", DEF_BATCH_SIZE, 1, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelIntegerBounded createParallelismModel() {
+        return new SettingsModelIntegerBounded("parallelism", DEF_PARALLELISM, 1, 64);
+    }
+
+    static SettingsModelBoolean createKeepOrderModel() {
+        return new SettingsModelBoolean("keep_order", DEF_KEEP_ORDER);
+    }
+
+    static SettingsModelBoolean createCacheStatementsModel() {
+        return new SettingsModelBoolean("cache_statements", DEF_CACHE_STATEMENTS);
+    }
+
+    static SettingsModelBoolean createMemoizeResultsModel() {
+        return new SettingsModelBoolean("memoize_results", DEF_MEMOIZE_RESULTS);
+    }
+
+    static SettingsModelIntegerBounded createMemoMemoryModel() {
+        return new SettingsModelIntegerBounded("memo_memory_mb", DEF_MEMO_MEMORY_MB, 1, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelBoolean createPersistentCacheModel() {
+        return new SettingsModelBoolean("persistent_cache", DEF_PERSISTENT_CACHE);
+    }
+
+    static SettingsModelString createPersistentCacheDirModel() {
+        return new SettingsModelString("persistent_cache_dir", "");
+    }
+
+    static SettingsModelIntegerBounded createPersistentCacheTTLModel() {
+        return new SettingsModelIntegerBounded("persistent_cache_ttl_hours", DEF_PERSISTENT_CACHE_TTL_HOURS, 1,
+            Integer.MAX_VALUE);
+    }
+
+    static SettingsModelIntegerBounded createPersistentCacheSizeModel() {
+        return new SettingsModelIntegerBounded("persistent_cache_size_mb", DEF_PERSISTENT_CACHE_SIZE_MB, 1,
+            Integer.MAX_VALUE);
+    }
+
+    static SettingsModelIntegerBounded createPipelineDepthModel() {
+        return new SettingsModelIntegerBounded("pipeline_depth", DEF_PIPELINE_DEPTH, 1, 1024);
+    }
+
+    static SettingsModelBoolean createUseTransactionsModel() {
+        return new SettingsModelBoolean("use_transactions", DEF_USE_TRANSACTIONS);
+    }
+
+    static SettingsModelIntegerBounded createCommitRowsModel() {
+        return new SettingsModelIntegerBounded("commit_interval_rows", DEF_COMMIT_ROWS, 0, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelIntegerBounded createCommitMillisModel() {
+        return new SettingsModelIntegerBounded("commit_interval_ms", DEF_COMMIT_MILLIS, 0, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelBoolean createAdaptiveBatchSizeModel() {
+        return new SettingsModelBoolean("adaptive_batch_size", DEF_ADAPTIVE_BATCH_SIZE);
+    }
+
+    static SettingsModelIntegerBounded createMaxBatchSizeModel() {
+        return new SettingsModelIntegerBounded("max_batch_size", DEF_MAX_BATCH_SIZE, 1, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelIntegerBounded createBatchLatencyModel() {
+        return new SettingsModelIntegerBounded("batch_latency_ceiling_ms", DEF_BATCH_LATENCY_MS, 0, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelBoolean createAdaptiveParallelismModel() {
+        return new SettingsModelBoolean("adaptive_parallelism", DEF_ADAPTIVE_PARALLELISM);
+    }
+
+    static SettingsModelIntegerBounded createMinParallelismModel() {
+        return new SettingsModelIntegerBounded("min_parallelism", DEF_MIN_PARALLELISM, 1, 64);
+    }
+
+    static SettingsModelBoolean createCollectStatisticsModel() {
+        return new SettingsModelBoolean("collect_statistics", DEF_COLLECT_STATISTICS);
+    }
+
+    static SettingsModelIntegerBounded createQueryTimeoutModel() {
+        return new SettingsModelIntegerBounded("query_timeout_s", DEF_QUERY_TIMEOUT, 0, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelBoolean createRetryModel() {
+        return new SettingsModelBoolean("retry_transient_errors", DEF_RETRY);
+    }
+
+    static SettingsModelIntegerBounded createRetryAttemptsModel() {
+        return new SettingsModelIntegerBounded("retry_max_attempts", DEF_RETRY_ATTEMPTS, 2, 100);
+    }
+
+    static SettingsModelIntegerBounded createRetryDelayModel() {
+        return new SettingsModelIntegerBounded("retry_base_delay_ms", DEF_RETRY_DELAY_MS, 0, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelIntegerBounded createRetryMaxDelayModel() {
+        return new SettingsModelIntegerBounded("retry_max_delay_ms", DEF_RETRY_MAX_DELAY_MS, 0, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelIntegerBounded createCircuitBreakerPauseModel() {
+        return new SettingsModelIntegerBounded("circuit_breaker_pause_ms", DEF_CIRCUIT_BREAKER_PAUSE_MS, 0,
+            Integer.MAX_VALUE);
+    }
+
+    static SettingsModelBoolean createCheckpointModel() {
+        return new SettingsModelBoolean("checkpoint", DEF_CHECKPOINT);
+    }
+
+    static SettingsModelIntegerBounded createCheckpointIntervalModel() {
+        return new SettingsModelIntegerBounded("checkpoint_interval_rows", DEF_CHECKPOINT_INTERVAL, 1,
+            Integer.MAX_VALUE);
+    }
+
+    static SettingsModelString createCheckpointDirModel() {
+        return new SettingsModelString("checkpoint_dir", "");
+    }
+
+    static SettingsModelBoolean createIncrementalModel() {
+        return new SettingsModelBoolean("incremental", DEF_INCREMENTAL);
+    }
+
+    static SettingsModelString createIncrementalKeyColumnModel() {
+        return new SettingsModelString("incremental_key_column", "");
+    }
+
+    static SettingsModelString createIncrementalDirModel() {
+        return new SettingsModelString("incremental_dir", "");
+    }
+
+    static SettingsModelBoolean createReorderInputModel() {
+        return new SettingsModelBoolean("reorder_input", DEF_REORDER_INPUT);
+    }
+
+    static SettingsModelBoolean createMergeRangesModel() {
+        return new SettingsModelBoolean("merge_ranges", DEF_MERGE_RANGES);
+    }
+
+    static SettingsModelIntegerBounded createPreloadMaxRowsModel() {
+        return new SettingsModelIntegerBounded("preload_max_rows", DEF_PRELOAD_MAX_ROWS, 1, Integer.MAX_VALUE - 1);
+    }
+
+    static SettingsModelBoolean createPrefilterModel() {
+        return new SettingsModelBoolean("prefilter", DEF_PREFILTER);
+    }
+
     /**
      * Constructor for the node model.
      */
@@ -91,29 +477,423 @@ public class DBLoopingNodeModel extends DBNodeModel implements FlowVariableProvi
         final BufferedDataTable inTable = (BufferedDataTable)inData[0];
         final DatabasePortObject dbObject = (DatabasePortObject)inData[1];
 
+        if (isCoreLooping(dbObject, inTable.getDataTableSpec())) {
+            return loopCore(dbObject, new DataTableRowInput(inTable), inTable.size(), exec);
+        }
+
+        final AbstractLoopingExecutor executor = createExecutor(dbObject, inTable.getDataTableSpec());
+        if (m_checkpointModel.getBooleanValue()) {
+            executor.setCheckpoint(openCheckpoint(dbObject, inTable, exec));
+        }
+        executor.execute(new DataTableRowInput(inTable), inTable.size(), exec);
+        finishExecution(executor);
+        return new BufferedDataTable[]{executor.getOutputTable(), executor.getErrorTable()};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputPortRole[] getInputPortRoles() {
+        return new InputPortRole[]{InputPortRole.NONDISTRIBUTED_STREAMABLE, InputPortRole.NONDISTRIBUTED_NONSTREAMABLE};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OutputPortRole[] getOutputPortRoles() {
+        // The row keys of the output are generated consecutively, so the outputs cannot be distributed
+        return new OutputPortRole[]{OutputPortRole.NONDISTRIBUTED, OutputPortRole.NONDISTRIBUTED};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StreamableOperator createStreamableOperator(final PartitionInfo partitionInfo,
+        final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+        return new StreamableOperator() {
+
+            @Override
+            public void runFinal(final PortInput[] inputs, final PortOutput[] outputs, final ExecutionContext exec)
+                throws Exception {
+                final RowInput input = (RowInput)inputs[0];
+                final DatabasePortObject dbObject =
+                    (DatabasePortObject)((PortObjectInput)inputs[1]).getPortObject();
+
+                if (isCoreLooping(dbObject, input.getDataTableSpec())) {
+                    final BufferedDataTable[] tables = loopCore(dbObject, input, -1, exec);
+                    ((RowOutput)outputs[0]).setFully(tables[0]);
+                    ((RowOutput)outputs[1]).setFully(tables[1]);
+                    return;
+                }
+
+                final AbstractLoopingExecutor executor = createExecutor(dbObject, input.getDataTableSpec());
+                executor.execute(input, -1, exec, (RowOutput)outputs[0], (RowOutput)outputs[1]);
+                finishExecution(executor);
+            }
+        };
+    }
+
+    /**
+     * Returns <code>true</code> if the SQL statement is looped row by row by the database looper of the connection,
+     * which is the case unless another looping mode or any of the optional features is selected
+     */
+    private boolean isCoreLooping(final DatabasePortObject dbObject, final DataTableSpec inSpec)
+        throws InvalidSettingsException {
+        return isCoreLooping(parseSQLStatement(inSpec,
+            dbObject.getConnectionSettings(getCredentialsProvider()).getQuery()));
+    }
+
+    private boolean isCoreLooping(final String query) {
+        return LoopingMode.get(m_loopingModeModel.getStringValue()) == LoopingMode.ROW_BY_ROW
+            && m_parallelismModel.getIntValue() == 1 && !isUpdateStatement(query)
+            && !m_cacheStatementsModel.getBooleanValue() && !m_memoizeResultsModel.getBooleanValue()
+            && !m_persistentCacheModel.getBooleanValue() && !m_collectStatisticsModel.getBooleanValue()
+            && !m_useTransactionsModel.getBooleanValue() && m_queryTimeoutModel.getIntValue() == 0
+            && !m_retryModel.getBooleanValue() && !m_checkpointModel.getBooleanValue()
+            && !m_incrementalModel.getBooleanValue() && !m_reorderInputModel.getBooleanValue()
+            && !m_prefilterModel.getBooleanValue();
+    }
+
+    /**
+     * Loops the SQL statement row by row with the database looper of the connection
+     *
+     * @return the result and the error table
+     */
+    private BufferedDataTable[] loopCore(final DatabasePortObject dbObject, final RowInput data, final long rowCount,
+        final ExecutionContext exec) throws Exception {
+        m_monitor = null;
         DatabaseQueryConnectionSettings conn = dbObject.getConnectionSettings(getCredentialsProvider());
 
-        final String newQuery = parseSQLStatement(inTable.getDataTableSpec(), conn.getQuery());
+        final String newQuery = parseSQLStatement(data.getDataTableSpec(), conn.getQuery());
 
         LOGGER.debug("SQL Statement: " + newQuery);
 
         conn = createDBQueryConnection(dbObject.getSpec(), newQuery);
         final DBLooper looper = conn.getUtility().getLooper(conn);
-
-        final DataTableRowInput data = new DataTableRowInput(inTable);
+        final List<String> columns = getTemplate().getColumns();
 
         final BufferedDataTable outTable = looper
-                .loopTable(exec, getCredentialsProvider(), data, inTable.size(),
+                .loopTable(exec, getCredentialsProvider(), data, rowCount,
                     m_failIfExceptionModel.getBooleanValue(),
                     m_appendInputColumnsModel.getBooleanValue(),
                     m_includeEmptyResultsModel.getBooleanValue(),
                     m_retainAllColumnsModel.getBooleanValue(),
-                    m_dataColumns.toArray(new String[m_dataColumns.size()]))
+                    columns.toArray(new String[columns.size()]))
                     .getDataTable();
 
-        final BufferedDataTable errorTable = looper.getErrorDataTable();
+        return new BufferedDataTable[]{outTable, looper.getErrorDataTable()};
+    }
+
+    /**
+     * Creates the executor for the SQL statement of the given database port and the options of this node
+     */
+    private AbstractLoopingExecutor createExecutor(final DatabasePortObject dbObject, final DataTableSpec inSpec)
+        throws Exception {
+        DatabaseQueryConnectionSettings conn = dbObject.getConnectionSettings(getCredentialsProvider());
+
+        final String newQuery = parseSQLStatement(inSpec, conn.getQuery());
+
+        LOGGER.debug("SQL Statement: " + newQuery);
+
+        conn = createDBQueryConnection(dbObject.getSpec(), newQuery);
+        final AbstractLoopingExecutor executor = createExecutor(conn, newQuery, inSpec);
+
+        executor.setCacheStatements(m_cacheStatementsModel.getBooleanValue());
+        if (m_memoizeResultsModel.getBooleanValue()) {
+            executor.setResultMemo(new ResultMemo(m_memoMemoryModel.getIntValue() * 1024L * 1024L));
+        }
+        if (m_persistentCacheModel.getBooleanValue()) {
+            executor.setResultCache(openResultCache(conn, newQuery));
+        }
+        m_monitor = executor.getMonitor();
+        if (m_collectStatisticsModel.getBooleanValue()) {
+            executor.setStatistics(new LoopingStatistics());
+        }
+        if (m_adaptiveBatchSizeModel.getBooleanValue()) {
+            executor.setBatchSizer(new AdaptiveBatchSizer(m_batchSizeModel.getIntValue(), 1,
+                m_maxBatchSizeModel.getIntValue(), m_batchLatencyModel.getIntValue()));
+        }
+        if (m_useTransactionsModel.getBooleanValue()) {
+            executor.setTransactions(m_commitRowsModel.getIntValue(), m_commitMillisModel.getIntValue());
+        }
+        executor.setQueryTimeout(m_queryTimeoutModel.getIntValue());
+        if (m_retryModel.getBooleanValue()) {
+            final int pause = m_circuitBreakerPauseModel.getIntValue();
+            executor.setRetryPolicy(new RetryPolicy(m_retryAttemptsModel.getIntValue(),
+                m_retryDelayModel.getIntValue(), m_retryMaxDelayModel.getIntValue(),
+                pause > 0 ? new CircuitBreaker(pause) : null));
+        }
+        // Preloaded lookups and updates never query the database per tuple
+        executor.setPrefilter(m_prefilterModel.getBooleanValue() && !isUpdateStatement(newQuery)
+            && LoopingMode.get(m_loopingModeModel.getStringValue()) != LoopingMode.PRELOADED_LOOKUP);
+        executor.setLocalityReordering(m_reorderInputModel.getBooleanValue());
+        if (m_incrementalModel.getBooleanValue()) {
+            executor.setIncrementalStore(openIncrementalStore(conn, newQuery), getIncrementalKeyColumn(inSpec));
+        }
+        return executor;
+    }
+
+    /**
+     * Sets the warning message and pushes the statistics of the finished executor as flow variables
+     */
+    private void finishExecution(final AbstractLoopingExecutor executor) {
+        if (executor.getWarningMessage() != null) {
+            setWarningMessage(executor.getWarningMessage());
+        }
+
+        LOGGER.debug("Statement cache hits: " + executor.getStatementCacheHits() + ", misses: "
+            + executor.getStatementCacheMisses());
+        pushFlowVariableInt(FLOW_VARIABLE_STATEMENT_CACHE_HITS, toInt(executor.getStatementCacheHits()));
+        pushFlowVariableInt(FLOW_VARIABLE_STATEMENT_CACHE_MISSES, toInt(executor.getStatementCacheMisses()));
+        final ResultMemo memo = executor.getResultMemo();
+        if (memo != null) {
+            LOGGER.debug("Result memo hits: " + memo.getHits() + ", misses: " + memo.getMisses());
+            pushFlowVariableInt(FLOW_VARIABLE_RESULT_MEMO_HITS, toInt(memo.getHits()));
+            pushFlowVariableInt(FLOW_VARIABLE_RESULT_MEMO_MISSES, toInt(memo.getMisses()));
+        }
+        final PersistentResultCache cache = executor.getResultCache();
+        if (cache != null) {
+            LOGGER.debug("Result cache hits: " + cache.getHits() + ", misses: " + cache.getMisses());
+            pushFlowVariableInt(FLOW_VARIABLE_RESULT_CACHE_HITS, toInt(cache.getHits()));
+            pushFlowVariableInt(FLOW_VARIABLE_RESULT_CACHE_MISSES, toInt(cache.getMisses()));
+        }
+        final AdaptiveBatchSizer batchSizer = executor.getBatchSizer();
+        if (batchSizer != null) {
+            LOGGER.debug("Adapted batch size: " + batchSizer.getBatchSize() + ", mean: "
+                + batchSizer.getMeanBatchSize() + ", rows/s: " + batchSizer.getRowsPerSecond());
+            // The size the controller converged to is the recommended fixed batch size
+            pushFlowVariableInt(FLOW_VARIABLE_BATCH_SIZE, batchSizer.getBatchSize());
+            pushFlowVariableInt(FLOW_VARIABLE_BATCH_SIZE_MIN, batchSizer.getMinUsedBatchSize());
+            pushFlowVariableInt(FLOW_VARIABLE_BATCH_SIZE_MAX, batchSizer.getMaxUsedBatchSize());
+            pushFlowVariableDouble(FLOW_VARIABLE_BATCH_SIZE_MEAN, batchSizer.getMeanBatchSize());
+            pushFlowVariableDouble(FLOW_VARIABLE_BATCH_ROWS_PER_SECOND, batchSizer.getRowsPerSecond());
+        }
+        if (executor instanceof ParallelLoopingExecutor
+            && ((ParallelLoopingExecutor)executor).getConcurrencyLimiter() != null) {
+            final AdaptiveConcurrencyLimiter limiter = ((ParallelLoopingExecutor)executor).getConcurrencyLimiter();
+            LOGGER.debug("Concurrency limit: " + limiter.getLimit() + " (" + limiter.getLowestLimit() + " - "
+                + limiter.getHighestLimit() + "), p95 latency: " + limiter.getLatencyP95Millis() + " ms");
+            pushFlowVariableInt(FLOW_VARIABLE_CONCURRENCY_LIMIT, limiter.getLimit());
+            pushFlowVariableInt(FLOW_VARIABLE_CONCURRENCY_LIMIT_MIN, limiter.getLowestLimit());
+            pushFlowVariableInt(FLOW_VARIABLE_CONCURRENCY_LIMIT_MAX, limiter.getHighestLimit());
+            pushFlowVariableDouble(FLOW_VARIABLE_LATENCY_P95, limiter.getLatencyP95Millis());
+        }
+        final LoopingStatistics statistics = executor.getStatistics();
+        if (statistics != null) {
+            LOGGER.debug("Processed " + statistics.getInputRows() + " rows with " + statistics.getRowsPerSecond()
+                + " rows/s");
+            pushStatistics(statistics);
+        }
+        if (m_useTransactionsModel.getBooleanValue()) {
+            LOGGER.debug("Transaction commits: " + executor.getTransactionCommits());
+            pushFlowVariableInt(FLOW_VARIABLE_TRANSACTION_COMMITS, toInt(executor.getTransactionCommits()));
+        }
+        if (m_queryTimeoutModel.getIntValue() > 0) {
+            LOGGER.debug("Query timeouts: " + executor.getQueryTimeouts());
+            pushFlowVariableInt(FLOW_VARIABLE_QUERY_TIMEOUTS, toInt(executor.getQueryTimeouts()));
+        }
+        final RetryPolicy retryPolicy = executor.getRetryPolicy();
+        if (retryPolicy != null) {
+            LOGGER.debug("Retries: " + retryPolicy.getRetries());
+            pushFlowVariableInt(FLOW_VARIABLE_RETRIES, toInt(retryPolicy.getRetries()));
+            if (retryPolicy.getCircuitBreaker() != null) {
+                pushFlowVariableInt(FLOW_VARIABLE_CIRCUIT_BREAKER_OPENINGS,
+                    toInt(retryPolicy.getCircuitBreaker().getOpenings()));
+            }
+        }
+        if (executor instanceof BatchedLoopingExecutor && m_mergeRangesModel.getBooleanValue()) {
+            final BatchedLoopingExecutor batchedExecutor = (BatchedLoopingExecutor)executor;
+            LOGGER.debug("Range queries: " + batchedExecutor.getRangeQueries() + " covering "
+                + batchedExecutor.getRangeValues() + " values");
+            pushFlowVariableInt(FLOW_VARIABLE_RANGE_QUERIES, toInt(batchedExecutor.getRangeQueries()));
+            pushFlowVariableInt(FLOW_VARIABLE_RANGE_VALUES, toInt(batchedExecutor.getRangeValues()));
+        }
+        if (executor.isPrefiltered()) {
+            LOGGER.debug("Queries skipped by the prefilter: " + executor.getPrefilteredQueries());
+            pushFlowVariableInt(FLOW_VARIABLE_PREFILTERED_QUERIES, toInt(executor.getPrefilteredQueries()));
+        }
+        if (executor instanceof PreloadedLookupExecutor) {
+            final long preloadedRows = ((PreloadedLookupExecutor)executor).getPreloadedRows();
+            LOGGER.debug("Preloaded lookup rows: " + preloadedRows);
+            pushFlowVariableInt(FLOW_VARIABLE_PRELOADED_ROWS, toInt(preloadedRows));
+        }
+        final IncrementalResultStore incremental = executor.getIncrementalStore();
+        if (incremental != null) {
+            LOGGER.debug("Incremental rows retained: " + incremental.getRetainedRows() + ", looped: "
+                + incremental.getLoopedRows());
+            pushFlowVariableInt(FLOW_VARIABLE_INCREMENTAL_RETAINED_ROWS, toInt(incremental.getRetainedRows()));
+            pushFlowVariableInt(FLOW_VARIABLE_INCREMENTAL_LOOPED_ROWS, toInt(incremental.getLoopedRows()));
+        }
+    }
+
+    /**
+     * Pushes the summary of the iteration statistics as flow variables, i.e. the throughput and for every phase the
+     * number of measurements and rows as well as the total, mean, median, 95th and 99th percentile and maximum latency
+     */
+    private void pushStatistics(final LoopingStatistics statistics) {
+        pushFlowVariableDouble(FLOW_VARIABLE_ROWS_PER_SECOND, statistics.getRowsPerSecond());
+        pushFlowVariableDouble(FLOW_VARIABLE_RESULT_ROWS_PER_SECOND, statistics.getResultRowsPerSecond());
+        for (final Phase phase : Phase.values()) {
+            final LatencyHistogram histogram = statistics.getHistogram(phase);
+            final String prefix = phase.name().toLowerCase(Locale.ENGLISH);
+            pushFlowVariableInt(prefix + "Count", toInt(histogram.getCount()));
+            pushFlowVariableInt(prefix + "Rows", toInt(statistics.getRows(phase)));
+            pushFlowVariableDouble(prefix + "TotalMillis", LoopingStatistics.toMillis(histogram.getTotal()));
+            pushFlowVariableDouble(prefix + "MeanMillis", LoopingStatistics.toMillis(histogram.getMean()));
+            pushFlowVariableDouble(prefix + "MedianMillis", LoopingStatistics.toMillis(histogram.getPercentile(50)));
+            pushFlowVariableDouble(prefix + "P95Millis", LoopingStatistics.toMillis(histogram.getPercentile(95)));
+            pushFlowVariableDouble(prefix + "P99Millis", LoopingStatistics.toMillis(histogram.getPercentile(99)));
+            pushFlowVariableDouble(prefix + "MaxMillis", LoopingStatistics.toMillis(histogram.getMax()));
+        }
+    }
+
+    private PersistentResultCache openResultCache(final DatabaseQueryConnectionSettings conn, final String query)
+        throws Exception {
+        final String dir = m_persistentCacheDirModel.getStringValue();
+        final File root = StringUtils.isBlank(dir) ? null : new File(dir.trim());
+
+        final String connectionId = DBLoopingUtil.getConnectionId(conn, getCredentialsProvider());
+        return new PersistentResultCache(root, connectionId, m_sqlStatement, query,
+            m_persistentCacheTTLModel.getIntValue() * 60L * 60L * 1000L,
+            m_persistentCacheSizeModel.getIntValue() * 1024L * 1024L);
+    }
+
+    /**
+     * Opens the checkpoint of the given input table. The checkpoint is identified by the connection, the SQL
+     * statement, the settings of this node and the content of the input table, so that only an execution with
+     * unchanged settings and input resumes it.
+     */
+    private LoopingCheckpoint openCheckpoint(final DatabasePortObject dbObject, final BufferedDataTable inTable,
+        final ExecutionContext exec) throws Exception {
+        final DatabaseQueryConnectionSettings conn = dbObject.getConnectionSettings(getCredentialsProvider());
+        final NodeSettings settings = new NodeSettings("checkpoint");
+        saveSettingsTo(settings);
+        final ByteArrayOutputStream settingsXML = new ByteArrayOutputStream();
+        settings.saveToXML(settingsXML);
+        exec.setMessage("Computing fingerprint of the input table");
+        final String key = DBLoopingUtil.getConnectionId(conn, getCredentialsProvider()) + "\n"
+            + conn.getQuery() + "\n" + settingsXML.toString("UTF-8") + "\n"
+            + Arrays.toString(inTable.getDataTableSpec().getColumnNames()) + "\n"
+            + LoopingCheckpoint.fingerprint(inTable, exec);
+        final String dir = m_checkpointDirModel.getStringValue();
+        return new LoopingCheckpoint(StringUtils.isBlank(dir) ? null : new File(dir.trim()), key,
+            m_checkpointIntervalModel.getIntValue());
+    }
+
+    /**
+     * Opens the store with the results of the previous incremental execution. The store is identified by the
+     * connection, the SQL statement and the key column, since the retained results only depend on these and the
+     * parameter values of a row, which are compared row by row.
+     */
+    private IncrementalResultStore openIncrementalStore(final DatabaseQueryConnectionSettings conn,
+        final String query) throws Exception {
+        final String key = DBLoopingUtil.getConnectionId(conn, getCredentialsProvider()) + "\n" + query
+            + "\n" + m_incrementalKeyColumnModel.getStringValue();
+        final String dir = m_incrementalDirModel.getStringValue();
+        return new IncrementalResultStore(StringUtils.isBlank(dir) ? null : new File(dir.trim()), key);
+    }
+
+    /**
+     * Returns the index of the column that identifies the rows in incremental mode or -1 if the row ID is used
+     */
+    private int getIncrementalKeyColumn(final DataTableSpec inSpec) throws InvalidSettingsException {
+        final String column = m_incrementalKeyColumnModel.getStringValue();
+        if (StringUtils.isBlank(column)) {
+            return -1;
+        }
+        final int idx = inSpec.findColumnIndex(column.trim());
+        if (idx < 0) {
+            throw new InvalidSettingsException("Key column " + column.trim() + " doesn't exist in the input table.");
+        }
+        return idx;
+    }
+
+    /**
+     * Infers the output spec from the result columns of the SQL statement without executing it
+     *
+     * @return the output spec or <code>null</code> if the result columns cannot be inferred
+     */
+    private DataTableSpec inferOutputSpec(final DataTableSpec inSpec, final DatabasePortObjectSpec dbSpec,
+        final LoopingRowAssembler assembler) {
+        try {
+            final DatabaseQueryConnectionSettings conn = dbSpec.getConnectionSettings(getCredentialsProvider());
+            final String newQuery = parseSQLStatement(inSpec, conn.getQuery());
+            final DataTableSpec resultSpec;
+            if (isUpdateStatement(newQuery)) {
+                resultSpec = BatchedUpdateExecutor.createResultSpec();
+            } else {
+                resultSpec = ResultSpecCache.getInstance().getResultSpec(createDBQueryConnection(dbSpec, newQuery),
+                    getCredentialsProvider(), newQuery, assembler.getParameterTypes());
+            }
+            return resultSpec == null ? null : assembler.createOutputSpec(resultSpec);
+        } catch (InvalidSettingsException ex) {
+            LOGGER.debug("Could not infer output spec: " + ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the statement is executed as batched update, either because the looping mode is
+     * set explicitly or because the statement is detected as data manipulation statement
+     */
+    private boolean isUpdateStatement(final String query) {
+        return LoopingMode.get(m_loopingModeModel.getStringValue()) == LoopingMode.BATCHED_UPDATE
+            || DBLoopingUtil.isUpdateStatement(query);
+    }
 
-        return new BufferedDataTable[]{outTable, errorTable};
+    private LoopingOptions createLoopingOptions() {
+        return new LoopingOptions(m_appendInputColumnsModel.getBooleanValue(),
+            m_includeEmptyResultsModel.getBooleanValue(), m_retainAllColumnsModel.getBooleanValue(),
+            m_failIfExceptionModel.getBooleanValue());
+    }
+
+    private static int toInt(final long value) {
+        return (int)Math.min(value, Integer.MAX_VALUE);
+    }
+
+    private AbstractLoopingExecutor createExecutor(final DatabaseQueryConnectionSettings conn, final String query,
+        final DataTableSpec inSpec) throws InvalidSettingsException {
+        final LoopingOptions options = createLoopingOptions();
+        final List<String> columnList = getTemplate().getColumns();
+        final String[] columns = columnList.toArray(new String[columnList.size()]);
+        final LoopingMode mode = LoopingMode.get(m_loopingModeModel.getStringValue());
+        if (isUpdateStatement(query)) {
+            return new BatchedUpdateExecutor(conn, getCredentialsProvider(), query, inSpec, columns, options,
+                m_batchSizeModel.getIntValue());
+        }
+        switch (mode) {
+            case BATCHED_IN_LIST:
+            case BATCHED_UNION:
+                final BatchedLoopingExecutor batchedExecutor = new BatchedLoopingExecutor(conn,
+                    getCredentialsProvider(), query, inSpec, columns, options, m_batchSizeModel.getIntValue(),
+                    mode == LoopingMode.BATCHED_IN_LIST);
+                batchedExecutor.setMergeRanges(mode == LoopingMode.BATCHED_IN_LIST
+                    && m_mergeRangesModel.getBooleanValue());
+                return batchedExecutor;
+            case PIPELINED:
+                return new PipelinedLoopingExecutor(conn, getCredentialsProvider(), query, inSpec, columns, options,
+                    m_pipelineDepthModel.getIntValue());
+            case PRELOADED_LOOKUP:
+                return new PreloadedLookupExecutor(conn, getCredentialsProvider(), query, inSpec, columns, options,
+                    m_preloadMaxRowsModel.getIntValue());
+            case STAGING_TABLE:
+                return new StagingTableLoopingExecutor(conn, getCredentialsProvider(), query, inSpec, columns, options,
+                    m_batchSizeModel.getIntValue());
+            default:
+                if (m_parallelismModel.getIntValue() > 1) {
+                    final ParallelLoopingExecutor executor = new ParallelLoopingExecutor(conn,
+                        getCredentialsProvider(), query, inSpec, columns, options, m_parallelismModel.getIntValue(),
+                        m_keepOrderModel.getBooleanValue());
+                    if (m_adaptiveParallelismModel.getBooleanValue()) {
+                        executor.setAdaptiveConcurrency(m_minParallelismModel.getIntValue());
+                    }
+                    return executor;
+                }
+                return new RowByRowLoopingExecutor(conn, getCredentialsProvider(), query, inSpec, columns, options);
+        }
     }
 
     /**
@@ -121,7 +901,16 @@ public class DBLoopingNodeModel extends DBNodeModel implements FlowVariableProvi
      */
     @Override
     protected void reset() {
-        // TODO: generated method stub
+        m_monitor = null;
+    }
+
+    /**
+     * Returns the live counters of the current or last execution
+     *
+     * @return the monitor of the execution or <code>null</code> if the node has not been executed
+     */
+    LoopingMonitor getMonitor() {
+        return m_monitor;
     }
 
     /**
@@ -139,9 +928,23 @@ public class DBLoopingNodeModel extends DBNodeModel implements FlowVariableProvi
             throw new InvalidSettingsException("No valid database connection available.");
         }
 
-        parseDataColumns(inSpec, m_sqlStatement);
+        final List<String> columns = getTemplate().getColumns();
+        getTemplate().validateColumns(inSpec);
+        if (m_incrementalModel.getBooleanValue()) {
+            getIncrementalKeyColumn(inSpec);
+        }
+
+        final DatabasePortObjectSpec dbSpec = (DatabasePortObjectSpec)inSpecs[1];
+        if (isCoreLooping(parseSQLStatement(inSpec, dbSpec.getConnectionSettings(getCredentialsProvider())
+            .getQuery()))) {
+            // the database looper determines the result columns while looping
+            return new DataTableSpec[]{null, null};
+        }
 
-        return new DataTableSpec[]{null};
+        final LoopingRowAssembler assembler = new LoopingRowAssembler(inSpec,
+            columns.toArray(new String[columns.size()]), createLoopingOptions());
+        final DataTableSpec outSpec = inferOutputSpec(inSpec, dbSpec, assembler);
+        return new DataTableSpec[]{outSpec, assembler.getErrorSpec()};
 
     }
 
@@ -154,6 +957,9 @@ public class DBLoopingNodeModel extends DBNodeModel implements FlowVariableProvi
         m_includeEmptyResultsModel.saveSettingsTo(settings);
         m_retainAllColumnsModel.saveSettingsTo(settings);
         m_failIfExceptionModel.saveSettingsTo(settings);
+        for (final SettingsModel model : getAddedSettingsModels()) {
+            model.saveSettingsTo(settings);
+        }
         settings.addString(CFG_SQL_STATEMENT, m_sqlStatement);
     }
 
@@ -166,7 +972,13 @@ public class DBLoopingNodeModel extends DBNodeModel implements FlowVariableProvi
         m_includeEmptyResultsModel.loadSettingsFrom(settings);
         m_retainAllColumnsModel.loadSettingsFrom(settings);
         m_failIfExceptionModel.loadSettingsFrom(settings);
+        for (final SettingsModel model : getAddedSettingsModels()) {
+            if (containsSettings(settings, model)) {
+                model.loadSettingsFrom(settings);
+            }
+        }
         m_sqlStatement = settings.getString(CFG_SQL_STATEMENT);
+        m_template = SQLTemplate.compile(m_sqlStatement);
     }
 
     /**
@@ -178,9 +990,46 @@ public class DBLoopingNodeModel extends DBNodeModel implements FlowVariableProvi
         m_includeEmptyResultsModel.validateSettings(settings);
         m_retainAllColumnsModel.validateSettings(settings);
         m_failIfExceptionModel.validateSettings(settings);
+        for (final SettingsModel model : getAddedSettingsModels()) {
+            if (containsSettings(settings, model)) {
+                model.validateSettings(settings);
+            }
+        }
         if(StringUtils.isBlank(settings.getString(CFG_SQL_STATEMENT))){
             throw new InvalidSettingsException("SQL Statement cannot be empty.");
         }
+        SQLTemplate.compile(settings.getString(CFG_SQL_STATEMENT));
+    }
+
+    /**
+     * Returns the settings that were added to the node after its first version. Workflows that have been saved
+     * before do not contain them, so they are only loaded and validated if present and keep their defaults otherwise.
+     */
+    private SettingsModel[] getAddedSettingsModels() {
+        return new SettingsModel[]{
+            m_loopingModeModel, m_batchSizeModel, m_parallelismModel, m_keepOrderModel, m_cacheStatementsModel,
+            m_memoizeResultsModel, m_memoMemoryModel, m_persistentCacheModel, m_persistentCacheDirModel,
+            m_persistentCacheTTLModel, m_persistentCacheSizeModel, m_pipelineDepthModel, m_useTransactionsModel,
+            m_commitRowsModel, m_commitMillisModel, m_adaptiveBatchSizeModel, m_maxBatchSizeModel, m_batchLatencyModel,
+            m_adaptiveParallelismModel, m_minParallelismModel, m_collectStatisticsModel, m_queryTimeoutModel,
+            m_retryModel, m_retryAttemptsModel, m_retryDelayModel, m_retryMaxDelayModel, m_circuitBreakerPauseModel,
+            m_checkpointModel, m_checkpointIntervalModel, m_checkpointDirModel, m_incrementalModel,
+            m_incrementalKeyColumnModel, m_incrementalDirModel, m_reorderInputModel, m_mergeRangesModel,
+            m_preloadMaxRowsModel, m_prefilterModel};
+    }
+
+    /**
+     * Returns <code>true</code> if the given settings contain all entries that the given model saves
+     */
+    private static boolean containsSettings(final NodeSettingsRO settings, final SettingsModel model) {
+        final NodeSettings entries = new NodeSettings("entries");
+        model.saveSettingsTo(entries);
+        for (final String key : entries.keySet()) {
+            if (!settings.containsKey(key)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -201,67 +1050,19 @@ public class DBLoopingNodeModel extends DBNodeModel implements FlowVariableProvi
      */
     private String parseSQLStatement(final DataTableSpec inSpec,
             final String query) throws InvalidSettingsException {
-
-        // Replace the "#table#" placeholder with the input query
-        String resultQuery =
-            m_sqlStatement.replaceAll(DatabaseQueryConnectionSettings.TABLE_PLACEHOLDER, "(" + query + ")");
-
-        // Replace the flowVariable placeholder with the actual value
-        resultQuery = FlowVariableResolver.parse(resultQuery, this);
-
-        // Parse the data column and replace with "?"
-        resultQuery = parseDataColumns(inSpec, resultQuery);
-
-        return resultQuery;
-
+        final SQLTemplate template = getTemplate();
+        template.validateColumns(inSpec);
+        return template.render(query, this);
     }
 
-    private String parseDataColumns(final DataTableSpec inSpec, final String query) {
-        m_dataColumns.clear();
-        String command = new String(query);
-        int currentIdx = 0;
-        do {
-            currentIdx = command.indexOf("$", currentIdx);
-            if(currentIdx < 0) {
-                break;
-            }
-
-            // Not a special character
-            if(currentIdx > 0 && command.charAt(currentIdx - 1) == '\\') {
-                currentIdx++;
-                continue;
-            }
-
-            int endIdx = command.indexOf("$", currentIdx + 1);
-            if(endIdx < 0) {
-                final String badVarName = command.substring(currentIdx + 1);
-                throw new IllegalArgumentException("Variable identifier \"" + badVarName + "\" is not closed");
-            }
-
-            // Find the endIdx
-            while(command.charAt(endIdx - 1) == '\\') {
-                endIdx = command.indexOf("$", endIdx + 1);
-                if(endIdx < 0) {
-                    final String badVarName = command.substring(currentIdx + 1);
-                    throw new IllegalArgumentException("Variable identifier \"" + badVarName + "\" is not closed");
-                }
-            }
-
-            String col = command.substring(currentIdx + 1, endIdx);
-            col = col.replace("\\$", "$");
-            if (inSpec.containsName(col)){
-                m_dataColumns.add(col);
-            } else {
-                throw new IllegalArgumentException("Column " + col
-                    + " doesn't exist in the input table.");
-            }
-
-            final String var = command.substring(currentIdx, endIdx + 1);
-            command = command.replace(var, "?");
-
-        } while(true);
-
-        return command;
+    /**
+     * Returns the compiled SQL statement, which is compiled once whenever the settings are loaded
+     */
+    private SQLTemplate getTemplate() throws InvalidSettingsException {
+        if (m_template == null) {
+            m_template = SQLTemplate.compile(m_sqlStatement);
+        }
+        return m_template;
     }
 
 //    private String parseDataColumns(final DataTableSpec inSpec, final String query) throws InvalidSettingsException {
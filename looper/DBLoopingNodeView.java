@@ -1,23 +1,136 @@
 package org.knime.base.node.io.database.looper;
 
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.text.NumberFormat;
+
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+import org.knime.base.node.io.database.looper.util.LatencyHistogram;
+import org.knime.base.node.io.database.looper.util.LoopingMonitor;
 import org.knime.core.node.NodeView;
 
 /**
- * <code>NodeView</code> for the "DBLooper" Node.
- * 
+ * <code>NodeView</code> for the "DBLooper" Node. Shows the live throughput, latency and error counters of the running
+ * execution. The view polls the counters of the {@link LoopingMonitor} in a fixed interval while it is open, so the
+ * executing node never waits for the view.
  *
  * @author Budi Yanto, KNIME.com
  */
 public class DBLoopingNodeView extends NodeView<DBLoopingNodeModel> {
 
+    /** Interval in milliseconds in which the counters are polled */
+    private static final int REFRESH_INTERVAL = 500;
+
+    private static final String NOT_AVAILABLE = "-";
+
+    private final NumberFormat m_format = NumberFormat.getNumberInstance();
+
+    private final Timer m_timer = new Timer(REFRESH_INTERVAL, e -> refresh());
+
+    private final JLabel m_rows = new JLabel(NOT_AVAILABLE);
+
+    private final JLabel m_inFlight = new JLabel(NOT_AVAILABLE);
+
+    private final JLabel m_currentRate = new JLabel(NOT_AVAILABLE);
+
+    private final JLabel m_averageRate = new JLabel(NOT_AVAILABLE);
+
+    private final JLabel m_latency = new JLabel(NOT_AVAILABLE);
+
+    private final JLabel m_maxLatency = new JLabel(NOT_AVAILABLE);
+
+    private final JLabel m_cacheHitRate = new JLabel(NOT_AVAILABLE);
+
+    private final JLabel m_errors = new JLabel(NOT_AVAILABLE);
+
+    private final JLabel m_elapsed = new JLabel(NOT_AVAILABLE);
+
+    private LoopingMonitor m_monitor;
+
+    private long m_lastRows;
+
+    private long m_lastMillis;
+
     /**
      * Creates a new view.
-     * 
+     *
      * @param nodeModel The model (class: {@link DBLoopingNodeModel})
      */
     protected DBLoopingNodeView(final DBLoopingNodeModel nodeModel) {
         super(nodeModel);
-        // TODO: generated method stub
+        m_format.setMaximumFractionDigits(1);
+        final JPanel grid = new JPanel(new GridLayout(0, 2, 10, 4));
+        addRow(grid, "Rows processed:", m_rows);
+        addRow(grid, "Queries in flight:", m_inFlight);
+        addRow(grid, "Current rows/s:", m_currentRate);
+        addRow(grid, "Average rows/s:", m_averageRate);
+        addRow(grid, "Latency p50 / p95 / p99 (ms):", m_latency);
+        addRow(grid, "Maximum latency (ms):", m_maxLatency);
+        addRow(grid, "Cache hit rate:", m_cacheHitRate);
+        addRow(grid, "Errors:", m_errors);
+        addRow(grid, "Elapsed time (s):", m_elapsed);
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        panel.add(grid, BorderLayout.NORTH);
+        setComponent(panel);
+    }
+
+    private static void addRow(final JPanel grid, final String label, final JLabel value) {
+        grid.add(new JLabel(label));
+        grid.add(value);
+    }
+
+    /**
+     * Reads the counters of the current execution and updates the labels
+     */
+    private void refresh() {
+        final LoopingMonitor monitor = getNodeModel().getMonitor();
+        if (monitor != m_monitor) {
+            m_monitor = monitor;
+            m_lastRows = 0;
+            m_lastMillis = 0;
+        }
+        if (monitor == null) {
+            for (final JLabel label : new JLabel[]{m_rows, m_inFlight, m_currentRate, m_averageRate, m_latency,
+                m_maxLatency, m_cacheHitRate, m_errors, m_elapsed}) {
+                label.setText(NOT_AVAILABLE);
+            }
+            return;
+        }
+
+        final long rows = monitor.getRows();
+        final long millis = monitor.getElapsedMillis();
+        m_rows.setText(m_format.format(rows));
+        m_inFlight.setText(m_format.format(monitor.getQueriesInFlight()));
+        if (monitor.isFinished()) {
+            m_currentRate.setText(NOT_AVAILABLE);
+        } else if (millis > m_lastMillis) {
+            m_currentRate.setText(m_format.format((rows - m_lastRows) * 1000.0 / (millis - m_lastMillis)));
+        }
+        m_averageRate.setText(millis == 0 ? NOT_AVAILABLE : m_format.format(rows * 1000.0 / millis));
+        final LatencyHistogram latencies = monitor.getLatencies();
+        if (latencies.getCount() == 0) {
+            m_latency.setText(NOT_AVAILABLE);
+            m_maxLatency.setText(NOT_AVAILABLE);
+        } else {
+            m_latency.setText(toMillis(latencies.getPercentile(50)) + " / " + toMillis(latencies.getPercentile(95))
+                + " / " + toMillis(latencies.getPercentile(99)));
+            m_maxLatency.setText(toMillis(latencies.getMax()));
+        }
+        final double hitRate = monitor.getCacheHitRate();
+        m_cacheHitRate.setText(hitRate < 0 ? NOT_AVAILABLE : m_format.format(hitRate * 100) + " %");
+        m_errors.setText(m_format.format(monitor.getErrors()));
+        m_elapsed.setText(m_format.format(millis / 1000.0));
+        m_lastRows = rows;
+        m_lastMillis = millis;
+    }
+
+    private String toMillis(final long nanos) {
+        return m_format.format(nanos / 1e6);
     }
 
     /**
@@ -25,7 +138,7 @@ public class DBLoopingNodeView extends NodeView<DBLoopingNodeModel> {
      */
     @Override
     protected void modelChanged() {
-        // TODO: generated method stub
+        refresh();
     }
 
     /**
@@ -33,7 +146,7 @@ public class DBLoopingNodeView extends NodeView<DBLoopingNodeModel> {
      */
     @Override
     protected void onClose() {
-        // TODO: generated method stub
+        m_timer.stop();
     }
 
     /**
@@ -41,8 +154,8 @@ public class DBLoopingNodeView extends NodeView<DBLoopingNodeModel> {
      */
     @Override
     protected void onOpen() {
-        // TODO: generated method stub
+        refresh();
+        m_timer.start();
     }
 
 }
-
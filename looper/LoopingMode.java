@@ -0,0 +1,107 @@
+package org.knime.base.node.io.database.looper;
+
+import org.knime.core.node.util.ButtonGroupEnumInterface;
+
+/**
+ * The different ways the Database Looper can send the parameter tuples of the input table to the database.
+ */
+enum LoopingMode implements ButtonGroupEnumInterface {
+
+    /** One query per input row */
+    ROW_BY_ROW("Row by row", "Executes the SQL statement once for every input row"),
+
+    /** One query per input row, the queries are sent while the previous results are converted */
+    PIPELINED("Pipelined", "Executes the SQL statement once for every input row on a background thread while the "
+        + "results of the previous rows are converted"),
+
+    /** One query per chunk, the single placeholder is rewritten into an IN list */
+    BATCHED_IN_LIST("Batched (IN list)",
+        "Rewrites \"column = $placeholder$\" into an IN list and executes one query per chunk of input rows. "
+            + "The database tags every result row with the value it matches. Requires a SELECT statement with a "
+            + "WHERE clause of AND-combined predicates without row limit, grouping or aggregates"),
+
+    /** One query per chunk, the statement is repeated for every row and combined with UNION ALL */
+    BATCHED_UNION("Batched (UNION ALL)",
+        "Combines the SQL statement of every row of a chunk with UNION ALL and executes one query per chunk"),
+
+    /** The distinct tuples are loaded into a temporary table which is joined with the statement in one query */
+    STAGING_TABLE("Staging table join",
+        "Loads the distinct values into a temporary table and joins the SQL statement against it in a single query. "
+        + "The order of the result rows of one value is not guaranteed if the statement uses ORDER BY"),
+
+    /** The statement is executed once without placeholders and the input rows are looked up in memory */
+    PRELOADED_LOOKUP("Preloaded lookup", "Loads the results of a key lookup against a small table once and answers "
+        + "all input rows from an in-memory index, falls back to row by row for large tables. Requires a WHERE "
+        + "clause of AND-combined \"column = $placeholder$\" predicates without row limit, grouping or aggregates "
+        + "and integer key and parameter columns, since other values might be compared by the database collation"),
+
+    /** Data manipulation statements sent with JDBC batches, chosen automatically for INSERT, UPDATE, DELETE, ... */
+    BATCHED_UPDATE("Batched update (DML)", "Sends the data manipulation statement of a chunk of input rows as one "
+        + "JDBC batch and outputs the update count of every row");
+
+    private final String m_text;
+
+    private final String m_toolTip;
+
+    private LoopingMode(final String text, final String toolTip) {
+        m_text = text;
+        m_toolTip = toolTip;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getText() {
+        return m_text;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getActionCommand() {
+        return name();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getToolTip() {
+        return m_toolTip;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDefault() {
+        return this == getDefault();
+    }
+
+    /**
+     * Returns the default looping mode
+     *
+     * @return the default looping mode
+     */
+    static LoopingMode getDefault() {
+        return ROW_BY_ROW;
+    }
+
+    /**
+     * Returns the looping mode with the given action command or the default mode if the action command is unknown
+     *
+     * @param actionCommand the action command to look up
+     * @return the looping mode with the given action command
+     */
+    static LoopingMode get(final String actionCommand) {
+        for (final LoopingMode mode : values()) {
+            if (mode.getActionCommand().equals(actionCommand)) {
+                return mode;
+            }
+        }
+        return getDefault();
+    }
+
+}
@@ -0,0 +1,1297 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.knime.base.node.io.database.looper.util.LoopingStatistics.Phase;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.blob.BinaryObjectCellFactory;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * Base class of the executors that run the looped SQL statement for the rows of the input table. Sub classes decide
+ * how the parameter tuples are sent to the database, this class takes care of the connection and the result
+ * conversion and coordinates the parts of an execution: the outputs ({@link LoopingOutput}), the known results
+ * ({@link ResultLookup}), retries ({@link LoopingRetrier}), checkpoints ({@link CheckpointTracker}), the incremental
+ * mode ({@link IncrementalLooping}) and the traces of the queries ({@link QueryTrace}).
+ */
+public abstract class AbstractLoopingExecutor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(AbstractLoopingExecutor.class);
+
+    /** SQL states that drivers report for a statement that has been stopped by its query timeout */
+    private static final Set<String> TIMEOUT_STATES = new HashSet<String>(Arrays.asList("HYT00", "HYT01", "57014"));
+
+    private final DatabaseQueryConnectionSettings m_connSettings;
+
+    private final CredentialsProvider m_cp;
+
+    private final String m_query;
+
+    private final LoopingOptions m_options;
+
+    private final LoopingRowAssembler m_assembler;
+
+    private ExecutionContext m_exec;
+
+    private volatile ResultSetConverter m_converter;
+
+    private boolean m_fixedResultSpec = false;
+
+    private String m_warningMessage;
+
+    private boolean m_cacheStatements = false;
+
+    private final AtomicLong m_statementCacheHits = new AtomicLong();
+
+    private final AtomicLong m_statementCacheMisses = new AtomicLong();
+
+    private boolean m_useTransactions = false;
+
+    private int m_commitRows;
+
+    private long m_commitMillis;
+
+    private long m_transactionCommits = 0;
+
+    private AdaptiveBatchSizer m_batchSizer;
+
+    private LoopingStatistics m_statistics;
+
+    private final LoopingMonitor m_monitor = new LoopingMonitor();
+
+    private final long m_queryShapeHash;
+
+    private int m_queryTimeout = 0;
+
+    private final AtomicLong m_timeouts = new AtomicLong();
+
+    private StatementCanceller m_canceller;
+
+    private TransactionGroup m_transaction;
+
+    private LoopingRetrier m_retrier;
+
+    private final CheckpointTracker m_checkpoints = new CheckpointTracker();
+
+    private final LoopingOutput m_out;
+
+    private final ResultLookup m_lookup;
+
+    private IncrementalLooping m_incremental;
+
+    private boolean m_usePrefilter = false;
+
+    /**
+     * Creates a new instance of AbstractLoopingExecutor
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param query the SQL statement with a "?" for every placeholder
+     * @param inSpec the spec of the input table
+     * @param paramColumns the names of the input columns in the order of the placeholders
+     * @param options the looping options
+     */
+    protected AbstractLoopingExecutor(final DatabaseQueryConnectionSettings connSettings,
+        final CredentialsProvider cp, final String query, final DataTableSpec inSpec, final String[] paramColumns,
+        final LoopingOptions options) {
+        m_connSettings = connSettings;
+        m_cp = cp;
+        m_query = query;
+        m_options = options;
+        m_assembler = new LoopingRowAssembler(inSpec, paramColumns, options);
+        m_queryShapeHash = FlightRecorderUtil.getShapeHash(query);
+        m_out = new LoopingOutput(m_assembler, m_checkpoints);
+        m_lookup = new ResultLookup(m_monitor);
+    }
+
+    /**
+     * Executes the SQL statement for all rows of the given input and writes the results to new tables, see
+     * {@link #getOutputTable()} and {@link #getErrorTable()}
+     *
+     * @param input the input rows
+     * @param rowCount the number of input rows or -1 if unknown
+     * @param exec the execution context
+     * @throws Exception if the execution fails or is canceled
+     */
+    public void execute(final RowInput input, final long rowCount, final ExecutionContext exec) throws Exception {
+        execute(input, rowCount, exec, null, m_out.createErrorTable(exec));
+    }
+
+    /**
+     * Executes the SQL statement for all rows of the given input and pushes the results to the given outputs, which
+     * are closed at the end
+     *
+     * @param input the input rows
+     * @param rowCount the number of input rows or -1 if unknown
+     * @param exec the execution context
+     * @param output the output for the result rows or <code>null</code> if a new table should be created once the
+     *            result columns are known
+     * @param errorOutput the output for the rows that caused an error
+     * @throws Exception if the execution fails or is canceled
+     */
+    public void execute(final RowInput input, final long rowCount, final ExecutionContext exec,
+        final RowOutput output, final RowOutput errorOutput) throws Exception {
+        m_exec = exec;
+        m_out.open(exec, output, errorOutput);
+        long resumedRows = 0;
+        if (m_checkpoints.isActive() && (m_incremental != null || m_out.getReorderer() != null)) {
+            setWarningMessage("Checkpoints are not used in incremental mode or if the input rows are reordered.");
+            m_checkpoints.disable();
+        }
+        if (m_checkpoints.isActive()) {
+            if (isOrdered()) {
+                resumedRows = resume(input);
+            } else {
+                setWarningMessage("Checkpoints require the results in the order of the input rows, no checkpoints "
+                    + "are saved.");
+                m_checkpoints.disable();
+            }
+        }
+        if (m_statistics != null) {
+            m_statistics.start();
+        }
+        m_canceller = new StatementCanceller(exec);
+        boolean success = false;
+        RowInput loopInput = input;
+        try {
+            if (m_usePrefilter) {
+                loadPrefilter(exec);
+            }
+            if (m_lookup.getResultCache() != null) {
+                initResultCache();
+            }
+            if (m_out.getReorderer() != null) {
+                loopInput = m_out.getReorderer().sort(input, exec);
+                m_out.reorderErrors(exec);
+            }
+            if (m_incremental != null) {
+                final DataTableSpec resultSpec = m_incremental.open();
+                if (resultSpec != null) {
+                    initOutput(resultSpec);
+                }
+                loopInput = m_incremental.filter(loopInput, this::pushResults);
+            }
+            // The number of rows that need to be looped is unknown in incremental mode
+            final long loopRows = rowCount < 0 || m_incremental != null ? -1 : rowCount - resumedRows;
+            loop(loopInput, loopRows, exec);
+            if (m_out.hasPendingResults()) {
+                flushPendingResults();
+            }
+            if (m_incremental != null) {
+                m_incremental.commit();
+            }
+            success = true;
+        } catch (Exception ex) {
+            if (m_canceller.isCanceled() && !(ex instanceof CanceledExecutionException)) {
+                // The statement failed because it has been canceled, report the cancellation instead of the error
+                throw new CanceledExecutionException();
+            }
+            throw ex;
+        } finally {
+            m_canceller.close();
+            if (m_incremental != null) {
+                m_incremental.close();
+            }
+            // Keeps the last saved checkpoint for the next execution if the execution failed
+            m_checkpoints.finish(success);
+            if (m_statistics != null) {
+                m_statistics.stop();
+            }
+            m_monitor.finished();
+            loopInput.close();
+            if (loopInput != input) {
+                input.close();
+            }
+            m_lookup.close();
+        }
+        if (m_converter != null) {
+            // Keep the configure time spec in sync with the actual results
+            ResultSpecCache.getInstance().update(m_connSettings, m_cp, m_query, m_converter.getDataTableSpec());
+        }
+        if (m_out.getOutput() == null) {
+            // No result set has been seen, e.g. the input table is empty and the driver has no statement meta data
+            initOutput(new DataTableSpec());
+        }
+        m_out.close(exec);
+    }
+
+    /**
+     * Restores the rows of the last saved checkpoint and skips the input rows it covers
+     *
+     * @return the number of skipped input rows
+     */
+    private long resume(final RowInput input) throws Exception {
+        final long inputRows = m_checkpoints.begin();
+        m_out.trackCheckpoint();
+        if (inputRows == 0) {
+            return 0;
+        }
+        if (m_checkpoints.getResultSpec() != null) {
+            initOutput(m_checkpoints.getResultSpec());
+        }
+        return m_checkpoints.restore(input, inputRows, m_out.getOutput(), m_out.getErrorOutput(), m_assembler);
+    }
+
+    /**
+     * Loads the distinct key values of the statement into the prefilter, the prefilter is not used if the statement
+     * cannot be rewritten or the key values cannot be read
+     */
+    private void loadPrefilter(final ExecutionContext exec) throws Exception {
+        final BatchQueryBuilder builder = new BatchQueryBuilder(m_query, m_assembler.getParameterCount());
+        if (!builder.supportsPreload()) {
+            setWarningMessage("The prefilter requires every placeholder in a \"column = $placeholder$\" predicate "
+                + "of a WHERE clause that only combines predicates with AND and has no row limit, grouping or "
+                + "aggregate. All rows are queried.");
+            return;
+        }
+        for (final DataType paramType : m_assembler.getParameterTypes()) {
+            if (!DBLoopingUtil.isExactKeyType(paramType)) {
+                setWarningMessage("The prefilter requires integer placeholder columns, since the database might "
+                    + "compare other values by its collation or after a conversion. All rows are queried.");
+                return;
+            }
+        }
+        exec.setMessage("Loading key values of the prefilter");
+        final KeyPrefilter prefilter;
+        final Connection conn = getSharedConnection();
+        synchronized (syncConnection(conn)) {
+            try (final Statement stmt = conn.createStatement()) {
+                stmt.setQueryTimeout(m_queryTimeout);
+                register(stmt);
+                try {
+                    prefilter = KeyPrefilter.load(m_connSettings, stmt, builder.createDistinctKeyQuery(), exec);
+                } finally {
+                    unregister(stmt);
+                }
+            } catch (SQLException ex) {
+                exec.checkCanceled();
+                LOGGER.debug("Could not load key values of the prefilter: " + ex.getMessage(), ex);
+                setWarningMessage("Could not load the key values of the prefilter, all rows are queried: "
+                    + ex.getMessage());
+                return;
+            }
+        }
+        if (prefilter == null) {
+            setWarningMessage("The prefilter requires integer key columns, since the database might compare other "
+                + "values by its collation or after a conversion. All rows are queried.");
+            return;
+        }
+        m_lookup.setPrefilter(prefilter);
+        LOGGER.debug("Prefilter loaded with " + prefilter.getKeyCount() + " keys in " + prefilter.getSizeInBytes()
+            + " bytes");
+    }
+
+    /**
+     * Executes the SQL statement for all rows of the given input
+     *
+     * @param input the input rows
+     * @param rowCount the number of input rows or -1 if unknown
+     * @param exec the execution context
+     * @throws Exception if the execution fails or is canceled
+     */
+    protected abstract void loop(final RowInput input, final long rowCount, final ExecutionContext exec)
+        throws Exception;
+
+    /**
+     * Returns the connection of the database port, which might be shared with other nodes and thus must only be used
+     * while synchronized on {@link #syncConnection(Connection)}
+     *
+     * @return the shared database connection
+     * @throws Exception if the connection cannot be created
+     */
+    protected Connection getSharedConnection() throws Exception {
+        return m_connSettings.createConnection(m_cp);
+    }
+
+    /**
+     * Returns the object to synchronize on while using the given shared connection
+     *
+     * @param conn the shared connection
+     * @return the object to synchronize on
+     */
+    protected Object syncConnection(final Connection conn) {
+        return m_connSettings.syncConnection(conn);
+    }
+
+    /**
+     * Returns the settings of the database connection
+     *
+     * @return the settings of the database connection
+     */
+    protected DatabaseQueryConnectionSettings getConnectionSettings() {
+        return m_connSettings;
+    }
+
+    /**
+     * Returns the credentials provider
+     *
+     * @return the credentials provider
+     */
+    protected CredentialsProvider getCredentialsProvider() {
+        return m_cp;
+    }
+
+    /**
+     * Returns the output table if the executor created it
+     *
+     * @return the output table or <code>null</code> if the results were pushed to a given output
+     */
+    public BufferedDataTable getOutputTable() {
+        return m_out.getOutputTable();
+    }
+
+    /**
+     * Returns the error table if the executor created it
+     *
+     * @return the error table or <code>null</code> if the errors were pushed to a given output
+     */
+    public BufferedDataTable getErrorTable() {
+        return m_out.getErrorTable();
+    }
+
+    /**
+     * Returns a warning message that occurred during the execution or <code>null</code>
+     *
+     * @return a warning message or <code>null</code>
+     */
+    public String getWarningMessage() {
+        return m_warningMessage;
+    }
+
+    /**
+     * Sets a warning message that is shown on the node after the execution
+     *
+     * @param message the warning message
+     */
+    protected void setWarningMessage(final String message) {
+        LOGGER.warn(message);
+        m_warningMessage = message;
+    }
+
+    /**
+     * Sets whether the prepared statements should be taken from and kept in the {@link PreparedStatementCache}
+     *
+     * @param cacheStatements <code>true</code> if the prepared statements should be cached
+     */
+    public void setCacheStatements(final boolean cacheStatements) {
+        m_cacheStatements = cacheStatements;
+    }
+
+    /**
+     * Sets the memo that answers repeated parameter tuples without querying the database. The memo is closed at the
+     * end of the execution.
+     *
+     * @param memo the result memo or <code>null</code> if the results should not be memoized
+     */
+    public void setResultMemo(final ResultMemo memo) {
+        m_lookup.setMemo(memo);
+    }
+
+    /**
+     * Returns the result memo or <code>null</code> if the results are not memoized
+     *
+     * @return the result memo or <code>null</code>
+     */
+    public ResultMemo getResultMemo() {
+        return m_lookup.getMemo();
+    }
+
+    /**
+     * Sets the persistent cache that answers parameter tuples from the results of previous executions. The cache is
+     * closed at the end of the execution.
+     *
+     * @param cache the persistent result cache or <code>null</code> if the results should not be cached
+     */
+    public void setResultCache(final PersistentResultCache cache) {
+        m_lookup.setResultCache(cache);
+    }
+
+    /**
+     * Returns the persistent result cache or <code>null</code> if the results are not cached
+     *
+     * @return the persistent result cache or <code>null</code>
+     */
+    public PersistentResultCache getResultCache() {
+        return m_lookup.getResultCache();
+    }
+
+    /**
+     * Returns the monitor with the live counters of the execution
+     *
+     * @return the monitor of the execution
+     */
+    public LoopingMonitor getMonitor() {
+        return m_monitor;
+    }
+
+    /**
+     * Registers a query that is sent to the database with the monitor and starts its flight recorder event. Every
+     * call must be followed by a call of {@link #endQuery(QueryTrace)}, usually in a finally block.
+     *
+     * @param parameterCount the number of parameter values bound to the query
+     * @return the trace of the query
+     */
+    protected QueryTrace beginQuery(final int parameterCount) {
+        return new QueryTrace(m_monitor, m_queryShapeHash, getClass().getSimpleName(), parameterCount);
+    }
+
+    /**
+     * Unregisters the query from the monitor and commits its flight recorder event if it is enabled
+     *
+     * @param trace the trace returned by {@link #beginQuery(int)}
+     */
+    protected void endQuery(final QueryTrace trace) {
+        trace.end();
+    }
+
+    /**
+     * Sets the statistics that collect the latencies of the phases of the iterations
+     *
+     * @param statistics the statistics or <code>null</code> if the iterations should not be timed
+     */
+    public void setStatistics(final LoopingStatistics statistics) {
+        m_statistics = statistics;
+    }
+
+    /**
+     * Returns the statistics of the iterations or <code>null</code> if the iterations are not timed
+     *
+     * @return the statistics or <code>null</code>
+     */
+    public LoopingStatistics getStatistics() {
+        return m_statistics;
+    }
+
+    /**
+     * Returns the current time for timing a phase of an iteration. The clock is only read if statistics are
+     * collected, so timing costs nothing otherwise.
+     *
+     * @return the value of {@link System#nanoTime()} or 0 if no statistics are collected
+     */
+    protected long now() {
+        return m_statistics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the latency of a phase of an iteration if statistics are collected
+     *
+     * @param phase the phase
+     * @param nanos the latency in nanoseconds, usually the difference of two {@link #now()} calls
+     * @param rows the number of rows handled in the phase
+     */
+    protected void record(final Phase phase, final long nanos, final int rows) {
+        if (m_statistics != null) {
+            m_statistics.record(phase, nanos, rows);
+        }
+    }
+
+    /**
+     * Sets the controller that adapts the batch size to the measured latency and throughput. Executors that do not
+     * send batches ignore the controller.
+     *
+     * @param batchSizer the batch size controller or <code>null</code> if the configured batch size should be used
+     */
+    public void setBatchSizer(final AdaptiveBatchSizer batchSizer) {
+        m_batchSizer = batchSizer;
+    }
+
+    /**
+     * Returns the batch size controller or <code>null</code> if the batch size is fixed
+     *
+     * @return the batch size controller or <code>null</code>
+     */
+    public AdaptiveBatchSizer getBatchSizer() {
+        return m_batchSizer;
+    }
+
+    /**
+     * Returns the number of rows of the next batch
+     *
+     * @param batchSize the configured batch size, which is used if the batch size is not adapted
+     * @return the batch size chosen by the controller or the configured batch size
+     */
+    protected int nextBatchSize(final int batchSize) {
+        return m_batchSizer == null ? batchSize : m_batchSizer.getBatchSize();
+    }
+
+    /**
+     * Returns the largest batch size that might be returned by {@link #nextBatchSize(int)}
+     *
+     * @param batchSize the configured batch size
+     * @return the maximum batch size
+     */
+    protected int maxBatchSize(final int batchSize) {
+        return m_batchSizer == null ? batchSize : m_batchSizer.getMaxBatchSize();
+    }
+
+    /**
+     * Reports the execution time of a batch to the batch size controller
+     *
+     * @param rows the number of rows of the batch
+     * @param startNanos the {@link System#nanoTime()} when the batch was started
+     */
+    protected void recordBatch(final int rows, final long startNanos) {
+        if (m_batchSizer != null) {
+            m_batchSizer.update(rows, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Groups the statements into transactions that are committed every N rows and/or every T milliseconds. Only
+     * executors that send one statement per row or batch to the shared connection support transactions, the other
+     * executors ignore this setting.
+     *
+     * @param commitRows the number of rows after which the transaction is committed, 0 for no limit
+     * @param commitMillis the number of milliseconds after which the transaction is committed, 0 for no limit
+     */
+    public void setTransactions(final int commitRows, final long commitMillis) {
+        m_useTransactions = true;
+        m_commitRows = commitRows;
+        m_commitMillis = commitMillis;
+    }
+
+    /**
+     * Returns the number of transactions that have been committed during the execution
+     *
+     * @return the number of transaction commits
+     */
+    public long getTransactionCommits() {
+        return m_transactionCommits;
+    }
+
+    /**
+     * Starts a transaction group on the given connection if transactions are enabled
+     *
+     * @param conn the connection to start the transactions on
+     * @return the transaction group or <code>null</code> if the statements should run in the auto-commit state of
+     *         the connection
+     * @throws SQLException if the transaction cannot be started
+     */
+    protected TransactionGroup openTransaction(final Connection conn) throws SQLException {
+        if (!m_useTransactions) {
+            return null;
+        }
+        m_transaction = new TransactionGroup(conn, m_commitRows, m_commitMillis);
+        return m_transaction;
+    }
+
+    /**
+     * Finishes the given transaction group. If the execution failed, the open transaction is rolled back and a
+     * failing rollback is only logged, so that it does not hide the original exception.
+     *
+     * @param tx the transaction group, might be <code>null</code>
+     * @param commit <code>true</code> if the open transaction should be committed
+     * @throws SQLException if the open transaction cannot be committed
+     */
+    protected void closeTransaction(final TransactionGroup tx, final boolean commit) throws SQLException {
+        if (tx == null) {
+            return;
+        }
+        try {
+            tx.close(commit);
+        } catch (SQLException ex) {
+            if (commit) {
+                throw ex;
+            }
+            LOGGER.warn("Could not roll back transaction: " + ex.getMessage(), ex);
+        } finally {
+            m_transactionCommits += tx.getCommitCount();
+            m_transaction = null;
+        }
+    }
+
+    /**
+     * Returns the number of statements that were taken from the statement cache during the execution
+     *
+     * @return the number of statement cache hits
+     */
+    public long getStatementCacheHits() {
+        return m_statementCacheHits.get();
+    }
+
+    /**
+     * Returns the number of statements that had to be prepared during the execution
+     *
+     * @return the number of statement cache misses
+     */
+    public long getStatementCacheMisses() {
+        return m_statementCacheMisses.get();
+    }
+
+    /**
+     * Sets the checkpoint that is saved periodically during the execution and resumed if it was saved by a previous
+     * execution. The checkpoint is deleted if the execution succeeds. Executors that do not produce the results in
+     * the order of the input rows ignore the checkpoint.
+     *
+     * @param checkpoint the checkpoint or <code>null</code> if no checkpoints should be saved
+     */
+    public void setCheckpoint(final LoopingCheckpoint checkpoint) {
+        m_checkpoints.setCheckpoint(checkpoint);
+    }
+
+    /**
+     * Sets the store with the results of the previous execution. Only input rows that are new or whose parameter
+     * values changed are looped, the results of the other rows are taken from the store. Retained rows are written as
+     * soon as they are read, so they may precede the output of earlier input rows that are still being queried.
+     *
+     * @param store the incremental result store or <code>null</code> if all rows should be looped
+     * @param keyColumnIndex the index of the input column that identifies a row or -1 to use the row ID
+     */
+    public void setIncrementalStore(final IncrementalResultStore store, final int keyColumnIndex) {
+        m_incremental = store == null ? null : new IncrementalLooping(store, keyColumnIndex, m_assembler);
+    }
+
+    /**
+     * Returns the incremental result store or <code>null</code> if all rows are looped
+     *
+     * @return the incremental result store or <code>null</code>
+     */
+    public IncrementalResultStore getIncrementalStore() {
+        return m_incremental == null ? null : m_incremental.getStore();
+    }
+
+    /**
+     * Sorts the input rows by their parameter values before they are looped, so that consecutive statements access
+     * neighbouring data in the database. The outputs are restored to the order of the input rows, which requires all
+     * input rows to be read before the first statement is executed.
+     *
+     * @param reorder <code>true</code> if the input rows should be sorted
+     */
+    public void setLocalityReordering(final boolean reorder) {
+        m_out.setReorderer(reorder ? new LocalityReorderer(m_assembler) : null);
+    }
+
+    /**
+     * Skips the queries of parameter tuples that cannot match any row. The distinct key values of the statement are
+     * loaded once into a Bloom filter before the first row is looped, which requires every placeholder to be used in
+     * a "column = ?" predicate whose column is part of the result.
+     *
+     * @param prefilter <code>true</code> if the prefilter should be used
+     */
+    public void setPrefilter(final boolean prefilter) {
+        m_usePrefilter = prefilter;
+    }
+
+    /**
+     * Returns the number of queries that have been skipped because the prefilter ruled out a match
+     *
+     * @return the number of skipped queries
+     */
+    public long getPrefilteredQueries() {
+        return m_lookup.getPrefilteredQueries();
+    }
+
+    /**
+     * Returns <code>true</code> if the prefilter is used in this execution
+     *
+     * @return <code>true</code> if the key values of the prefilter have been loaded
+     */
+    public boolean isPrefiltered() {
+        return m_lookup.getPrefilter() != null;
+    }
+
+    /**
+     * Validates the persistent result cache against the result columns that the statement currently returns. The spec
+     * is inferred from the database rather than taken from the configure time cache so that results stored before
+     * the table has been altered are not read. If the spec cannot be inferred, the cache is only used once the first
+     * result set has been read.
+     */
+    private void initResultCache() {
+        final DataTableSpec resultSpec = ResultSpecCache.getInstance().refreshResultSpec(m_connSettings, m_cp,
+            m_query, m_assembler.getParameterTypes());
+        if (resultSpec != null) {
+            m_lookup.setResultSpec(resultSpec);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given parameter tuple cannot match any row according to the prefilter. If
+     * empty results are included in the output, tuples are only ruled out if the result columns are known.
+     *
+     * @param params the parameter tuple
+     * @return <code>true</code> if the query of the tuple can be skipped
+     */
+    protected boolean cannotMatch(final DataCell[] params) {
+        return m_lookup.cannotMatch(params, this::canSkipQuery);
+    }
+
+    /**
+     * Returns <code>true</code> if the query of a tuple without matches may be skipped, which requires the result
+     * columns to be known if empty results are included in the output
+     */
+    private boolean canSkipQuery() {
+        return !m_options.isIncludeEmptyResults() || ensureResultSpec();
+    }
+
+    /**
+     * Makes sure that the result columns are known before rows are pushed that were not read from a result set, e.g.
+     * the empty results of tuples ruled out by the prefilter or results from the cache. If no result set has been
+     * seen yet, the spec is taken from the {@link ResultSpecCache}, which holds the spec inferred at configure time
+     * or read by the last execution.
+     *
+     * @return <code>true</code> if the result columns are known
+     */
+    private synchronized boolean ensureResultSpec() {
+        if (m_out.isInitialized()) {
+            return true;
+        }
+        final DataTableSpec resultSpec = ResultSpecCache.getInstance().getResultSpec(m_connSettings, m_cp, m_query,
+            m_assembler.getParameterTypes());
+        if (resultSpec == null) {
+            return false;
+        }
+        initOutput(resultSpec);
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if the executor pushes the results in the order of the input rows, which is required
+     * for checkpoints
+     *
+     * @return <code>true</code> if the results are ordered
+     */
+    protected boolean isOrdered() {
+        return true;
+    }
+
+    /**
+     * Sets the number of seconds a single execution of the looped statement may take. A statement that runs longer
+     * is stopped by the driver and the rows of the execution are added to the error table, even if the execution
+     * should fail on errors.
+     *
+     * @param seconds the query timeout in seconds, 0 for no timeout
+     */
+    public void setQueryTimeout(final int seconds) {
+        m_queryTimeout = seconds;
+    }
+
+    /**
+     * Returns the number of statement executions that have been stopped by the query timeout
+     *
+     * @return the number of query timeouts
+     */
+    public long getQueryTimeouts() {
+        return m_timeouts.get();
+    }
+
+    /**
+     * Sets the policy that retries statement executions that failed with a transient error. Executions within a
+     * transaction group are not retried, since the error might have rolled back the whole transaction. Connection
+     * errors are only retried by executors that re-create the connection, see
+     * {@link #canReconnect(SQLException, int)}.
+     *
+     * @param retryPolicy the retry policy or <code>null</code> if failed executions should not be retried
+     */
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+        m_retrier = retryPolicy == null ? null : new LoopingRetrier(retryPolicy);
+    }
+
+    /**
+     * Returns the retry policy or <code>null</code> if failed executions are not retried
+     *
+     * @return the retry policy or <code>null</code>
+     */
+    public RetryPolicy getRetryPolicy() {
+        return m_retrier == null ? null : m_retrier.getPolicy();
+    }
+
+    /**
+     * Executes the given call and retries it on the same connection according to the retry policy if it fails with a
+     * transient error. Waits before every attempt while the circuit breaker of the policy is open. If the caller is
+     * synchronized on {@link #syncConnection(Connection)}, the lock is released while waiting for the next attempt.
+     *
+     * @param <T> the type of the result
+     * @param conn the connection the call uses
+     * @param call the statement execution
+     * @return the result of the call
+     * @throws SQLException the exception of the last attempt
+     */
+    protected <T> T retry(final Connection conn, final SQLCall<T> call) throws SQLException {
+        if (m_retrier == null) {
+            return call.call();
+        }
+        return m_retrier.retry(call, syncConnection(conn), this::cannotRetry);
+    }
+
+    /**
+     * Returns <code>true</code> if the execution that failed with the given exception should be repeated on a new
+     * connection, i.e. the retry policy is set, the exception is a connection error, the given attempt is not the last
+     * one and the execution is not part of a transaction group. Executors that return <code>true</code> must close
+     * their statements, release the lock of the connection and call
+     * {@link #reconnect(Connection, SQLException, int)} before the next attempt.
+     *
+     * @param ex the exception of the execution
+     * @param attempt the number of executions so far, starting with 1
+     * @return <code>true</code> if the execution should be repeated on a new connection
+     */
+    protected boolean canReconnect(final SQLException ex, final int attempt) {
+        return m_retrier != null && m_retrier.canReconnect(ex, attempt) && !cannotRetry();
+    }
+
+    /**
+     * Closes the failed connection and waits according to the retry policy, so that the next call of
+     * {@link #getSharedConnection()} creates a new connection. Must not be called while synchronized on
+     * {@link #syncConnection(Connection)}.
+     *
+     * @param conn the failed connection
+     * @param ex the connection error
+     * @param attempt the number of executions so far, starting with 1
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    protected void reconnect(final Connection conn, final SQLException ex, final int attempt)
+        throws InterruptedException {
+        m_retrier.reconnect(conn, ex, attempt);
+    }
+
+    /**
+     * Returns <code>true</code> if a failed execution must not be repeated, i.e. if it is part of a transaction group,
+     * since the error might have rolled back the whole transaction, or if the execution has been canceled
+     */
+    private boolean cannotRetry() {
+        return m_transaction != null || isCanceled();
+    }
+
+    private boolean isCanceled() {
+        return m_canceller != null && m_canceller.isCanceled();
+    }
+
+    /**
+     * Returns the SQL statement with a "?" for every placeholder
+     *
+     * @return the SQL statement
+     */
+    protected String getQuery() {
+        return m_query;
+    }
+
+    /**
+     * Returns the looping options
+     *
+     * @return the looping options
+     */
+    protected LoopingOptions getOptions() {
+        return m_options;
+    }
+
+    /**
+     * Returns the row assembler
+     *
+     * @return the row assembler
+     */
+    protected LoopingRowAssembler getAssembler() {
+        return m_assembler;
+    }
+
+    /**
+     * Returns the result set converter or <code>null</code> if the result columns are not yet known
+     *
+     * @return the result set converter or <code>null</code>
+     */
+    protected ResultSetConverter getConverter() {
+        return m_converter;
+    }
+
+    /**
+     * Initializes the result set converter and the output table from the given meta data if this has not been done
+     * yet. May be called concurrently by executors that use several connections.
+     *
+     * @param metaData the meta data of the looped statement, may be <code>null</code>
+     * @param offset the number of leading columns that are not part of the result
+     * @throws SQLException if the meta data cannot be read
+     */
+    protected synchronized void initConverter(final ResultSetMetaData metaData, final int offset) throws SQLException {
+        if (m_converter != null || m_fixedResultSpec || metaData == null) {
+            return;
+        }
+        m_converter = new ResultSetConverter(m_connSettings, metaData, offset, new BinaryObjectCellFactory(m_exec));
+        initOutput(m_converter.getDataTableSpec());
+    }
+
+    /**
+     * Initializes the output table with the given result columns for executors whose results are not read from a
+     * result set, e.g. update counts. The meta data of prepared statements is ignored afterwards.
+     *
+     * @param resultSpec the spec of the result columns
+     */
+    protected synchronized void initResultSpec(final DataTableSpec resultSpec) {
+        m_fixedResultSpec = true;
+        initOutput(resultSpec);
+    }
+
+    private void initOutput(final DataTableSpec resultSpec) {
+        m_out.init(resultSpec);
+        m_checkpoints.saveResultSpec(resultSpec);
+        m_lookup.setResultSpec(resultSpec);
+        if (m_incremental != null) {
+            m_incremental.saveResultSpec(resultSpec);
+        }
+    }
+
+    /**
+     * Prepares the given SQL statement or takes it from the statement cache if caching is enabled, and initializes the
+     * result converter from its meta data if the driver supports it. The returned statement must be released with
+     * {@link #closeStatement(PreparedStatement)}.
+     *
+     * @param conn the database connection
+     * @param sql the SQL statement to prepare
+     * @param offset the number of leading columns that are not part of the result
+     * @return the prepared statement
+     * @throws SQLException if the statement cannot be prepared
+     */
+    protected PreparedStatement prepare(final Connection conn, final String sql, final int offset)
+        throws SQLException {
+        PreparedStatement stmt = null;
+        if (m_cacheStatements) {
+            stmt = PreparedStatementCache.getInstance().take(conn, sql);
+        }
+        if (stmt == null) {
+            m_statementCacheMisses.incrementAndGet();
+            stmt = conn.prepareStatement(sql);
+            if (m_cacheStatements) {
+                PreparedStatementCache.getInstance().lease(conn, sql, stmt);
+            }
+        } else {
+            m_statementCacheHits.incrementAndGet();
+        }
+        // always set, a cached statement may still carry the timeout of a previous execution
+        stmt.setQueryTimeout(m_queryTimeout);
+        register(stmt);
+        if (m_converter == null) {
+            try {
+                initConverter(stmt.getMetaData(), offset);
+            } catch (SQLException ex) {
+                // Not all drivers support meta data of prepared statements, use the first result set instead
+                LOGGER.debug("Could not retrieve meta data of prepared statement: " + ex.getMessage(), ex);
+            }
+        }
+        return stmt;
+    }
+
+    /**
+     * Releases a statement returned by {@link #prepare(Connection, String, int)}. The statement is closed unless it
+     * is handed back to the statement cache.
+     *
+     * @param stmt the statement to release, may be <code>null</code>
+     */
+    protected void closeStatement(final PreparedStatement stmt) {
+        if (stmt == null) {
+            return;
+        }
+        unregister(stmt);
+        if (m_cacheStatements && PreparedStatementCache.getInstance().release(stmt)) {
+            return;
+        }
+        try {
+            stmt.close();
+        } catch (SQLException ex) {
+            LOGGER.debug("Could not close statement: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Registers a statement that is canceled as soon as the execution is canceled. Statements returned by
+     * {@link #prepare(Connection, String, int)} are registered automatically.
+     *
+     * @param stmt the statement
+     */
+    protected void register(final Statement stmt) {
+        if (m_canceller != null) {
+            m_canceller.register(stmt);
+        }
+    }
+
+    /**
+     * Unregisters a statement registered with {@link #register(Statement)} before it is closed
+     *
+     * @param stmt the statement
+     */
+    protected void unregister(final Statement stmt) {
+        if (m_canceller != null) {
+            m_canceller.unregister(stmt);
+        }
+    }
+
+    /**
+     * Executes the given prepared statement with the given parameters and converts the result. Executions that fail
+     * with a transient error are retried according to the retry policy.
+     *
+     * @param stmt the prepared statement of the looped SQL statement
+     * @param params the parameters to bind
+     * @return the converted result rows
+     * @throws SQLException if the statement fails
+     */
+    protected List<DataCell[]> executeQuery(final PreparedStatement stmt, final DataCell[] params)
+        throws SQLException {
+        return retry(stmt.getConnection(), () -> executeQueryOnce(stmt, params));
+    }
+
+    private List<DataCell[]> executeQueryOnce(final PreparedStatement stmt, final DataCell[] params)
+        throws SQLException {
+        final QueryTrace trace = beginQuery(params.length);
+        try {
+            final long start = now();
+            DBLoopingUtil.bindParameters(stmt, 0, params);
+            final long bound = now();
+            record(Phase.BIND, bound - start, 1);
+            final List<DataCell[]> results = new ArrayList<DataCell[]>();
+            try (final ResultSet rs = stmt.executeQuery()) {
+                record(Phase.EXECUTE, now() - bound, 1);
+                initConverter(rs.getMetaData(), 0);
+                fetchResults(rs, 0, results);
+            }
+            trace.succeeded(results.size());
+            return results;
+        } finally {
+            endQuery(trace);
+        }
+    }
+
+    /**
+     * Reads and converts the remaining rows of the given result set and times the fetch and conversion phases
+     *
+     * @param rs the result set
+     * @param offset the number of leading columns of the result set that are not part of the result
+     * @param results the list to add the converted rows to
+     * @throws SQLException if the rows cannot be read
+     */
+    protected void fetchResults(final ResultSet rs, final int offset, final List<DataCell[]> results)
+        throws SQLException {
+        long fetchNanos = 0;
+        long convertNanos = 0;
+        int rows = 0;
+        long time = now();
+        while (rs.next()) {
+            final long fetched = now();
+            results.add(m_converter.convert(rs, offset));
+            final long converted = now();
+            fetchNanos += fetched - time;
+            convertNanos += converted - fetched;
+            time = converted;
+            rows++;
+        }
+        record(Phase.FETCH, fetchNanos + now() - time, rows);
+        record(Phase.CONVERT, convertNanos, rows);
+    }
+
+    /**
+     * Returns the results for the given parameter tuple, either from the result memo, the persistent result cache or
+     * by executing the given prepared statement
+     *
+     * @param stmt the prepared statement of the looped SQL statement
+     * @param params the parameters to bind
+     * @return the converted result rows
+     * @throws SQLException if the statement fails
+     */
+    protected List<DataCell[]> lookup(final PreparedStatement stmt, final DataCell[] params) throws SQLException {
+        List<DataCell[]> results = findResults(params);
+        if (results == null) {
+            results = executeQuery(stmt, params);
+            storeResults(params, results);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the known results of the given parameter tuple, which are empty if the prefilter rules out a match, or
+     * are taken from the result memo or the persistent result cache
+     *
+     * @param params the parameter tuple
+     * @return the known results or <code>null</code> if the database needs to be queried
+     */
+    protected List<DataCell[]> findResults(final DataCell[] params) {
+        return m_lookup.find(params, this::canSkipQuery);
+    }
+
+    /**
+     * Stores the queried results of the given parameter tuple in the result memo and the persistent result cache
+     *
+     * @param params the parameter tuple
+     * @param results the results of the tuple
+     */
+    protected void storeResults(final DataCell[] params, final List<DataCell[]> results) {
+        m_lookup.store(params, results);
+    }
+
+    /**
+     * Pushes the output rows of the given input row to the output table
+     *
+     * @param input the input row
+     * @param results the converted result rows
+     * @throws InterruptedException if the output is interrupted
+     */
+    protected void addResults(final DataRow input, final List<DataCell[]> results) throws InterruptedException {
+        if (m_incremental != null) {
+            m_incremental.put(input, results);
+        }
+        pushResults(input, results);
+    }
+
+    /**
+     * Pushes the output rows of the given input row to the output table. If the result columns are not known yet,
+     * e.g. since the first rows are answered from the incremental store or the prefilter and the driver provides no
+     * statement meta data, the rows are kept until they are.
+     */
+    private void pushResults(final DataRow input, final List<DataCell[]> results) throws InterruptedException {
+        if (!ensureResultSpec()) {
+            m_out.defer(input, results);
+            return;
+        }
+        if (m_out.hasPendingResults()) {
+            flushPendingResults();
+        }
+        writeResults(input, results);
+    }
+
+    /**
+     * Writes the results that were pushed before the result columns were known. If the columns are still unknown at
+     * the end of the execution, they are derived from the values of the pending results.
+     */
+    private void flushPendingResults() throws InterruptedException {
+        if (!ensureResultSpec()) {
+            initOutput(m_out.createPendingResultSpec());
+        }
+        m_out.flushPendingResults(this::writeResults);
+    }
+
+    private void writeResults(final DataRow input, final List<DataCell[]> results) throws InterruptedException {
+        final long start = now();
+        m_out.write(input, results);
+        m_checkpoints.rowCompleted();
+        m_monitor.rowProcessed(false);
+        if (m_statistics != null) {
+            record(Phase.WRITE, now() - start, results.size());
+            m_statistics.addRow(results.size());
+        }
+    }
+
+    /**
+     * Handles an exception that occurred while executing the statement for the given input row. Either rethrows the
+     * exception or adds the row to the error table depending on the looping options.
+     *
+     * @param input the input row that caused the exception
+     * @param ex the exception
+     * @throws Exception the given exception if the execution should fail on errors
+     */
+    protected void handleException(final DataRow input, final Exception ex) throws Exception {
+        if (shouldFail(ex)) {
+            throw ex;
+        }
+        final String message;
+        if (isTimeout(ex)) {
+            m_timeouts.incrementAndGet();
+            message = "Query timed out after " + m_queryTimeout + " seconds";
+        } else {
+            Throwable cause = ExceptionUtils.getRootCause(ex);
+            if (cause == null) {
+                cause = ex;
+            }
+            message = cause.getMessage();
+        }
+        LOGGER.debug("Error while executing statement for row " + input.getKey() + ": " + message, ex);
+        m_out.writeError(input, message);
+        m_checkpoints.rowCompleted();
+        m_monitor.rowProcessed(true);
+        if (m_statistics != null) {
+            m_statistics.addRow(0);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given exception should fail the execution instead of adding the affected rows
+     * to the error table. Exceptions caused by the query timeout never fail the execution.
+     *
+     * @param ex the exception of a statement execution
+     * @return <code>true</code> if the execution should fail
+     * @throws CanceledExecutionException if the statement failed because the execution has been canceled
+     */
+    protected boolean shouldFail(final Exception ex) throws CanceledExecutionException {
+        checkCanceled();
+        return m_options.isFailIfException() && !isTimeout(ex);
+    }
+
+    /**
+     * Throws an exception if the execution has been canceled, e.g. because a failed statement has been canceled
+     * and should not be executed in another way
+     *
+     * @throws CanceledExecutionException if the execution has been canceled
+     */
+    protected void checkCanceled() throws CanceledExecutionException {
+        if (m_canceller != null && m_canceller.isCanceled()) {
+            throw new CanceledExecutionException();
+        }
+    }
+
+    private boolean isTimeout(final Throwable ex) {
+        if (m_queryTimeout <= 0) {
+            return false;
+        }
+        for (Throwable t = ex; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLTimeoutException
+                || (t instanceof SQLException && TIMEOUT_STATES.contains(((SQLException)t).getSQLState()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks for cancellation and updates the progress. Called before the next input row is processed, i.e. when the
+     * results of all previous rows have been pushed, which is when a checkpoint is saved.
+     *
+     * @param exec the execution context
+     * @param rowIdx the index of the current row
+     * @param rowCount the number of input rows or -1 if unknown
+     * @throws Exception if the execution was canceled
+     */
+    protected void updateProgress(final ExecutionContext exec, final long rowIdx, final long rowCount)
+        throws Exception {
+        exec.checkCanceled();
+        m_checkpoints.saveIfDue(m_transaction);
+        if (rowCount > 0) {
+            exec.setProgress(rowIdx / (double)rowCount, "Processing row " + rowIdx + " of " + rowCount);
+        } else {
+            exec.setMessage("Processing row " + rowIdx);
+        }
+    }
+
+    /**
+     * A statement execution that might throw an {@link SQLException}, see {@link AbstractLoopingExecutor#retry}
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    protected interface SQLCall<T> {
+
+        /**
+         * Executes the statement
+         *
+         * @return the result of the execution
+         * @throws SQLException if the execution fails
+         */
+        T call() throws SQLException;
+    }
+
+}
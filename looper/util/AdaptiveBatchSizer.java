@@ -0,0 +1,155 @@
+package org.knime.base.node.io.database.looper.util;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Adapts the number of rows per batch to the measured latency and throughput of the batches with an additive
+ * increase, multiplicative decrease (AIMD) controller. The batch size grows by a constant step as long as the
+ * throughput in rows per second does not drop and the latency of a batch stays below the ceiling. It is halved as
+ * soon as a batch exceeds the latency ceiling or a larger batch turns out to be slower than the previous one.
+ */
+public class AdaptiveBatchSizer {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(AdaptiveBatchSizer.class);
+
+    /** Relative throughput drop that is tolerated as measurement noise before the batch size is decreased */
+    private static final double THROUGHPUT_TOLERANCE = 0.1;
+
+    /** Weight of the latest measurement in the smoothed throughput */
+    private static final double SMOOTHING = 0.5;
+
+    private final int m_minSize;
+
+    private final int m_maxSize;
+
+    private final int m_step;
+
+    private final long m_latencyCeilingNanos;
+
+    private int m_size;
+
+    private double m_throughput = -1;
+
+    private boolean m_increased = false;
+
+    private long m_batches = 0;
+
+    private long m_rows = 0;
+
+    private long m_nanos = 0;
+
+    private int m_minUsed = Integer.MAX_VALUE;
+
+    private int m_maxUsed = 0;
+
+    /**
+     * Creates a new instance of AdaptiveBatchSizer
+     *
+     * @param initialSize the batch size of the first batch, a quarter of it is used as additive step
+     * @param minSize the minimum batch size
+     * @param maxSize the maximum batch size
+     * @param latencyCeilingMillis the maximum latency of a batch in milliseconds, 0 for no limit
+     */
+    public AdaptiveBatchSizer(final int initialSize, final int minSize, final int maxSize,
+        final long latencyCeilingMillis) {
+        m_minSize = Math.max(1, minSize);
+        m_maxSize = Math.max(m_minSize, maxSize);
+        m_size = Math.min(m_maxSize, Math.max(m_minSize, initialSize));
+        m_step = Math.max(1, m_size / 4);
+        m_latencyCeilingNanos = latencyCeilingMillis * 1000L * 1000L;
+    }
+
+    /**
+     * Returns the number of rows of the next batch
+     *
+     * @return the current batch size
+     */
+    public int getBatchSize() {
+        return m_size;
+    }
+
+    /**
+     * Returns the maximum batch size the controller might choose
+     *
+     * @return the maximum batch size
+     */
+    public int getMaxBatchSize() {
+        return m_maxSize;
+    }
+
+    /**
+     * Records the execution of a batch and adapts the size of the next batch
+     *
+     * @param rows the number of rows of the batch
+     * @param nanos the execution time of the batch in nanoseconds
+     */
+    public void update(final int rows, final long nanos) {
+        if (rows <= 0) {
+            return;
+        }
+        m_batches++;
+        m_rows += rows;
+        m_nanos += nanos;
+        m_minUsed = Math.min(m_minUsed, rows);
+        m_maxUsed = Math.max(m_maxUsed, rows);
+        if (rows < m_size) {
+            // The last batch of the input is smaller than the batch size and says nothing about the batch size
+            return;
+        }
+
+        final double throughput = rows * 1e9 / Math.max(1, nanos);
+        final int oldSize = m_size;
+        if (m_latencyCeilingNanos > 0 && nanos > m_latencyCeilingNanos) {
+            m_size = Math.max(m_minSize, m_size / 2);
+            m_increased = false;
+        } else if (m_increased && m_throughput > 0 && throughput < m_throughput * (1 - THROUGHPUT_TOLERANCE)) {
+            m_size = Math.max(m_minSize, m_size / 2);
+            m_increased = false;
+        } else {
+            m_size = (int)Math.min(m_maxSize, (long)m_size + m_step);
+            m_increased = m_size > oldSize;
+        }
+        m_throughput = m_throughput < 0 ? throughput : SMOOTHING * throughput + (1 - SMOOTHING) * m_throughput;
+        if (m_size != oldSize) {
+            LOGGER.debug("Batch of " + rows + " rows took " + (nanos / 1000000) + " ms ("
+                + Math.round(throughput) + " rows/s), next batch size: " + m_size);
+        }
+    }
+
+    /**
+     * Returns the size of the smallest executed batch
+     *
+     * @return the smallest batch size or 0 if no batch has been executed
+     */
+    public int getMinUsedBatchSize() {
+        return m_batches == 0 ? 0 : m_minUsed;
+    }
+
+    /**
+     * Returns the size of the largest executed batch
+     *
+     * @return the largest batch size
+     */
+    public int getMaxUsedBatchSize() {
+        return m_maxUsed;
+    }
+
+    /**
+     * Returns the average size of the executed batches
+     *
+     * @return the average batch size or 0 if no batch has been executed
+     */
+    public double getMeanBatchSize() {
+        return m_batches == 0 ? 0 : m_rows / (double)m_batches;
+    }
+
+    /**
+     * Returns the average throughput of all executed batches
+     *
+     * @return the number of rows per second
+     */
+    public double getRowsPerSecond() {
+        return m_nanos == 0 ? 0 : m_rows * 1e9 / m_nanos;
+    }
+
+}
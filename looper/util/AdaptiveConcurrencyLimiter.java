@@ -0,0 +1,177 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.Arrays;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Limits the number of concurrently executed queries to a limit that adapts to the measured latency, similar to a
+ * gradient limiter. The limiter compares the 95th percentile of the latencies of the recent queries with a long term
+ * baseline. As long as the latency stays flat the limit grows, when the latency rises the limit shrinks in proportion
+ * to the latency increase, and when the error rate of the recent queries exceeds a threshold the limit is halved. The
+ * limit always stays within the given minimum and maximum.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    /** Number of queries per measurement window */
+    private static final int WINDOW_SIZE = 50;
+
+    /** Latency increase relative to the baseline that is still considered flat */
+    private static final double TOLERANCE = 1.5;
+
+    /** Weight of a new window in the smoothed limit */
+    private static final double SMOOTHING = 0.2;
+
+    /** Weight of a new window in the long term latency baseline */
+    private static final double BASELINE_SMOOTHING = 0.05;
+
+    /** Error rate of a window above which the limit is halved */
+    private static final double MAX_ERROR_RATE = 0.1;
+
+    private final int m_minLimit;
+
+    private final int m_maxLimit;
+
+    private final long[] m_window = new long[WINDOW_SIZE];
+
+    private int m_windowCount = 0;
+
+    private int m_windowErrors = 0;
+
+    private int m_windowMaxInFlight = 0;
+
+    private double m_limit;
+
+    private double m_baselineNanos = -1;
+
+    private long m_lastP95Nanos = 0;
+
+    private int m_inFlight = 0;
+
+    private int m_lowestLimit;
+
+    private int m_highestLimit;
+
+    /**
+     * Creates a new instance of AdaptiveConcurrencyLimiter
+     *
+     * @param minLimit the minimum number of concurrent queries
+     * @param maxLimit the maximum number of concurrent queries
+     */
+    public AdaptiveConcurrencyLimiter(final int minLimit, final int maxLimit) {
+        m_minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        m_maxLimit = Math.max(m_minLimit, maxLimit);
+        m_limit = m_minLimit;
+        m_lowestLimit = m_minLimit;
+        m_highestLimit = m_minLimit;
+    }
+
+    /**
+     * Waits until the number of running queries is below the current limit and registers a new query
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (m_inFlight >= getLimit()) {
+            wait();
+        }
+        m_inFlight++;
+        m_windowMaxInFlight = Math.max(m_windowMaxInFlight, m_inFlight);
+    }
+
+    /**
+     * Unregisters a finished query and records its latency
+     *
+     * @param latencyNanos the latency of the query in nanoseconds
+     * @param failed <code>true</code> if the query failed
+     */
+    public synchronized void release(final long latencyNanos, final boolean failed) {
+        m_inFlight--;
+        m_window[m_windowCount++] = latencyNanos;
+        if (failed) {
+            m_windowErrors++;
+        }
+        if (m_windowCount == WINDOW_SIZE) {
+            updateLimit();
+        }
+        notifyAll();
+    }
+
+    private void updateLimit() {
+        Arrays.sort(m_window);
+        final long p95 = Math.max(1, m_window[(int)Math.ceil(WINDOW_SIZE * 0.95) - 1]);
+        m_lastP95Nanos = p95;
+        if (m_baselineNanos < 0) {
+            m_baselineNanos = p95;
+        }
+
+        final double oldLimit = m_limit;
+        double newLimit;
+        if (m_windowErrors > WINDOW_SIZE * MAX_ERROR_RATE) {
+            newLimit = m_limit / 2;
+        } else {
+            // Shrink in proportion to the latency increase, grow by a queue of sqrt(limit) while latency is flat
+            final double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * m_baselineNanos / p95));
+            newLimit = m_limit * gradient + Math.sqrt(m_limit);
+            if (newLimit > m_limit && m_windowMaxInFlight < m_limit / 2) {
+                // The queries did not even use half of the limit, a higher limit has not been tested
+                newLimit = m_limit;
+            }
+            newLimit = m_limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        }
+        m_limit = Math.max(m_minLimit, Math.min(m_maxLimit, newLimit));
+
+        // The baseline follows the latency slowly, but recovers fast when the load of the database drops
+        m_baselineNanos = p95 < m_baselineNanos ? p95
+            : m_baselineNanos * (1 - BASELINE_SMOOTHING) + p95 * BASELINE_SMOOTHING;
+
+        m_lowestLimit = Math.min(m_lowestLimit, getLimit());
+        m_highestLimit = Math.max(m_highestLimit, getLimit());
+        if ((int)oldLimit != getLimit()) {
+            LOGGER.debug("Concurrency limit changed from " + (int)oldLimit + " to " + getLimit() + " (p95 latency: "
+                + (p95 / 1000000) + " ms, errors: " + m_windowErrors + "/" + WINDOW_SIZE + ")");
+        }
+        m_windowCount = 0;
+        m_windowErrors = 0;
+        m_windowMaxInFlight = m_inFlight;
+    }
+
+    /**
+     * Returns the current limit of concurrent queries
+     *
+     * @return the current limit
+     */
+    public synchronized int getLimit() {
+        return (int)m_limit;
+    }
+
+    /**
+     * Returns the lowest limit that has been used
+     *
+     * @return the lowest limit
+     */
+    public synchronized int getLowestLimit() {
+        return m_lowestLimit;
+    }
+
+    /**
+     * Returns the highest limit that has been used
+     *
+     * @return the highest limit
+     */
+    public synchronized int getHighestLimit() {
+        return m_highestLimit;
+    }
+
+    /**
+     * Returns the 95th percentile of the latencies of the last complete measurement window
+     *
+     * @return the latency in milliseconds or 0 if no window has been completed
+     */
+    public synchronized double getLatencyP95Millis() {
+        return m_lastP95Nanos / 1e6;
+    }
+
+}
@@ -0,0 +1,345 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites the looped SQL statement into a set-based statement that handles a whole chunk of parameter tuples with a
+ * single query.
+ * <p>
+ * The IN list and range rewrites add a {@link #ROW_TAG_COLUMN} to the front of the select list that maps every result
+ * row to the placeholder value it matches, using the equality of the database, so that the rows can be split back to
+ * the tuples without looking for the key column in the result. They therefore require a statement that starts with
+ * SELECT.
+ * <p>
+ * The IN list, range and preload rewrites replace the "column = ?" predicates of the statement, which only returns
+ * the same rows as the looped statement if the predicates are combined with AND. These rewrites are therefore
+ * refused if the statement contains OR, NOT (...), a set operation, a row limit (LIMIT, TOP, OFFSET, FETCH, ROWNUM),
+ * GROUP BY, HAVING, an aggregate or a window function, or a placeholder outside of the WHERE clause. Placeholders in
+ * string literals and comments are ignored.
+ */
+public class BatchQueryBuilder {
+
+    /** Name of the column that tags every result row of a UNION ALL query with the index of its input row */
+    public static final String ROW_TAG_COLUMN = "knime_loop_row";
+
+    /**
+     * The maximum number of placeholders of a rewritten statement. Drivers limit the number of parameters of a
+     * statement, e.g. SQLite to 999 and SQL Server to 2100, so the number of tuples per statement is limited such that
+     * the lowest common limit is not exceeded.
+     */
+    public static final int MAX_PARAMETERS = 999;
+
+    private static final String ALIAS_PREFIX = "knime_loop_";
+
+    /**
+     * A "column = ?" predicate that is a whole operand of the conjunction, i.e. preceded by WHERE, AND or an opening
+     * parenthesis and followed by AND, a closing parenthesis, ORDER BY or the end of the statement. Placeholders in
+     * expressions such as "a + b = ?" or "a = ? + 1" do not match.
+     */
+    private static final Pattern EQUALS_PLACEHOLDER_PATTERN = Pattern.compile(
+        "(?<=(?:\\bWHERE|\\bAND|\\()\\s{0,64})((?:[\\w\"`\\[\\]]+\\.)*([\\w\"`\\[\\]]+))\\s*=\\s*\\?"
+            + "(?=\\s*(?:\\bAND\\b|\\)|\\bORDER\\s+BY\\b|;?\\s*$))",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern NON_CONJUNCTIVE_PATTERN = Pattern.compile(
+        "\\b(?:OR|UNION|INTERSECT|EXCEPT|MINUS|LIMIT|TOP|OFFSET|FETCH|ROWNUM|HAVING|GROUP\\s+BY)\\b"
+            + "|\\b(?:NOT|OVER|COUNT|SUM|AVG|MIN|MAX)\\s*\\(",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SELECT_PATTERN =
+        Pattern.compile("^\\s*SELECT(?:\\s+(?:DISTINCT|ALL)\\b)?", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern WHERE_PATTERN = Pattern.compile("\\bWHERE\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_BY_PATTERN = Pattern.compile("\\bORDER\\s+BY\\b", Pattern.CASE_INSENSITIVE);
+
+    private final String m_query;
+
+    private final int m_paramCount;
+
+    /** The statement with string literals and comments blanked out, see {@link DBLoopingUtil#maskLiterals(String)} */
+    private final String m_maskedQuery;
+
+    /** End of the SELECT keyword, the row tag is inserted there */
+    private int m_selectEnd = -1;
+
+    /** The compared column of the "column = ?" predicate, -1 if the IN list rewrite is not supported */
+    private int m_keyStart = -1;
+
+    private int m_keyEnd;
+
+    private String m_keyExpression;
+
+    private String m_preloadQuery;
+
+    private String[] m_preloadKeyColumns;
+
+    private String m_distinctKeyQuery;
+
+    /**
+     * Creates a new instance of BatchQueryBuilder
+     *
+     * @param query the SQL statement with a "?" for every placeholder
+     * @param paramCount the number of placeholders
+     */
+    public BatchQueryBuilder(final String query, final int paramCount) {
+        m_query = query;
+        m_paramCount = paramCount;
+        m_maskedQuery = DBLoopingUtil.maskLiterals(query);
+        if (paramCount != countPlaceholders(m_maskedQuery) || !isConjunction(m_maskedQuery)) {
+            return;
+        }
+        initPreloadQuery(query, paramCount);
+        if (paramCount != 1) {
+            return;
+        }
+        final Matcher select = SELECT_PATTERN.matcher(m_maskedQuery);
+        final Matcher matcher = EQUALS_PLACEHOLDER_PATTERN.matcher(m_maskedQuery);
+        if (select.find() && matcher.find()) {
+            m_selectEnd = select.end();
+            m_keyStart = matcher.start();
+            m_keyEnd = matcher.end();
+            m_keyExpression = matcher.group(1);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if all placeholders of the masked statement are in its WHERE clause and the statement
+     * contains nothing that makes the rows of a tuple depend on other rows or predicates
+     */
+    private static boolean isConjunction(final String maskedQuery) {
+        if (NON_CONJUNCTIVE_PATTERN.matcher(maskedQuery).find()) {
+            return false;
+        }
+        final Matcher matcher = WHERE_PATTERN.matcher(maskedQuery);
+        if (!matcher.find()) {
+            return false;
+        }
+        final int where = matcher.start();
+        return !matcher.find() && maskedQuery.indexOf('?') > where;
+    }
+
+    private void initPreloadQuery(final String query, final int paramCount) {
+        final Matcher matcher = EQUALS_PLACEHOLDER_PATTERN.matcher(m_maskedQuery);
+        final StringBuilder buf = new StringBuilder(query.length());
+        final String[] keyColumns = new String[paramCount];
+        final StringBuilder keyList = new StringBuilder();
+        int count = 0;
+        int end = 0;
+        while (matcher.find()) {
+            buf.append(query, end, matcher.start()).append("1 = 1");
+            keyColumns[count++] = unquote(matcher.group(2));
+            keyList.append(keyList.length() == 0 ? "" : ", ").append(ALIAS_PREFIX).append("k.")
+                .append(matcher.group(2));
+            end = matcher.end();
+        }
+        if (count == paramCount && count > 0) {
+            m_preloadQuery = buf.append(query.substring(end)).toString();
+            m_preloadKeyColumns = keyColumns;
+            m_distinctKeyQuery = "SELECT DISTINCT " + keyList + " FROM (" + m_preloadQuery + ") " + ALIAS_PREFIX + "k";
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the statement orders its rows, in which case the order of the rows of one
+     * parameter tuple is not preserved by the statement of {@link #createStagingJoinQuery(String, String[], boolean)}.
+     *
+     * @return <code>true</code> if the statement contains an ORDER BY clause
+     */
+    public boolean isOrdered() {
+        return ORDER_BY_PATTERN.matcher(m_maskedQuery).find();
+    }
+
+    private static String unquote(final String column) {
+        return column.replaceAll("[\"`\\[\\]]", "");
+    }
+
+    private static int countPlaceholders(final String maskedQuery) {
+        int count = 0;
+        for (int i = 0; i < maskedQuery.length(); i++) {
+            if (maskedQuery.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns <code>true</code> if the statement can be rewritten into an IN list query, which is the case if it starts
+     * with SELECT and contains exactly one placeholder that is used in a "column = ?" predicate
+     *
+     * @return <code>true</code> if the statement can be rewritten into an IN list query
+     */
+    public boolean supportsInList() {
+        return m_keyStart >= 0;
+    }
+
+    /**
+     * Creates a statement that replaces the "column = ?" predicate with "column IN (?, ...)". The first column of the
+     * result is the {@link #ROW_TAG_COLUMN} with the index of the IN list value that the row matches. The statement
+     * has a placeholder for the value of every tag followed by the placeholders of the IN list, i.e. every value is
+     * bound twice.
+     *
+     * @param size the number of values in the IN list
+     * @return the IN list statement
+     */
+    public String createInListQuery(final int size) {
+        if (!supportsInList()) {
+            throw new IllegalStateException("The statement does not support an IN list.");
+        }
+        final StringBuilder predicate = new StringBuilder(m_keyExpression).append(" IN (");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                predicate.append(", ");
+            }
+            predicate.append('?');
+        }
+        return createTaggedQuery(size, predicate.append(')').toString());
+    }
+
+    /**
+     * Creates a statement that replaces the "column = ?" predicate with "column BETWEEN ? AND ?", which selects a
+     * contiguous range of key values with a single range scan. The first column of the result is the
+     * {@link #ROW_TAG_COLUMN} with the index of the value that the row matches or <code>null</code> if the row lies
+     * between the values. The statement has a placeholder for the value of every tag followed by the two bounds.
+     *
+     * @param size the number of values in the range
+     * @return the range statement
+     */
+    public String createRangeQuery(final int size) {
+        if (!supportsInList()) {
+            throw new IllegalStateException("The statement does not support a range.");
+        }
+        return createTaggedQuery(size, m_keyExpression + " BETWEEN ? AND ?");
+    }
+
+    private String createTaggedQuery(final int size, final String predicate) {
+        final StringBuilder buf = new StringBuilder(m_query.length() + predicate.length() + 32 * size);
+        buf.append(m_query, 0, m_selectEnd).append(" CASE");
+        for (int i = 0; i < size; i++) {
+            buf.append(" WHEN ").append(m_keyExpression).append(" = ? THEN ").append(i);
+        }
+        buf.append(" END AS ").append(ROW_TAG_COLUMN).append(',');
+        return buf.append(m_query, m_selectEnd, m_keyStart).append(predicate).append(m_query.substring(m_keyEnd))
+            .toString();
+    }
+
+    /**
+     * Returns <code>true</code> if the statement can be executed once without placeholders to load all results, which
+     * is the case if every placeholder is used in a "column = ?" predicate
+     *
+     * @return <code>true</code> if the results can be preloaded
+     */
+    public boolean supportsPreload() {
+        return m_preloadQuery != null;
+    }
+
+    /**
+     * Returns the unquoted names of the columns that are compared with the placeholders
+     *
+     * @return the names of the key columns in the order of the placeholders or <code>null</code> if the results
+     *         cannot be preloaded
+     */
+    public String[] getPreloadKeyColumns() {
+        return m_preloadKeyColumns == null ? null : m_preloadKeyColumns.clone();
+    }
+
+    /**
+     * Creates a statement without placeholders that replaces every "column = ?" predicate with "1 = 1", so that it
+     * returns the results of all possible parameter values. The statement must only combine the predicates with AND
+     * for the results of a tuple to be the rows that match its values.
+     *
+     * @return the preload statement
+     */
+    public String createPreloadQuery() {
+        if (!supportsPreload()) {
+            throw new IllegalStateException("The statement does not support preloading.");
+        }
+        return m_preloadQuery;
+    }
+
+    /**
+     * Creates a statement without placeholders that returns the distinct values of the key columns of all rows the
+     * statement can return, see {@link #createPreloadQuery()}. The key columns must be part of the result.
+     *
+     * @return the distinct key statement
+     */
+    public String createDistinctKeyQuery() {
+        if (!supportsPreload()) {
+            throw new IllegalStateException("The statement does not support preloading.");
+        }
+        return m_distinctKeyQuery;
+    }
+
+    /**
+     * Returns the maximum number of tuples of an IN list, range or UNION ALL statement such that the statement has
+     * at most {@link #MAX_PARAMETERS} placeholders. The IN list and range statements bind every value twice, once
+     * for its tag and once for the predicate, the UNION ALL statement binds every placeholder once per tuple.
+     *
+     * @param inList <code>true</code> for the IN list and range statements, <code>false</code> for UNION ALL
+     * @return the maximum number of tuples per statement
+     */
+    public int getMaxTuples(final boolean inList) {
+        return inList ? MAX_PARAMETERS / 2 : MAX_PARAMETERS / Math.max(1, m_paramCount);
+    }
+
+    /**
+     * Creates a statement that combines the given number of copies of the looped statement with UNION ALL. Every
+     * copy is tagged with its index in the {@link #ROW_TAG_COLUMN} which is the first column of the result.
+     *
+     * @param size the number of copies
+     * @return the UNION ALL statement
+     */
+    public String createUnionQuery(final int size) {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            final String alias = ALIAS_PREFIX + i;
+            if (i > 0) {
+                buf.append(" UNION ALL ");
+            }
+            buf.append("SELECT ").append(i);
+            if (i == 0) {
+                buf.append(" AS ").append(ROW_TAG_COLUMN);
+            }
+            buf.append(", ").append(alias).append(".* FROM (").append(m_query).append(") ").append(alias);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Creates a statement that joins the looped statement laterally against a staging table that contains one row
+     * per parameter tuple. Every placeholder is replaced with the corresponding column of the staging table and every
+     * result row is tagged with the tuple index of the staging table in the {@link #ROW_TAG_COLUMN} which is the
+     * first column of the result. The result is ordered by the tuple index only, an ORDER BY of the looped statement
+     * is kept inside the derived table but databases are free to ignore it, so the order of the rows of one tuple is
+     * not guaranteed, see {@link #isOrdered()}.
+     *
+     * @param stagingTable the name of the staging table
+     * @param paramColumns the names of the staging table columns in the order of the placeholders
+     * @param crossApply <code>true</code> if the database uses CROSS APPLY instead of CROSS JOIN LATERAL
+     * @return the join statement
+     */
+    public String createStagingJoinQuery(final String stagingTable, final String[] paramColumns,
+        final boolean crossApply) {
+        final String stagingAlias = ALIAS_PREFIX + "s";
+        final String queryAlias = ALIAS_PREFIX + "q";
+        final StringBuilder query = new StringBuilder(m_query.length());
+        int paramIdx = 0;
+        for (int i = 0; i < m_query.length(); i++) {
+            final char c = m_query.charAt(i);
+            if (m_maskedQuery.charAt(i) == '?') {
+                query.append(stagingAlias).append('.').append(paramColumns[paramIdx++]);
+            } else {
+                query.append(c);
+            }
+        }
+        final StringBuilder buf = new StringBuilder();
+        buf.append("SELECT ").append(stagingAlias).append('.').append(ROW_TAG_COLUMN).append(", ").append(queryAlias)
+            .append(".* FROM ").append(stagingTable).append(' ').append(stagingAlias)
+            .append(crossApply ? " CROSS APPLY (" : " CROSS JOIN LATERAL (").append(query).append(") ")
+            .append(queryAlias).append(" ORDER BY ").append(stagingAlias).append('.').append(ROW_TAG_COLUMN);
+        return buf.toString();
+    }
+
+}
@@ -0,0 +1,550 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.knime.base.node.io.database.looper.util.LoopingStatistics.Phase;
+import org.knime.core.data.BooleanValue;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.IntValue;
+import org.knime.core.data.LongValue;
+import org.knime.core.data.date.DateAndTimeValue;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * Executes the looped SQL statement for chunks of input rows. Each chunk is sent to the database as one set-based
+ * query, either as an IN list or as UNION ALL of the tagged statements, and the combined result is split back to the
+ * input rows by the row tag that the rewritten query adds to every result row. Repeated parameter tuples within a
+ * chunk are only sent once. If a chunk fails, its tuples are executed one by one so that only the failing rows end up
+ * in the error table. Optionally, runs of consecutive integer or day values in an IN list chunk are queried with a
+ * BETWEEN range instead.
+ */
+public class BatchedLoopingExecutor extends AbstractLoopingExecutor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(BatchedLoopingExecutor.class);
+
+    /** Minimum number of consecutive values that are queried as range instead of as part of the IN list */
+    private static final int MIN_RANGE_LENGTH = 3;
+
+    private static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+
+    private final int m_batchSize;
+
+    private boolean m_useInList;
+
+    private BatchQueryBuilder m_queryBuilder;
+
+    private PreparedStatement m_singleStmt;
+
+    private final Map<Integer, PreparedStatement> m_inListStmts = new HashMap<Integer, PreparedStatement>();
+
+    private final Map<Integer, PreparedStatement> m_unionStmts = new HashMap<Integer, PreparedStatement>();
+
+    private final Map<Integer, PreparedStatement> m_rangeStmts = new HashMap<Integer, PreparedStatement>();
+
+    /** <code>true</code> once the database executed an IN list query, its errors are not caused by the rewrite */
+    private boolean m_inListAccepted = false;
+
+    private boolean m_mergeRanges = false;
+
+    private long m_rangeQueries = 0;
+
+    private long m_rangeValues = 0;
+
+    /**
+     * Creates a new instance of BatchedLoopingExecutor
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param query the SQL statement with a "?" for every placeholder
+     * @param inSpec the spec of the input table
+     * @param paramColumns the names of the input columns in the order of the placeholders
+     * @param options the looping options
+     * @param batchSize the maximum number of input rows per query, the initial size if the batch size is adapted
+     * @param useInList <code>true</code> if the chunks should be sent as IN list, <code>false</code> for UNION ALL
+     */
+    public BatchedLoopingExecutor(final DatabaseQueryConnectionSettings connSettings, final CredentialsProvider cp,
+        final String query, final DataTableSpec inSpec, final String[] paramColumns, final LoopingOptions options,
+        final int batchSize, final boolean useInList) {
+        super(connSettings, cp, query, inSpec, paramColumns, options);
+        m_batchSize = batchSize;
+        m_useInList = useInList;
+    }
+
+    /**
+     * Queries runs of consecutive integer or day values with a "column BETWEEN ? AND ?" range instead of listing
+     * every value in the IN list. Only applies to IN list batching, the rows of a range are split back to the input
+     * rows by their tag like the rows of an IN list.
+     *
+     * @param mergeRanges <code>true</code> if consecutive values should be merged into ranges
+     */
+    public void setMergeRanges(final boolean mergeRanges) {
+        m_mergeRanges = mergeRanges;
+    }
+
+    /**
+     * Returns the number of executed range queries
+     *
+     * @return the number of range queries
+     */
+    public long getRangeQueries() {
+        return m_rangeQueries;
+    }
+
+    /**
+     * Returns the number of distinct values that have been queried with range queries
+     *
+     * @return the number of values covered by ranges
+     */
+    public long getRangeValues() {
+        return m_rangeValues;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loop(final RowInput input, final long rowCount, final ExecutionContext exec) throws Exception {
+        final Connection conn = getSharedConnection();
+        synchronized (syncConnection(conn)) {
+            loop(conn, input, rowCount, exec);
+        }
+    }
+
+    private void loop(final Connection conn, final RowInput input, final long rowCount, final ExecutionContext exec)
+        throws Exception {
+        m_queryBuilder = new BatchQueryBuilder(getQuery(), getAssembler().getParameterCount());
+        if (m_useInList && !m_queryBuilder.supportsInList()) {
+            setWarningMessage("IN list batching requires a SELECT statement with exactly one placeholder in a"
+                + " \"column = $placeholder$\" predicate of a WHERE clause that only combines predicates with AND and"
+                + " has no row limit, grouping or aggregate. Using UNION ALL batching instead.");
+            m_useInList = false;
+        }
+        try {
+            m_singleStmt = prepare(conn, getQuery(), 0);
+            final List<DataRow> chunk = new ArrayList<DataRow>();
+            long rowIdx = 0;
+            DataRow row;
+            while ((row = input.poll()) != null) {
+                updateProgress(exec, ++rowIdx, rowCount);
+                chunk.add(row);
+                if (chunk.size() >= Math.min(nextBatchSize(m_batchSize), getMaxTuples())) {
+                    processChunk(conn, chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                processChunk(conn, chunk);
+            }
+        } finally {
+            closeStatements();
+        }
+    }
+
+    private void processChunk(final Connection conn, final List<DataRow> chunk) throws Exception {
+        final long start = System.nanoTime();
+        final int size = chunk.size();
+        final List<List<DataCell[]>> results = new ArrayList<List<DataCell[]>>(size);
+        final SQLException[] errors = new SQLException[size];
+
+        // Collect the distinct parameter tuples of the chunk whose results are not known yet
+        final Map<List<DataCell>, Integer> tupleIndices = new HashMap<List<DataCell>, Integer>();
+        final List<DataCell[]> tuples = new ArrayList<DataCell[]>();
+        final int[] rowTuples = new int[size];
+        for (int i = 0; i < size; i++) {
+            final DataCell[] params = getAssembler().getParameters(chunk.get(i));
+            results.add(findResults(params));
+            if (results.get(i) != null) {
+                rowTuples[i] = -1;
+                continue;
+            }
+            final List<DataCell> key = Arrays.asList(params);
+            Integer tupleIdx = tupleIndices.get(key);
+            if (tupleIdx == null) {
+                tupleIdx = tuples.size();
+                tuples.add(params);
+                tupleIndices.put(key, tupleIdx);
+            }
+            rowTuples[i] = tupleIdx;
+        }
+
+        if (!tuples.isEmpty()) {
+            final SQLException[] tupleErrors = new SQLException[tuples.size()];
+            List<List<DataCell[]>> tupleResults;
+            try {
+                tupleResults = retry(conn, () -> queryTuples(conn, tuples));
+            } catch (SQLException ex) {
+                // Errors of single tuples are only reported by the individual executions, which fail if required
+                checkCanceled();
+                LOGGER.debug("Batch of " + tuples.size() + " parameter tuples failed, executing them individually: "
+                    + ex.getMessage(), ex);
+                tupleResults = new ArrayList<List<DataCell[]>>(Collections.nCopies(tuples.size(), null));
+            }
+            // Tuples without results could not be sent with the batch, they are executed one by one
+            for (int t = 0; t < tuples.size(); t++) {
+                if (tupleResults.get(t) == null) {
+                    try {
+                        tupleResults.set(t, executeQuery(m_singleStmt, tuples.get(t)));
+                    } catch (SQLException tupleEx) {
+                        tupleErrors[t] = tupleEx;
+                    }
+                }
+            }
+            for (int t = 0; t < tuples.size(); t++) {
+                if (tupleErrors[t] == null) {
+                    storeResults(tuples.get(t), tupleResults.get(t));
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                if (rowTuples[i] >= 0) {
+                    results.set(i, tupleResults.get(rowTuples[i]));
+                    errors[i] = tupleErrors[rowTuples[i]];
+                }
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (errors[i] != null) {
+                handleException(chunk.get(i), errors[i]);
+            } else {
+                addResults(chunk.get(i), results.get(i));
+            }
+        }
+        recordBatch(size, start);
+    }
+
+    /**
+     * Executes the given distinct parameter tuples with one set-based query
+     *
+     * @return the results of every tuple in the order of the tuples, <code>null</code> for the tuples that need to be
+     *         executed individually
+     */
+    private List<List<DataCell[]>> queryTuples(final Connection conn, final List<DataCell[]> tuples)
+        throws SQLException {
+        if (m_useInList) {
+            try {
+                final List<List<DataCell[]>> results = queryInList(conn, tuples);
+                m_inListAccepted = true;
+                return results;
+            } catch (SQLException ex) {
+                if (m_inListAccepted || RetryPolicy.isTransient(ex) || RetryPolicy.isConnectionError(ex)) {
+                    throw ex;
+                }
+                // e.g. a database that does not allow further columns in front of "*"
+                LOGGER.debug("IN list query failed, using UNION ALL batching instead: " + ex.getMessage(), ex);
+                setWarningMessage("The database does not accept the IN list query (" + ex.getMessage()
+                    + "). Using UNION ALL batching instead.");
+                m_useInList = false;
+            }
+        }
+        return queryUnion(conn, tuples);
+    }
+
+    /**
+     * Executes the tuples as IN list query. Every result row is tagged by the database with the index of the value
+     * it matches. Values that might be equal for the database, e.g. strings that only differ in case or trailing
+     * blanks, can only be told apart by one query per value and are executed individually.
+     *
+     * @return the results of every tuple, <code>null</code> for the tuples that need to be executed individually
+     */
+    private List<List<DataCell[]>> queryInList(final Connection conn, final List<DataCell[]> tuples)
+        throws SQLException {
+        final List<List<DataCell[]>> results = new ArrayList<List<DataCell[]>>(tuples.size());
+        final Map<String, Integer> collationKeys = new HashMap<String, Integer>();
+        final List<Integer> listTuples = new ArrayList<Integer>();
+        for (int t = 0; t < tuples.size(); t++) {
+            final DataCell value = tuples.get(t)[0];
+            if (value.isMissing()) {
+                // "column = NULL" never matches
+                results.add(Collections.<DataCell[]> emptyList());
+            } else if (collationKeys.put(createCollationKey(value), t) != null) {
+                results.add(null);
+            } else {
+                results.add(new ArrayList<DataCell[]>());
+                listTuples.add(t);
+            }
+        }
+
+        List<Integer> remaining = listTuples;
+        if (m_mergeRanges && listTuples.size() >= MIN_RANGE_LENGTH) {
+            remaining = queryRanges(conn, tuples, listTuples, results);
+        }
+        if (!remaining.isEmpty()) {
+            final int size = getBatchQuerySize(remaining.size());
+            PreparedStatement stmt = m_inListStmts.get(size);
+            if (stmt == null) {
+                stmt = prepare(conn, m_queryBuilder.createInListQuery(size), 1);
+                m_inListStmts.put(size, stmt);
+            }
+            final List<DataCell> values = getValues(tuples, remaining);
+            executeTagged(stmt, values, size, values, size, remaining, results);
+        }
+        return results;
+    }
+
+    /**
+     * Returns a key that is equal for all values that a database might consider equal, i.e. strings are compared
+     * without case and surrounding blanks and numeric strings by their numeric value
+     */
+    private static String createCollationKey(final DataCell value) {
+        final String key = DBLoopingUtil.createValueKey(value);
+        if (value instanceof BooleanValue || value instanceof DoubleValue || value instanceof DateAndTimeValue) {
+            return key;
+        }
+        final String normalized = key.trim().toLowerCase(Locale.ROOT);
+        try {
+            return new BigDecimal(normalized).stripTrailingZeros().toPlainString();
+        } catch (NumberFormatException ex) {
+            return normalized;
+        }
+    }
+
+    private static List<DataCell> getValues(final List<DataCell[]> tuples, final List<Integer> tupleIndices) {
+        final List<DataCell> values = new ArrayList<DataCell>(tupleIndices.size());
+        for (final int t : tupleIndices) {
+            values.add(tuples.get(t)[0]);
+        }
+        return values;
+    }
+
+    /**
+     * Executes a range query for every run of consecutive values and adds the rows to the results of the tuples
+     *
+     * @return the indices of the tuples that are not part of a run and still need to be queried with the IN list
+     */
+    private List<Integer> queryRanges(final Connection conn, final List<DataCell[]> tuples,
+        final List<Integer> tupleIndices, final List<List<DataCell[]>> results) throws SQLException {
+        final List<Integer> remaining = new ArrayList<Integer>();
+        final List<Integer> ordinals = new ArrayList<Integer>();
+        for (final int t : tupleIndices) {
+            if (getOrdinal(tuples.get(t)[0]) == null) {
+                remaining.add(t);
+            } else {
+                ordinals.add(t);
+            }
+        }
+        ordinals.sort((a, b) -> Long.compare(getOrdinal(tuples.get(a)[0]), getOrdinal(tuples.get(b)[0])));
+        int start = 0;
+        for (int i = 1; i <= ordinals.size(); i++) {
+            if (i < ordinals.size()
+                && getOrdinal(tuples.get(ordinals.get(i))[0]) == getOrdinal(tuples.get(ordinals.get(i - 1))[0]) + 1) {
+                continue;
+            }
+            final int length = i - start;
+            if (length >= MIN_RANGE_LENGTH) {
+                final int size = getBatchQuerySize(length);
+                PreparedStatement stmt = m_rangeStmts.get(size);
+                if (stmt == null) {
+                    stmt = prepare(conn, m_queryBuilder.createRangeQuery(size), 1);
+                    m_rangeStmts.put(size, stmt);
+                }
+                final List<Integer> run = ordinals.subList(start, i);
+                // The range may contain rows between the requested values, e.g. with a time of day, which do not
+                // match a value and are dropped by their missing tag
+                executeTagged(stmt, getValues(tuples, run), size,
+                    Arrays.asList(tuples.get(run.get(0))[0], tuples.get(run.get(length - 1))[0]), 2, run, results);
+                m_rangeQueries++;
+                m_rangeValues += length;
+            } else {
+                remaining.addAll(ordinals.subList(start, i));
+            }
+            start = i;
+        }
+        return remaining;
+    }
+
+    /**
+     * Returns the position of the given value in the sequence of integers or days, or <code>null</code> if the value
+     * cannot be part of a range
+     */
+    private static Long getOrdinal(final DataCell value) {
+        if (value instanceof LongValue) {
+            return ((LongValue)value).getLongValue();
+        }
+        if (value instanceof IntValue) {
+            return (long)((IntValue)value).getIntValue();
+        }
+        if (value instanceof DateAndTimeValue) {
+            final long millis = ((DateAndTimeValue)value).getUTCTimeInMillis();
+            return millis % MILLIS_PER_DAY == 0 ? millis / MILLIS_PER_DAY : null;
+        }
+        return null;
+    }
+
+    /**
+     * Binds the tagged values and the values of the predicate to the given IN list or range statement, executes it
+     * and adds every result row to the results of the tuple of its tag
+     *
+     * @param stmt the IN list or range statement
+     * @param values the tagged values in the order of the tags
+     * @param size the number of tags of the statement
+     * @param predicateValues the values of the IN list or the bounds of the range
+     * @param predicateSize the number of placeholders of the predicate
+     * @param tupleIndices the index of the tuple of every tagged value
+     * @param results the results of the tuples
+     */
+    private void executeTagged(final PreparedStatement stmt, final List<DataCell> values, final int size,
+        final List<DataCell> predicateValues, final int predicateSize, final List<Integer> tupleIndices,
+        final List<List<DataCell[]>> results) throws SQLException {
+        final QueryTrace trace = beginQuery(size + predicateSize);
+        try {
+            final long start = now();
+            // Pad with the last value to reuse the statements of the same size, the first matching tag wins
+            for (int i = 0; i < size; i++) {
+                DBLoopingUtil.bindParameter(stmt, i + 1, values.get(Math.min(i, values.size() - 1)));
+            }
+            for (int i = 0; i < predicateSize; i++) {
+                DBLoopingUtil.bindParameter(stmt, size + i + 1,
+                    predicateValues.get(Math.min(i, predicateValues.size() - 1)));
+            }
+            final long bound = now();
+            record(Phase.BIND, bound - start, values.size());
+            try (final ResultSet rs = stmt.executeQuery()) {
+                long time = now();
+                record(Phase.EXECUTE, time - bound, values.size());
+                initConverter(rs.getMetaData(), 1);
+                long fetchNanos = 0;
+                long convertNanos = 0;
+                int rows = 0;
+                while (rs.next()) {
+                    final long fetched = now();
+                    final int tag = rs.getInt(1);
+                    if (!rs.wasNull() && tag < tupleIndices.size()) {
+                        results.get(tupleIndices.get(tag)).add(getConverter().convert(rs, 1));
+                        rows++;
+                    }
+                    final long converted = now();
+                    fetchNanos += fetched - time;
+                    convertNanos += converted - fetched;
+                    time = converted;
+                }
+                record(Phase.FETCH, fetchNanos + now() - time, rows);
+                record(Phase.CONVERT, convertNanos, rows);
+                trace.succeeded(rows);
+            }
+        } finally {
+            endQuery(trace);
+        }
+    }
+
+    /**
+     * Returns the smallest power of two that is greater or equal to the given number of values but at most the
+     * maximum batch size and the maximum number of tuples per statement, which limits the number of different batch
+     * statements that need to be prepared
+     */
+    private int getBatchQuerySize(final int numValues) {
+        int size = Integer.highestOneBit(numValues);
+        if (size < numValues) {
+            size <<= 1;
+        }
+        return Math.max(numValues, Math.min(size, Math.min(maxBatchSize(m_batchSize), getMaxTuples())));
+    }
+
+    /**
+     * Returns the maximum number of tuples per statement of the current batching such that the statement does not
+     * exceed the parameter limit of the driver
+     */
+    private int getMaxTuples() {
+        return m_queryBuilder.getMaxTuples(m_useInList);
+    }
+
+    private List<List<DataCell[]>> queryUnion(final Connection conn, final List<DataCell[]> tuples)
+        throws SQLException {
+        // A chunk of the IN list batching might exceed the parameter limit of UNION ALL after falling back to it
+        final int maxTuples = getMaxTuples();
+        if (tuples.size() <= maxTuples) {
+            return querySlice(conn, tuples);
+        }
+        final List<List<DataCell[]>> results = new ArrayList<List<DataCell[]>>(tuples.size());
+        for (int i = 0; i < tuples.size(); i += maxTuples) {
+            results.addAll(querySlice(conn, tuples.subList(i, Math.min(i + maxTuples, tuples.size()))));
+        }
+        return results;
+    }
+
+    private List<List<DataCell[]>> querySlice(final Connection conn, final List<DataCell[]> tuples)
+        throws SQLException {
+        final int size = getBatchQuerySize(tuples.size());
+        PreparedStatement stmt = m_unionStmts.get(size);
+        if (stmt == null) {
+            stmt = prepare(conn, m_queryBuilder.createUnionQuery(size), 1);
+            m_unionStmts.put(size, stmt);
+        }
+        final int paramCount = getAssembler().getParameterCount();
+        final List<List<DataCell[]>> results = new ArrayList<List<DataCell[]>>(tuples.size());
+        final QueryTrace trace = beginQuery(size * paramCount);
+        try {
+            final long start = now();
+            for (int i = 0; i < size; i++) {
+                // Pad with the last tuple to reuse the statements of the same size, its results are ignored
+                DBLoopingUtil.bindParameters(stmt, i * paramCount, tuples.get(Math.min(i, tuples.size() - 1)));
+                if (i < tuples.size()) {
+                    results.add(new ArrayList<DataCell[]>());
+                }
+            }
+            final long bound = now();
+            record(Phase.BIND, bound - start, tuples.size());
+            try (final ResultSet rs = stmt.executeQuery()) {
+                long time = now();
+                record(Phase.EXECUTE, time - bound, tuples.size());
+                initConverter(rs.getMetaData(), 1);
+                long fetchNanos = 0;
+                long convertNanos = 0;
+                int rows = 0;
+                while (rs.next()) {
+                    final long fetched = now();
+                    final int tupleIdx = rs.getInt(1);
+                    if (tupleIdx < results.size()) {
+                        results.get(tupleIdx).add(getConverter().convert(rs, 1));
+                        rows++;
+                    }
+                    final long converted = now();
+                    fetchNanos += fetched - time;
+                    convertNanos += converted - fetched;
+                    time = converted;
+                }
+                record(Phase.FETCH, fetchNanos + now() - time, rows);
+                record(Phase.CONVERT, convertNanos, rows);
+                trace.succeeded(rows);
+            }
+        } finally {
+            endQuery(trace);
+        }
+        return results;
+    }
+
+    private void closeStatements() {
+        closeStatement(m_singleStmt);
+        for (final PreparedStatement stmt : m_rangeStmts.values()) {
+            closeStatement(stmt);
+        }
+        for (final PreparedStatement stmt : m_inListStmts.values()) {
+            closeStatement(stmt);
+        }
+        for (final PreparedStatement stmt : m_unionStmts.values()) {
+            closeStatement(stmt);
+        }
+        m_inListStmts.clear();
+        m_unionStmts.clear();
+        m_rangeStmts.clear();
+        m_singleStmt = null;
+    }
+
+}
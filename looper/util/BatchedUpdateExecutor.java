@@ -0,0 +1,269 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.knime.base.node.io.database.looper.util.LoopingStatistics.Phase;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * Executes a looped data manipulation statement (INSERT, UPDATE, DELETE, ...) for chunks of input rows with JDBC
+ * batches. Every input row results in one output row with the update count of its batch entry. Rows whose batch entry
+ * failed are written to the error table, and if the driver stops a batch at the first failure, the remaining rows are
+ * sent again in a new batch. If the driver reports no update counts at all, the whole batch is written to the error
+ * table, since it is unknown which entries have been applied. Within a transaction group, every batch is guarded by a
+ * savepoint and a failing batch is rolled back and executed row by row, so that only the failing rows are discarded.
+ * Failed statements are never retried, even if a retry policy is set.
+ */
+public class BatchedUpdateExecutor extends AbstractLoopingExecutor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(BatchedUpdateExecutor.class);
+
+    /** Name of the result column that contains the number of rows changed by the statement of the input row */
+    public static final String UPDATE_COUNT_COLUMN = "Update count";
+
+    private final int m_batchSize;
+
+    /**
+     * Creates a new instance of BatchedUpdateExecutor
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param query the SQL statement with a "?" for every placeholder
+     * @param inSpec the spec of the input table
+     * @param paramColumns the names of the input columns in the order of the placeholders
+     * @param options the looping options
+     * @param batchSize the maximum number of input rows per batch, the initial size if the batch size is adapted
+     */
+    public BatchedUpdateExecutor(final DatabaseQueryConnectionSettings connSettings, final CredentialsProvider cp,
+        final String query, final DataTableSpec inSpec, final String[] paramColumns, final LoopingOptions options,
+        final int batchSize) {
+        super(connSettings, cp, query, inSpec, paramColumns, options);
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * Returns the spec of the result columns, which only consists of the update count
+     *
+     * @return the spec of the result columns
+     */
+    public static DataTableSpec createResultSpec() {
+        return new DataTableSpec(new DataColumnSpecCreator(UPDATE_COUNT_COLUMN, IntCell.TYPE).createSpec());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loop(final RowInput input, final long rowCount, final ExecutionContext exec) throws Exception {
+        final Connection conn = getSharedConnection();
+        synchronized (syncConnection(conn)) {
+            loop(conn, input, rowCount, exec);
+        }
+    }
+
+    private void loop(final Connection conn, final RowInput input, final long rowCount, final ExecutionContext exec)
+        throws Exception {
+        initResultSpec(createResultSpec());
+        final PreparedStatement stmt = prepare(conn, getQuery(), 0);
+        final TransactionGroup tx = openTransaction(conn);
+        boolean success = false;
+        try {
+            final List<DataRow> batch = new ArrayList<DataRow>();
+            long rowIdx = 0;
+            DataRow row;
+            while ((row = input.poll()) != null) {
+                updateProgress(exec, ++rowIdx, rowCount);
+                batch.add(row);
+                if (batch.size() >= nextBatchSize(m_batchSize)) {
+                    final long start = System.nanoTime();
+                    executeBatch(stmt, batch, tx);
+                    recordBatch(batch.size(), start);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                final long start = System.nanoTime();
+                executeBatch(stmt, batch, tx);
+                recordBatch(batch.size(), start);
+            }
+            success = true;
+        } finally {
+            closeStatement(stmt);
+            closeTransaction(tx, success);
+        }
+    }
+
+    private void executeBatch(final PreparedStatement stmt, final List<DataRow> rows, final TransactionGroup tx)
+        throws Exception {
+        if (tx == null) {
+            executeBatch(stmt, rows);
+            return;
+        }
+        final List<DataRow> batch = addBatch(stmt, rows);
+        if (batch.isEmpty()) {
+            return;
+        }
+        final Savepoint savepoint = tx.begin();
+        final int[] counts;
+        final QueryTrace trace = beginQuery(batch.size() * getAssembler().getParameterCount());
+        final long start = now();
+        try {
+            counts = stmt.executeBatch();
+            record(Phase.EXECUTE, now() - start, batch.size());
+            trace.succeeded(counts.length);
+            endQuery(trace);
+        } catch (SQLException ex) {
+            record(Phase.EXECUTE, now() - start, batch.size());
+            endQuery(trace);
+            // Undo the successful entries of the batch and execute the rows one by one, each with its own
+            // savepoint, so that only the failing rows are rolled back
+            stmt.clearBatch();
+            tx.failed(savepoint);
+            checkCanceled();
+            LOGGER.debug("Batch of " + batch.size() + " rows failed, executing them individually: "
+                + ex.getMessage(), ex);
+            for (final DataRow row : batch) {
+                executeSingle(stmt, row, tx);
+            }
+            return;
+        }
+        stmt.clearBatch();
+        tx.succeeded(savepoint, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            addUpdateCount(batch.get(i), i < counts.length ? counts[i] : Statement.SUCCESS_NO_INFO);
+        }
+    }
+
+    private void executeBatch(final PreparedStatement stmt, final List<DataRow> rows) throws Exception {
+        List<DataRow> pending = rows;
+        while (!pending.isEmpty()) {
+            final List<DataRow> batch = addBatch(stmt, pending);
+            if (batch.isEmpty()) {
+                return;
+            }
+            int[] counts;
+            SQLException failure = null;
+            final QueryTrace trace = beginQuery(batch.size() * getAssembler().getParameterCount());
+            final long start = now();
+            try {
+                counts = stmt.executeBatch();
+                trace.succeeded(counts.length);
+            } catch (BatchUpdateException ex) {
+                failure = ex;
+                counts = ex.getUpdateCounts();
+            } catch (SQLException ex) {
+                failure = ex;
+                counts = null;
+            } finally {
+                stmt.clearBatch();
+                record(Phase.EXECUTE, now() - start, batch.size());
+                endQuery(trace);
+            }
+
+            if (counts == null) {
+                // The driver does not tell which entries have been applied. Without a savepoint to roll back to,
+                // executing the rows again could apply them twice, so every row of the batch is reported as failed.
+                LOGGER.debug("Batch of " + batch.size() + " rows failed without update counts: "
+                    + failure.getMessage(), failure);
+                for (final DataRow row : batch) {
+                    handleException(row, failure);
+                }
+                return;
+            }
+
+            final int processed = Math.min(counts.length, batch.size());
+            for (int i = 0; i < processed; i++) {
+                if (counts[i] == Statement.EXECUTE_FAILED) {
+                    handleException(batch.get(i), failure);
+                } else {
+                    addUpdateCount(batch.get(i), counts[i]);
+                }
+            }
+            if (failure == null || processed == batch.size()) {
+                return;
+            }
+            // The driver stopped at the first failing entry, the following rows have not been executed
+            handleException(batch.get(processed), failure);
+            pending = batch.subList(processed + 1, batch.size());
+        }
+    }
+
+    /**
+     * Adds the given rows to the batch of the statement
+     *
+     * @return the rows that have been added, rows whose parameters cannot be bound are handled as errors
+     */
+    private List<DataRow> addBatch(final PreparedStatement stmt, final List<DataRow> rows) throws Exception {
+        final List<DataRow> batch = new ArrayList<DataRow>(rows.size());
+        final long start = now();
+        for (final DataRow row : rows) {
+            try {
+                DBLoopingUtil.bindParameters(stmt, 0, getAssembler().getParameters(row));
+                stmt.addBatch();
+                batch.add(row);
+            } catch (SQLException ex) {
+                handleException(row, ex);
+            }
+        }
+        record(Phase.BIND, now() - start, batch.size());
+        return batch;
+    }
+
+    private void executeSingle(final PreparedStatement stmt, final DataRow row, final TransactionGroup tx)
+        throws Exception {
+        final Savepoint savepoint = tx.begin();
+        final int count;
+        try {
+            count = executeUpdate(stmt, row);
+        } catch (SQLException ex) {
+            tx.failed(savepoint);
+            handleException(row, ex);
+            return;
+        }
+        tx.succeeded(savepoint, 1);
+        addUpdateCount(row, count);
+    }
+
+    private int executeUpdate(final PreparedStatement stmt, final DataRow row) throws SQLException {
+        final long start = now();
+        DBLoopingUtil.bindParameters(stmt, 0, getAssembler().getParameters(row));
+        final long bound = now();
+        record(Phase.BIND, bound - start, 1);
+        // never retried, the failed statement might have been applied before the error was reported
+        final QueryTrace trace = beginQuery(getAssembler().getParameterCount());
+        final long executeStart = now();
+        try {
+            final int count = stmt.executeUpdate();
+            trace.succeeded(1);
+            return count;
+        } finally {
+            record(Phase.EXECUTE, now() - executeStart, 1);
+            endQuery(trace);
+        }
+    }
+
+    private void addUpdateCount(final DataRow row, final int count) throws InterruptedException {
+        // Drivers may report success without the number of changed rows
+        final DataCell cell = count == Statement.SUCCESS_NO_INFO ? DataType.getMissingCell() : new IntCell(count);
+        addResults(row, Collections.singletonList(new DataCell[]{cell}));
+    }
+
+}
@@ -0,0 +1,173 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.streamable.RowOutput;
+
+/**
+ * Tracks the progress of an execution for its {@link LoopingCheckpoint}. Counts the input rows whose results are
+ * complete, saves the checkpoint whenever its interval has passed and resumes the checkpoint of a previous execution.
+ * All methods do nothing if no checkpoint is set.
+ */
+final class CheckpointTracker {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CheckpointTracker.class);
+
+    private LoopingCheckpoint m_checkpoint;
+
+    private long m_completedRows = 0;
+
+    private long m_checkpointRows = 0;
+
+    /**
+     * Sets the checkpoint
+     *
+     * @param checkpoint the checkpoint or <code>null</code> if no checkpoints should be saved
+     */
+    void setCheckpoint(final LoopingCheckpoint checkpoint) {
+        m_checkpoint = checkpoint;
+    }
+
+    /**
+     * Returns <code>true</code> if a checkpoint is set
+     *
+     * @return <code>true</code> if checkpoints are saved
+     */
+    boolean isActive() {
+        return m_checkpoint != null;
+    }
+
+    /**
+     * Closes the checkpoint without deleting it, no checkpoints are saved afterwards
+     */
+    void disable() {
+        if (m_checkpoint != null) {
+            m_checkpoint.close();
+            m_checkpoint = null;
+        }
+    }
+
+    /**
+     * Loads the checkpoint of a previous execution and starts tracking this execution
+     *
+     * @return the number of input rows covered by the loaded checkpoint
+     * @throws IOException if the checkpoint files cannot be opened
+     */
+    long begin() throws IOException {
+        final long inputRows = m_checkpoint.load();
+        m_checkpoint.begin();
+        return inputRows;
+    }
+
+    /**
+     * Returns the spec of the result columns of the loaded checkpoint
+     *
+     * @return the result spec or <code>null</code> if unknown
+     */
+    DataTableSpec getResultSpec() {
+        return m_checkpoint.getResultSpec();
+    }
+
+    /**
+     * Writes the rows of the loaded checkpoint to the outputs and skips the input rows it covers
+     *
+     * @param input the input rows
+     * @param inputRows the number of input rows covered by the checkpoint
+     * @param output the output for the result rows
+     * @param errorOutput the output for the error rows
+     * @param assembler the row assembler, which continues the row keys of the restored rows
+     * @return the number of skipped input rows
+     * @throws IOException if the rows cannot be read
+     * @throws InterruptedException if an output is interrupted
+     */
+    long restore(final RowInput input, final long inputRows, final RowOutput output, final RowOutput errorOutput,
+        final LoopingRowAssembler assembler) throws IOException, InterruptedException {
+        m_checkpoint.restore(output, errorOutput);
+        assembler.setRowIndex(m_checkpoint.getOutputRows());
+        long skipped = 0;
+        while (skipped < inputRows && input.poll() != null) {
+            skipped++;
+        }
+        m_completedRows = skipped;
+        m_checkpointRows = skipped;
+        LOGGER.info("Resuming execution from checkpoint after " + skipped + " rows");
+        return skipped;
+    }
+
+    /**
+     * Returns an output that also appends the rows to the checkpoint
+     *
+     * @param output the output for the result rows
+     * @return the tracking output or the given output if no checkpoint is set
+     */
+    RowOutput trackOutput(final RowOutput output) {
+        return m_checkpoint == null ? output : m_checkpoint.trackOutput(output);
+    }
+
+    /**
+     * Returns an output that also appends the error rows to the checkpoint
+     *
+     * @param errorOutput the output for the error rows
+     * @return the tracking output or the given output if no checkpoint is set
+     */
+    RowOutput trackErrors(final RowOutput errorOutput) {
+        return m_checkpoint == null ? errorOutput : m_checkpoint.trackErrors(errorOutput);
+    }
+
+    /**
+     * Stores the spec of the result columns with the checkpoint
+     *
+     * @param resultSpec the spec of the result columns
+     */
+    void saveResultSpec(final DataTableSpec resultSpec) {
+        if (m_checkpoint != null) {
+            m_checkpoint.saveResultSpec(resultSpec);
+        }
+    }
+
+    /**
+     * Counts an input row whose results have been pushed
+     */
+    void rowCompleted() {
+        m_completedRows++;
+    }
+
+    /**
+     * Saves the checkpoint if the interval has passed since the last one. The open transaction is committed first,
+     * since the checkpoint must not contain rows that could still be rolled back.
+     *
+     * @param transaction the open transaction group or <code>null</code>
+     * @throws SQLException if the transaction cannot be committed
+     */
+    void saveIfDue(final TransactionGroup transaction) throws SQLException {
+        if (m_checkpoint != null && m_completedRows - m_checkpointRows >= m_checkpoint.getInterval()) {
+            if (transaction != null) {
+                transaction.commit();
+            }
+            m_checkpoint.save(m_completedRows);
+            m_checkpointRows = m_completedRows;
+        }
+    }
+
+    /**
+     * Deletes the checkpoint if the execution succeeded, otherwise the last saved checkpoint is kept for the next
+     * execution
+     *
+     * @param success <code>true</code> if the execution succeeded
+     */
+    void finish(final boolean success) {
+        if (m_checkpoint == null) {
+            return;
+        }
+        if (success) {
+            m_checkpoint.delete();
+        } else {
+            m_checkpoint.close();
+        }
+    }
+
+}
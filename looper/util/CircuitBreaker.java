@@ -0,0 +1,131 @@
+package org.knime.base.node.io.database.looper.util;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Pauses the dispatch of queries while the database has trouble. The breaker keeps the outcomes of the recent queries
+ * in a sliding window. When the rate of transient errors in a full window exceeds a threshold, the breaker opens and
+ * {@link #awaitClosed()} blocks the dispatching threads for the configured pause. After the pause the breaker is half
+ * open and lets the queries pass again: the first failure reopens it, the first success closes it.
+ */
+public class CircuitBreaker {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(CircuitBreaker.class);
+
+    /** Number of queries in the sliding window */
+    private static final int WINDOW_SIZE = 20;
+
+    /** Error rate of the window above which the breaker opens */
+    private static final double MAX_ERROR_RATE = 0.5;
+
+    /** Longest interval in milliseconds between two checks whether the pause is over */
+    private static final long POLL_INTERVAL = 100;
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final long m_pauseMillis;
+
+    private final boolean[] m_window = new boolean[WINDOW_SIZE];
+
+    private int m_windowIdx = 0;
+
+    private int m_windowCount = 0;
+
+    private int m_windowErrors = 0;
+
+    private State m_state = State.CLOSED;
+
+    private long m_openUntil;
+
+    private long m_openings = 0;
+
+    /**
+     * Creates a new instance of CircuitBreaker
+     *
+     * @param pauseMillis the number of milliseconds the dispatch is paused when the breaker opens
+     */
+    public CircuitBreaker(final long pauseMillis) {
+        m_pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Blocks while the breaker is open
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitClosed() throws InterruptedException {
+        while (true) {
+            final long remaining;
+            synchronized (this) {
+                if (m_state != State.OPEN) {
+                    return;
+                }
+                remaining = m_openUntil - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    m_state = State.HALF_OPEN;
+                    return;
+                }
+            }
+            Thread.sleep(Math.min(remaining, POLL_INTERVAL));
+        }
+    }
+
+    /**
+     * Records the outcome of a query
+     *
+     * @param failed <code>true</code> if the query failed with a transient error
+     */
+    public synchronized void record(final boolean failed) {
+        if (m_state == State.HALF_OPEN) {
+            if (failed) {
+                open();
+            } else {
+                m_state = State.CLOSED;
+                clearWindow();
+            }
+            return;
+        }
+        if (m_state == State.OPEN) {
+            // A query that was dispatched before the breaker opened
+            return;
+        }
+        if (m_windowCount == WINDOW_SIZE && m_window[m_windowIdx]) {
+            m_windowErrors--;
+        }
+        m_window[m_windowIdx] = failed;
+        m_windowIdx = (m_windowIdx + 1) % WINDOW_SIZE;
+        m_windowCount = Math.min(m_windowCount + 1, WINDOW_SIZE);
+        if (failed) {
+            m_windowErrors++;
+        }
+        if (m_windowCount == WINDOW_SIZE && m_windowErrors > MAX_ERROR_RATE * WINDOW_SIZE) {
+            open();
+        }
+    }
+
+    private void open() {
+        m_state = State.OPEN;
+        m_openUntil = System.currentTimeMillis() + m_pauseMillis;
+        m_openings++;
+        clearWindow();
+        LOGGER.debug("Error rate too high, pausing queries for " + m_pauseMillis + " ms");
+    }
+
+    private void clearWindow() {
+        m_windowIdx = 0;
+        m_windowCount = 0;
+        m_windowErrors = 0;
+    }
+
+    /**
+     * Returns the number of times the breaker has opened
+     *
+     * @return the number of openings
+     */
+    public synchronized long getOpenings() {
+        return m_openings;
+    }
+
+}
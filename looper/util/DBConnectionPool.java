@@ -0,0 +1,76 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.database.DatabaseConnectionSettings;
+import org.knime.core.node.port.database.DatabaseDriverLoader;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * A bounded pool of dedicated database connections that can be used concurrently. In contrast to
+ * {@link DatabaseConnectionSettings#createConnection(CredentialsProvider)}, which returns the connection that is shared
+ * by all nodes of the workflow, every connection of the pool is opened with the {@link DriverManager} and used by one
+ * thread only. The connections are closed together with the pool.
+ */
+public class DBConnectionPool implements AutoCloseable {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(DBConnectionPool.class);
+
+    private final List<Connection> m_connections = new ArrayList<Connection>();
+
+    /**
+     * Creates a new instance of DBConnectionPool and opens the given number of connections
+     *
+     * @param settings the settings of the database connection
+     * @param cp the credentials provider
+     * @param size the number of connections to open
+     * @throws Exception if the driver cannot be loaded or a connection cannot be opened
+     */
+    public DBConnectionPool(final DatabaseConnectionSettings settings, final CredentialsProvider cp,
+        final int size) throws Exception {
+        // registers the driver of the connector with the DriverManager
+        DatabaseDriverLoader.registerDriver(settings.getDriver());
+        try {
+            for (int i = 0; i < size; i++) {
+                final Connection conn = DriverManager.getConnection(settings.getJDBCUrl(),
+                    settings.getUserName(cp), settings.getPassword(cp));
+                m_connections.add(conn);
+                conn.setAutoCommit(true);
+            }
+        } catch (Exception ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the connections of the pool
+     *
+     * @return the unmodifiable list of connections
+     */
+    public List<Connection> getConnections() {
+        return Collections.unmodifiableList(m_connections);
+    }
+
+    /**
+     * Closes all connections of the pool.
+     */
+    @Override
+    public void close() {
+        for (final Connection conn : m_connections) {
+            try {
+                conn.close();
+            } catch (SQLException ex) {
+                LOGGER.debug("Exception while closing pooled connection: " + ex.getMessage(), ex);
+            }
+        }
+        m_connections.clear();
+    }
+
+}
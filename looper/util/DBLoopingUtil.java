@@ -0,0 +1,364 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.knime.core.data.BooleanValue;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.IntValue;
+import org.knime.core.data.LongValue;
+import org.knime.core.data.blob.BinaryObjectDataValue;
+import org.knime.core.data.date.DateAndTimeValue;
+import org.knime.core.data.filestore.FileStoreCell;
+import org.knime.core.node.port.database.DatabaseConnectionSettings;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * Utility methods shared by the different looping executors.
+ */
+public class DBLoopingUtil {
+
+    private static final Set<String> UPDATE_KEYWORDS =
+        new HashSet<String>(Arrays.asList("INSERT", "UPDATE", "DELETE", "MERGE", "UPSERT", "REPLACE"));
+
+    private DBLoopingUtil() {
+        // Utility class
+    }
+
+    /**
+     * Returns the identity of the given database connection, i.e. its JDBC URL and user, which identifies the
+     * stored results of the connection
+     *
+     * @param conn the settings of the database connection
+     * @param cp the credentials provider
+     * @return the identity of the connection
+     */
+    public static String getConnectionId(final DatabaseConnectionSettings conn, final CredentialsProvider cp) {
+        return conn.getJDBCUrl() + "|" + conn.getUserName(cp);
+    }
+
+    /**
+     * Binds the given cells to the parameters of the prepared statement
+     *
+     * @param stmt the prepared statement to bind the parameters to
+     * @param offset the number of parameters to skip before binding the first cell
+     * @param params the cells to bind
+     * @throws SQLException if a parameter cannot be bound
+     */
+    public static void bindParameters(final PreparedStatement stmt, final int offset, final DataCell[] params)
+        throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            bindParameter(stmt, offset + i + 1, params[i]);
+        }
+    }
+
+    /**
+     * Binds the given cell to the parameter with the given index
+     *
+     * @param stmt the prepared statement to bind the parameter to
+     * @param idx the index of the parameter (starts with 1)
+     * @param cell the cell to bind
+     * @throws SQLException if the parameter cannot be bound
+     */
+    public static void bindParameter(final PreparedStatement stmt, final int idx, final DataCell cell)
+        throws SQLException {
+        if (cell.isMissing()) {
+            stmt.setNull(idx, getSQLType(cell.getType()));
+        } else if (cell instanceof BooleanValue) {
+            stmt.setBoolean(idx, ((BooleanValue)cell).getBooleanValue());
+        } else if (cell instanceof IntValue) {
+            stmt.setInt(idx, ((IntValue)cell).getIntValue());
+        } else if (cell instanceof LongValue) {
+            stmt.setLong(idx, ((LongValue)cell).getLongValue());
+        } else if (cell instanceof DoubleValue) {
+            stmt.setDouble(idx, ((DoubleValue)cell).getDoubleValue());
+        } else if (cell instanceof DateAndTimeValue) {
+            stmt.setTimestamp(idx, new Timestamp(((DateAndTimeValue)cell).getUTCTimeInMillis()));
+        } else if (cell instanceof BinaryObjectDataValue) {
+            try {
+                stmt.setBinaryStream(idx, ((BinaryObjectDataValue)cell).openInputStream());
+            } catch (IOException ex) {
+                throw new SQLException("Could not read binary object: " + ex.getMessage(), ex);
+            }
+        } else {
+            stmt.setString(idx, cell.toString());
+        }
+    }
+
+    /**
+     * Returns the JDBC type that values of the given type are bound as
+     *
+     * @param type the KNIME type of the values
+     * @return the JDBC type, see {@link Types}
+     */
+    public static int getSQLType(final DataType type) {
+        if (type.isCompatible(BooleanValue.class)) {
+            return Types.BOOLEAN;
+        } else if (type.isCompatible(IntValue.class)) {
+            return Types.INTEGER;
+        } else if (type.isCompatible(LongValue.class)) {
+            return Types.BIGINT;
+        } else if (type.isCompatible(DoubleValue.class)) {
+            return Types.DOUBLE;
+        } else if (type.isCompatible(DateAndTimeValue.class)) {
+            return Types.TIMESTAMP;
+        } else if (type.isCompatible(BinaryObjectDataValue.class)) {
+            return Types.BLOB;
+        } else {
+            return Types.VARCHAR;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given SQL statement modifies data instead of returning a result set, i.e. if
+     * its first keyword is INSERT, UPDATE, DELETE, MERGE, UPSERT or REPLACE. Leading comments and parentheses are
+     * skipped.
+     *
+     * @param sql the SQL statement
+     * @return <code>true</code> if the statement is a data manipulation statement
+     */
+    public static boolean isUpdateStatement(final String sql) {
+        int i = 0;
+        while (i < sql.length()) {
+            final char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || c == '(') {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                final int end = sql.indexOf('\n', i);
+                i = end < 0 ? sql.length() : end + 1;
+            } else if (sql.startsWith("/*", i)) {
+                final int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? sql.length() : end + 2;
+            } else {
+                break;
+            }
+        }
+        int end = i;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) {
+            end++;
+        }
+        return UPDATE_KEYWORDS.contains(sql.substring(i, end).toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Returns <code>true</code> if one of the given result rows contains a file store cell. The data of such a cell
+     * lives in a file store of the current execution, so the cell cannot be written to a file with Java
+     * serialization and read back later.
+     *
+     * @param rows the result rows
+     * @return <code>true</code> if a cell of the rows is a {@link FileStoreCell}
+     */
+    public static boolean containsFileStoreCells(final List<DataCell[]> rows) {
+        for (final DataCell[] cells : rows) {
+            for (final DataCell cell : cells) {
+                if (cell instanceof FileStoreCell) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of the given SQL statement in which string literals and comments are replaced with spaces, so
+     * that keywords and placeholders can be searched without matching the text inside of them. Quoted identifiers are
+     * kept. The copy has the same length as the statement, so that positions in the copy apply to the statement.
+     *
+     * @param sql the SQL statement
+     * @return the masked SQL statement
+     */
+    public static String maskLiterals(final String sql) {
+        final char[] chars = sql.toCharArray();
+        int i = 0;
+        while (i < chars.length) {
+            final char c = chars[i];
+            final int end;
+            if (c == '\'' || c == '"' || c == '`') {
+                final int close = sql.indexOf(c, i + 1);
+                end = close < 0 ? chars.length : close + 1;
+                if (c != '\'') {
+                    // quoted identifiers are kept, only their content must not be mistaken for a comment
+                    i = end;
+                    continue;
+                }
+            } else if (sql.startsWith("--", i)) {
+                final int close = sql.indexOf('\n', i);
+                end = close < 0 ? chars.length : close;
+            } else if (sql.startsWith("/*", i)) {
+                final int close = sql.indexOf("*/", i + 2);
+                end = close < 0 ? chars.length : close + 2;
+            } else {
+                i++;
+                continue;
+            }
+            Arrays.fill(chars, i, end, ' ');
+            i = end;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the names of the types of the database by their JDBC type, see {@link DatabaseMetaData#getTypeInfo()}.
+     * The driver lists the types of a JDBC type ordered by how closely they map to it, so the first one is kept.
+     *
+     * @param conn the database connection
+     * @return the type names by JDBC type
+     * @throws SQLException if the type information cannot be read
+     */
+    public static Map<Integer, String> getTypeNames(final Connection conn) throws SQLException {
+        final Map<Integer, String> typeNames = new HashMap<Integer, String>();
+        try (final ResultSet rs = conn.getMetaData().getTypeInfo()) {
+            while (rs.next()) {
+                final String name = rs.getString("TYPE_NAME");
+                if (name != null) {
+                    typeNames.putIfAbsent(rs.getInt("DATA_TYPE"), name);
+                }
+            }
+        }
+        return typeNames;
+    }
+
+    /**
+     * Returns the SQL type name of a column that holds values of the given type, used for staging tables. The name is
+     * taken from the type names of the database, trying the JDBC type the values are bound as and then similar
+     * types, e.g. BIT if the database has no BOOLEAN type. A generic name is used if the database has none of them.
+     *
+     * @param type the KNIME type of the values
+     * @param maxLength the maximum length of the string values
+     * @param typeNames the type names of the database, see {@link #getTypeNames(Connection)}
+     * @return the SQL type name
+     */
+    public static String getSQLTypeName(final DataType type, final int maxLength,
+        final Map<Integer, String> typeNames) {
+        for (final int sqlType : getCompatibleSQLTypes(getSQLType(type))) {
+            final String name = typeNames.get(sqlType);
+            if (name != null) {
+                return isVariableLength(sqlType) && name.indexOf('(') < 0 ? name + "(" + Math.max(1, maxLength) + ")"
+                    : name;
+            }
+        }
+        return getDefaultSQLTypeName(type, maxLength);
+    }
+
+    /**
+     * Returns the JDBC types whose columns can hold the values bound as the given JDBC type in the order of preference
+     */
+    private static int[] getCompatibleSQLTypes(final int sqlType) {
+        switch (sqlType) {
+            case Types.BOOLEAN:
+                return new int[]{Types.BOOLEAN, Types.BIT, Types.SMALLINT};
+            case Types.INTEGER:
+                return new int[]{Types.INTEGER, Types.BIGINT, Types.NUMERIC};
+            case Types.BIGINT:
+                return new int[]{Types.BIGINT, Types.NUMERIC, Types.DECIMAL};
+            case Types.DOUBLE:
+                return new int[]{Types.DOUBLE, Types.FLOAT, Types.NUMERIC};
+            case Types.TIMESTAMP:
+                return new int[]{Types.TIMESTAMP};
+            case Types.BLOB:
+                return new int[]{Types.BLOB, Types.LONGVARBINARY, Types.VARBINARY};
+            default:
+                return new int[]{Types.VARCHAR, Types.NVARCHAR, Types.LONGVARCHAR};
+        }
+    }
+
+    private static boolean isVariableLength(final int sqlType) {
+        return sqlType == Types.VARCHAR || sqlType == Types.NVARCHAR || sqlType == Types.VARBINARY;
+    }
+
+    private static String getDefaultSQLTypeName(final DataType type, final int maxLength) {
+        if (type.isCompatible(BooleanValue.class)) {
+            return "boolean";
+        } else if (type.isCompatible(IntValue.class)) {
+            return "integer";
+        } else if (type.isCompatible(LongValue.class)) {
+            return "bigint";
+        } else if (type.isCompatible(DoubleValue.class)) {
+            return "double precision";
+        } else if (type.isCompatible(DateAndTimeValue.class)) {
+            return "timestamp";
+        } else if (type.isCompatible(BinaryObjectDataValue.class)) {
+            return "blob";
+        } else {
+            return "varchar(" + Math.max(1, maxLength) + ")";
+        }
+    }
+
+    /**
+     * Returns a key for the value of the given cell that is equal for cells which the database would consider equal
+     * in an equality predicate, e.g. an {@link org.knime.core.data.def.IntCell} and a
+     * {@link org.knime.core.data.def.DoubleCell} with the same value.
+     *
+     * @param cell the cell to create the key for
+     * @return the key of the cell or <code>null</code> if the cell is missing since NULL never matches
+     */
+    public static String createValueKey(final DataCell cell) {
+        if (cell.isMissing()) {
+            return null;
+        } else if (cell instanceof BooleanValue) {
+            return Boolean.toString(((BooleanValue)cell).getBooleanValue());
+        } else if (cell instanceof LongValue) {
+            return BigDecimal.valueOf(((LongValue)cell).getLongValue()).toPlainString();
+        } else if (cell instanceof DoubleValue) {
+            final double value = ((DoubleValue)cell).getDoubleValue();
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return Double.toString(value);
+            }
+            return new BigDecimal(Double.toString(value)).stripTrailingZeros().toPlainString();
+        } else if (cell instanceof DateAndTimeValue) {
+            return Long.toString(((DateAndTimeValue)cell).getUTCTimeInMillis());
+        } else {
+            return cell.toString();
+        }
+    }
+
+
+    /**
+     * Returns <code>true</code> if the values of the given type are integers, which the database compares exactly
+     * with the values of its integer columns. Other values might be compared by the collation of the database, e.g.
+     * ignoring the case or trailing white space of text, or after a conversion to the type of the column, and thus
+     * cannot be matched locally.
+     *
+     * @param type the type of the values
+     * @return <code>true</code> if the values are integers
+     */
+    public static boolean isExactKeyType(final DataType type) {
+        return !type.isCompatible(BooleanValue.class)
+            && (type.isCompatible(LongValue.class) || type.isCompatible(IntValue.class));
+    }
+
+    /**
+     * Returns the integer value of the given cell or <code>null</code> if the cell is missing or not an integer
+     *
+     * @param cell the cell
+     * @return the integer value or <code>null</code>
+     * @see #isExactKeyType(DataType)
+     */
+    public static Long getExactKey(final DataCell cell) {
+        if (cell.isMissing() || cell instanceof BooleanValue) {
+            return null;
+        } else if (cell instanceof LongValue) {
+            return ((LongValue)cell).getLongValue();
+        } else if (cell instanceof IntValue) {
+            return (long)((IntValue)cell).getIntValue();
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,214 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * A Java Flight Recorder event whose type is defined at run time with <code>jdk.jfr.EventFactory</code>. All flight
+ * recorder classes are accessed through reflection, so that the database nodes neither need <code>jdk.jfr</code> to
+ * compile nor to run. The methods mirror the ones of <code>jdk.jfr.Event</code> and the values of the fields are set
+ * by their index in the definition of the {@link Type}.
+ */
+public final class FlightRecorderEvent {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(FlightRecorderEvent.class);
+
+    private final Type m_type;
+
+    private final Object m_event;
+
+    private FlightRecorderEvent(final Type type, final Object event) {
+        m_type = type;
+        m_event = event;
+    }
+
+    /**
+     * Returns <code>true</code> if the event is enabled in a running recording
+     *
+     * @return <code>true</code> if the event is enabled
+     */
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(m_type.invoke(m_type.m_isEnabled, m_event));
+    }
+
+    /**
+     * Starts the timing of the event
+     */
+    public void begin() {
+        m_type.invoke(m_type.m_begin, m_event);
+    }
+
+    /**
+     * Ends the timing of the event
+     */
+    public void end() {
+        m_type.invoke(m_type.m_end, m_event);
+    }
+
+    /**
+     * Returns <code>true</code> if the event is enabled and passes the thresholds of the running recording, i.e. if
+     * its fields should be set and it should be committed
+     *
+     * @return <code>true</code> if the event should be committed
+     */
+    public boolean shouldCommit() {
+        return Boolean.TRUE.equals(m_type.invoke(m_type.m_shouldCommit, m_event));
+    }
+
+    /**
+     * Sets the value of a field of the event
+     *
+     * @param index the index of the field in the definition of the type
+     * @param value the value of the field
+     */
+    public void set(final int index, final Object value) {
+        m_type.invoke(m_type.m_set, m_event, index, value);
+    }
+
+    /**
+     * Writes the event to the running recording
+     */
+    public void commit() {
+        m_type.invoke(m_type.m_commit, m_event);
+    }
+
+    /**
+     * A field of an event type
+     */
+    public static final class Field {
+
+        private final String m_name;
+
+        private final Class<?> m_type;
+
+        private final String m_label;
+
+        private final String m_description;
+
+        /**
+         * Creates a new instance of Field
+         *
+         * @param name the name of the recorded field
+         * @param type the type of the field, a primitive type or {@link String}
+         * @param label the label of the field
+         * @param description the description of the field or <code>null</code>
+         */
+        public Field(final String name, final Class<?> type, final String label, final String description) {
+            m_name = name;
+            m_type = type;
+            m_label = label;
+            m_description = description;
+        }
+    }
+
+    /**
+     * The type of events, registered with the flight recorder when it is created
+     */
+    public static final class Type {
+
+        private final Object m_factory;
+
+        private final Method m_newEvent;
+
+        private final Method m_isEnabled;
+
+        private final Method m_begin;
+
+        private final Method m_end;
+
+        private final Method m_shouldCommit;
+
+        private final Method m_set;
+
+        private final Method m_commit;
+
+        private Type(final Object factory) throws ReflectiveOperationException {
+            m_factory = factory;
+            m_newEvent = factory.getClass().getMethod("newEvent");
+            final Class<?> eventClass = loadClass("jdk.jfr.Event");
+            m_isEnabled = eventClass.getMethod("isEnabled");
+            m_begin = eventClass.getMethod("begin");
+            m_end = eventClass.getMethod("end");
+            m_shouldCommit = eventClass.getMethod("shouldCommit");
+            m_set = eventClass.getMethod("set", int.class, Object.class);
+            m_commit = eventClass.getMethod("commit");
+        }
+
+        /**
+         * Defines a new event type. The stack trace is never recorded.
+         *
+         * @param name the unique name of the event type
+         * @param label the label of the event type
+         * @param description the description of the event type
+         * @param category the category path of the event type
+         * @param fields the fields of the events
+         * @return the event type or <code>null</code> if the running Java does not support flight recorder events
+         */
+        public static Type create(final String name, final String label, final String description,
+            final String[] category, final Field... fields) {
+            if (!FlightRecorderUtil.isAvailable()) {
+                return null;
+            }
+            try {
+                final List<Object> annotations = new ArrayList<Object>(Arrays.asList(annotation("Name", name),
+                    annotation("Label", label), annotation("Description", description),
+                    annotation("Category", category), annotation("StackTrace", Boolean.FALSE)));
+                final Constructor<?> descriptor =
+                    loadClass("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+                final List<Object> descriptors = new ArrayList<Object>();
+                for (final Field field : fields) {
+                    final List<Object> fieldAnnotations = new ArrayList<Object>();
+                    fieldAnnotations.add(annotation("Label", field.m_label));
+                    if (field.m_description != null) {
+                        fieldAnnotations.add(annotation("Description", field.m_description));
+                    }
+                    descriptors.add(descriptor.newInstance(field.m_type, field.m_name, fieldAnnotations));
+                }
+                final Method create = loadClass("jdk.jfr.EventFactory").getMethod("create", List.class, List.class);
+                return new Type(create.invoke(null, annotations, descriptors));
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+                LOGGER.debug("Could not create flight recorder event type " + name + ": " + ex.getMessage(), ex);
+                return null;
+            }
+        }
+
+        private static Object annotation(final String annotation, final Object value)
+            throws ReflectiveOperationException {
+            return loadClass("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class)
+                .newInstance(loadClass("jdk.jfr." + annotation), value);
+        }
+
+        private static Class<?> loadClass(final String name) throws ClassNotFoundException {
+            return Class.forName(name, true, FlightRecorderEvent.class.getClassLoader());
+        }
+
+        /**
+         * Creates a new event of this type
+         *
+         * @return the event or <code>null</code> if it cannot be created
+         */
+        public FlightRecorderEvent newEvent() {
+            final Object event = invoke(m_newEvent, m_factory);
+            return event == null ? null : new FlightRecorderEvent(this, event);
+        }
+
+        /**
+         * Invokes the given method, failures are logged and ignored since events must never fail the execution
+         */
+        private Object invoke(final Method method, final Object target, final Object... args) {
+            try {
+                return method.invoke(target, args);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                LOGGER.debug("Could not invoke " + method.getName() + " of flight recorder event: " + ex.getMessage(),
+                    ex);
+                return null;
+            }
+        }
+    }
+
+}
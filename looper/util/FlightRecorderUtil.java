@@ -0,0 +1,53 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.Locale;
+
+/**
+ * Utility methods for the Java Flight Recorder events of the database nodes. The flight recorder is not available on
+ * every Java 8 runtime, so the events are defined through reflection, see {@link FlightRecorderEvent}.
+ */
+public final class FlightRecorderUtil {
+
+    private static final boolean AVAILABLE = isEventClassPresent();
+
+    private FlightRecorderUtil() {
+        // Utility class
+    }
+
+    private static boolean isEventClassPresent() {
+        try {
+            Class.forName("jdk.jfr.EventFactory", false, FlightRecorderUtil.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the running Java supports flight recorder events
+     *
+     * @return <code>true</code> if events can be created
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Returns a hash of the given SQL statement that ignores differences in white space and case, so that the events
+     * of the same statement can be grouped
+     *
+     * @param sql the SQL statement
+     * @return the shape hash of the statement
+     */
+    public static long getShapeHash(final String sql) {
+        final String normalized = sql.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+        // FNV-1a gives fewer collisions than String.hashCode for long, similar statements
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < normalized.length(); i++) {
+            hash ^= normalized.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+}
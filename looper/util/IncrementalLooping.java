@@ -0,0 +1,171 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.knime.base.node.io.database.looper.util.LoopingOutput.ResultWriter;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.streamable.RowInput;
+
+/**
+ * Connects an execution in incremental mode to its {@link IncrementalResultStore}. Input rows whose results are
+ * retained from the previous execution are written directly, only the other rows are passed on to be looped. A row is
+ * identified by the value of the key column or by its row key.
+ */
+final class IncrementalLooping {
+
+    private final IncrementalResultStore m_store;
+
+    private final int m_keyIndex;
+
+    private final LoopingRowAssembler m_assembler;
+
+    /**
+     * Creates a new instance of IncrementalLooping
+     *
+     * @param store the store with the results of the previous execution
+     * @param keyIndex the index of the input column that identifies a row or -1 to use the row ID
+     * @param assembler the row assembler
+     */
+    IncrementalLooping(final IncrementalResultStore store, final int keyIndex, final LoopingRowAssembler assembler) {
+        m_store = store;
+        m_keyIndex = keyIndex;
+        m_assembler = assembler;
+    }
+
+    /**
+     * Returns the store with the results of the previous execution
+     *
+     * @return the incremental result store
+     */
+    IncrementalResultStore getStore() {
+        return m_store;
+    }
+
+    /**
+     * Opens the store and returns the result columns of the previous execution
+     *
+     * @return the result spec of the previous execution or <code>null</code> if there is none
+     * @throws IOException if the files of this execution cannot be created
+     */
+    DataTableSpec open() throws IOException {
+        m_store.open();
+        return m_store.getResultSpec();
+    }
+
+    /**
+     * Returns an input that only returns the rows whose results are not retained, the retained results are passed to
+     * the given writer
+     *
+     * @param input the input rows
+     * @param writer the writer of the retained results
+     * @return the rows that need to be looped
+     */
+    RowInput filter(final RowInput input, final ResultWriter writer) {
+        return new IncrementalRowInput(input, writer);
+    }
+
+    /**
+     * Keeps the results of a looped row for the next execution
+     *
+     * @param input the input row
+     * @param results the converted result rows
+     */
+    void put(final DataRow input, final List<DataCell[]> results) {
+        try {
+            m_store.put(getKey(input), m_assembler.getParameters(input), results);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not store incremental results: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Stores the result columns of this execution
+     *
+     * @param resultSpec the spec of the result columns
+     */
+    void saveResultSpec(final DataTableSpec resultSpec) {
+        try {
+            m_store.saveResultSpec(resultSpec);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not save incremental result spec: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Replaces the results of the previous execution with the ones of this execution
+     *
+     * @throws IOException if the files cannot be written
+     */
+    void commit() throws IOException {
+        m_store.commit();
+    }
+
+    /**
+     * Closes the store
+     */
+    void close() {
+        m_store.close();
+    }
+
+    /**
+     * Returns the key under which the results of the given input row are retained for the next execution, the value
+     * of the key column or the row key if no key column is set or its value is missing
+     */
+    private String getKey(final DataRow row) {
+        if (m_keyIndex >= 0) {
+            final String key = DBLoopingUtil.createValueKey(row.getCell(m_keyIndex));
+            if (key != null) {
+                return key;
+            }
+        }
+        return row.getKey().getString();
+    }
+
+    /**
+     * Passes only the input rows whose results are not retained from the previous execution, the retained results
+     * are written directly
+     */
+    private final class IncrementalRowInput extends RowInput {
+
+        private final RowInput m_input;
+
+        private final ResultWriter m_writer;
+
+        private IncrementalRowInput(final RowInput input, final ResultWriter writer) {
+            m_input = input;
+            m_writer = writer;
+        }
+
+        @Override
+        public DataTableSpec getDataTableSpec() {
+            return m_input.getDataTableSpec();
+        }
+
+        @Override
+        public DataRow poll() throws InterruptedException {
+            DataRow row;
+            while ((row = m_input.poll()) != null) {
+                final List<DataCell[]> results;
+                try {
+                    results = m_store.get(getKey(row), m_assembler.getParameters(row));
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Could not read incremental results: " + ex.getMessage(), ex);
+                }
+                if (results == null) {
+                    return row;
+                }
+                m_writer.write(row, results);
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            m_input.close();
+        }
+    }
+
+}
@@ -0,0 +1,387 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettings;
+
+/**
+ * Keeps the results of the previous execution per input row, so that an execution in incremental mode only needs to
+ * loop the rows that are new or whose parameter values changed. The results of an execution are written to a data
+ * file, one record per input row, and a sorted index of the 64 bit hashes of the row keys points to the records, so
+ * that millions of retained rows need little memory. Every record also holds the full row key and parameter values,
+ * which are compared before results are retained, so that colliding hashes and duplicate keys never return the
+ * results of another row. The results of the current execution are written to a new
+ * generation of the files, which replaces the previous one when the execution is committed. Rows that caused an
+ * error are not kept and looped again in the next execution.
+ */
+public class IncrementalResultStore implements AutoCloseable {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(IncrementalResultStore.class);
+
+    private static final String STATE_FILE = "incremental.properties";
+
+    private static final String SPEC_FILE = "spec.xml";
+
+    private static final String KEY_GENERATION = "generation";
+
+    private static final String KEY_VERSION = "version";
+
+    // The version of the file format, the records of older versions do not contain the full keys
+    private static final String VERSION = "2";
+
+    private final File m_dir;
+
+    private int m_generation = 0;
+
+    private DataTableSpec m_resultSpec;
+
+    private RandomAccessFile m_data;
+
+    // The index of the previous execution, sorted by the key hashes
+    private long[] m_keyHashes = new long[0];
+
+    private long[] m_paramHashes = new long[0];
+
+    private long[] m_offsets = new long[0];
+
+    private DataOutputStream m_newData;
+
+    private long m_newOffset = 0;
+
+    private long[][] m_newIndex = new long[1024][];
+
+    private int m_newCount = 0;
+
+    private long m_retained = 0;
+
+    private long m_looped = 0;
+
+    /**
+     * Creates a new instance of IncrementalResultStore
+     *
+     * @param root the root directory of the stores or <code>null</code> for the default directory
+     * @param key the identity of the node, i.e. the connection, the statement and the settings
+     * @throws IOException if the store directory cannot be created
+     */
+    public IncrementalResultStore(final File root, final String key) throws IOException {
+        m_dir = new File(root == null ? getDefaultRoot() : root, PersistentResultCache.hash(key));
+        if (!m_dir.isDirectory() && !m_dir.mkdirs()) {
+            throw new IOException("Could not create incremental directory \"" + m_dir.getAbsolutePath() + "\".");
+        }
+    }
+
+    /**
+     * Returns the default root directory of the stores in the KNIME temp directory
+     *
+     * @return the default root directory
+     */
+    public static File getDefaultRoot() {
+        return new File(KNIMEConstants.getKNIMETempDir(), "db_looper_incremental");
+    }
+
+    /**
+     * Reads the index of the previous execution and creates the files of this execution
+     *
+     * @throws IOException if the files of this execution cannot be created
+     */
+    public void open() throws IOException {
+        final File stateFile = new File(m_dir, STATE_FILE);
+        if (stateFile.isFile()) {
+            try {
+                readPrevious(stateFile);
+            } catch (IOException | NumberFormatException | InvalidSettingsException ex) {
+                LOGGER.warn("Could not read the results of the previous execution, looping all rows: "
+                    + ex.getMessage(), ex);
+                closeData();
+                m_keyHashes = new long[0];
+                m_paramHashes = new long[0];
+                m_offsets = new long[0];
+                m_resultSpec = null;
+            }
+        }
+        m_newData = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getDataFile(
+            m_generation + 1))));
+    }
+
+    private void readPrevious(final File stateFile) throws IOException, InvalidSettingsException {
+        final Properties props = new Properties();
+        try (final InputStream in = new FileInputStream(stateFile)) {
+            props.load(in);
+        }
+        if (!VERSION.equals(props.getProperty(KEY_VERSION))) {
+            throw new IOException("The results were stored by an older version.");
+        }
+        m_generation = Integer.parseInt(props.getProperty(KEY_GENERATION));
+        final File specFile = new File(m_dir, SPEC_FILE);
+        if (specFile.isFile()) {
+            try (final InputStream in = new FileInputStream(specFile)) {
+                m_resultSpec = DataTableSpec.load(NodeSettings.loadFromXML(in));
+            }
+        }
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(getIndexFile(m_generation))))) {
+            final int count = in.readInt();
+            m_keyHashes = new long[count];
+            m_paramHashes = new long[count];
+            m_offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                m_keyHashes[i] = in.readLong();
+                m_paramHashes[i] = in.readLong();
+                m_offsets[i] = in.readLong();
+            }
+        }
+        m_data = new RandomAccessFile(getDataFile(m_generation), "r");
+    }
+
+    private File getDataFile(final int generation) {
+        return new File(m_dir, "data-" + generation + ".bin");
+    }
+
+    private File getIndexFile(final int generation) {
+        return new File(m_dir, "index-" + generation + ".bin");
+    }
+
+    /**
+     * Returns the spec of the result columns of the previous execution
+     *
+     * @return the result spec or <code>null</code> if there is no previous execution
+     */
+    public DataTableSpec getResultSpec() {
+        return m_resultSpec;
+    }
+
+    /**
+     * Stores the spec of the result columns of this execution
+     *
+     * @param resultSpec the spec of the result columns
+     * @throws IOException if the spec cannot be written
+     */
+    public void saveResultSpec(final DataTableSpec resultSpec) throws IOException {
+        final NodeSettings settings = new NodeSettings("result_spec");
+        resultSpec.save(settings);
+        try (final OutputStream out = new FileOutputStream(new File(m_dir, SPEC_FILE + ".tmp"))) {
+            settings.saveToXML(out);
+        }
+    }
+
+    /**
+     * Returns the retained results of the given row and keeps them for the next execution
+     *
+     * @param key the key of the input row
+     * @param params the parameter values of the input row
+     * @return the results of the previous execution or <code>null</code> if the row is new or its parameter values
+     *         changed
+     * @throws IOException if the results cannot be read or written
+     */
+    public List<DataCell[]> get(final String key, final DataCell[] params) throws IOException {
+        final long keyHash = hash(key);
+        final String paramKey = createParamKey(params);
+        final long paramHash = hash(paramKey);
+        // Duplicate keys and colliding hashes share an index entry, the full values of the record decide
+        int idx = Arrays.binarySearch(m_keyHashes, keyHash);
+        while (idx > 0 && m_keyHashes[idx - 1] == keyHash) {
+            idx--;
+        }
+        for (; idx >= 0 && idx < m_keyHashes.length && m_keyHashes[idx] == keyHash; idx++) {
+            if (m_paramHashes[idx] != paramHash) {
+                continue;
+            }
+            m_data.seek(m_offsets[idx]);
+            if (!key.equals(readString(m_data)) || !paramKey.equals(readString(m_data))) {
+                continue;
+            }
+            final byte[] bytes = new byte[m_data.readInt()];
+            m_data.readFully(bytes);
+            final List<DataCell[]> results;
+            try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                results = Arrays.asList((DataCell[][])in.readObject());
+            } catch (ClassNotFoundException ex) {
+                throw new IOException("Could not read retained results: " + ex.getMessage(), ex);
+            }
+            append(key, paramKey, bytes);
+            m_retained++;
+            return results;
+        }
+        m_looped++;
+        return null;
+    }
+
+    /**
+     * Keeps the results of a looped row for the next execution. Results that contain file store cells are not kept,
+     * since the file stores do not outlive the execution, so the row is looped again in the next execution.
+     *
+     * @param key the key of the input row
+     * @param params the parameter values of the input row
+     * @param results the results of the row
+     * @throws IOException if the results cannot be written
+     */
+    public void put(final String key, final DataCell[] params, final List<DataCell[]> results) throws IOException {
+        if (DBLoopingUtil.containsFileStoreCells(results)) {
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(results.toArray(new DataCell[results.size()][]));
+        }
+        append(key, createParamKey(params), bytes.toByteArray());
+    }
+
+    private void append(final String key, final String paramKey, final byte[] bytes) throws IOException {
+        if (m_newCount == m_newIndex.length) {
+            m_newIndex = Arrays.copyOf(m_newIndex, m_newCount * 2);
+        }
+        m_newIndex[m_newCount++] = new long[]{hash(key), hash(paramKey), m_newOffset};
+        m_newOffset += writeString(m_newData, key);
+        m_newOffset += writeString(m_newData, paramKey);
+        m_newData.writeInt(bytes.length);
+        m_newData.write(bytes);
+        m_newOffset += 4 + bytes.length;
+    }
+
+    /**
+     * Writes the given string as length prefixed UTF-8 and returns the number of written bytes
+     */
+    private static int writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    private static String readString(final RandomAccessFile in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of rows whose results were retained from the previous execution
+     *
+     * @return the number of retained rows
+     */
+    public long getRetainedRows() {
+        return m_retained;
+    }
+
+    /**
+     * Returns the number of rows that had to be looped because they are new or changed
+     *
+     * @return the number of looped rows
+     */
+    public long getLoopedRows() {
+        return m_looped;
+    }
+
+    /**
+     * Replaces the results of the previous execution with the ones of this execution
+     *
+     * @throws IOException if the files cannot be written
+     */
+    public void commit() throws IOException {
+        m_newData.close();
+        m_newData = null;
+        final long[][] index = Arrays.copyOf(m_newIndex, m_newCount);
+        Arrays.sort(index, (a, b) -> Long.compare(a[0], b[0]));
+        final int generation = m_generation + 1;
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            getIndexFile(generation))))) {
+            out.writeInt(index.length);
+            for (final long[] entry : index) {
+                out.writeLong(entry[0]);
+                out.writeLong(entry[1]);
+                out.writeLong(entry[2]);
+            }
+        }
+        final File specFile = new File(m_dir, SPEC_FILE + ".tmp");
+        if (specFile.isFile()) {
+            Files.move(specFile.toPath(), new File(m_dir, SPEC_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        final Properties props = new Properties();
+        props.setProperty(KEY_GENERATION, Integer.toString(generation));
+        props.setProperty(KEY_VERSION, VERSION);
+        final File tmpFile = new File(m_dir, STATE_FILE + ".tmp");
+        try (final OutputStream out = new FileOutputStream(tmpFile)) {
+            props.store(out, "KNIME Database Looper incremental results");
+        }
+        Files.move(tmpFile.toPath(), new File(m_dir, STATE_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        closeData();
+        getDataFile(m_generation).delete();
+        getIndexFile(m_generation).delete();
+        m_generation = generation;
+    }
+
+    /**
+     * Closes the files, the files of this execution are removed unless it has been committed
+     */
+    @Override
+    public void close() {
+        closeData();
+        if (m_newData != null) {
+            try {
+                m_newData.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Could not close incremental data file: " + ex.getMessage(), ex);
+            }
+            m_newData = null;
+            getDataFile(m_generation + 1).delete();
+            new File(m_dir, SPEC_FILE + ".tmp").delete();
+        }
+    }
+
+    private void closeData() {
+        if (m_data != null) {
+            try {
+                m_data.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Could not close incremental data file: " + ex.getMessage(), ex);
+            }
+            m_data = null;
+        }
+    }
+
+    private static long hash(final String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static String createParamKey(final DataCell[] params) {
+        final StringBuilder buf = new StringBuilder();
+        for (final DataCell cell : params) {
+            final String key = DBLoopingUtil.createValueKey(cell);
+            buf.append(key == null ? "\u0001" : key).append('\u0000');
+        }
+        return buf.toString();
+    }
+
+}
@@ -0,0 +1,159 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.blob.BinaryObjectCellFactory;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+
+/**
+ * A Bloom filter of the distinct key values of the looped statement, which tells for a parameter tuple whether it
+ * cannot match any row, so that its query can be skipped. The filter only supports integer keys, see
+ * {@link DBLoopingUtil#isExactKeyType(org.knime.core.data.DataType)}, since it compares the values exactly while the
+ * database might compare other values by its collation or after a conversion. A tuple with a missing value never
+ * matches since NULL never matches. The filter has no false negatives and about {@link #FALSE_POSITIVE_RATE} false
+ * positives, which are simply queried.
+ */
+public class KeyPrefilter {
+
+    /** The targeted rate of tuples that pass the filter without matching a row */
+    public static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final long[] m_bits;
+
+    private final long m_bitCount;
+
+    private final int m_hashCount;
+
+    private final long m_keyCount;
+
+    private KeyPrefilter(final long[] hashes, final int count) {
+        final double ln2 = Math.log(2);
+        final long bitCount = Math.max(64, (long)Math.ceil(-count * Math.log(FALSE_POSITIVE_RATE) / (ln2 * ln2)));
+        m_bits = new long[(int)Math.min(Integer.MAX_VALUE - 8, (bitCount + 63) / 64)];
+        m_bitCount = m_bits.length * 64L;
+        m_hashCount = Math.max(1, (int)Math.round((double)m_bitCount / Math.max(1, count) * ln2));
+        m_keyCount = count;
+        for (int i = 0; i < count; i++) {
+            final long hash = hashes[i];
+            for (int k = 0; k < m_hashCount; k++) {
+                final long bit = index(hash, k);
+                m_bits[(int)(bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+
+    /**
+     * Executes the given statement, which returns the distinct key values, and creates the filter of its rows
+     *
+     * @param connSettings the settings of the database connection
+     * @param stmt the statement to execute
+     * @param sql the statement that returns the distinct key values in the order of the placeholders
+     * @param exec the execution context
+     * @return the filter of the key values or <code>null</code> if a key column is not an integer column
+     * @throws SQLException if the key values cannot be read
+     */
+    public static KeyPrefilter load(final DatabaseQueryConnectionSettings connSettings, final Statement stmt,
+        final String sql, final ExecutionContext exec) throws SQLException {
+        long[] hashes = new long[1024];
+        int count = 0;
+        try (final ResultSet rs = stmt.executeQuery(sql)) {
+            final ResultSetConverter converter =
+                new ResultSetConverter(connSettings, rs.getMetaData(), 0, new BinaryObjectCellFactory(exec));
+            for (final DataColumnSpec colSpec : converter.getDataTableSpec()) {
+                if (!DBLoopingUtil.isExactKeyType(colSpec.getType())) {
+                    return null;
+                }
+            }
+            while (rs.next()) {
+                final String key = createKey(converter.convert(rs, 0));
+                if (key == null) {
+                    continue;
+                }
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count * 2);
+                }
+                hashes[count++] = hash(key);
+            }
+        }
+        return new KeyPrefilter(hashes, count);
+    }
+
+    /**
+     * Returns <code>false</code> if the given parameter tuple cannot match any key
+     *
+     * @param params the parameter tuple in the order of the key columns
+     * @return <code>true</code> if the tuple might match a key
+     */
+    public boolean mightMatch(final DataCell[] params) {
+        final String key = createKey(params);
+        if (key == null) {
+            return false;
+        }
+        final long hash = hash(key);
+        for (int k = 0; k < m_hashCount; k++) {
+            final long bit = index(hash, k);
+            if ((m_bits[(int)(bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of distinct keys in the filter
+     *
+     * @return the number of keys
+     */
+    public long getKeyCount() {
+        return m_keyCount;
+    }
+
+    /**
+     * Returns the size of the filter
+     *
+     * @return the size of the filter in bytes
+     */
+    public long getSizeInBytes() {
+        return m_bits.length * 8L;
+    }
+
+    /**
+     * Returns the k-th bit of the given hash by double hashing with the two halves of the hash
+     */
+    private long index(final long hash, final int k) {
+        final long combined = (hash >>> 32) + k * (hash | 1L);
+        return (combined & Long.MAX_VALUE) % m_bitCount;
+    }
+
+    private static String createKey(final DataCell[] cells) {
+        final StringBuilder buf = new StringBuilder();
+        for (final DataCell cell : cells) {
+            final Long key = DBLoopingUtil.getExactKey(cell);
+            if (key == null) {
+                return null;
+            }
+            buf.append(key).append('\u0000');
+        }
+        return buf.toString();
+    }
+
+    private static long hash(final String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // Final mix so that both halves of the hash are well distributed
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
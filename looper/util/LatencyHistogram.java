@@ -0,0 +1,123 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with logarithmic buckets in the style of an HDR histogram. Every power of two
+ * is divided into 32 linear sub-buckets, which keeps the relative error of the reported percentiles below about 3%
+ * with a fixed memory footprint for the whole range of long values. Recording is lock free, so the histogram can be
+ * shared by concurrent workers.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** Values below this limit get a bucket of their own */
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT << 1;
+
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + LINEAR_LIMIT;
+
+    private final AtomicLongArray m_counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong m_count = new AtomicLong();
+
+    private final AtomicLong m_total = new AtomicLong();
+
+    private final AtomicLong m_max = new AtomicLong();
+
+    /**
+     * Records the given latency
+     *
+     * @param nanos the latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        m_counts.incrementAndGet(getBucket(value));
+        m_count.incrementAndGet();
+        m_total.addAndGet(value);
+        m_max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int getBucket(final long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int)value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int)(value >>> shift);
+    }
+
+    /**
+     * Returns the highest value that is recorded in the given bucket
+     */
+    private static long getHighestValue(final int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        final int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        final long subBucket = (bucket & (SUB_BUCKET_COUNT - 1)) | SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the number of recorded values
+     *
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return m_count.get();
+    }
+
+    /**
+     * Returns the sum of all recorded values
+     *
+     * @return the total in nanoseconds
+     */
+    public long getTotal() {
+        return m_total.get();
+    }
+
+    /**
+     * Returns the largest recorded value
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMax() {
+        return m_max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values
+     *
+     * @return the mean in nanoseconds or 0 if no value has been recorded
+     */
+    public double getMean() {
+        final long count = m_count.get();
+        return count == 0 ? 0 : m_total.get() / (double)count;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of the recorded values lie
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the percentile in nanoseconds or 0 if no value has been recorded
+     */
+    public long getPercentile(final double percentile) {
+        final long count = m_count.get();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long)Math.ceil(Math.min(100, percentile) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += m_counts.get(i);
+            if (seen >= rank) {
+                return Math.min(getHighestValue(i), m_max.get());
+            }
+        }
+        return m_max.get();
+    }
+
+}
@@ -0,0 +1,270 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.DataValueComparator;
+import org.knime.core.data.LongValue;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.LongCell;
+import org.knime.core.data.sort.BufferedDataTableSorter;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.streamable.RowOutput;
+
+/**
+ * Sorts the input rows by their parameter values before they are looped, so that consecutive statements hit
+ * neighbouring index pages of the database, and restores the order of the input rows in the outputs afterwards. The
+ * rows are buffered in tables and sorted with the {@link BufferedDataTableSorter}, which sorts chunks in memory and
+ * merges them from disk if the table does not fit into memory.
+ */
+public class LocalityReorderer {
+
+    private final LoopingRowAssembler m_assembler;
+
+    private final List<ReorderedRowOutput> m_outputs = new ArrayList<ReorderedRowOutput>();
+
+    private long m_currentOrder = -1;
+
+    /**
+     * Creates a new instance of LocalityReorderer
+     *
+     * @param assembler the assembler that provides the parameter values of the input rows
+     */
+    public LocalityReorderer(final LoopingRowAssembler assembler) {
+        m_assembler = assembler;
+    }
+
+    /**
+     * Reads all rows of the given input and returns them sorted by their parameter values. The input is closed.
+     *
+     * @param input the input rows
+     * @param exec the execution context
+     * @return the sorted input rows
+     * @throws InterruptedException if reading the input is interrupted
+     * @throws CanceledExecutionException if the execution is canceled
+     */
+    public RowInput sort(final RowInput input, final ExecutionContext exec)
+        throws InterruptedException, CanceledExecutionException {
+        final DataTableSpec inSpec = input.getDataTableSpec();
+        final BufferedDataContainer buffer = exec.createDataContainer(appendOrderColumns(inSpec, "Input order"));
+        long order = 0;
+        DataRow row;
+        while ((row = input.poll()) != null) {
+            exec.checkCanceled();
+            exec.setMessage("Reading row " + (order + 1) + " for reordering");
+            buffer.addRowToTable(new DefaultRow(row.getKey(), appendCells(row, new LongCell(order++))));
+        }
+        input.close();
+        buffer.close();
+
+        final DataType[] types = m_assembler.getParameterTypes();
+        final DataValueComparator[] comparators = new DataValueComparator[types.length];
+        for (int i = 0; i < types.length; i++) {
+            comparators[i] = types[i].getComparator();
+        }
+        final int orderIdx = inSpec.getNumColumns();
+        final Comparator<DataRow> comparator = (a, b) -> {
+            final DataCell[] paramsA = m_assembler.getParameters(a);
+            final DataCell[] paramsB = m_assembler.getParameters(b);
+            for (int i = 0; i < comparators.length; i++) {
+                final int result = comparators[i].compare(paramsA[i], paramsB[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Long.compare(getOrder(a, orderIdx), getOrder(b, orderIdx));
+        };
+        exec.setMessage("Sorting input rows by parameter values");
+        final BufferedDataTable sorted = new BufferedDataTableSorter(buffer.getTable(), comparator).sort(exec);
+        return new SortedRowInput(inSpec, sorted);
+    }
+
+    /**
+     * Returns an output that buffers the pushed rows and writes them to the given output in the order of the input
+     * rows once {@link #finish(ExecutionContext)} is called
+     *
+     * @param target the output the rows are finally written to
+     * @param spec the spec of the rows
+     * @param renumber <code>true</code> if the row keys should be regenerated in the restored order
+     * @param exec the execution context that creates the buffer
+     * @return the reordering output
+     */
+    public RowOutput wrap(final RowOutput target, final DataTableSpec spec, final boolean renumber,
+        final ExecutionContext exec) {
+        final ReorderedRowOutput output = new ReorderedRowOutput(target, exec.createDataContainer(
+            appendOrderColumns(spec, "Input order", "Output order")), renumber);
+        m_outputs.add(output);
+        return output;
+    }
+
+    /**
+     * Sets the input row whose results are pushed next
+     *
+     * @param input a row returned by the sorted input
+     */
+    public void setCurrentRow(final DataRow input) {
+        m_currentOrder = input instanceof OrderedRow ? ((OrderedRow)input).m_order : -1;
+    }
+
+    /**
+     * Sorts the buffered rows of all outputs by the order of the input rows and writes them to the target outputs
+     *
+     * @param exec the execution context
+     * @throws InterruptedException if writing the rows is interrupted
+     * @throws CanceledExecutionException if the execution is canceled
+     */
+    public void finish(final ExecutionContext exec) throws InterruptedException, CanceledExecutionException {
+        exec.setMessage("Restoring the order of the input rows");
+        for (final ReorderedRowOutput output : m_outputs) {
+            output.finish(exec);
+        }
+    }
+
+    private static DataTableSpec appendOrderColumns(final DataTableSpec spec, final String... names) {
+        final Set<String> existing = new HashSet<String>();
+        for (final DataColumnSpec colSpec : spec) {
+            existing.add(colSpec.getName());
+        }
+        final DataColumnSpec[] colSpecs = new DataColumnSpec[names.length];
+        for (int i = 0; i < names.length; i++) {
+            final String name = ResultSetConverter.createUniqueName(existing, names[i]);
+            existing.add(name);
+            colSpecs[i] = new DataColumnSpecCreator(name, LongCell.TYPE).createSpec();
+        }
+        return new DataTableSpec(spec, new DataTableSpec(colSpecs));
+    }
+
+    private static DataCell[] appendCells(final DataRow row, final DataCell... cells) {
+        final DataCell[] result = new DataCell[row.getNumCells() + cells.length];
+        for (int i = 0; i < row.getNumCells(); i++) {
+            result[i] = row.getCell(i);
+        }
+        System.arraycopy(cells, 0, result, row.getNumCells(), cells.length);
+        return result;
+    }
+
+    private static DataCell[] removeCells(final DataRow row, final int count) {
+        final DataCell[] result = new DataCell[row.getNumCells() - count];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = row.getCell(i);
+        }
+        return result;
+    }
+
+    private static long getOrder(final DataRow row, final int idx) {
+        return ((LongValue)row.getCell(idx)).getLongValue();
+    }
+
+    /**
+     * An input row that knows its position in the original input
+     */
+    private static final class OrderedRow extends DefaultRow {
+
+        private final long m_order;
+
+        private OrderedRow(final RowKey key, final DataCell[] cells, final long order) {
+            super(key, cells);
+            m_order = order;
+        }
+    }
+
+    /**
+     * Returns the rows of the sorted table without the order column
+     */
+    private static final class SortedRowInput extends RowInput {
+
+        private final DataTableSpec m_spec;
+
+        private final CloseableRowIterator m_iterator;
+
+        private SortedRowInput(final DataTableSpec spec, final BufferedDataTable sorted) {
+            m_spec = spec;
+            m_iterator = sorted.iterator();
+        }
+
+        @Override
+        public DataTableSpec getDataTableSpec() {
+            return m_spec;
+        }
+
+        @Override
+        public DataRow poll() {
+            if (!m_iterator.hasNext()) {
+                return null;
+            }
+            final DataRow row = m_iterator.next();
+            return new OrderedRow(row.getKey(), removeCells(row, 1), getOrder(row, m_spec.getNumColumns()));
+        }
+
+        @Override
+        public void close() {
+            m_iterator.close();
+        }
+    }
+
+    /**
+     * Buffers the pushed rows together with the position of their input row
+     */
+    private final class ReorderedRowOutput extends RowOutput {
+
+        private final RowOutput m_target;
+
+        private final BufferedDataContainer m_buffer;
+
+        private final boolean m_renumber;
+
+        private long m_pushed = 0;
+
+        private ReorderedRowOutput(final RowOutput target, final BufferedDataContainer buffer,
+            final boolean renumber) {
+            m_target = target;
+            m_buffer = buffer;
+            m_renumber = renumber;
+        }
+
+        @Override
+        public void push(final DataRow row) {
+            m_buffer.addRowToTable(new DefaultRow(row.getKey(),
+                appendCells(row, new LongCell(m_currentOrder), new LongCell(m_pushed++))));
+        }
+
+        private void finish(final ExecutionContext exec) throws InterruptedException, CanceledExecutionException {
+            m_buffer.close();
+            final int orderIdx = m_buffer.getTable().getDataTableSpec().getNumColumns() - 2;
+            final BufferedDataTable sorted = new BufferedDataTableSorter(m_buffer.getTable(), (a, b) -> {
+                final int result = Long.compare(getOrder(a, orderIdx), getOrder(b, orderIdx));
+                return result != 0 ? result : Long.compare(getOrder(a, orderIdx + 1), getOrder(b, orderIdx + 1));
+            }).sort(exec);
+            long rowIdx = 0;
+            try (final CloseableRowIterator iterator = sorted.iterator()) {
+                while (iterator.hasNext()) {
+                    exec.checkCanceled();
+                    final DataRow row = iterator.next();
+                    final RowKey key = m_renumber ? RowKey.createRowKey(rowIdx++) : row.getKey();
+                    m_target.push(new DefaultRow(key, removeCells(row, 2)));
+                }
+            }
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            m_target.close();
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.data.DataCell;
+
+/**
+ * An in-memory hash index of preloaded result rows on their integer key columns, which answers the lookups of the
+ * parameter tuples without querying the database. A single key is indexed in primitive arrays with open addressing,
+ * several keys are indexed by the lists of their values. Only integer keys are supported, see
+ * {@link DBLoopingUtil#isExactKeyType(org.knime.core.data.DataType)}, since the index compares the values exactly.
+ * Rows with a missing key value are never returned since NULL never matches.
+ */
+public abstract class LookupIndex {
+
+    /**
+     * Creates the index of the given result rows
+     *
+     * @param rows the result rows
+     * @param keyIndices the indices of the integer key columns in the result rows in the order of the placeholders
+     * @return the index
+     */
+    public static LookupIndex create(final List<DataCell[]> rows, final int[] keyIndices) {
+        if (keyIndices.length == 1) {
+            return new LongLookupIndex(rows, keyIndices[0]);
+        }
+        return new ValueLookupIndex(rows, keyIndices);
+    }
+
+    /**
+     * Returns the result rows of the given parameter tuple
+     *
+     * @param params the parameter tuple
+     * @return the matching result rows in the order of the preloaded rows, never <code>null</code>
+     */
+    public abstract List<DataCell[]> get(DataCell[] params);
+
+    /**
+     * Indexes a single integer key in primitive arrays
+     */
+    private static final class LongLookupIndex extends LookupIndex {
+
+        private final DataCell[][] m_rows;
+
+        // Open addressing table of the distinct keys and the first row of every key
+        private final long[] m_keys;
+
+        private final int[] m_firstRows;
+
+        // The next row with the same key or -1, following the order of the rows
+        private final int[] m_nextRows;
+
+        private final int m_mask;
+
+        private LongLookupIndex(final List<DataCell[]> rows, final int keyIdx) {
+            m_rows = rows.toArray(new DataCell[rows.size()][]);
+            final int capacity = Integer.highestOneBit(Math.max(2 * m_rows.length, 2) - 1) << 1;
+            m_keys = new long[capacity];
+            m_firstRows = new int[capacity];
+            Arrays.fill(m_firstRows, -1);
+            m_nextRows = new int[m_rows.length];
+            m_mask = capacity - 1;
+            // Insert in reverse order so that the chains follow the order of the rows
+            for (int i = m_rows.length - 1; i >= 0; i--) {
+                final Long key = DBLoopingUtil.getExactKey(m_rows[i][keyIdx]);
+                m_nextRows[i] = -1;
+                if (key == null) {
+                    continue;
+                }
+                final int slot = find(key);
+                if (m_firstRows[slot] >= 0) {
+                    m_nextRows[i] = m_firstRows[slot];
+                } else {
+                    m_keys[slot] = key;
+                }
+                m_firstRows[slot] = i;
+            }
+        }
+
+        /**
+         * Returns the slot of the given key or the empty slot where it would be inserted
+         */
+        private int find(final long key) {
+            int slot = (int)mix(key) & m_mask;
+            while (m_firstRows[slot] >= 0 && m_keys[slot] != key) {
+                slot = (slot + 1) & m_mask;
+            }
+            return slot;
+        }
+
+        private static long mix(final long key) {
+            final long h = key * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 32);
+        }
+
+        @Override
+        public List<DataCell[]> get(final DataCell[] params) {
+            final Long key = DBLoopingUtil.getExactKey(params[0]);
+            if (key == null) {
+                return Collections.emptyList();
+            }
+            final int first = m_firstRows[find(key)];
+            if (first < 0) {
+                return Collections.emptyList();
+            }
+            final List<DataCell[]> results = new ArrayList<DataCell[]>();
+            for (int i = first; i >= 0; i = m_nextRows[i]) {
+                results.add(m_rows[i]);
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Indexes several integer keys by the lists of their values
+     */
+    private static final class ValueLookupIndex extends LookupIndex {
+
+        private final Map<List<Long>, List<DataCell[]>> m_index = new HashMap<List<Long>, List<DataCell[]>>();
+
+        private ValueLookupIndex(final List<DataCell[]> rows, final int[] keyIndices) {
+            for (final DataCell[] row : rows) {
+                final DataCell[] keyCells = new DataCell[keyIndices.length];
+                for (int i = 0; i < keyIndices.length; i++) {
+                    keyCells[i] = row[keyIndices[i]];
+                }
+                final List<Long> key = createKey(keyCells);
+                if (key != null) {
+                    m_index.computeIfAbsent(key, k -> new ArrayList<DataCell[]>()).add(row);
+                }
+            }
+        }
+
+        /**
+         * Returns the values of the given cells or <code>null</code> if a cell is missing
+         */
+        private static List<Long> createKey(final DataCell[] cells) {
+            final Long[] key = new Long[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                key[i] = DBLoopingUtil.getExactKey(cells[i]);
+                if (key[i] == null) {
+                    return null;
+                }
+            }
+            return Arrays.asList(key);
+        }
+
+        @Override
+        public List<DataCell[]> get(final DataCell[] params) {
+            final List<Long> key = createKey(params);
+            final List<DataCell[]> results = key == null ? null : m_index.get(key);
+            return results == null ? Collections.<DataCell[]> emptyList() : results;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.knime.base.node.io.database.looper.util;
+
+import org.knime.base.node.io.database.looper.util.FlightRecorderEvent.Field;
+
+/**
+ * Java Flight Recorder event that is emitted for every query the Database Looper sends to the database. The event is
+ * only filled and committed if it is enabled in the running recording, so it costs next to nothing otherwise. The
+ * event type is defined through {@link FlightRecorderEvent}, so <code>jdk.jfr</code> is not needed at compile time.
+ */
+public final class LooperQueryEvent {
+
+    private static final FlightRecorderEvent.Type TYPE = FlightRecorderEvent.Type.create(
+        "org.knime.database.LooperQuery", "Database Looper Query", "Execution of a looped SQL statement",
+        new String[]{"KNIME", "Database"},
+        new Field("sqlShapeHash", long.class, "SQL Shape Hash",
+            "Hash of the normalized looped SQL statement, equal for all iterations of the same statement"),
+        new Field("loopingMode", String.class, "Looping Mode", "The executor that sent the query"),
+        new Field("parameterCount", int.class, "Bound Parameters",
+            "Number of parameter values bound to the statement"),
+        new Field("rowsReturned", long.class, "Rows Returned",
+            "Number of result rows or, for data manipulation statements, number of executed batch entries"),
+        new Field("failed", boolean.class, "Failed", null));
+
+    private final FlightRecorderEvent m_event;
+
+    private LooperQueryEvent(final FlightRecorderEvent event) {
+        m_event = event;
+    }
+
+    /**
+     * Creates a new event
+     *
+     * @return the event or <code>null</code> if the running Java does not support flight recorder events
+     */
+    static LooperQueryEvent create() {
+        final FlightRecorderEvent event = TYPE == null ? null : TYPE.newEvent();
+        return event == null ? null : new LooperQueryEvent(event);
+    }
+
+    /**
+     * Starts the timing of the event
+     */
+    void begin() {
+        m_event.begin();
+    }
+
+    /**
+     * Ends the timing of the event
+     */
+    void end() {
+        m_event.end();
+    }
+
+    /**
+     * Returns <code>true</code> if the event should be filled and committed
+     *
+     * @return <code>true</code> if the recording wants the event
+     */
+    boolean shouldCommit() {
+        return m_event.shouldCommit();
+    }
+
+    /**
+     * Sets the fields of the event
+     *
+     * @param shapeHash the hash of the SQL statement, see {@link FlightRecorderUtil#getShapeHash(String)}
+     * @param mode the name of the looping mode
+     * @param parameters the number of bound parameters
+     * @param rows the number of returned rows
+     * @param fail <code>true</code> if the query failed
+     */
+    void set(final long shapeHash, final String mode, final int parameters, final long rows, final boolean fail) {
+        m_event.set(0, shapeHash);
+        m_event.set(1, mode);
+        m_event.set(2, parameters);
+        m_event.set(3, rows);
+        m_event.set(4, fail);
+    }
+
+    /**
+     * Writes the event to the running recording
+     */
+    void commit() {
+        m_event.commit();
+    }
+
+}
@@ -0,0 +1,409 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTable;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.FileUtil;
+
+/**
+ * Periodically persists the progress of an execution, so that a failed execution can be resumed. A checkpoint
+ * consists of the number of input rows whose results are complete and the output and error rows of these input rows.
+ * The rows are appended to the checkpoint files while they are pushed to the outputs and the counts are written
+ * whenever a checkpoint is saved, so saving a checkpoint only flushes the files. The checkpoint directory is derived
+ * from a key that identifies the statement, the settings and the input, so a checkpoint is only resumed by an
+ * execution with the same key.
+ */
+public class LoopingCheckpoint implements AutoCloseable {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(LoopingCheckpoint.class);
+
+    private static final String STATE_FILE = "checkpoint.properties";
+
+    private static final String SPEC_FILE = "spec.xml";
+
+    private static final String KEY_GENERATION = "generation";
+
+    private static final String KEY_INPUT_ROWS = "input_rows";
+
+    private static final String KEY_OUTPUT_ROWS = "output_rows";
+
+    private static final String KEY_ERROR_ROWS = "error_rows";
+
+    /** Number of written rows after which the object streams forget the written objects */
+    private static final int RESET_INTERVAL = 1000;
+
+    private final File m_dir;
+
+    private final int m_interval;
+
+    private int m_generation = 0;
+
+    private long m_inputRows = 0;
+
+    private long m_outputRows = 0;
+
+    private long m_errorRows = 0;
+
+    private DataTableSpec m_resultSpec;
+
+    private RowFile m_outputFile;
+
+    private RowFile m_errorFile;
+
+    private boolean m_failed = false;
+
+    /**
+     * Creates a new instance of LoopingCheckpoint
+     *
+     * @param root the root directory of the checkpoints or <code>null</code> for the default directory
+     * @param key the identity of the execution, i.e. the connection, the statement, the settings and the input
+     * @param interval the number of input rows after which a checkpoint is saved
+     * @throws IOException if the checkpoint directory cannot be created
+     */
+    public LoopingCheckpoint(final File root, final String key, final int interval) throws IOException {
+        m_dir = new File(root == null ? getDefaultRoot() : root, PersistentResultCache.hash(key));
+        m_interval = Math.max(1, interval);
+        if (!m_dir.isDirectory() && !m_dir.mkdirs()) {
+            throw new IOException("Could not create checkpoint directory \"" + m_dir.getAbsolutePath() + "\".");
+        }
+    }
+
+    /**
+     * Returns the default root directory of the checkpoints in the KNIME temp directory
+     *
+     * @return the default root directory
+     */
+    public static File getDefaultRoot() {
+        return new File(KNIMEConstants.getKNIMETempDir(), "db_looper_checkpoints");
+    }
+
+    /**
+     * Returns the number of input rows after which a checkpoint is saved
+     *
+     * @return the checkpoint interval
+     */
+    public int getInterval() {
+        return m_interval;
+    }
+
+    /**
+     * Reads the last saved checkpoint of a previous execution
+     *
+     * @return the number of input rows whose results are stored in the checkpoint, 0 if there is no checkpoint
+     */
+    public long load() {
+        final File stateFile = new File(m_dir, STATE_FILE);
+        if (!stateFile.isFile()) {
+            return 0;
+        }
+        final Properties props = new Properties();
+        try (final InputStream in = new FileInputStream(stateFile)) {
+            props.load(in);
+            m_generation = Integer.parseInt(props.getProperty(KEY_GENERATION));
+            m_inputRows = Long.parseLong(props.getProperty(KEY_INPUT_ROWS));
+            m_outputRows = Long.parseLong(props.getProperty(KEY_OUTPUT_ROWS));
+            m_errorRows = Long.parseLong(props.getProperty(KEY_ERROR_ROWS));
+            final File specFile = new File(m_dir, SPEC_FILE);
+            if (specFile.isFile()) {
+                try (final InputStream specIn = new FileInputStream(specFile)) {
+                    m_resultSpec = DataTableSpec.load(NodeSettings.loadFromXML(specIn));
+                }
+            }
+        } catch (IOException | NumberFormatException | InvalidSettingsException ex) {
+            LOGGER.warn("Could not read checkpoint, starting from the first row: " + ex.getMessage(), ex);
+            m_generation = 0;
+            m_inputRows = 0;
+            m_outputRows = 0;
+            m_errorRows = 0;
+            m_resultSpec = null;
+        }
+        return m_inputRows;
+    }
+
+    /**
+     * Returns the spec of the result columns of the loaded checkpoint
+     *
+     * @return the result spec or <code>null</code> if it was not known when the checkpoint was saved
+     */
+    public DataTableSpec getResultSpec() {
+        return m_resultSpec;
+    }
+
+    /**
+     * Returns the number of output rows of the loaded checkpoint
+     *
+     * @return the number of output rows
+     */
+    public long getOutputRows() {
+        return m_outputRows;
+    }
+
+    /**
+     * Opens the files of this execution, must be called after {@link #load()} and before the rows are tracked
+     *
+     * @throws IOException if the files cannot be created
+     */
+    public void begin() throws IOException {
+        final int generation = m_generation + 1;
+        m_outputFile = new RowFile(new File(m_dir, "output-" + generation + ".bin"));
+        m_errorFile = new RowFile(new File(m_dir, "errors-" + generation + ".bin"));
+    }
+
+    /**
+     * Pushes the rows of the loaded checkpoint to the given outputs, which should be the ones returned by
+     * {@link #trackOutput(RowOutput)} and {@link #trackErrors(RowOutput)} so that the rows are kept in the files of
+     * this execution
+     *
+     * @param output the output for the result rows, may be <code>null</code> if the checkpoint has no result rows
+     * @param errorOutput the output for the error rows
+     * @throws IOException if the rows cannot be read
+     * @throws InterruptedException if an output is interrupted
+     */
+    public void restore(final RowOutput output, final RowOutput errorOutput) throws IOException,
+        InterruptedException {
+        restore(new File(m_dir, "output-" + m_generation + ".bin"), m_outputRows, output);
+        restore(new File(m_dir, "errors-" + m_generation + ".bin"), m_errorRows, errorOutput);
+    }
+
+    private static void restore(final File file, final long rows, final RowOutput output) throws IOException,
+        InterruptedException {
+        if (rows == 0) {
+            return;
+        }
+        if (output == null) {
+            throw new IOException("The result columns of the checkpoint are unknown.");
+        }
+        try (final ObjectInputStream in =
+            new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            for (long i = 0; i < rows; i++) {
+                final RowKey key = new RowKey(in.readUTF());
+                output.push(new DefaultRow(key, (DataCell[])in.readObject()));
+            }
+        } catch (EOFException | ClassNotFoundException ex) {
+            throw new IOException("Checkpoint file \"" + file + "\" is incomplete: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns an output that pushes the rows to the given output and appends them to the checkpoint
+     *
+     * @param output the output for the result rows
+     * @return the tracking output
+     */
+    public RowOutput trackOutput(final RowOutput output) {
+        return new TrackingRowOutput(output, m_outputFile);
+    }
+
+    /**
+     * Returns an output that pushes the rows to the given output and appends them to the checkpoint
+     *
+     * @param errorOutput the output for the error rows
+     * @return the tracking output
+     */
+    public RowOutput trackErrors(final RowOutput errorOutput) {
+        return new TrackingRowOutput(errorOutput, m_errorFile);
+    }
+
+    /**
+     * Stores the spec of the result columns, which is needed to create the output table when the checkpoint is
+     * resumed
+     *
+     * @param resultSpec the spec of the result columns
+     */
+    public void saveResultSpec(final DataTableSpec resultSpec) {
+        final NodeSettings settings = new NodeSettings("result_spec");
+        resultSpec.save(settings);
+        try (final OutputStream out = new FileOutputStream(new File(m_dir, SPEC_FILE))) {
+            settings.saveToXML(out);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * Saves a checkpoint. All rows that have been pushed so far must belong to the given number of input rows.
+     *
+     * @param inputRows the number of input rows whose results are complete
+     */
+    public void save(final long inputRows) {
+        if (m_failed) {
+            return;
+        }
+        final File tmpFile = new File(m_dir, STATE_FILE + ".tmp");
+        try {
+            m_outputFile.flush();
+            m_errorFile.flush();
+            final Properties props = new Properties();
+            props.setProperty(KEY_GENERATION, Integer.toString(m_generation + 1));
+            props.setProperty(KEY_INPUT_ROWS, Long.toString(inputRows));
+            props.setProperty(KEY_OUTPUT_ROWS, Long.toString(m_outputFile.m_rows));
+            props.setProperty(KEY_ERROR_ROWS, Long.toString(m_errorFile.m_rows));
+            try (final OutputStream out = new FileOutputStream(tmpFile)) {
+                props.store(out, "KNIME Database Looper checkpoint");
+            }
+            Files.move(tmpFile.toPath(), new File(m_dir, STATE_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("Saved checkpoint after " + inputRows + " input rows");
+            // The files of the previous execution are no longer referenced
+            new File(m_dir, "output-" + m_generation + ".bin").delete();
+            new File(m_dir, "errors-" + m_generation + ".bin").delete();
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private void fail(final IOException ex) {
+        if (!m_failed) {
+            m_failed = true;
+            LOGGER.warn("Could not write checkpoint, the execution cannot be resumed: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Removes the checkpoint, e.g. after the execution finished successfully
+     */
+    public void delete() {
+        close();
+        FileUtil.deleteRecursively(m_dir);
+    }
+
+    /**
+     * Closes the checkpoint files, the last saved checkpoint is kept
+     */
+    @Override
+    public void close() {
+        for (final RowFile file : new RowFile[]{m_outputFile, m_errorFile}) {
+            if (file != null) {
+                try {
+                    file.m_out.close();
+                } catch (IOException ex) {
+                    LOGGER.debug("Could not close checkpoint file: " + ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a fingerprint of the row keys and values of the given table
+     *
+     * @param table the table
+     * @param exec the execution monitor to check for cancellation
+     * @return the fingerprint of the table
+     * @throws CanceledExecutionException if the execution is canceled
+     */
+    public static String fingerprint(final DataTable table, final ExecutionMonitor exec)
+        throws CanceledExecutionException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is available on every Java platform
+            throw new IllegalStateException(ex);
+        }
+        long rowIdx = 0;
+        for (final DataRow row : table) {
+            if (++rowIdx % 10000 == 0) {
+                exec.checkCanceled();
+            }
+            digest.update(row.getKey().getString().getBytes(StandardCharsets.UTF_8));
+            for (final DataCell cell : row) {
+                digest.update((byte)0);
+                digest.update((cell.isMissing() ? "?" : cell.toString()).getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte)'\n');
+        }
+        return PersistentResultCache.toHex(digest.digest());
+    }
+
+    /**
+     * A file of checkpoint rows
+     */
+    private final class RowFile {
+
+        private final ObjectOutputStream m_out;
+
+        private long m_rows = 0;
+
+        private RowFile(final File file) throws IOException {
+            m_out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        }
+
+        private void write(final DataRow row) {
+            if (m_failed) {
+                return;
+            }
+            final DataCell[] cells = new DataCell[row.getNumCells()];
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = row.getCell(i);
+            }
+            try {
+                m_out.writeUTF(row.getKey().getString());
+                m_out.writeObject(cells);
+                if (++m_rows % RESET_INTERVAL == 0) {
+                    m_out.reset();
+                }
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+
+        private void flush() throws IOException {
+            m_out.flush();
+        }
+    }
+
+    /**
+     * Pushes the rows to an output and writes them to a checkpoint file
+     */
+    private static final class TrackingRowOutput extends RowOutput {
+
+        private final RowOutput m_output;
+
+        private final RowFile m_file;
+
+        private TrackingRowOutput(final RowOutput output, final RowFile file) {
+            m_output = output;
+            m_file = file;
+        }
+
+        @Override
+        public void push(final DataRow row) throws InterruptedException {
+            m_output.push(row);
+            m_file.write(row);
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            m_output.close();
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of a running looper execution that are read by the node view. The executors only update atomic
+ * counters in the hot loop, reading and formatting the values is left to the view, which polls the monitor in a
+ * fixed interval.
+ */
+public class LoopingMonitor {
+
+    private final AtomicLong m_rows = new AtomicLong();
+
+    private final AtomicLong m_errors = new AtomicLong();
+
+    private final AtomicInteger m_inFlight = new AtomicInteger();
+
+    private final AtomicLong m_lookups = new AtomicLong();
+
+    private final AtomicLong m_cacheHits = new AtomicLong();
+
+    private final LatencyHistogram m_latencies = new LatencyHistogram();
+
+    private final long m_startMillis = System.currentTimeMillis();
+
+    private volatile long m_endMillis = 0;
+
+    /**
+     * Counts a processed input row
+     *
+     * @param failed <code>true</code> if the row has been written to the error table
+     */
+    public void rowProcessed(final boolean failed) {
+        m_rows.incrementAndGet();
+        if (failed) {
+            m_errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Registers a query that is sent to the database
+     *
+     * @return the start time of the query that needs to be passed to {@link #queryFinished(long)}
+     */
+    public long queryStarted() {
+        m_inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Unregisters a finished query and records its latency
+     *
+     * @param startNanos the start time returned by {@link #queryStarted()}
+     */
+    public void queryFinished(final long startNanos) {
+        m_latencies.record(System.nanoTime() - startNanos);
+        m_inFlight.decrementAndGet();
+    }
+
+    /**
+     * Counts a lookup of a parameter tuple in the result memo or result cache
+     *
+     * @param hit <code>true</code> if the results were found
+     */
+    public void lookup(final boolean hit) {
+        m_lookups.incrementAndGet();
+        if (hit) {
+            m_cacheHits.incrementAndGet();
+        }
+    }
+
+    /**
+     * Marks the execution as finished
+     */
+    public void finished() {
+        m_endMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the number of processed input rows
+     *
+     * @return the number of processed input rows
+     */
+    public long getRows() {
+        return m_rows.get();
+    }
+
+    /**
+     * Returns the number of input rows that have been written to the error table
+     *
+     * @return the number of errors
+     */
+    public long getErrors() {
+        return m_errors.get();
+    }
+
+    /**
+     * Returns the number of queries that are currently executed
+     *
+     * @return the number of queries in flight
+     */
+    public int getQueriesInFlight() {
+        return m_inFlight.get();
+    }
+
+    /**
+     * Returns the latencies of the finished queries
+     *
+     * @return the latency histogram
+     */
+    public LatencyHistogram getLatencies() {
+        return m_latencies;
+    }
+
+    /**
+     * Returns the ratio of the parameter tuples that were answered by the result memo or cache
+     *
+     * @return the cache hit rate between 0 and 1 or -1 if no cache is used
+     */
+    public double getCacheHitRate() {
+        final long lookups = m_lookups.get();
+        return lookups == 0 ? -1 : m_cacheHits.get() / (double)lookups;
+    }
+
+    /**
+     * Returns the time since the start of the execution or the duration of the finished execution
+     *
+     * @return the elapsed time in milliseconds
+     */
+    public long getElapsedMillis() {
+        final long end = m_endMillis;
+        return (end == 0 ? System.currentTimeMillis() : end) - m_startMillis;
+    }
+
+    /**
+     * Returns <code>true</code> if the execution is finished
+     *
+     * @return <code>true</code> if the execution is finished
+     */
+    public boolean isFinished() {
+        return m_endMillis != 0;
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.knime.base.node.io.database.looper.util;
+
+/**
+ * Holds the options that define how the results of the looped SQL statement are combined with the input rows.
+ */
+public class LoopingOptions {
+
+    private final boolean m_appendInputColumns;
+
+    private final boolean m_includeEmptyResults;
+
+    private final boolean m_retainAllColumns;
+
+    private final boolean m_failIfException;
+
+    /**
+     * Creates a new instance of LoopingOptions
+     *
+     * @param appendInputColumns <code>true</code> if the input columns should be appended to the result rows
+     * @param includeEmptyResults <code>true</code> if input rows without any result should be kept
+     * @param retainAllColumns <code>true</code> if all input columns should be appended, <code>false</code> if only
+     *            the columns used as placeholders should be appended
+     * @param failIfException <code>true</code> if the execution should fail on the first error
+     */
+    public LoopingOptions(final boolean appendInputColumns, final boolean includeEmptyResults,
+        final boolean retainAllColumns, final boolean failIfException) {
+        m_appendInputColumns = appendInputColumns;
+        m_includeEmptyResults = includeEmptyResults;
+        m_retainAllColumns = retainAllColumns;
+        m_failIfException = failIfException;
+    }
+
+    /**
+     * Returns <code>true</code> if the input columns should be appended to the result rows
+     *
+     * @return <code>true</code> if the input columns should be appended to the result rows
+     */
+    public boolean isAppendInputColumns() {
+        return m_appendInputColumns;
+    }
+
+    /**
+     * Returns <code>true</code> if input rows without any result should be kept. Only used if the input columns are
+     * appended.
+     *
+     * @return <code>true</code> if input rows without any result should be kept
+     */
+    public boolean isIncludeEmptyResults() {
+        return m_appendInputColumns && m_includeEmptyResults;
+    }
+
+    /**
+     * Returns <code>true</code> if all input columns should be appended. Only used if the input columns are
+     * appended.
+     *
+     * @return <code>true</code> if all input columns should be appended
+     */
+    public boolean isRetainAllColumns() {
+        return m_appendInputColumns && m_retainAllColumns;
+    }
+
+    /**
+     * Returns <code>true</code> if the execution should fail on the first error
+     *
+     * @return <code>true</code> if the execution should fail on the first error
+     */
+    public boolean isFailIfException() {
+        return m_failIfException;
+    }
+
+}
@@ -0,0 +1,329 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.streamable.BufferedDataTableRowOutput;
+import org.knime.core.node.streamable.RowOutput;
+
+/**
+ * The output and the error output of an execution. The output table is created once the result columns are known,
+ * results that are written before are kept until then, see {@link #defer(DataRow, List)}. If the input rows are
+ * reordered, both outputs restore the order of the input rows when they are closed.
+ */
+final class LoopingOutput {
+
+    private final LoopingRowAssembler m_assembler;
+
+    private final CheckpointTracker m_checkpoints;
+
+    private ExecutionContext m_exec;
+
+    private RowOutput m_output;
+
+    private RowOutput m_errorOutput;
+
+    private BufferedDataTableRowOutput m_tableOutput;
+
+    private BufferedDataTableRowOutput m_errorTableOutput;
+
+    private LocalityReorderer m_reorderer;
+
+    private boolean m_outputReordered = false;
+
+    private final List<PendingResults> m_pendingResults = new ArrayList<PendingResults>();
+
+    /**
+     * Creates a new instance of LoopingOutput
+     *
+     * @param assembler the row assembler
+     * @param checkpoints the checkpoint tracker whose checkpoint receives the rows of the output table
+     */
+    LoopingOutput(final LoopingRowAssembler assembler, final CheckpointTracker checkpoints) {
+        m_assembler = assembler;
+        m_checkpoints = checkpoints;
+    }
+
+    /**
+     * Sets the reorderer that restores the order of the input rows
+     *
+     * @param reorderer the reorderer or <code>null</code> if the input rows are not reordered
+     */
+    void setReorderer(final LocalityReorderer reorderer) {
+        m_reorderer = reorderer;
+    }
+
+    /**
+     * Returns the reorderer that restores the order of the input rows
+     *
+     * @return the reorderer or <code>null</code> if the input rows are not reordered
+     */
+    LocalityReorderer getReorderer() {
+        return m_reorderer;
+    }
+
+    /**
+     * Creates the error table of an execution that writes to new tables
+     *
+     * @param exec the execution context
+     * @return the output of the error table
+     */
+    RowOutput createErrorTable(final ExecutionContext exec) {
+        m_errorTableOutput = new BufferedDataTableRowOutput(exec.createDataContainer(m_assembler.getErrorSpec()));
+        return m_errorTableOutput;
+    }
+
+    /**
+     * Sets the outputs of the execution
+     *
+     * @param exec the execution context
+     * @param output the output for the result rows or <code>null</code> if a new table should be created once the
+     *            result columns are known
+     * @param errorOutput the output for the error rows
+     */
+    void open(final ExecutionContext exec, final RowOutput output, final RowOutput errorOutput) {
+        m_exec = exec;
+        m_output = output;
+        m_errorOutput = errorOutput;
+    }
+
+    /**
+     * Appends the rows of both outputs to the checkpoint from now on
+     */
+    void trackCheckpoint() {
+        m_errorOutput = m_checkpoints.trackErrors(m_errorOutput);
+        if (m_output != null) {
+            m_output = m_checkpoints.trackOutput(m_output);
+        }
+    }
+
+    /**
+     * Lets the reorderer restore the order of the error rows, the output is wrapped once it is initialized
+     *
+     * @param exec the execution context
+     */
+    void reorderErrors(final ExecutionContext exec) {
+        m_errorOutput = m_reorderer.wrap(m_errorOutput, m_assembler.getErrorSpec(), false, exec);
+    }
+
+    /**
+     * Returns the output for the result rows
+     *
+     * @return the output or <code>null</code> if the result columns are not known yet
+     */
+    RowOutput getOutput() {
+        return m_output;
+    }
+
+    /**
+     * Returns the output for the error rows
+     *
+     * @return the error output
+     */
+    RowOutput getErrorOutput() {
+        return m_errorOutput;
+    }
+
+    /**
+     * Returns <code>true</code> if the result columns are known and the output has been initialized
+     *
+     * @return <code>true</code> if results can be written
+     */
+    boolean isInitialized() {
+        return m_assembler.getOutputSpec() != null && m_output != null;
+    }
+
+    /**
+     * Initializes the output with the given result columns, creating the output table if no output is given
+     *
+     * @param resultSpec the spec of the result columns
+     */
+    void init(final DataTableSpec resultSpec) {
+        final DataTableSpec outSpec = m_assembler.createOutputSpec(resultSpec);
+        if (m_output == null) {
+            m_tableOutput = new BufferedDataTableRowOutput(m_exec.createDataContainer(outSpec));
+            m_output = m_checkpoints.trackOutput(m_tableOutput);
+        }
+        if (m_reorderer != null && !m_outputReordered) {
+            m_output = m_reorderer.wrap(m_output, outSpec, true, m_exec);
+            m_outputReordered = true;
+        }
+    }
+
+    /**
+     * Writes the output rows of the given input row
+     *
+     * @param input the input row
+     * @param results the converted result rows
+     * @throws InterruptedException if the output is interrupted
+     */
+    void write(final DataRow input, final List<DataCell[]> results) throws InterruptedException {
+        if (m_reorderer != null) {
+            m_reorderer.setCurrentRow(input);
+        }
+        m_assembler.addRows(input, results, m_output);
+    }
+
+    /**
+     * Writes the error row of the given input row
+     *
+     * @param input the input row
+     * @param message the error message
+     * @throws InterruptedException if the output is interrupted
+     */
+    void writeError(final DataRow input, final String message) throws InterruptedException {
+        if (m_reorderer != null) {
+            m_reorderer.setCurrentRow(input);
+        }
+        m_errorOutput.push(m_assembler.createErrorRow(input, message));
+    }
+
+    /**
+     * Keeps the results of an input row that is written before the result columns are known
+     *
+     * @param input the input row
+     * @param results the converted result rows
+     */
+    void defer(final DataRow input, final List<DataCell[]> results) {
+        m_pendingResults.add(new PendingResults(input, results));
+    }
+
+    /**
+     * Returns <code>true</code> if results have been deferred
+     *
+     * @return <code>true</code> if there are pending results
+     */
+    boolean hasPendingResults() {
+        return !m_pendingResults.isEmpty();
+    }
+
+    /**
+     * Returns the result columns derived from the deferred results, see {@link #createResultSpec(List)}
+     *
+     * @return the result spec
+     */
+    DataTableSpec createPendingResultSpec() {
+        final List<DataCell[]> rows = new ArrayList<DataCell[]>();
+        for (final PendingResults pending : m_pendingResults) {
+            rows.addAll(pending.m_results);
+        }
+        return createResultSpec(rows);
+    }
+
+    /**
+     * Passes the deferred results in their order to the given writer, which must only be called once the output is
+     * initialized
+     *
+     * @param writer the writer of the results
+     * @throws InterruptedException if the output is interrupted
+     */
+    void flushPendingResults(final ResultWriter writer) throws InterruptedException {
+        for (final PendingResults pending : m_pendingResults) {
+            writer.write(pending.m_input, pending.m_results);
+        }
+        m_pendingResults.clear();
+    }
+
+    /**
+     * Returns the spec of result columns derived from the given result rows, one column per value whose type is the
+     * common super type of its values or string if all values are missing
+     *
+     * @param rows the result rows
+     * @return the result spec
+     */
+    static DataTableSpec createResultSpec(final List<DataCell[]> rows) {
+        final List<DataType> types = new ArrayList<DataType>();
+        for (final DataCell[] cells : rows) {
+            for (int i = 0; i < cells.length; i++) {
+                if (types.size() <= i) {
+                    types.add(null);
+                }
+                if (!cells[i].isMissing()) {
+                    final DataType type = cells[i].getType();
+                    types.set(i, types.get(i) == null ? type : DataType.getCommonSuperType(types.get(i), type));
+                }
+            }
+        }
+        final DataColumnSpec[] colSpecs = new DataColumnSpec[types.size()];
+        for (int i = 0; i < colSpecs.length; i++) {
+            final DataType type = types.get(i) == null ? StringCell.TYPE : types.get(i);
+            colSpecs[i] = new DataColumnSpecCreator("Column " + i, type).createSpec();
+        }
+        return new DataTableSpec(colSpecs);
+    }
+
+    /**
+     * Restores the order of the input rows if they have been reordered and closes both outputs
+     *
+     * @param exec the execution context
+     * @throws InterruptedException if an output is interrupted
+     * @throws CanceledExecutionException if the execution is canceled
+     */
+    void close(final ExecutionContext exec) throws InterruptedException, CanceledExecutionException {
+        if (m_reorderer != null) {
+            m_reorderer.finish(exec);
+        }
+        m_output.close();
+        m_errorOutput.close();
+    }
+
+    /**
+     * Returns the output table if it has been created
+     *
+     * @return the output table or <code>null</code> if the results were written to a given output
+     */
+    BufferedDataTable getOutputTable() {
+        return m_tableOutput == null ? null : m_tableOutput.getDataTable();
+    }
+
+    /**
+     * Returns the error table if it has been created
+     *
+     * @return the error table or <code>null</code> if the errors were written to a given output
+     */
+    BufferedDataTable getErrorTable() {
+        return m_errorTableOutput == null ? null : m_errorTableOutput.getDataTable();
+    }
+
+    /**
+     * Writes the results of an input row, see {@link LoopingOutput#flushPendingResults(ResultWriter)}
+     */
+    @FunctionalInterface
+    interface ResultWriter {
+
+        /**
+         * Writes the results of the given input row
+         *
+         * @param input the input row
+         * @param results the converted result rows
+         * @throws InterruptedException if the output is interrupted
+         */
+        void write(DataRow input, List<DataCell[]> results) throws InterruptedException;
+    }
+
+    /**
+     * The results of an input row that were written before the result columns were known
+     */
+    private static final class PendingResults {
+
+        private final DataRow m_input;
+
+        private final List<DataCell[]> m_results;
+
+        private PendingResults(final DataRow input, final List<DataCell[]> results) {
+            m_input = input;
+            m_results = results;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.BooleanSupplier;
+
+import org.knime.base.node.io.database.looper.util.AbstractLoopingExecutor.SQLCall;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Repeats the statement executions of an executor that failed with a transient error according to a
+ * {@link RetryPolicy}, either on the same connection or, after a connection error, on a new one. Executions are not
+ * repeated while the caller reports that they must not be, i.e. within a transaction group or after the execution
+ * has been canceled.
+ */
+final class LoopingRetrier {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(LoopingRetrier.class);
+
+    private final RetryPolicy m_policy;
+
+    /**
+     * Creates a new instance of LoopingRetrier
+     *
+     * @param policy the retry policy
+     */
+    LoopingRetrier(final RetryPolicy policy) {
+        m_policy = policy;
+    }
+
+    /**
+     * Returns the retry policy
+     *
+     * @return the retry policy
+     */
+    RetryPolicy getPolicy() {
+        return m_policy;
+    }
+
+    /**
+     * Executes the given call and retries it according to the retry policy if it fails with a transient error. Waits
+     * before every attempt while the circuit breaker of the policy is open. If the caller holds the given lock, the
+     * lock is released while waiting for the next attempt.
+     *
+     * @param <T> the type of the result
+     * @param call the statement execution
+     * @param lock the lock of the connection the call uses, may be <code>null</code>
+     * @param noRetry returns <code>true</code> if a failed call must not be repeated
+     * @return the result of the call
+     * @throws SQLException the exception of the last attempt
+     */
+    <T> T retry(final SQLCall<T> call, final Object lock, final BooleanSupplier noRetry) throws SQLException {
+        final CircuitBreaker breaker = m_policy.getCircuitBreaker();
+        for (int attempt = 1;; attempt++) {
+            if (breaker != null) {
+                try {
+                    breaker.awaitClosed();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while the dispatch of queries was paused", ex);
+                }
+            }
+            try {
+                final T result = call.call();
+                if (breaker != null) {
+                    breaker.record(false);
+                }
+                return result;
+            } catch (SQLException ex) {
+                final boolean isTransient = RetryPolicy.isTransient(ex);
+                if (breaker != null) {
+                    breaker.record(isTransient || RetryPolicy.isConnectionError(ex));
+                }
+                if (!isTransient || attempt >= m_policy.getMaxAttempts() || noRetry.getAsBoolean()) {
+                    throw ex;
+                }
+                final long delay = m_policy.getBackoffMillis(attempt);
+                LOGGER.debug("Transient error in attempt " + attempt + ", retrying in " + delay + " ms: "
+                    + ex.getMessage(), ex);
+                m_policy.retried();
+                try {
+                    backoff(lock, delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the execution that failed with the given exception should be repeated on a new
+     * connection, i.e. the exception is a connection error and the given attempt is not the last one
+     *
+     * @param ex the exception of the execution
+     * @param attempt the number of executions so far, starting with 1
+     * @return <code>true</code> if the execution should be repeated on a new connection
+     */
+    boolean canReconnect(final SQLException ex, final int attempt) {
+        return RetryPolicy.isConnectionError(ex) && attempt < m_policy.getMaxAttempts();
+    }
+
+    /**
+     * Closes the failed connection and waits according to the retry policy
+     *
+     * @param conn the failed connection
+     * @param ex the connection error
+     * @param attempt the number of executions so far, starting with 1
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void reconnect(final Connection conn, final SQLException ex, final int attempt) throws InterruptedException {
+        final long delay = m_policy.getBackoffMillis(attempt);
+        LOGGER.debug("Connection error in attempt " + attempt + ", reconnecting in " + delay + " ms: "
+            + ex.getMessage(), ex);
+        m_policy.retried();
+        PreparedStatementCache.getInstance().invalidate(conn);
+        try {
+            conn.close();
+        } catch (SQLException closeEx) {
+            LOGGER.debug("Could not close failed connection: " + closeEx.getMessage(), closeEx);
+        }
+        Thread.sleep(delay);
+    }
+
+    /**
+     * Waits the given time before the next attempt, releasing the lock of the connection if the thread holds it so
+     * that other nodes can use the connection meanwhile
+     */
+    private static void backoff(final Object lock, final long delay) throws InterruptedException {
+        if (lock == null || !Thread.holdsLock(lock)) {
+            Thread.sleep(delay);
+            return;
+        }
+        final long end = System.currentTimeMillis() + delay;
+        for (long remaining = delay; remaining > 0; remaining = end - System.currentTimeMillis()) {
+            lock.wait(remaining);
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.streamable.RowOutput;
+
+/**
+ * Combines the input rows with the result rows of the looped SQL statement. All looping executors use the same
+ * assembler, so the output is independent of how the statements are sent to the database.
+ */
+public class LoopingRowAssembler {
+
+    /** Name of the column in the error table that contains the error message */
+    public static final String ERROR_COLUMN = "Error";
+
+    private final DataTableSpec m_inSpec;
+
+    private final int[] m_paramIndices;
+
+    private final int[] m_appendIndices;
+
+    private final LoopingOptions m_options;
+
+    private final DataTableSpec m_errorSpec;
+
+    private DataTableSpec m_resultSpec;
+
+    private DataTableSpec m_outSpec;
+
+    private long m_rowIdx = 0;
+
+    /**
+     * Creates a new instance of LoopingRowAssembler
+     *
+     * @param inSpec the spec of the input table
+     * @param paramColumns the names of the input columns in the order of the placeholders in the SQL statement
+     * @param options the looping options
+     */
+    public LoopingRowAssembler(final DataTableSpec inSpec, final String[] paramColumns,
+        final LoopingOptions options) {
+        m_inSpec = inSpec;
+        m_options = options;
+        m_paramIndices = new int[paramColumns.length];
+        final Set<Integer> distinctIndices = new LinkedHashSet<Integer>();
+        for (int i = 0; i < paramColumns.length; i++) {
+            m_paramIndices[i] = inSpec.findColumnIndex(paramColumns[i]);
+            if (m_paramIndices[i] < 0) {
+                throw new IllegalArgumentException("Column " + paramColumns[i]
+                    + " doesn't exist in the input table.");
+            }
+            distinctIndices.add(m_paramIndices[i]);
+        }
+
+        if (!options.isAppendInputColumns()) {
+            m_appendIndices = new int[0];
+        } else if (options.isRetainAllColumns()) {
+            m_appendIndices = new int[inSpec.getNumColumns()];
+            for (int i = 0; i < m_appendIndices.length; i++) {
+                m_appendIndices[i] = i;
+            }
+        } else {
+            m_appendIndices = new int[distinctIndices.size()];
+            int i = 0;
+            for (final Integer idx : distinctIndices) {
+                m_appendIndices[i++] = idx;
+            }
+        }
+
+        final Set<String> names = new HashSet<String>();
+        for (final DataColumnSpec colSpec : inSpec) {
+            names.add(colSpec.getName());
+        }
+        final DataColumnSpec errorCol = new DataColumnSpecCreator(
+            ResultSetConverter.createUniqueName(names, ERROR_COLUMN), StringCell.TYPE).createSpec();
+        m_errorSpec = new DataTableSpec(inSpec, new DataTableSpec(errorCol));
+    }
+
+    /**
+     * Returns the spec of the input table
+     *
+     * @return the spec of the input table
+     */
+    public DataTableSpec getInputSpec() {
+        return m_inSpec;
+    }
+
+    /**
+     * Returns the number of placeholders in the SQL statement
+     *
+     * @return the number of placeholders in the SQL statement
+     */
+    public int getParameterCount() {
+        return m_paramIndices.length;
+    }
+
+    /**
+     * Returns the types of the input columns in the order of the placeholders
+     *
+     * @return the types of the parameter columns
+     */
+    public DataType[] getParameterTypes() {
+        final DataType[] types = new DataType[m_paramIndices.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = m_inSpec.getColumnSpec(m_paramIndices[i]).getType();
+        }
+        return types;
+    }
+
+    /**
+     * Returns the cells of the given input row that are bound to the placeholders of the SQL statement
+     *
+     * @param row the input row
+     * @return the parameter cells in the order of the placeholders
+     */
+    public DataCell[] getParameters(final DataRow row) {
+        final DataCell[] params = new DataCell[m_paramIndices.length];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = row.getCell(m_paramIndices[i]);
+        }
+        return params;
+    }
+
+    /**
+     * Sets the spec of the result columns and creates the output spec
+     *
+     * @param resultSpec the spec of the result columns of the SQL statement
+     * @return the spec of the output table
+     */
+    public DataTableSpec createOutputSpec(final DataTableSpec resultSpec) {
+        m_resultSpec = resultSpec;
+        final List<DataColumnSpec> colSpecs = new ArrayList<DataColumnSpec>();
+        final Set<String> names = new HashSet<String>();
+        for (final int idx : m_appendIndices) {
+            final DataColumnSpec colSpec = m_inSpec.getColumnSpec(idx);
+            colSpecs.add(colSpec);
+            names.add(colSpec.getName());
+        }
+        for (final DataColumnSpec colSpec : resultSpec) {
+            final String name = ResultSetConverter.createUniqueName(names, colSpec.getName());
+            names.add(name);
+            if (name.equals(colSpec.getName())) {
+                colSpecs.add(colSpec);
+            } else {
+                colSpecs.add(new DataColumnSpecCreator(name, colSpec.getType()).createSpec());
+            }
+        }
+        m_outSpec = new DataTableSpec(colSpecs.toArray(new DataColumnSpec[colSpecs.size()]));
+        return m_outSpec;
+    }
+
+    /**
+     * Returns the spec of the output table or <code>null</code> if the result spec is not yet known
+     *
+     * @return the spec of the output table or <code>null</code>
+     */
+    public DataTableSpec getOutputSpec() {
+        return m_outSpec;
+    }
+
+    /**
+     * Returns the spec of the error table, which consists of the input columns and the error message column
+     *
+     * @return the spec of the error table
+     */
+    public DataTableSpec getErrorSpec() {
+        return m_errorSpec;
+    }
+
+    /**
+     * Sets the index of the next output row, e.g. if the rows before have been restored from a checkpoint
+     *
+     * @param rowIdx the index of the next output row
+     */
+    public void setRowIndex(final long rowIdx) {
+        m_rowIdx = rowIdx;
+    }
+
+    /**
+     * Pushes the output rows of the given input row to the given output
+     *
+     * @param input the input row
+     * @param results the converted result rows of the SQL statement for the input row
+     * @param output the output to push the rows to
+     * @throws InterruptedException if the output is interrupted
+     */
+    public void addRows(final DataRow input, final List<DataCell[]> results, final RowOutput output)
+        throws InterruptedException {
+        if (results.isEmpty()) {
+            if (m_options.isIncludeEmptyResults()) {
+                final DataCell[] missing = new DataCell[m_resultSpec.getNumColumns()];
+                for (int i = 0; i < missing.length; i++) {
+                    missing[i] = DataType.getMissingCell();
+                }
+                output.push(createRow(input, missing));
+            }
+            return;
+        }
+        for (final DataCell[] result : results) {
+            output.push(createRow(input, result));
+        }
+    }
+
+    private DataRow createRow(final DataRow input, final DataCell[] result) {
+        final DataCell[] cells = new DataCell[m_appendIndices.length + result.length];
+        for (int i = 0; i < m_appendIndices.length; i++) {
+            cells[i] = input.getCell(m_appendIndices[i]);
+        }
+        System.arraycopy(result, 0, cells, m_appendIndices.length, result.length);
+        return new DefaultRow(RowKey.createRowKey(m_rowIdx++), cells);
+    }
+
+    /**
+     * Creates the error row of the given input row
+     *
+     * @param input the input row that caused the error
+     * @param message the error message
+     * @return the row for the error table
+     */
+    public DataRow createErrorRow(final DataRow input, final String message) {
+        final DataCell[] cells = new DataCell[input.getNumCells() + 1];
+        for (int i = 0; i < input.getNumCells(); i++) {
+            cells[i] = input.getCell(i);
+        }
+        cells[cells.length - 1] = message == null ? DataType.getMissingCell() : new StringCell(message);
+        return new DefaultRow(input.getKey(), cells);
+    }
+
+}
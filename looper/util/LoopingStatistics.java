@@ -0,0 +1,170 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the latencies of the phases of the looper iterations and the number of processed rows. The latencies of
+ * every phase are aggregated in a {@link LatencyHistogram}, so that a slow database can be told apart from a slow
+ * conversion or a slow output.
+ */
+public class LoopingStatistics {
+
+    /**
+     * The phases of a looper iteration
+     */
+    public enum Phase {
+        /** Binding the parameter values to the statement */
+        BIND("Parameter binding"),
+        /** Executing the statement until the first result is available */
+        EXECUTE("Execute"),
+        /** Fetching the result rows from the database */
+        FETCH("Fetch"),
+        /** Converting the result values into cells */
+        CONVERT("Cell conversion"),
+        /** Writing the output rows to the output table */
+        WRITE("Container write");
+
+        private final String m_label;
+
+        private Phase(final String label) {
+            m_label = label;
+        }
+
+        /**
+         * Returns the label of the phase
+         *
+         * @return the label of the phase
+         */
+        public String getLabel() {
+            return m_label;
+        }
+    }
+
+    private final LatencyHistogram[] m_histograms = new LatencyHistogram[Phase.values().length];
+
+    private final AtomicLong[] m_phaseRows = new AtomicLong[Phase.values().length];
+
+    private final AtomicLong m_inputRows = new AtomicLong();
+
+    private final AtomicLong m_resultRows = new AtomicLong();
+
+    private long m_startNanos = 0;
+
+    private long m_endNanos = 0;
+
+    /**
+     * Creates a new instance of LoopingStatistics
+     */
+    public LoopingStatistics() {
+        for (int i = 0; i < m_histograms.length; i++) {
+            m_histograms[i] = new LatencyHistogram();
+            m_phaseRows[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Starts the measurement of the elapsed time
+     */
+    public void start() {
+        m_startNanos = System.nanoTime();
+        m_endNanos = 0;
+    }
+
+    /**
+     * Stops the measurement of the elapsed time
+     */
+    public void stop() {
+        m_endNanos = System.nanoTime();
+    }
+
+    /**
+     * Records the latency of a phase of an iteration
+     *
+     * @param phase the phase
+     * @param nanos the latency in nanoseconds
+     * @param rows the number of rows handled in the phase
+     */
+    public void record(final Phase phase, final long nanos, final int rows) {
+        m_histograms[phase.ordinal()].record(nanos);
+        m_phaseRows[phase.ordinal()].addAndGet(rows);
+    }
+
+    /**
+     * Counts a processed input row and its result rows
+     *
+     * @param resultRows the number of output rows of the input row
+     */
+    public void addRow(final int resultRows) {
+        m_inputRows.incrementAndGet();
+        m_resultRows.addAndGet(resultRows);
+    }
+
+    /**
+     * Returns the histogram of the given phase
+     *
+     * @param phase the phase
+     * @return the latency histogram of the phase
+     */
+    public LatencyHistogram getHistogram(final Phase phase) {
+        return m_histograms[phase.ordinal()];
+    }
+
+    /**
+     * Returns the number of processed input rows
+     *
+     * @return the number of input rows
+     */
+    public long getInputRows() {
+        return m_inputRows.get();
+    }
+
+    /**
+     * Returns the number of processed input rows per second of the elapsed time
+     *
+     * @return the number of input rows per second
+     */
+    public double getRowsPerSecond() {
+        return perSecond(m_inputRows.get(), getElapsedNanos());
+    }
+
+    /**
+     * Returns the number of output rows per second of the elapsed time
+     *
+     * @return the number of output rows per second
+     */
+    public double getResultRowsPerSecond() {
+        return perSecond(m_resultRows.get(), getElapsedNanos());
+    }
+
+    private long getElapsedNanos() {
+        if (m_startNanos == 0) {
+            return 0;
+        }
+        return (m_endNanos == 0 ? System.nanoTime() : m_endNanos) - m_startNanos;
+    }
+
+    private static double perSecond(final long rows, final long nanos) {
+        return nanos <= 0 ? 0 : rows * 1e9 / nanos;
+    }
+
+    /**
+     * Returns the number of rows that passed the given phase
+     *
+     * @param phase the phase
+     * @return the number of rows
+     */
+    public long getRows(final Phase phase) {
+        return m_phaseRows[phase.ordinal()].get();
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds
+     *
+     * @param nanos the nanoseconds
+     * @return the milliseconds
+     */
+    public static double toMillis(final double nanos) {
+        return nanos / 1e6;
+    }
+
+}
@@ -0,0 +1,236 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * Executes the looped SQL statement once for every input row using a pool of dedicated connections that are queried
+ * concurrently, each connection is used by one worker at a time. The results are either written in the order of the
+ * input rows or in the order in which the queries finish. Optionally, the number of concurrent queries is adapted to
+ * the latency of the database by an {@link AdaptiveConcurrencyLimiter}.
+ */
+public class ParallelLoopingExecutor extends AbstractLoopingExecutor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(ParallelLoopingExecutor.class);
+
+    /** Number of queued rows per connection, bounds the memory used for pending results */
+    private static final int ROWS_IN_FLIGHT_PER_CONNECTION = 4;
+
+    private static final int WORKER_TERMINATION_TIMEOUT_SECONDS = 60;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final int m_parallelism;
+
+    private final boolean m_keepOrder;
+
+    private AdaptiveConcurrencyLimiter m_limiter;
+
+    /**
+     * Creates a new instance of ParallelLoopingExecutor
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param query the SQL statement with a "?" for every placeholder
+     * @param inSpec the spec of the input table
+     * @param paramColumns the names of the input columns in the order of the placeholders
+     * @param options the looping options
+     * @param parallelism the number of connections that are queried concurrently
+     * @param keepOrder <code>true</code> if the output should be in the order of the input rows
+     */
+    public ParallelLoopingExecutor(final DatabaseQueryConnectionSettings connSettings, final CredentialsProvider cp,
+        final String query, final DataTableSpec inSpec, final String[] paramColumns, final LoopingOptions options,
+        final int parallelism, final boolean keepOrder) {
+        super(connSettings, cp, query, inSpec, paramColumns, options);
+        m_parallelism = parallelism;
+        m_keepOrder = keepOrder;
+    }
+
+    /**
+     * Adapts the number of concurrent queries to the measured latency and error rate. The parallelism of the
+     * executor is used as upper bound of the limit.
+     *
+     * @param minParallelism the minimum number of concurrent queries
+     */
+    public void setAdaptiveConcurrency(final int minParallelism) {
+        m_limiter = new AdaptiveConcurrencyLimiter(minParallelism, m_parallelism);
+    }
+
+    /**
+     * Returns the limiter of the concurrent queries or <code>null</code> if the parallelism is fixed
+     *
+     * @return the concurrency limiter or <code>null</code>
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return m_limiter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loop(final RowInput input, final long rowCount, final ExecutionContext exec) throws Exception {
+        final BlockingQueue<PreparedStatement> idleStatements =
+            new ArrayBlockingQueue<PreparedStatement>(m_parallelism);
+        final ExecutorService service = Executors.newFixedThreadPool(m_parallelism,
+            r -> new Thread(r, "DB Looper Worker-" + THREAD_COUNTER.incrementAndGet()));
+        try (final DBConnectionPool pool =
+            new DBConnectionPool(getConnectionSettings(), getCredentialsProvider(), m_parallelism)) {
+            try {
+                for (final Connection conn : pool.getConnections()) {
+                    idleStatements.add(prepare(conn, getQuery(), 0));
+                }
+                final int maxInFlight = m_parallelism * ROWS_IN_FLIGHT_PER_CONNECTION;
+                if (m_keepOrder) {
+                    loopOrdered(input, rowCount, exec, service, idleStatements, maxInFlight);
+                } else {
+                    loopUnordered(input, rowCount, exec, service, idleStatements, maxInFlight);
+                }
+            } finally {
+                // the workers must be finished before their statements and connections are released
+                service.shutdownNow();
+                if (!service.awaitTermination(WORKER_TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    LOGGER.debug("Workers did not terminate within " + WORKER_TERMINATION_TIMEOUT_SECONDS + " s");
+                }
+                for (final PreparedStatement stmt : idleStatements) {
+                    closeStatement(stmt);
+                }
+            }
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    private void loopOrdered(final RowInput input, final long rowCount, final ExecutionContext exec,
+        final ExecutorService service, final BlockingQueue<PreparedStatement> idleStatements,
+        final int maxInFlight) throws Exception {
+        final Deque<Future<LookupResult>> pending = new ArrayDeque<Future<LookupResult>>(maxInFlight);
+        long rowIdx = 0;
+        DataRow row;
+        while ((row = input.poll()) != null) {
+            updateProgress(exec, ++rowIdx, rowCount);
+            pending.add(service.submit(createLookup(row, idleStatements)));
+            if (pending.size() >= maxInFlight) {
+                addResult(pending.poll());
+            }
+        }
+        while (!pending.isEmpty()) {
+            exec.checkCanceled();
+            addResult(pending.poll());
+        }
+    }
+
+    private void loopUnordered(final RowInput input, final long rowCount, final ExecutionContext exec,
+        final ExecutorService service, final BlockingQueue<PreparedStatement> idleStatements,
+        final int maxInFlight) throws Exception {
+        final CompletionService<LookupResult> completion = new ExecutorCompletionService<LookupResult>(service);
+        int inFlight = 0;
+        long rowIdx = 0;
+        DataRow row;
+        while ((row = input.poll()) != null) {
+            updateProgress(exec, ++rowIdx, rowCount);
+            completion.submit(createLookup(row, idleStatements));
+            if (++inFlight >= maxInFlight) {
+                addResult(completion.take());
+                inFlight--;
+            }
+        }
+        for (; inFlight > 0; inFlight--) {
+            exec.checkCanceled();
+            addResult(completion.take());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isOrdered() {
+        return m_keepOrder || m_parallelism == 1;
+    }
+
+    private Callable<LookupResult> createLookup(final DataRow row,
+        final BlockingQueue<PreparedStatement> idleStatements) {
+        return () -> {
+            if (m_limiter != null) {
+                m_limiter.acquire();
+            }
+            final PreparedStatement stmt = idleStatements.take();
+            final long start = System.nanoTime();
+            boolean failed = false;
+            try {
+                return new LookupResult(row, lookup(stmt, getAssembler().getParameters(row)), null);
+            } catch (SQLException ex) {
+                failed = true;
+                return new LookupResult(row, Collections.<DataCell[]> emptyList(), ex);
+            } finally {
+                idleStatements.put(stmt);
+                if (m_limiter != null) {
+                    m_limiter.release(System.nanoTime() - start, failed);
+                }
+            }
+        };
+    }
+
+    private void addResult(final Future<LookupResult> future) throws Exception {
+        final LookupResult result;
+        try {
+            result = future.get();
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception)cause;
+            }
+            throw ex;
+        }
+        if (result.m_exception != null) {
+            handleException(result.m_row, result.m_exception);
+        } else {
+            addResults(result.m_row, result.m_results);
+        }
+    }
+
+    /**
+     * The result of the lookup of one input row
+     */
+    private static final class LookupResult {
+
+        private final DataRow m_row;
+
+        private final List<DataCell[]> m_results;
+
+        private final SQLException m_exception;
+
+        private LookupResult(final DataRow row, final List<DataCell[]> results, final SQLException exception) {
+            m_row = row;
+            m_results = results;
+            m_exception = exception;
+        }
+    }
+
+}
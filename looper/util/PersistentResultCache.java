@@ -0,0 +1,600 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.util.FileUtil;
+
+/**
+ * A disk-backed cache for the results of the looped SQL statement that survives executions of the node. The cache is
+ * organized in one directory per connection and resolved SQL statement, which contains a few segment files. New
+ * results are appended to the newest segment that is not written by another execution until it reaches
+ * {@link #MAX_SEGMENT_SIZE}, and the positions of all entries of the statement are read into memory when the cache is
+ * opened. Every entry references the spec of the result columns it was read with, entries of another spec than the
+ * current spec of the statement, see {@link #setResultSpec(DataTableSpec)}, are ignored so that a changed table does
+ * not return rows of its old columns. Entries expire after the configured time to live. Expired segments and the
+ * oldest segments of the whole cache, if it grows beyond the configured size, are removed at most once every
+ * {@link #EVICTION_INTERVAL} ms.
+ * <p>
+ * Results that contain file store cells are not cached, since the file stores are deleted together with the node's
+ * output tables and the cells could not be read in a later execution.
+ */
+public class PersistentResultCache implements AutoCloseable {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(PersistentResultCache.class);
+
+    /** The size at which a new segment is started */
+    public static final long MAX_SEGMENT_SIZE = 64L * 1024L * 1024L;
+
+    /** The minimum time in milliseconds between two evictions of expired and surplus segments */
+    public static final long EVICTION_INTERVAL = 60L * 60L * 1000L;
+
+    private static final String QUERY_FILE = "query.properties";
+
+    private static final String QUERY_KEY_SQL = "sql";
+
+    private static final String QUERY_KEY_CONNECTION = "connection";
+
+    private static final String QUERY_KEY_STATEMENT = "statement";
+
+    private static final String SPEC_PREFIX = "spec-";
+
+    private static final String SPEC_SUFFIX = ".xml";
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".bin";
+
+    private static final String EVICTION_FILE = "eviction.timestamp";
+
+    private final File m_root;
+
+    private final File m_dir;
+
+    private final long m_ttl;
+
+    private final long m_maxSize;
+
+    private final Map<String, Entry> m_index = new HashMap<String, Entry>();
+
+    private final Map<File, RandomAccessFile> m_readers = new HashMap<File, RandomAccessFile>();
+
+    private final Map<File, Long> m_segmentEnds = new HashMap<File, Long>();
+
+    private File m_segment;
+
+    private RandomAccessFile m_writer;
+
+    private FileLock m_lock;
+
+    /** The hash of the current result spec, entries are only read and written if it is known */
+    private String m_specHash;
+
+    private long m_hits = 0;
+
+    private long m_misses = 0;
+
+    /**
+     * Creates a new instance of PersistentResultCache and reads the positions of the valid entries of the statement
+     *
+     * @param root the root directory of the cache or <code>null</code> for the default directory
+     * @param connectionId the identity of the database connection, e.g. the JDBC URL and user
+     * @param statement the SQL statement of the node before placeholders and variables are resolved, which
+     *            identifies the results of the node when the cache is cleared
+     * @param sql the resolved SQL statement
+     * @param ttl the time to live of an entry in milliseconds
+     * @param maxSize the maximum size of the whole cache directory in bytes
+     * @throws IOException if the cache directory cannot be created
+     */
+    public PersistentResultCache(final File root, final String connectionId, final String statement,
+        final String sql, final long ttl, final long maxSize) throws IOException {
+        m_root = root == null ? getDefaultRoot() : root;
+        m_dir = new File(m_root, hash(connectionId + "\n" + sql));
+        m_ttl = ttl;
+        m_maxSize = maxSize;
+        if (!m_dir.isDirectory() && !m_dir.mkdirs()) {
+            throw new IOException("Could not create cache directory \"" + m_dir.getAbsolutePath() + "\".");
+        }
+        final File queryFile = new File(m_dir, QUERY_FILE);
+        if (!queryFile.exists()) {
+            final Properties props = new Properties();
+            props.setProperty(QUERY_KEY_SQL, sql);
+            props.setProperty(QUERY_KEY_CONNECTION, connectionId);
+            props.setProperty(QUERY_KEY_STATEMENT, statement);
+            try (final OutputStream out = new FileOutputStream(queryFile)) {
+                props.store(out, "KNIME Database Looper result cache");
+            }
+        }
+        final File[] segments = listSegments(m_dir);
+        // older segments first, so that newer entries of the same tuple replace older ones
+        Arrays.sort(segments, Comparator.comparingLong(File::lastModified));
+        for (final File segment : segments) {
+            try {
+                final RandomAccessFile reader = new RandomAccessFile(segment, "r");
+                m_readers.put(segment, reader);
+                m_segmentEnds.put(segment, readSegment(reader, segment, 0));
+            } catch (IOException ex) {
+                LOGGER.debug("Could not read cache segment \"" + segment + "\": " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Sets the spec of the result columns that the statement currently returns. Only entries that were written with
+     * the same spec are read afterwards. No entries are read or written before the spec is known.
+     *
+     * @param resultSpec the current spec of the result columns
+     */
+    public synchronized void setResultSpec(final DataTableSpec resultSpec) {
+        final NodeSettings settings = new NodeSettings("result_spec");
+        resultSpec.save(settings);
+        final ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        try {
+            settings.saveToXML(xml);
+        } catch (IOException ex) {
+            LOGGER.debug("Could not serialize result spec: " + ex.getMessage(), ex);
+            m_specHash = null;
+            return;
+        }
+        m_specHash = hash(new String(xml.toByteArray(), StandardCharsets.UTF_8));
+        final File specFile = new File(m_dir, SPEC_PREFIX + m_specHash + SPEC_SUFFIX);
+        if (!specFile.isFile()) {
+            try (final OutputStream out = new FileOutputStream(specFile)) {
+                xml.writeTo(out);
+            } catch (IOException ex) {
+                LOGGER.debug("Could not write result spec to cache: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the default root directory of the cache in the KNIME temp directory
+     *
+     * @return the default root directory
+     */
+    public static File getDefaultRoot() {
+        return new File(KNIMEConstants.getKNIMETempDir(), "db_looper_cache");
+    }
+
+    private static File[] listSegments(final File dir) {
+        final File[] segments =
+            dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        return segments == null ? new File[0] : segments;
+    }
+
+    /**
+     * Adds the valid entries of the given segment from the given offset on to the index. A truncated entry at the end
+     * of the segment, e.g. of an execution that was killed while writing, ends the segment.
+     *
+     * @return the end of the last complete entry
+     */
+    private long readSegment(final RandomAccessFile file, final File segment, final long start) throws IOException {
+        final long now = System.currentTimeMillis();
+        final long length = file.length();
+        // the stream is not closed since this would close the file
+        final DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(file.getChannel().position(start))));
+        long offset = start;
+        while (offset < length) {
+            final long created;
+            final String key;
+            final String specHash;
+            final int size;
+            try {
+                created = in.readLong();
+                key = in.readUTF();
+                specHash = in.readUTF();
+                size = in.readInt();
+            } catch (EOFException ex) {
+                break;
+            }
+            // the key and the spec hash are hex strings, i.e. one byte per character
+            final long dataOffset = offset + 8 + 2 + key.length() + 2 + specHash.length() + 4;
+            if (size < 0 || dataOffset + size > length) {
+                break;
+            }
+            in.skipBytes(size);
+            if (now - created <= m_ttl) {
+                m_index.put(key, new Entry(segment, dataOffset, size, created, specHash));
+            } else {
+                m_index.remove(key);
+            }
+            offset = dataOffset + size;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the cached results for the given parameter tuple
+     *
+     * @param params the parameter tuple
+     * @return the cached results or <code>null</code> if there is no valid entry of the current result spec
+     */
+    public synchronized List<DataCell[]> get(final DataCell[] params) {
+        final String key = createKey(params);
+        final Entry entry = m_index.get(key);
+        if (entry == null || System.currentTimeMillis() - entry.m_created > m_ttl
+            || !entry.m_specHash.equals(m_specHash)) {
+            m_misses++;
+            return null;
+        }
+        try {
+            RandomAccessFile reader = m_readers.get(entry.m_segment);
+            if (reader == null) {
+                reader = new RandomAccessFile(entry.m_segment, "r");
+                m_readers.put(entry.m_segment, reader);
+            }
+            final byte[] bytes = new byte[entry.m_size];
+            reader.seek(entry.m_offset);
+            reader.readFully(bytes);
+            try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                final List<DataCell[]> results = Arrays.asList((DataCell[][])in.readObject());
+                m_hits++;
+                return results;
+            }
+        } catch (IOException | ClassNotFoundException ex) {
+            LOGGER.debug("Could not read cached results from \"" + entry.m_segment + "\": " + ex.getMessage(), ex);
+            m_index.remove(key);
+            m_misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Writes the results of the given parameter tuple to the cache together with the current result spec. Results
+     * that contain file store cells are not cached, nor are results written before the result spec is known.
+     *
+     * @param params the parameter tuple
+     * @param results the results of the SQL statement for the tuple
+     */
+    public synchronized void put(final DataCell[] params, final List<DataCell[]> results) {
+        if (m_specHash == null || DBLoopingUtil.containsFileStoreCells(results)) {
+            return;
+        }
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(results.toArray(new DataCell[results.size()][]));
+            }
+            final String key = createKey(params);
+            final long created = System.currentTimeMillis();
+            final RandomAccessFile writer = getWriter();
+            final long offset = writer.length();
+            writer.seek(offset);
+            writer.writeLong(created);
+            writer.writeUTF(key);
+            writer.writeUTF(m_specHash);
+            writer.writeInt(bytes.size());
+            final long dataOffset = writer.getFilePointer();
+            writer.write(bytes.toByteArray());
+            m_index.put(key, new Entry(m_segment, dataOffset, bytes.size(), created, m_specHash));
+            if (writer.length() >= MAX_SEGMENT_SIZE) {
+                closeWriter();
+            }
+        } catch (IOException ex) {
+            LOGGER.debug("Could not write results to cache: " + ex.getMessage(), ex);
+            closeWriter();
+        }
+    }
+
+    /**
+     * Returns the segment to append to, which is the newest segment of the statement that is smaller than the
+     * maximum size and not locked by another execution, or a new segment
+     */
+    private RandomAccessFile getWriter() throws IOException {
+        if (m_writer != null) {
+            return m_writer;
+        }
+        final File[] segments = listSegments(m_dir);
+        Arrays.sort(segments, Comparator.comparingLong(File::lastModified).reversed());
+        for (final File segment : segments) {
+            if (segment.length() < MAX_SEGMENT_SIZE && openWriter(segment)) {
+                // read the entries other executions appended since the cache was opened and cut off a truncated entry
+                final Long start = m_segmentEnds.get(segment);
+                final long end = readSegment(m_writer, segment, start == null ? 0 : start.longValue());
+                if (end < m_writer.length()) {
+                    m_writer.setLength(end);
+                }
+                return m_writer;
+            }
+        }
+        final File segment = new File(m_dir, SEGMENT_PREFIX + UUID.randomUUID() + SEGMENT_SUFFIX);
+        if (!openWriter(segment)) {
+            throw new IOException("Could not lock cache segment \"" + segment + "\".");
+        }
+        return m_writer;
+    }
+
+    private boolean openWriter(final File segment) throws IOException {
+        final RandomAccessFile writer = new RandomAccessFile(segment, "rw");
+        final FileLock lock;
+        try {
+            lock = writer.getChannel().tryLock();
+        } catch (IOException ex) {
+            writer.close();
+            throw ex;
+        }
+        if (lock == null) {
+            writer.close();
+            return false;
+        }
+        final RandomAccessFile reader = m_readers.remove(segment);
+        if (reader != null) {
+            reader.close();
+        }
+        m_segment = segment;
+        m_writer = writer;
+        m_lock = lock;
+        m_readers.put(segment, writer);
+        return true;
+    }
+
+    private void closeWriter() {
+        if (m_writer == null) {
+            return;
+        }
+        m_readers.remove(m_segment);
+        try {
+            m_lock.release();
+            m_writer.close();
+        } catch (IOException ex) {
+            LOGGER.debug("Could not close cache segment: " + ex.getMessage(), ex);
+        }
+        m_writer = null;
+        m_lock = null;
+        m_segment = null;
+    }
+
+    private static String createKey(final DataCell[] params) {
+        final StringBuilder buf = new StringBuilder();
+        for (final DataCell cell : params) {
+            buf.append(cell.getClass().getName()).append(':');
+            buf.append(cell.isMissing() ? "?" : cell.toString()).append('\u0000');
+        }
+        return hash(buf.toString());
+    }
+
+    /**
+     * Returns the number of parameter tuples that were answered from the cache
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHits() {
+        return m_hits;
+    }
+
+    /**
+     * Returns the number of parameter tuples that were not found in the cache
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses() {
+        return m_misses;
+    }
+
+    /**
+     * Closes the segments and, if the last eviction is longer than {@link #EVICTION_INTERVAL} ago, removes the
+     * expired segments and the oldest segments of the whole cache directory until it fits into the maximum size
+     */
+    @Override
+    public synchronized void close() {
+        closeWriter();
+        for (final RandomAccessFile reader : m_readers.values()) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Could not close cache segment: " + ex.getMessage(), ex);
+            }
+        }
+        m_readers.clear();
+        m_index.clear();
+        m_segmentEnds.clear();
+
+        final File evictionFile = new File(m_root, EVICTION_FILE);
+        final long now = System.currentTimeMillis();
+        if (now - evictionFile.lastModified() < EVICTION_INTERVAL) {
+            return;
+        }
+        try {
+            if (!evictionFile.createNewFile()) {
+                evictionFile.setLastModified(now);
+            }
+        } catch (IOException ex) {
+            LOGGER.debug("Could not update eviction time stamp: " + ex.getMessage(), ex);
+        }
+        evict(now);
+    }
+
+    private void evict(final long now) {
+        final File[] dirs = m_root.listFiles(File::isDirectory);
+        if (dirs == null) {
+            return;
+        }
+        final List<File> segments = new ArrayList<File>();
+        long size = 0;
+        for (final File dir : dirs) {
+            for (final File segment : listSegments(dir)) {
+                // a segment is modified whenever an entry is appended, so all its entries are expired
+                if (now - segment.lastModified() > m_ttl) {
+                    segment.delete();
+                } else {
+                    segments.add(segment);
+                    size += segment.length();
+                }
+            }
+        }
+        if (size <= m_maxSize) {
+            return;
+        }
+        segments.sort(Comparator.comparingLong(File::lastModified));
+        for (final File segment : segments) {
+            if (size <= m_maxSize) {
+                break;
+            }
+            final long length = segment.length();
+            if (segment.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    /**
+     * Removes the cached results of the given SQL statement of a node, i.e. of all resolved statements that it was
+     * executed with on the given connection
+     *
+     * @param root the root directory of the cache or <code>null</code> for the default directory
+     * @param connectionId the identity of the database connection, e.g. the JDBC URL and user
+     * @param statement the SQL statement of the node before placeholders and variables are resolved
+     * @return the number of removed statements
+     */
+    public static int clear(final File root, final String connectionId, final String statement) {
+        int count = 0;
+        for (final File dir : listStatements(root)) {
+            final Properties props = readStatement(dir);
+            if (props != null && connectionId.equals(props.getProperty(QUERY_KEY_CONNECTION))
+                && statement.equals(props.getProperty(QUERY_KEY_STATEMENT))) {
+                FileUtil.deleteRecursively(dir);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes the cached results of all statements of the given connection that reference one of the given tables
+     *
+     * @param root the root directory of the cache or <code>null</code> for the default directory
+     * @param connectionId the identity of the database connection, e.g. the JDBC URL and user
+     * @param tableNames the names of the tables whose results should be removed
+     * @return the number of removed statements
+     */
+    public static int invalidateTables(final File root, final String connectionId,
+        final Collection<String> tableNames) {
+        if (tableNames.isEmpty()) {
+            return 0;
+        }
+        final List<Pattern> patterns = new ArrayList<Pattern>();
+        for (final String tableName : tableNames) {
+            patterns.add(Pattern.compile("(^|[^\\w])" + Pattern.quote(tableName) + "($|[^\\w])",
+                Pattern.CASE_INSENSITIVE));
+        }
+        int count = 0;
+        for (final File dir : listStatements(root)) {
+            final Properties props = readStatement(dir);
+            if (props == null || !connectionId.equals(props.getProperty(QUERY_KEY_CONNECTION))) {
+                continue;
+            }
+            final String sql = props.getProperty(QUERY_KEY_SQL, "");
+            for (final Pattern pattern : patterns) {
+                if (pattern.matcher(sql).find()) {
+                    FileUtil.deleteRecursively(dir);
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static File[] listStatements(final File root) {
+        final File[] dirs = (root == null ? getDefaultRoot() : root).listFiles(File::isDirectory);
+        return dirs == null ? new File[0] : dirs;
+    }
+
+    /**
+     * Returns the description of the cached statement in the given directory or <code>null</code> if it cannot be
+     * read
+     */
+    private static Properties readStatement(final File dir) {
+        final Properties props = new Properties();
+        try (final InputStream in = new FileInputStream(new File(dir, QUERY_FILE))) {
+            props.load(in);
+            return props;
+        } catch (IOException ex) {
+            LOGGER.debug("Could not read cached statement in \"" + dir + "\": " + ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 hash of the given value
+     */
+    static String hash(final String value) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return toHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is available on every Java platform
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the hex encoding of the given bytes
+     */
+    static String toHex(final byte[] bytes) {
+        final StringBuilder buf = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            buf.append(String.format("%02x", b));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * The position of the results of a parameter tuple in a segment
+     */
+    private static final class Entry {
+
+        private final File m_segment;
+
+        private final long m_offset;
+
+        private final int m_size;
+
+        private final long m_created;
+
+        private final String m_specHash;
+
+        private Entry(final File segment, final long offset, final int size, final long created,
+            final String specHash) {
+            m_segment = segment;
+            m_offset = offset;
+            m_size = size;
+            m_created = created;
+            m_specHash = specHash;
+        }
+    }
+
+}
@@ -0,0 +1,272 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.knime.base.node.io.database.looper.util.LoopingStatistics.Phase;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * Executes the looped SQL statement once for every input row on a single connection, but overlaps the database
+ * round trips with the conversion of the results. The calling thread dispatches the parameter tuples into a hand-off
+ * queue, a fetch thread binds and executes the statement and reads the plain values of the result set, and the
+ * calling thread converts the fetched values into cells and writes the output rows. The number of rows in the
+ * pipeline is bounded by the pipeline depth.
+ */
+public class PipelinedLoopingExecutor extends AbstractLoopingExecutor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(PipelinedLoopingExecutor.class);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /** The time in seconds to wait for the fetch stage to stop after its statement has been canceled */
+    private static final long SHUTDOWN_TIMEOUT = 30;
+
+    /** Marks the end of the input in the dispatch queue */
+    private static final PipelineItem END_OF_INPUT = new PipelineItem(null, null);
+
+    private final int m_depth;
+
+    /** The statement of the fetch stage, which is canceled if the pipeline stops before the fetch stage finished */
+    private final AtomicReference<PreparedStatement> m_fetchStmt = new AtomicReference<PreparedStatement>();
+
+    /**
+     * Creates a new instance of PipelinedLoopingExecutor
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param query the SQL statement with a "?" for every placeholder
+     * @param inSpec the spec of the input table
+     * @param paramColumns the names of the input columns in the order of the placeholders
+     * @param options the looping options
+     * @param depth the maximum number of input rows in the pipeline
+     */
+    public PipelinedLoopingExecutor(final DatabaseQueryConnectionSettings connSettings, final CredentialsProvider cp,
+        final String query, final DataTableSpec inSpec, final String[] paramColumns, final LoopingOptions options,
+        final int depth) {
+        super(connSettings, cp, query, inSpec, paramColumns, options);
+        m_depth = depth;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loop(final RowInput input, final long rowCount, final ExecutionContext exec) throws Exception {
+        final BlockingQueue<PipelineItem> dispatched = new LinkedBlockingQueue<PipelineItem>();
+        final BlockingQueue<PipelineItem> fetched = new LinkedBlockingQueue<PipelineItem>();
+        final ExecutorService service = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "DB Looper Fetcher-" + THREAD_COUNTER.incrementAndGet()));
+        try {
+            final Connection conn = getSharedConnection();
+            final Future<Void> fetcher = service.submit(() -> {
+                synchronized (syncConnection(conn)) {
+                    fetch(conn, dispatched, fetched);
+                }
+                return null;
+            });
+
+            int inFlight = 0;
+            long rowIdx = 0;
+            DataRow row;
+            while ((row = input.poll()) != null) {
+                updateProgress(exec, ++rowIdx, rowCount);
+                dispatched.put(new PipelineItem(row, getAssembler().getParameters(row)));
+                inFlight++;
+                // Write whatever is ready, wait only if the pipeline is full
+                PipelineItem item;
+                while ((item = inFlight >= m_depth ? take(fetched, fetcher, exec) : fetched.poll()) != null) {
+                    write(item);
+                    inFlight--;
+                }
+            }
+            dispatched.put(END_OF_INPUT);
+            for (; inFlight > 0; inFlight--) {
+                write(take(fetched, fetcher, exec));
+            }
+            getFetcherResult(fetcher);
+        } finally {
+            shutdown(service);
+        }
+    }
+
+    /**
+     * Stops the fetch stage and waits until it has released the connection. A statement that is still running, e.g.
+     * because the conversion stage failed, is canceled since interrupting the thread does not stop it.
+     */
+    private void shutdown(final ExecutorService service) throws InterruptedException {
+        service.shutdownNow();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT);
+        while (!service.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+            final PreparedStatement stmt = m_fetchStmt.get();
+            if (stmt != null) {
+                try {
+                    stmt.cancel();
+                } catch (SQLException ex) {
+                    LOGGER.debug("Could not cancel statement of the fetch stage: " + ex.getMessage(), ex);
+                }
+            }
+            if (System.nanoTime() > deadline) {
+                LOGGER.warn("Fetch stage did not stop within " + SHUTDOWN_TIMEOUT + " seconds.");
+                return;
+            }
+        }
+    }
+
+    /**
+     * The fetch stage, executes the statement for the dispatched tuples and reads the plain result values
+     */
+    private void fetch(final Connection conn, final BlockingQueue<PipelineItem> dispatched,
+        final BlockingQueue<PipelineItem> fetched) throws Exception {
+        final PreparedStatement stmt = prepare(conn, getQuery(), 0);
+        m_fetchStmt.set(stmt);
+        try {
+            PipelineItem item;
+            while ((item = dispatched.take()) != END_OF_INPUT) {
+                item.m_results = findResults(item.m_params);
+                if (item.m_results == null) {
+                    final DataCell[] params = item.m_params;
+                    try {
+                        item.m_values = retry(conn, () -> fetchValues(stmt, params));
+                        // Handed over with the item, which is published to the conversion stage by the queue
+                        item.m_converter = getConverter();
+                    } catch (SQLException ex) {
+                        item.m_exception = ex;
+                    }
+                }
+                fetched.put(item);
+            }
+        } finally {
+            m_fetchStmt.set(null);
+            closeStatement(stmt);
+        }
+    }
+
+    /**
+     * Executes the statement for the given parameters and reads the plain result values
+     */
+    private List<Object[]> fetchValues(final PreparedStatement stmt, final DataCell[] params) throws SQLException {
+        final QueryTrace trace = beginQuery(params.length);
+        try {
+            final long start = now();
+            DBLoopingUtil.bindParameters(stmt, 0, params);
+            final long bound = now();
+            record(Phase.BIND, bound - start, 1);
+            final List<Object[]> values = new ArrayList<Object[]>();
+            try (final ResultSet rs = stmt.executeQuery()) {
+                final long executed = now();
+                record(Phase.EXECUTE, executed - bound, 1);
+                initConverter(rs.getMetaData(), 0);
+                while (rs.next()) {
+                    values.add(getConverter().read(rs, 0));
+                }
+                // The plain values are read in this stage, only the cells are created in the next one
+                record(Phase.FETCH, now() - executed, values.size());
+            }
+            trace.succeeded(values.size());
+            return values;
+        } finally {
+            endQuery(trace);
+        }
+    }
+
+    /**
+     * The conversion stage, converts the fetched values and writes the output rows of the item
+     */
+    private void write(final PipelineItem item) throws Exception {
+        if (item.m_values != null) {
+            try {
+                final long start = now();
+                final List<DataCell[]> results = new ArrayList<DataCell[]>(item.m_values.size());
+                for (final Object[] values : item.m_values) {
+                    results.add(item.m_converter.convert(values));
+                }
+                record(Phase.CONVERT, now() - start, results.size());
+                storeResults(item.m_params, results);
+                item.m_results = results;
+            } catch (SQLException ex) {
+                item.m_exception = ex;
+            }
+        }
+        if (item.m_exception != null) {
+            handleException(item.m_row, item.m_exception);
+        } else {
+            addResults(item.m_row, item.m_results);
+        }
+    }
+
+    /**
+     * Waits for the next fetched item while checking for cancellation and failures of the fetch stage
+     */
+    private static PipelineItem take(final BlockingQueue<PipelineItem> fetched, final Future<Void> fetcher,
+        final ExecutionContext exec) throws Exception {
+        while (true) {
+            final PipelineItem item = fetched.poll(100, TimeUnit.MILLISECONDS);
+            if (item != null) {
+                return item;
+            }
+            exec.checkCanceled();
+            if (fetcher.isDone()) {
+                getFetcherResult(fetcher);
+                throw new IllegalStateException("Fetch stage finished before all rows were processed.");
+            }
+        }
+    }
+
+    private static void getFetcherResult(final Future<Void> fetcher) throws Exception {
+        try {
+            fetcher.get();
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception)cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * An input row travelling through the pipeline
+     */
+    private static final class PipelineItem {
+
+        private final DataRow m_row;
+
+        private final DataCell[] m_params;
+
+        private List<Object[]> m_values;
+
+        /** The converter of the values, set by the fetch stage together with the values */
+        private ResultSetConverter m_converter;
+
+        private List<DataCell[]> m_results;
+
+        private SQLException m_exception;
+
+        private PipelineItem(final DataRow row, final DataCell[] params) {
+            m_row = row;
+            m_params = params;
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * Answers the looped SQL statement locally if it is a key lookup against a small table. The statement is executed
+ * once with every "column = ?" predicate replaced by "1 = 1", the result is loaded into a {@link LookupIndex} on the
+ * key columns and the rows of all input rows are taken from the index without further round trips. If the statement
+ * returns more rows than the configured maximum, the loaded rows are discarded and the statement is executed once
+ * for every input row instead. The index matches the key values exactly, so it is only used if every key column and
+ * its parameter column are integer columns. Other values might be compared by the collation of the database or after
+ * a conversion, which the index cannot reproduce.
+ */
+public class PreloadedLookupExecutor extends RowByRowLoopingExecutor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(PreloadedLookupExecutor.class);
+
+    private final int m_maxRows;
+
+    private long m_preloadedRows = -1;
+
+    /**
+     * Creates a new instance of PreloadedLookupExecutor
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param query the SQL statement with a "?" for every placeholder
+     * @param inSpec the spec of the input table
+     * @param paramColumns the names of the input columns in the order of the placeholders
+     * @param options the looping options
+     * @param maxRows the maximum number of rows that are preloaded
+     */
+    public PreloadedLookupExecutor(final DatabaseQueryConnectionSettings connSettings, final CredentialsProvider cp,
+        final String query, final DataTableSpec inSpec, final String[] paramColumns, final LoopingOptions options,
+        final int maxRows) {
+        super(connSettings, cp, query, inSpec, paramColumns, options);
+        m_maxRows = maxRows;
+    }
+
+    /**
+     * Returns the number of preloaded rows
+     *
+     * @return the number of preloaded rows or -1 if the statement has been executed row by row
+     */
+    public long getPreloadedRows() {
+        return m_preloadedRows;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loop(final RowInput input, final long rowCount, final ExecutionContext exec) throws Exception {
+        final LookupIndex index = preload(exec);
+        if (index == null) {
+            super.loop(input, rowCount, exec);
+            return;
+        }
+        long rowIdx = 0;
+        DataRow row;
+        while ((row = input.poll()) != null) {
+            updateProgress(exec, ++rowIdx, rowCount);
+            addResults(row, index.get(getAssembler().getParameters(row)));
+        }
+    }
+
+    /**
+     * Loads the results of all key values into an index
+     *
+     * @return the index or <code>null</code> if the statement needs to be executed row by row
+     */
+    private LookupIndex preload(final ExecutionContext exec) throws Exception {
+        final BatchQueryBuilder builder = new BatchQueryBuilder(getQuery(), getAssembler().getParameterCount());
+        if (!builder.supportsPreload()) {
+            setWarningMessage("Preloaded lookups require every placeholder in a \"column = $placeholder$\" "
+                + "predicate of a WHERE clause that only combines predicates with AND and has no row limit, grouping "
+                + "or aggregate. Executing the statement row by row instead.");
+            return null;
+        }
+        exec.setMessage("Preloading lookup results");
+        final List<DataCell[]> rows;
+        final Connection conn = getSharedConnection();
+        synchronized (syncConnection(conn)) {
+            final PreparedStatement stmt = prepare(conn, builder.createPreloadQuery(), 0);
+            try {
+                // Reading one row more than the maximum tells whether the table is too large without loading it
+                stmt.setMaxRows(m_maxRows + 1);
+                rows = executeQuery(stmt, new DataCell[0]);
+            } catch (SQLException ex) {
+                LOGGER.debug("Could not preload lookup results: " + ex.getMessage(), ex);
+                setWarningMessage("Could not preload lookup results, executing the statement row by row instead: "
+                    + ex.getMessage());
+                return null;
+            } finally {
+                closeStatement(stmt);
+            }
+        }
+        if (rows.size() > m_maxRows) {
+            LOGGER.info("Lookup table has more than " + m_maxRows + " rows, executing the statement row by row");
+            return null;
+        }
+        final String[] keyColumns = builder.getPreloadKeyColumns();
+        final DataType[] paramTypes = getAssembler().getParameterTypes();
+        final DataTableSpec resultSpec = getConverter().getDataTableSpec();
+        final int[] keyIndices = new int[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyIndices[i] = getConverter().findColumnIgnoreCase(keyColumns[i]);
+            if (keyIndices[i] < 0) {
+                setWarningMessage("Preloaded lookups require the column \"" + keyColumns[i] + "\" in the result. "
+                    + "Executing the statement row by row instead.");
+                return null;
+            }
+            // The index matches the values exactly, which only equals the comparison of the database for integers
+            final DataType keyType = resultSpec.getColumnSpec(keyIndices[i]).getType();
+            if (!DBLoopingUtil.isExactKeyType(paramTypes[i]) || !DBLoopingUtil.isExactKeyType(keyType)) {
+                setWarningMessage("Preloaded lookups require the key column \"" + keyColumns[i] + "\" and its "
+                    + "parameter column to be integer columns. Executing the statement row by row instead.");
+                return null;
+            }
+        }
+        m_preloadedRows = rows.size();
+        LOGGER.debug("Preloaded " + rows.size() + " lookup rows");
+        return LookupIndex.create(rows, keyIndices);
+    }
+
+}
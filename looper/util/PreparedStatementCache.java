@@ -0,0 +1,245 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Caches the prepared statements of the looper per connection, keyed by the normalized SQL statement. Since the
+ * database connections are cached by KNIME as well, the statements survive repeated executions of the node, e.g.
+ * inside a loop, and the database does not need to parse and plan the same statement again.
+ * <p>
+ * The cache only holds idle statements. A statement is removed with {@link #take(Connection, String)} while it is
+ * used and handed back with {@link #release(PreparedStatement)}, so that a statement is never used by two executions
+ * at the same time and never closed while it is in use. The least recently used idle statement of a connection is
+ * closed if the connection has more than {@link #MAX_STATEMENTS_PER_CONNECTION} idle statements. The statements of a
+ * connection are dropped as soon as the connection is found closed.
+ */
+public final class PreparedStatementCache {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(PreparedStatementCache.class);
+
+    /** The maximum number of cached statements per connection */
+    public static final int MAX_STATEMENTS_PER_CONNECTION = 64;
+
+    private static final PreparedStatementCache INSTANCE = new PreparedStatementCache();
+
+    /** The idle statements by connection, compared by identity since connections don't implement equals */
+    private final Map<Connection, Map<String, PreparedStatement>> m_cache =
+        new IdentityHashMap<Connection, Map<String, PreparedStatement>>();
+
+    /** The connection and normalized SQL statement of every statement that is currently in use */
+    private final Map<PreparedStatement, Lease> m_leases = new IdentityHashMap<PreparedStatement, Lease>();
+
+    private PreparedStatementCache() {
+        // Singleton
+    }
+
+    /**
+     * Returns the singleton instance of PreparedStatementCache
+     *
+     * @return the singleton instance
+     */
+    public static PreparedStatementCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Removes an idle statement of the given connection for the given SQL statement from the cache. The statement
+     * must be handed back with {@link #release(PreparedStatement)}.
+     *
+     * @param conn the database connection
+     * @param sql the SQL statement
+     * @return the cached statement or <code>null</code> if there is no valid idle statement
+     */
+    public synchronized PreparedStatement take(final Connection conn, final String sql) {
+        final Map<String, PreparedStatement> stmts = m_cache.get(conn);
+        if (stmts == null) {
+            return null;
+        }
+        final String key = normalize(sql);
+        final PreparedStatement stmt = stmts.remove(key);
+        if (stmt == null) {
+            return null;
+        }
+        try {
+            if (!stmt.isClosed() && !conn.isClosed()) {
+                m_leases.put(stmt, new Lease(conn, key));
+                return stmt;
+            }
+        } catch (SQLException ex) {
+            LOGGER.debug("Could not check state of cached statement: " + ex.getMessage(), ex);
+        }
+        close(stmt);
+        return null;
+    }
+
+    /**
+     * Registers a newly prepared statement that is used now and kept in the cache once it is handed back with
+     * {@link #release(PreparedStatement)}
+     *
+     * @param conn the database connection
+     * @param sql the SQL statement the statement has been prepared for
+     * @param stmt the prepared statement
+     */
+    public synchronized void lease(final Connection conn, final String sql, final PreparedStatement stmt) {
+        m_leases.put(stmt, new Lease(conn, normalize(sql)));
+    }
+
+    /**
+     * Hands back a statement returned by {@link #take(Connection, String)} or registered with
+     * {@link #lease(Connection, String, PreparedStatement)}, which becomes idle and can be taken again
+     *
+     * @param stmt the statement
+     * @return <code>true</code> if the statement is kept in the cache, <code>false</code> if it is unknown to the
+     *         cache and must be closed by the caller
+     */
+    public synchronized boolean release(final PreparedStatement stmt) {
+        final Lease lease = m_leases.remove(stmt);
+        if (lease == null) {
+            return false;
+        }
+        removeClosedConnections();
+        try {
+            if (stmt.isClosed() || lease.m_conn.isClosed()) {
+                close(stmt);
+                return true;
+            }
+        } catch (SQLException ex) {
+            LOGGER.debug("Could not check state of cached statement: " + ex.getMessage(), ex);
+            close(stmt);
+            return true;
+        }
+        Map<String, PreparedStatement> stmts = m_cache.get(lease.m_conn);
+        if (stmts == null) {
+            stmts = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, PreparedStatement> eldest) {
+                    // only idle statements are in the map, so the eldest one is not used by anybody
+                    if (size() > MAX_STATEMENTS_PER_CONNECTION) {
+                        close(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+            m_cache.put(lease.m_conn, stmts);
+        }
+        final PreparedStatement old = stmts.put(lease.m_sql, stmt);
+        if (old != null && old != stmt) {
+            close(old);
+        }
+        return true;
+    }
+
+    /**
+     * Closes and removes all idle statements of the given connection. Statements that are in use are closed by their
+     * users.
+     *
+     * @param conn the database connection
+     */
+    public synchronized void invalidate(final Connection conn) {
+        final Map<String, PreparedStatement> stmts = m_cache.remove(conn);
+        if (stmts != null) {
+            for (final PreparedStatement stmt : stmts.values()) {
+                close(stmt);
+            }
+        }
+    }
+
+    /**
+     * Drops the idle statements of all closed connections, so that the cache doesn't keep them alive
+     */
+    private void removeClosedConnections() {
+        for (final Iterator<Map.Entry<Connection, Map<String, PreparedStatement>>> it =
+            m_cache.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<Connection, Map<String, PreparedStatement>> entry = it.next();
+            boolean closed;
+            try {
+                closed = entry.getKey().isClosed();
+            } catch (SQLException ex) {
+                closed = true;
+            }
+            if (closed) {
+                for (final PreparedStatement stmt : entry.getValue().values()) {
+                    close(stmt);
+                }
+                it.remove();
+            }
+        }
+    }
+
+    private static void close(final PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException ex) {
+            LOGGER.debug("Could not close cached statement: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Normalizes the given SQL statement by trimming it and collapsing whitespace outside of quoted sections, so that
+     * statements that only differ in formatting share the same cache entry. Line comments are kept with their line
+     * break, since the break ends the comment.
+     *
+     * @param sql the SQL statement
+     * @return the normalized SQL statement
+     */
+    static String normalize(final String sql) {
+        final StringBuilder buf = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < sql.length(); i++) {
+            final char c = sql.charAt(i);
+            if (quote == 0 && sql.startsWith("--", i)) {
+                if (pendingSpace) {
+                    buf.append(' ');
+                    pendingSpace = false;
+                }
+                final int end = sql.indexOf('\n', i);
+                buf.append(sql, i, end < 0 ? sql.length() : end + 1);
+                i = end < 0 ? sql.length() : end;
+                continue;
+            }
+            if (quote == 0 && Character.isWhitespace(c)) {
+                pendingSpace = buf.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                buf.append(' ');
+                pendingSpace = false;
+            }
+            if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+            buf.append(c);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * The connection and normalized SQL statement of a statement in use
+     */
+    private static final class Lease {
+
+        private final Connection m_conn;
+
+        private final String m_sql;
+
+        private Lease(final Connection conn, final String sql) {
+            m_conn = conn;
+            m_sql = sql;
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.knime.base.node.io.database.looper.util;
+
+/**
+ * A query that is sent to the database, see {@link AbstractLoopingExecutor#beginQuery(int)}. The query is registered
+ * with the {@link LoopingMonitor} and, if the running Java supports flight recorder events, timed by a
+ * {@link LooperQueryEvent}.
+ */
+public final class QueryTrace {
+
+    private final LoopingMonitor m_monitor;
+
+    private final long m_shapeHash;
+
+    private final String m_mode;
+
+    private final int m_parameterCount;
+
+    private final long m_startNanos;
+
+    // null if the running Java does not support flight recorder events
+    private final LooperQueryEvent m_event = LooperQueryEvent.create();
+
+    private long m_rows = 0;
+
+    private boolean m_failed = true;
+
+    /**
+     * Creates a new instance of QueryTrace and registers the query with the monitor
+     *
+     * @param monitor the monitor of the execution
+     * @param shapeHash the hash of the looped statement, see {@link FlightRecorderUtil#getShapeHash(String)}
+     * @param mode the name of the looping mode
+     * @param parameterCount the number of parameter values bound to the query
+     */
+    QueryTrace(final LoopingMonitor monitor, final long shapeHash, final String mode, final int parameterCount) {
+        m_monitor = monitor;
+        m_shapeHash = shapeHash;
+        m_mode = mode;
+        m_parameterCount = parameterCount;
+        m_startNanos = monitor.queryStarted();
+        if (m_event != null) {
+            m_event.begin();
+        }
+    }
+
+    /**
+     * Marks the query as successful
+     *
+     * @param rows the number of returned rows
+     */
+    public void succeeded(final long rows) {
+        m_rows = rows;
+        m_failed = false;
+    }
+
+    /**
+     * Unregisters the query from the monitor and commits its flight recorder event if it is enabled
+     */
+    void end() {
+        m_monitor.queryFinished(m_startNanos);
+        if (m_event == null) {
+            return;
+        }
+        m_event.end();
+        if (m_event.shouldCommit()) {
+            m_event.set(m_shapeHash, m_mode, m_parameterCount, m_rows, m_failed);
+            m_event.commit();
+        }
+    }
+
+}
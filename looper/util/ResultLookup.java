@@ -0,0 +1,178 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataTableSpec;
+
+/**
+ * Answers the parameter tuples of an execution without querying the database where possible. Tuples ruled out by the
+ * {@link KeyPrefilter} have empty results, repeated tuples are answered from the {@link ResultMemo} and tuples of
+ * previous executions from the {@link PersistentResultCache}.
+ */
+final class ResultLookup {
+
+    private final LoopingMonitor m_monitor;
+
+    private ResultMemo m_memo;
+
+    private PersistentResultCache m_resultCache;
+
+    private KeyPrefilter m_prefilter;
+
+    private final AtomicLong m_prefilteredQueries = new AtomicLong();
+
+    /**
+     * Creates a new instance of ResultLookup
+     *
+     * @param monitor the monitor that counts the hits and misses
+     */
+    ResultLookup(final LoopingMonitor monitor) {
+        m_monitor = monitor;
+    }
+
+    /**
+     * Returns the result memo or <code>null</code> if the results are not memoized
+     *
+     * @return the result memo or <code>null</code>
+     */
+    ResultMemo getMemo() {
+        return m_memo;
+    }
+
+    /**
+     * Sets the memo that answers repeated parameter tuples
+     *
+     * @param memo the result memo or <code>null</code>
+     */
+    void setMemo(final ResultMemo memo) {
+        m_memo = memo;
+    }
+
+    /**
+     * Returns the persistent result cache or <code>null</code> if the results are not cached
+     *
+     * @return the persistent result cache or <code>null</code>
+     */
+    PersistentResultCache getResultCache() {
+        return m_resultCache;
+    }
+
+    /**
+     * Sets the cache that answers parameter tuples from the results of previous executions
+     *
+     * @param cache the persistent result cache or <code>null</code>
+     */
+    void setResultCache(final PersistentResultCache cache) {
+        m_resultCache = cache;
+    }
+
+    /**
+     * Returns the prefilter or <code>null</code> if it is not used
+     *
+     * @return the prefilter or <code>null</code>
+     */
+    KeyPrefilter getPrefilter() {
+        return m_prefilter;
+    }
+
+    /**
+     * Sets the prefilter with the key values of the statement
+     *
+     * @param prefilter the prefilter or <code>null</code>
+     */
+    void setPrefilter(final KeyPrefilter prefilter) {
+        m_prefilter = prefilter;
+    }
+
+    /**
+     * Returns the number of queries that have been skipped because the prefilter ruled out a match
+     *
+     * @return the number of skipped queries
+     */
+    long getPrefilteredQueries() {
+        return m_prefilteredQueries.get();
+    }
+
+    /**
+     * Passes the result columns the statement currently returns to the persistent cache, which only returns results
+     * stored with the same columns
+     *
+     * @param resultSpec the spec of the result columns
+     */
+    void setResultSpec(final DataTableSpec resultSpec) {
+        if (m_resultCache != null) {
+            m_resultCache.setResultSpec(resultSpec);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given parameter tuple cannot match any row according to the prefilter
+     *
+     * @param params the parameter tuple
+     * @param canSkip returns <code>true</code> if the query of a tuple may be skipped, e.g. if empty results can be
+     *            written
+     * @return <code>true</code> if the query of the tuple can be skipped
+     */
+    boolean cannotMatch(final DataCell[] params, final BooleanSupplier canSkip) {
+        return m_prefilter != null && canSkip.getAsBoolean() && !m_prefilter.mightMatch(params);
+    }
+
+    /**
+     * Returns the known results of the given parameter tuple, which are empty if the prefilter rules out a match, or
+     * are taken from the result memo or the persistent result cache
+     *
+     * @param params the parameter tuple
+     * @param canSkip see {@link #cannotMatch(DataCell[], BooleanSupplier)}
+     * @return the known results or <code>null</code> if the database needs to be queried
+     */
+    List<DataCell[]> find(final DataCell[] params, final BooleanSupplier canSkip) {
+        if (cannotMatch(params, canSkip)) {
+            m_prefilteredQueries.incrementAndGet();
+            return Collections.<DataCell[]> emptyList();
+        }
+        if (m_memo == null && m_resultCache == null) {
+            return null;
+        }
+        List<DataCell[]> results = m_memo == null ? null : m_memo.get(params);
+        if (results == null && m_resultCache != null) {
+            results = m_resultCache.get(params);
+            if (results != null && m_memo != null) {
+                m_memo.put(params, results);
+            }
+        }
+        m_monitor.lookup(results != null);
+        return results;
+    }
+
+    /**
+     * Stores the queried results of the given parameter tuple in the result memo and the persistent result cache
+     *
+     * @param params the parameter tuple
+     * @param results the results of the tuple
+     */
+    void store(final DataCell[] params, final List<DataCell[]> results) {
+        if (m_memo != null) {
+            m_memo.put(params, results);
+        }
+        if (m_resultCache != null) {
+            m_resultCache.put(params, results);
+        }
+    }
+
+    /**
+     * Closes the result memo and the persistent result cache at the end of the execution
+     */
+    void close() {
+        if (m_memo != null) {
+            m_memo.close();
+        }
+        if (m_resultCache != null) {
+            m_resultCache.close();
+        }
+    }
+
+}
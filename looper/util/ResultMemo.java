@@ -0,0 +1,263 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.blob.BinaryObjectDataValue;
+import org.knime.core.data.filestore.FileStoreCell;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.util.FileUtil;
+
+/**
+ * Memoizes the results of the looped SQL statement for the parameter tuples seen during one execution, so that
+ * repeated tuples are answered without querying the database again. The memoized results are held in memory up to the
+ * configured limit and evicted in least recently used order. Results that are large compared to the memory limit are
+ * spilled to a temporary file instead of being held in memory, unless they contain file store cells, which cannot be
+ * written with Java serialization. Their data is kept in the file store anyway, so they are held in memory.
+ */
+public class ResultMemo implements AutoCloseable {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(ResultMemo.class);
+
+    /** Results larger than this fraction of the memory limit are spilled to disk */
+    private static final int SPILL_FRACTION = 16;
+
+    /** The disk limit as multiple of the memory limit */
+    private static final int DISK_FACTOR = 8;
+
+    private final long m_maxMemory;
+
+    private final long m_maxDisk;
+
+    private final long m_spillThreshold;
+
+    private final LinkedHashMap<List<DataCell>, Entry> m_entries =
+        new LinkedHashMap<List<DataCell>, Entry>(16, 0.75f, true);
+
+    private long m_memory = 0;
+
+    private long m_disk = 0;
+
+    private File m_spillDir;
+
+    private int m_spillFileIdx = 0;
+
+    private long m_hits = 0;
+
+    private long m_misses = 0;
+
+    /**
+     * Creates a new instance of ResultMemo
+     *
+     * @param maxMemory the maximum number of bytes of memoized results held in memory
+     */
+    public ResultMemo(final long maxMemory) {
+        m_maxMemory = maxMemory;
+        m_maxDisk = maxMemory * DISK_FACTOR;
+        m_spillThreshold = maxMemory / SPILL_FRACTION;
+    }
+
+    /**
+     * Returns the memoized results for the given parameter tuple
+     *
+     * @param params the parameter tuple
+     * @return the memoized results or <code>null</code> if the tuple has not been memoized
+     */
+    public synchronized List<DataCell[]> get(final DataCell[] params) {
+        final Entry entry = m_entries.get(Arrays.asList(params));
+        if (entry == null) {
+            m_misses++;
+            return null;
+        }
+        if (entry.m_results != null) {
+            m_hits++;
+            return entry.m_results;
+        }
+        try {
+            final List<DataCell[]> results = readSpilled(entry.m_file);
+            m_hits++;
+            return results;
+        } catch (IOException | ClassNotFoundException ex) {
+            LOGGER.debug("Could not read spilled results, querying database again: " + ex.getMessage(), ex);
+            remove(Arrays.asList(params));
+            m_misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Memoizes the results for the given parameter tuple
+     *
+     * @param params the parameter tuple
+     * @param results the results of the SQL statement for the tuple
+     */
+    public synchronized void put(final DataCell[] params, final List<DataCell[]> results) {
+        final List<DataCell> key = Arrays.asList(params.clone());
+        if (m_entries.containsKey(key)) {
+            return;
+        }
+        final long size = estimateSize(results);
+        if (size > m_spillThreshold && !DBLoopingUtil.containsFileStoreCells(results)) {
+            if (size > m_maxDisk) {
+                return;
+            }
+            try {
+                m_entries.put(key, new Entry(null, spill(results), size));
+                m_disk += size;
+            } catch (IOException ex) {
+                LOGGER.debug("Could not spill results to disk, not memoizing them: " + ex.getMessage(), ex);
+                return;
+            }
+        } else {
+            m_entries.put(key, new Entry(results, null, size));
+            m_memory += size;
+        }
+        evict();
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<List<DataCell>, Entry>> iter = m_entries.entrySet().iterator();
+        while ((m_memory > m_maxMemory || m_disk > m_maxDisk) && iter.hasNext()) {
+            final Entry entry = iter.next().getValue();
+            if (entry.m_results != null && m_memory > m_maxMemory) {
+                m_memory -= entry.m_size;
+                iter.remove();
+            } else if (entry.m_file != null && m_disk > m_maxDisk) {
+                deleteSpilled(entry);
+                iter.remove();
+            }
+        }
+    }
+
+    private void remove(final List<DataCell> key) {
+        final Entry entry = m_entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        if (entry.m_file != null) {
+            deleteSpilled(entry);
+        } else {
+            m_memory -= entry.m_size;
+        }
+    }
+
+    private void deleteSpilled(final Entry entry) {
+        m_disk -= entry.m_size;
+        if (!entry.m_file.delete()) {
+            entry.m_file.deleteOnExit();
+        }
+    }
+
+    private File spill(final List<DataCell[]> results) throws IOException {
+        if (m_spillDir == null) {
+            m_spillDir = FileUtil.createTempDir("knime_db_looper_memo");
+        }
+        final File file = new File(m_spillDir, "results_" + m_spillFileIdx++ + ".bin");
+        try (final ObjectOutputStream out =
+            new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeObject(results.toArray(new DataCell[results.size()][]));
+        } catch (IOException ex) {
+            file.delete();
+            throw ex;
+        }
+        return file;
+    }
+
+    private static List<DataCell[]> readSpilled(final File file) throws IOException, ClassNotFoundException {
+        try (final ObjectInputStream in =
+            new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return Arrays.asList((DataCell[][])in.readObject());
+        }
+    }
+
+    /**
+     * Returns a rough estimate of the memory used by the given results
+     *
+     * @param results the results to estimate
+     * @return the estimated number of bytes
+     */
+    static long estimateSize(final List<DataCell[]> results) {
+        long size = 64;
+        for (final DataCell[] cells : results) {
+            size += 16 + 8L * cells.length;
+            for (final DataCell cell : cells) {
+                size += 16;
+                if (cell instanceof FileStoreCell) {
+                    // the data is in the file store, the cell only references it
+                    size += 64;
+                } else if (cell instanceof StringValue) {
+                    size += 2L * ((StringValue)cell).getStringValue().length();
+                } else if (cell instanceof BinaryObjectDataValue) {
+                    size += ((BinaryObjectDataValue)cell).length();
+                } else {
+                    size += 8;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of parameter tuples that were answered from the memo
+     *
+     * @return the number of memo hits
+     */
+    public synchronized long getHits() {
+        return m_hits;
+    }
+
+    /**
+     * Returns the number of parameter tuples that were not memoized
+     *
+     * @return the number of memo misses
+     */
+    public synchronized long getMisses() {
+        return m_misses;
+    }
+
+    /**
+     * Discards all memoized results and deletes the spilled files
+     */
+    @Override
+    public synchronized void close() {
+        m_entries.clear();
+        m_memory = 0;
+        m_disk = 0;
+        if (m_spillDir != null) {
+            FileUtil.deleteRecursively(m_spillDir);
+            m_spillDir = null;
+        }
+    }
+
+    /**
+     * A memoized result, either held in memory or spilled to a file
+     */
+    private static final class Entry {
+
+        private final List<DataCell[]> m_results;
+
+        private final File m_file;
+
+        private final long m_size;
+
+        private Entry(final List<DataCell[]> results, final File file, final long size) {
+            m_results = results;
+            m_file = file;
+            m_size = size;
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Date;
+import java.util.Set;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.blob.BinaryObjectCellFactory;
+import org.knime.core.data.blob.BinaryObjectDataCell;
+import org.knime.core.data.date.DateAndTimeCell;
+import org.knime.core.data.def.BooleanCell;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.LongCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.port.database.DatabaseConnectionSettings;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.port.database.reader.DBReaderImpl;
+
+/**
+ * Converts the rows of a {@link ResultSet} into KNIME cells. The converter is created once from the meta data of the
+ * looped statement and reused for all result sets, so that the result columns are identical for all input rows.
+ * <p>
+ * The result columns are mapped by the database reader of the connection and the values are read like the database
+ * reader does, including the time zone correction of the connection, so that the results equal the results of the
+ * row by row database looper.
+ */
+public class ResultSetConverter {
+
+    private final DatabaseConnectionSettings m_connSettings;
+
+    private final int[] m_sqlTypes;
+
+    private final DataType[] m_types;
+
+    private final DataTableSpec m_spec;
+
+    private final BinaryObjectCellFactory m_blobFactory;
+
+    /**
+     * Creates a new instance of ResultSetConverter
+     *
+     * @param connSettings the settings of the database connection, whose reader maps the result columns
+     * @param metaData the meta data of the result set
+     * @param offset the number of leading result set columns that are not part of the result, e.g. the row tag column
+     *            of a batched query
+     * @param blobFactory the factory to create binary object cells with
+     * @throws SQLException if the meta data cannot be read
+     */
+    public ResultSetConverter(final DatabaseQueryConnectionSettings connSettings, final ResultSetMetaData metaData,
+        final int offset, final BinaryObjectCellFactory blobFactory) throws SQLException {
+        m_connSettings = connSettings;
+        m_blobFactory = blobFactory;
+        final DataTableSpec readerSpec = new MetaDataReader(connSettings).createSpec(metaData);
+        final int numCols = readerSpec.getNumColumns() - offset;
+        m_sqlTypes = new int[numCols];
+        m_types = new DataType[numCols];
+        final DataColumnSpec[] colSpecs = new DataColumnSpec[numCols];
+        for (int i = 0; i < numCols; i++) {
+            m_sqlTypes[i] = metaData.getColumnType(offset + i + 1);
+            final DataColumnSpec colSpec = readerSpec.getColumnSpec(offset + i);
+            if (isSupported(colSpec.getType())) {
+                m_types[i] = colSpec.getType();
+                colSpecs[i] = colSpec;
+            } else {
+                // Types that are not read by this converter are read as their string representation
+                m_types[i] = StringCell.TYPE;
+                final DataColumnSpecCreator creator = new DataColumnSpecCreator(colSpec);
+                creator.setType(StringCell.TYPE);
+                colSpecs[i] = creator.createSpec();
+            }
+        }
+        m_spec = new DataTableSpec(colSpecs);
+    }
+
+    /**
+     * Returns the spec of the converted result columns
+     *
+     * @return the spec of the converted result columns
+     */
+    public DataTableSpec getDataTableSpec() {
+        return m_spec;
+    }
+
+    /**
+     * Returns the index of the result column with the given name ignoring the case or -1 if there is no such column
+     *
+     * @param name the name of the column
+     * @return the index of the result column with the given name or -1
+     */
+    public int findColumnIgnoreCase(final String name) {
+        for (int i = 0; i < m_spec.getNumColumns(); i++) {
+            if (m_spec.getColumnSpec(i).getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Converts the current row of the given result set
+     *
+     * @param rs the result set positioned on the row to convert
+     * @param offset the number of leading result set columns that are not part of the result
+     * @return the converted cells
+     * @throws SQLException if a value cannot be read
+     */
+    public DataCell[] convert(final ResultSet rs, final int offset) throws SQLException {
+        final DataCell[] cells = new DataCell[m_sqlTypes.length];
+        for (int i = 0; i < cells.length; i++) {
+            final int idx = offset + i + 1;
+            if (m_types[i].equals(BinaryObjectDataCell.TYPE)) {
+                // Stream binary objects directly into the cell instead of reading them into memory first
+                cells[i] = readBinary(rs, idx);
+            } else {
+                cells[i] = createCell(readValue(rs, idx, i), i);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Reads the plain Java values of the current row of the given result set without creating any cells. Used to
+     * separate fetching the rows from the database from converting them with {@link #convert(Object[])}.
+     *
+     * @param rs the result set positioned on the row to read
+     * @param offset the number of leading result set columns that are not part of the result
+     * @return the values of the row, <code>null</code> for SQL NULL
+     * @throws SQLException if a value cannot be read
+     */
+    public Object[] read(final ResultSet rs, final int offset) throws SQLException {
+        final Object[] values = new Object[m_sqlTypes.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readValue(rs, offset + i + 1, i);
+        }
+        return values;
+    }
+
+    /**
+     * Converts the values returned by {@link #read(ResultSet, int)}
+     *
+     * @param values the values of a row
+     * @return the converted cells
+     * @throws SQLException if a binary object cannot be created
+     */
+    public DataCell[] convert(final Object[] values) throws SQLException {
+        final DataCell[] cells = new DataCell[m_sqlTypes.length];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = createCell(values[i], i);
+        }
+        return cells;
+    }
+
+    private Object readValue(final ResultSet rs, final int idx, final int col) throws SQLException {
+        final DataType type = m_types[col];
+        final Object value;
+        if (type.equals(BooleanCell.TYPE)) {
+            value = rs.getBoolean(idx);
+        } else if (type.equals(IntCell.TYPE)) {
+            value = rs.getInt(idx);
+        } else if (type.equals(LongCell.TYPE)) {
+            value = rs.getLong(idx);
+        } else if (type.equals(DoubleCell.TYPE)) {
+            value = rs.getDouble(idx);
+        } else if (type.equals(DateAndTimeCell.TYPE)) {
+            switch (m_sqlTypes[col]) {
+                case Types.DATE:
+                    value = rs.getDate(idx);
+                    break;
+                case Types.TIME:
+                    value = rs.getTime(idx);
+                    break;
+                default:
+                    value = rs.getTimestamp(idx);
+            }
+        } else if (type.equals(BinaryObjectDataCell.TYPE)) {
+            value = rs.getBytes(idx);
+        } else {
+            value = rs.getString(idx);
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    private DataCell createCell(final Object value, final int col) throws SQLException {
+        if (value == null) {
+            return DataType.getMissingCell();
+        }
+        final DataType type = m_types[col];
+        if (type.equals(BooleanCell.TYPE)) {
+            return BooleanCell.get((Boolean)value);
+        } else if (type.equals(IntCell.TYPE)) {
+            return new IntCell((Integer)value);
+        } else if (type.equals(LongCell.TYPE)) {
+            return new LongCell((Long)value);
+        } else if (type.equals(DoubleCell.TYPE)) {
+            return new DoubleCell((Double)value);
+        } else if (type.equals(DateAndTimeCell.TYPE)) {
+            final long millis = ((Date)value).getTime();
+            final long corrected = millis + m_connSettings.getTimeZoneOffset(millis);
+            final int sqlType = m_sqlTypes[col];
+            return new DateAndTimeCell(corrected, sqlType != Types.TIME, sqlType != Types.DATE,
+                sqlType != Types.DATE);
+        } else if (type.equals(BinaryObjectDataCell.TYPE)) {
+            try {
+                return m_blobFactory.create(new ByteArrayInputStream((byte[])value));
+            } catch (IOException ex) {
+                throw new SQLException("Could not read binary object: " + ex.getMessage(), ex);
+            }
+        }
+        return new StringCell((String)value);
+    }
+
+    private DataCell readBinary(final ResultSet rs, final int idx) throws SQLException {
+        final InputStream in = rs.getBinaryStream(idx);
+        if (in == null) {
+            return DataType.getMissingCell();
+        }
+        try {
+            return m_blobFactory.create(in);
+        } catch (IOException ex) {
+            throw new SQLException("Could not read binary object: " + ex.getMessage(), ex);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    private static boolean isSupported(final DataType type) {
+        return type.equals(BooleanCell.TYPE) || type.equals(IntCell.TYPE) || type.equals(LongCell.TYPE)
+            || type.equals(DoubleCell.TYPE) || type.equals(DateAndTimeCell.TYPE)
+            || type.equals(BinaryObjectDataCell.TYPE) || type.equals(StringCell.TYPE);
+    }
+
+    /**
+     * Returns the given name or, if it is already used, the name with the smallest free index appended
+     *
+     * @param usedNames the names already in use
+     * @param name the name to make unique
+     * @return a name that is not contained in the used names
+     */
+    static String createUniqueName(final Set<String> usedNames, final String name) {
+        String uniqueName = name;
+        int idx = 1;
+        while (usedNames.contains(uniqueName)) {
+            uniqueName = name + " (#" + idx++ + ")";
+        }
+        return uniqueName;
+    }
+
+    /**
+     * Exposes the type mapping of the database reader of a connection
+     */
+    private static final class MetaDataReader extends DBReaderImpl {
+
+        private MetaDataReader(final DatabaseQueryConnectionSettings connSettings) {
+            super(connSettings);
+        }
+
+        private DataTableSpec createSpec(final ResultSetMetaData metaData) throws SQLException {
+            return createTableSpec(metaData);
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * Infers the result columns of the looped SQL statement without executing it for any input row, so that the looper
+ * can provide its output spec during configure. The inferred specs are cached per connection and SQL statement, so
+ * that repeated configure calls do not query the database again. The least recently used spec is removed if more
+ * than {@link #MAX_ENTRIES} specs are cached.
+ */
+public final class ResultSpecCache {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(ResultSpecCache.class);
+
+    /** The maximum number of cached specs */
+    public static final int MAX_ENTRIES = 256;
+
+    private static final ResultSpecCache INSTANCE = new ResultSpecCache();
+
+    private final Map<String, DataTableSpec> m_specs = new LinkedHashMap<String, DataTableSpec>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, DataTableSpec> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private ResultSpecCache() {
+        // Singleton
+    }
+
+    /**
+     * Returns the singleton instance of ResultSpecCache
+     *
+     * @return the singleton instance
+     */
+    public static ResultSpecCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the spec of the result columns of the given SQL statement, either from the cache or from the meta data
+     * of the prepared statement
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param sql the SQL statement with a "?" for every placeholder
+     * @param paramTypes the types of the values that are bound to the placeholders
+     * @return the spec of the result columns or <code>null</code> if it cannot be inferred
+     */
+    public DataTableSpec getResultSpec(final DatabaseQueryConnectionSettings connSettings,
+        final CredentialsProvider cp, final String sql, final DataType[] paramTypes) {
+        final String key = createKey(connSettings, cp, sql);
+        synchronized (this) {
+            final DataTableSpec spec = m_specs.get(key);
+            if (spec != null) {
+                return spec;
+            }
+        }
+        return refreshResultSpec(connSettings, cp, sql, paramTypes);
+    }
+
+    /**
+     * Infers the spec of the result columns of the given SQL statement from the database, bypassing and replacing
+     * the cached spec, e.g. to validate results that were stored by a previous execution
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param sql the SQL statement with a "?" for every placeholder
+     * @param paramTypes the types of the values that are bound to the placeholders
+     * @return the spec of the result columns or <code>null</code> if it cannot be inferred
+     */
+    public DataTableSpec refreshResultSpec(final DatabaseQueryConnectionSettings connSettings,
+        final CredentialsProvider cp, final String sql, final DataType[] paramTypes) {
+        final String key = createKey(connSettings, cp, sql);
+        DataTableSpec spec = null;
+        try {
+            final Connection conn = connSettings.createConnection(cp);
+            synchronized (connSettings.syncConnection(conn)) {
+                spec = inferResultSpec(connSettings, conn, sql, paramTypes);
+            }
+        } catch (Exception ex) {
+            LOGGER.debug("Could not infer result columns of statement: " + ex.getMessage(), ex);
+        }
+        synchronized (this) {
+            if (spec == null) {
+                m_specs.remove(key);
+            } else {
+                m_specs.put(key, spec);
+            }
+        }
+        return spec;
+    }
+
+    /**
+     * Replaces the cached spec of the given SQL statement with the spec of the actual results, e.g. after the
+     * statement has been executed
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param sql the SQL statement with a "?" for every placeholder
+     * @param spec the spec of the result columns
+     */
+    public void update(final DatabaseQueryConnectionSettings connSettings, final CredentialsProvider cp,
+        final String sql, final DataTableSpec spec) {
+        put(createKey(connSettings, cp, sql), spec);
+    }
+
+    private synchronized void put(final String key, final DataTableSpec spec) {
+        m_specs.put(key, spec);
+    }
+
+    private static String createKey(final DatabaseQueryConnectionSettings connSettings, final CredentialsProvider cp,
+        final String sql) {
+        return DBLoopingUtil.getConnectionId(connSettings, cp) + "\n"
+            + PreparedStatementCache.normalize(sql);
+    }
+
+    private static DataTableSpec inferResultSpec(final DatabaseQueryConnectionSettings connSettings,
+        final Connection conn, final String sql, final DataType[] paramTypes) throws SQLException {
+        try (final PreparedStatement stmt = conn.prepareStatement(sql)) {
+            final ResultSetMetaData metaData = stmt.getMetaData();
+            if (metaData != null) {
+                return new ResultSetConverter(connSettings, metaData, 0, null).getDataTableSpec();
+            }
+        } catch (SQLException ex) {
+            // Not all drivers support meta data of prepared statements, use a query that returns no rows instead
+            LOGGER.debug("Could not retrieve meta data of prepared statement: " + ex.getMessage(), ex);
+        }
+
+        final String metaQuery = connSettings.getUtility().getStatementManipulator().forMetadataOnly(sql);
+        try (final PreparedStatement stmt = conn.prepareStatement(metaQuery)) {
+            for (int i = 0; i < paramTypes.length; i++) {
+                stmt.setNull(i + 1, DBLoopingUtil.getSQLType(paramTypes[i]));
+            }
+            try (final ResultSet rs = stmt.executeQuery()) {
+                return new ResultSetConverter(connSettings, rs.getMetaData(), 0, null).getDataTableSpec();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which failed statement executions are retried and how long to wait before the next attempt. Only transient
+ * errors are retried, i.e. errors whose SQL state belongs to the class 40 (transaction rollback, e.g. deadlocks and
+ * serialization failures) and errors the driver reports as {@link SQLTransientException}. Connection errors (class
+ * 08) leave the connection unusable, so they are only retried by executors that re-create the connection and its
+ * statements, see {@link #isConnectionError(Throwable)}. Query timeouts are never retried. The wait time grows
+ * exponentially with the attempt and is randomized ("full jitter"), so that concurrent executions do not retry in
+ * lock step. Data manipulation statements are never retried, since they might have been applied before the error.
+ */
+public class RetryPolicy {
+
+    private final int m_maxAttempts;
+
+    private final long m_baseDelayMillis;
+
+    private final long m_maxDelayMillis;
+
+    private final CircuitBreaker m_breaker;
+
+    private final AtomicLong m_retries = new AtomicLong();
+
+    /**
+     * Creates a new instance of RetryPolicy
+     *
+     * @param maxAttempts the maximum number of executions of a statement, including the first one
+     * @param baseDelayMillis the maximum wait time in milliseconds before the first retry
+     * @param maxDelayMillis the upper bound of the wait time in milliseconds
+     * @param breaker the circuit breaker that pauses the dispatch or <code>null</code>
+     */
+    public RetryPolicy(final int maxAttempts, final long baseDelayMillis, final long maxDelayMillis,
+        final CircuitBreaker breaker) {
+        m_maxAttempts = Math.max(1, maxAttempts);
+        m_baseDelayMillis = Math.max(0, baseDelayMillis);
+        m_maxDelayMillis = Math.max(m_baseDelayMillis, maxDelayMillis);
+        m_breaker = breaker;
+    }
+
+    /**
+     * Returns the maximum number of executions of a statement, including the first one
+     *
+     * @return the maximum number of attempts
+     */
+    public int getMaxAttempts() {
+        return m_maxAttempts;
+    }
+
+    /**
+     * Returns the circuit breaker or <code>null</code> if the dispatch is never paused
+     *
+     * @return the circuit breaker or <code>null</code>
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return m_breaker;
+    }
+
+    /**
+     * Returns the number of milliseconds to wait before the given retry, a random value between 0 and the
+     * exponentially growing upper bound
+     *
+     * @param retry the number of the retry, starting with 1
+     * @return the wait time in milliseconds
+     */
+    public long getBackoffMillis(final int retry) {
+        final long bound = m_baseDelayMillis << Math.min(retry - 1, 30);
+        final long delay = bound < 0 ? m_maxDelayMillis : Math.min(bound, m_maxDelayMillis);
+        return delay == 0 ? 0 : ThreadLocalRandom.current().nextLong(delay + 1);
+    }
+
+    /**
+     * Counts a retry
+     */
+    public void retried() {
+        m_retries.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of retries
+     *
+     * @return the number of retries
+     */
+    public long getRetries() {
+        return m_retries.get();
+    }
+
+    /**
+     * Returns <code>true</code> if the given exception or one of its causes is a transient error that might succeed
+     * if the statement is executed again on the same connection
+     *
+     * @param ex the exception of the statement execution
+     * @return <code>true</code> if the error is transient
+     */
+    public static boolean isTransient(final Throwable ex) {
+        if (isConnectionError(ex)) {
+            return false;
+        }
+        for (Throwable t = ex; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLTimeoutException) {
+                return false;
+            }
+            if (t instanceof SQLTransientException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                final String state = ((SQLException)t).getSQLState();
+                if (state != null && state.startsWith("40")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if the given exception or one of its causes is a connection error, after which the
+     * statement can only succeed on a new connection
+     *
+     * @param ex the exception of the statement execution
+     * @return <code>true</code> if the connection failed
+     */
+    public static boolean isConnectionError(final Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                final String state = ((SQLException)t).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,127 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * Executes the looped SQL statement once for every input row. If a retry policy is set, an execution that fails
+ * with a connection error is repeated on a new connection.
+ */
+public class RowByRowLoopingExecutor extends AbstractLoopingExecutor {
+
+    /**
+     * Creates a new instance of RowByRowLoopingExecutor
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param query the SQL statement with a "?" for every placeholder
+     * @param inSpec the spec of the input table
+     * @param paramColumns the names of the input columns in the order of the placeholders
+     * @param options the looping options
+     */
+    public RowByRowLoopingExecutor(final DatabaseQueryConnectionSettings connSettings, final CredentialsProvider cp,
+        final String query, final DataTableSpec inSpec, final String[] paramColumns, final LoopingOptions options) {
+        super(connSettings, cp, query, inSpec, paramColumns, options);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loop(final RowInput input, final long rowCount, final ExecutionContext exec) throws Exception {
+        final long[] rowIdx = new long[1];
+        ConnectionFailure failure = null;
+        do {
+            final Connection conn = getSharedConnection();
+            synchronized (syncConnection(conn)) {
+                failure = loop(conn, input, rowCount, exec, rowIdx, failure);
+            }
+            if (failure != null) {
+                // the statement of the failed connection is closed and the lock released, reconnect and continue
+                // with the failed row
+                reconnect(conn, failure.m_exception, failure.m_attempt);
+            }
+        } while (failure != null);
+    }
+
+    /**
+     * Executes the statement for the input rows, starting with the row of the given connection failure
+     *
+     * @return the connection failure that requires a new connection or <code>null</code> if all rows are processed
+     */
+    private ConnectionFailure loop(final Connection conn, final RowInput input, final long rowCount,
+        final ExecutionContext exec, final long[] rowIdx, final ConnectionFailure previousFailure) throws Exception {
+        final PreparedStatement stmt = prepare(conn, getQuery(), 0);
+        final TransactionGroup tx = openTransaction(conn);
+        boolean success = false;
+        try {
+            DataRow row;
+            int attempt;
+            if (previousFailure == null) {
+                row = input.poll();
+                attempt = 1;
+            } else {
+                row = previousFailure.m_row;
+                attempt = previousFailure.m_attempt + 1;
+            }
+            for (; row != null; row = input.poll(), attempt = 1) {
+                if (attempt == 1) {
+                    updateProgress(exec, ++rowIdx[0], rowCount);
+                }
+                final Savepoint savepoint = tx == null ? null : tx.begin();
+                final List<DataCell[]> results;
+                try {
+                    results = lookup(stmt, getAssembler().getParameters(row));
+                } catch (SQLException ex) {
+                    if (tx != null) {
+                        tx.failed(savepoint);
+                    } else if (canReconnect(ex, attempt)) {
+                        success = true;
+                        return new ConnectionFailure(row, attempt, ex);
+                    }
+                    handleException(row, ex);
+                    continue;
+                }
+                if (tx != null) {
+                    tx.succeeded(savepoint, 1);
+                }
+                addResults(row, results);
+            }
+            success = true;
+            return null;
+        } finally {
+            closeStatement(stmt);
+            closeTransaction(tx, success);
+        }
+    }
+
+    /**
+     * An input row whose execution failed with a connection error
+     */
+    private static final class ConnectionFailure {
+
+        private final DataRow m_row;
+
+        private final int m_attempt;
+
+        private final SQLException m_exception;
+
+        private ConnectionFailure(final DataRow row, final int attempt, final SQLException exception) {
+            m_row = row;
+            m_attempt = attempt;
+            m_exception = exception;
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.knime.base.util.flowvariable.FlowVariableProvider;
+import org.knime.base.util.flowvariable.FlowVariableResolver;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+
+/**
+ * The compiled form of the SQL statement of the looper. The statement is scanned once into literal text and typed
+ * placeholder slots for the {@link DatabaseQueryConnectionSettings#TABLE_PLACEHOLDER table placeholder}, flow
+ * variables ("$${Sname}$$") and input columns ("$column$", a "$" within the name is escaped as "\$"), so that the
+ * statement can be rendered in a single pass whenever the node is configured or executed. Every column slot is
+ * rendered as "?" and has its own entry in {@link #getColumns()}, in the order of the placeholders.
+ */
+public final class SQLTemplate {
+
+    private static final String FLOW_VARIABLE_START = "$${";
+
+    private static final String FLOW_VARIABLE_END = "}$$";
+
+    private enum SlotType {
+        LITERAL, TABLE, FLOW_VARIABLE, COLUMN
+    }
+
+    private final SlotType[] m_types;
+
+    private final String[] m_values;
+
+    private final List<String> m_columns;
+
+    private final int m_literalLength;
+
+    private SQLTemplate(final List<SlotType> types, final List<String> values) {
+        m_types = types.toArray(new SlotType[types.size()]);
+        m_values = values.toArray(new String[values.size()]);
+        final List<String> columns = new ArrayList<String>();
+        int literalLength = 0;
+        for (int i = 0; i < m_types.length; i++) {
+            if (m_types[i] == SlotType.COLUMN) {
+                columns.add(m_values[i]);
+            } else if (m_types[i] == SlotType.LITERAL) {
+                literalLength += m_values[i].length();
+            }
+        }
+        m_columns = Collections.unmodifiableList(columns);
+        m_literalLength = literalLength;
+    }
+
+    /**
+     * Compiles the given SQL statement
+     *
+     * @param sql the SQL statement with placeholders
+     * @return the compiled template
+     * @throws InvalidSettingsException if a column placeholder is not closed
+     */
+    public static SQLTemplate compile(final String sql) throws InvalidSettingsException {
+        final List<SlotType> types = new ArrayList<SlotType>();
+        final List<String> values = new ArrayList<String>();
+        final String table = DatabaseQueryConnectionSettings.TABLE_PLACEHOLDER;
+        int literalStart = 0;
+        int i = 0;
+        while (i < sql.length()) {
+            final char c = sql.charAt(i);
+            if (c == table.charAt(0) && sql.startsWith(table, i)) {
+                addLiteral(types, values, sql, literalStart, i);
+                types.add(SlotType.TABLE);
+                values.add(table);
+                i += table.length();
+                literalStart = i;
+            } else if (c == '$' && (i == 0 || sql.charAt(i - 1) != '\\')) {
+                addLiteral(types, values, sql, literalStart, i);
+                final int end;
+                if (sql.startsWith(FLOW_VARIABLE_START, i)
+                    && (end = sql.indexOf(FLOW_VARIABLE_END, i + FLOW_VARIABLE_START.length())) >= 0) {
+                    types.add(SlotType.FLOW_VARIABLE);
+                    values.add(sql.substring(i, end + FLOW_VARIABLE_END.length()));
+                    i = end + FLOW_VARIABLE_END.length();
+                } else {
+                    final int columnEnd = findColumnEnd(sql, i);
+                    types.add(SlotType.COLUMN);
+                    values.add(sql.substring(i + 1, columnEnd).replace("\\$", "$"));
+                    i = columnEnd + 1;
+                }
+                literalStart = i;
+            } else {
+                i++;
+            }
+        }
+        addLiteral(types, values, sql, literalStart, sql.length());
+        return new SQLTemplate(types, values);
+    }
+
+    private static void addLiteral(final List<SlotType> types, final List<String> values, final String sql,
+        final int start, final int end) {
+        if (end > start) {
+            types.add(SlotType.LITERAL);
+            values.add(sql.substring(start, end));
+        }
+    }
+
+    /**
+     * Returns the index of the "$" that closes the column placeholder starting at the given index
+     */
+    private static int findColumnEnd(final String sql, final int start) throws InvalidSettingsException {
+        int end = start;
+        do {
+            end = sql.indexOf('$', end + 1);
+            if (end < 0) {
+                throw new InvalidSettingsException(
+                    "Variable identifier \"" + sql.substring(start + 1) + "\" is not closed");
+            }
+        } while (sql.charAt(end - 1) == '\\');
+        return end;
+    }
+
+    /**
+     * Returns the names of the input columns in the order of their placeholders, a column that is used by several
+     * placeholders is contained several times
+     *
+     * @return the names of the input columns of the placeholders
+     */
+    public List<String> getColumns() {
+        return m_columns;
+    }
+
+    /**
+     * Checks that all columns of the placeholders exist in the given input spec
+     *
+     * @param inSpec the spec of the input table
+     * @throws InvalidSettingsException if a column does not exist
+     */
+    public void validateColumns(final DataTableSpec inSpec) throws InvalidSettingsException {
+        for (final String column : m_columns) {
+            if (!inSpec.containsName(column)) {
+                throw new InvalidSettingsException("Column " + column + " doesn't exist in the input table.");
+            }
+        }
+    }
+
+    /**
+     * Renders the SQL statement. The table placeholder is replaced with the given query, the flow variables with
+     * their values and the column placeholders with "?".
+     *
+     * @param query the query of the database connection that replaces the table placeholder
+     * @param provider the provider of the flow variables
+     * @return the SQL statement with a "?" for every column placeholder
+     */
+    public String render(final String query, final FlowVariableProvider provider) {
+        final StringBuilder buf = new StringBuilder(m_literalLength + m_columns.size() + query.length() + 2);
+        for (int i = 0; i < m_types.length; i++) {
+            switch (m_types[i]) {
+                case LITERAL:
+                    buf.append(m_values[i]);
+                    break;
+                case TABLE:
+                    buf.append('(').append(query).append(')');
+                    break;
+                case FLOW_VARIABLE:
+                    buf.append(FlowVariableResolver.parse(m_values[i], provider));
+                    break;
+                default:
+                    buf.append('?');
+            }
+        }
+        return buf.toString();
+    }
+
+}
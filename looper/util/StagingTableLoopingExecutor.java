@@ -0,0 +1,430 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.knime.base.node.io.database.looper.util.LoopingStatistics.Phase;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.port.database.DatabaseUtility;
+import org.knime.core.node.port.database.tablecreator.DBColumn;
+import org.knime.core.node.port.database.tablecreator.DBKey;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.workflow.CredentialsProvider;
+
+/**
+ * Executes the looped SQL statement with a constant number of statements. The distinct parameter tuples of the input
+ * table are bulk loaded into a temporary staging table, the looped statement is joined laterally against the staging
+ * table and the ordered join result is streamed back and split to the input rows. Results of tuples that occur again
+ * later in the input are kept until their last occurrence. If the staging table or the join is not supported by the
+ * database, the tuples are executed one by one. The join result is only ordered by the tuple, an ORDER BY of the
+ * looped statement is not guaranteed to be preserved within the results of one tuple.
+ */
+public class StagingTableLoopingExecutor extends AbstractLoopingExecutor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(StagingTableLoopingExecutor.class);
+
+    /**
+     * Prefix of the name of the temporary staging table. The name is made unique per execution, since some databases
+     * share temporary tables between sessions and every execution must only drop its own table.
+     */
+    private static final String STAGING_TABLE_PREFIX = "knime_loop_";
+
+    private static final String PARAM_COLUMN_PREFIX = "knime_loop_p";
+
+    private final int m_batchSize;
+
+    private final Map<List<DataCell>, Integer> m_tupleIndices = new HashMap<List<DataCell>, Integer>();
+
+    private final List<DataCell[]> m_tuples = new ArrayList<DataCell[]>();
+
+    /** The results of the tuples that are known before staging, <code>null</code> for staged tuples */
+    private final List<List<DataCell[]>> m_knownResults = new ArrayList<List<DataCell[]>>();
+
+    private final String m_stagingTable =
+        STAGING_TABLE_PREFIX + UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+
+    /** The index of the staged tuple in the staging table or -1 if the results of the tuple are already known */
+    private int[] m_stageIndices = new int[64];
+
+    /** The index of the last input row that uses the tuple */
+    private int[] m_lastRows = new int[64];
+
+    /** The tuple index of every input row */
+    private int[] m_rowTuples = new int[1024];
+
+    private int m_rowCount = 0;
+
+    private int m_stagedCount = 0;
+
+    private boolean m_stagingTableCreated = false;
+
+    private Statement m_joinStmt;
+
+    private ResultSet m_joinResult;
+
+    private boolean m_hasNext;
+
+    private PreparedStatement m_singleStmt;
+
+    /**
+     * Creates a new instance of StagingTableLoopingExecutor
+     *
+     * @param connSettings the settings of the database connection
+     * @param cp the credentials provider
+     * @param query the SQL statement with a "?" for every placeholder
+     * @param inSpec the spec of the input table
+     * @param paramColumns the names of the input columns in the order of the placeholders
+     * @param options the looping options
+     * @param batchSize the number of tuples per batched insert into the staging table, the initial size if the batch
+     *            size is adapted
+     */
+    public StagingTableLoopingExecutor(final DatabaseQueryConnectionSettings connSettings,
+        final CredentialsProvider cp, final String query, final DataTableSpec inSpec, final String[] paramColumns,
+        final LoopingOptions options, final int batchSize) {
+        super(connSettings, cp, query, inSpec, paramColumns, options);
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loop(final RowInput input, final long rowCount, final ExecutionContext exec) throws Exception {
+        final Connection conn = getSharedConnection();
+        synchronized (syncConnection(conn)) {
+            loop(conn, input, rowCount, exec);
+        }
+    }
+
+    private void loop(final Connection conn, final RowInput input, final long rowCount, final ExecutionContext exec)
+        throws Exception {
+        // The input rows are buffered since they are needed again after the join
+        final BufferedDataContainer container = exec.createDataContainer(getAssembler().getInputSpec());
+        final ExecutionContext collectExec = exec.createSubExecutionContext(0.3);
+        DataRow row;
+        while ((row = input.poll()) != null) {
+            updateProgress(collectExec, m_rowCount + 1, rowCount);
+            container.addRowToTable(row);
+            addTuple(getAssembler().getParameters(row));
+        }
+        container.close();
+        final BufferedDataTable rows = container.getTable();
+
+        try {
+            if (m_stagedCount > 0 && stageTuples(conn, exec.createSubExecutionContext(0.2))) {
+                executeJoin(conn);
+            }
+            final ExecutionContext emitExec = exec.createSubExecutionContext(0.5);
+            final Map<Integer, List<DataCell[]>> retainedResults = new HashMap<Integer, List<DataCell[]>>();
+            int rowIdx = 0;
+            try (final CloseableRowIterator iter = rows.iterator()) {
+                while (iter.hasNext()) {
+                    final DataRow inputRow = iter.next();
+                    updateProgress(emitExec, rowIdx + 1, m_rowCount);
+                    final int tupleIdx = m_rowTuples[rowIdx];
+                    List<DataCell[]> results = retainedResults.get(tupleIdx);
+                    if (results != null && m_lastRows[tupleIdx] == rowIdx) {
+                        retainedResults.remove(tupleIdx);
+                    } else if (results == null) {
+                        try {
+                            results = fetchResults(conn, tupleIdx);
+                        } catch (SQLException ex) {
+                            handleException(inputRow, ex);
+                            rowIdx++;
+                            continue;
+                        }
+                        if (m_lastRows[tupleIdx] > rowIdx) {
+                            retainedResults.put(tupleIdx, results);
+                        }
+                    }
+                    addResults(inputRow, results);
+                    rowIdx++;
+                }
+            }
+        } finally {
+            closeJoin();
+            closeStatement(m_singleStmt);
+            m_singleStmt = null;
+            dropStagingTable(conn);
+            exec.clearTable(rows);
+        }
+    }
+
+    private void addTuple(final DataCell[] params) {
+        final List<DataCell> key = Arrays.asList(params);
+        Integer tupleIdx = m_tupleIndices.get(key);
+        if (tupleIdx == null) {
+            tupleIdx = m_tuples.size();
+            m_tuples.add(params);
+            m_tupleIndices.put(key, tupleIdx);
+            // Tuples with known results are answered from the memo or the cache and need not be staged
+            final List<DataCell[]> results = findResults(params);
+            m_knownResults.add(results);
+            if (tupleIdx == m_stageIndices.length) {
+                m_stageIndices = Arrays.copyOf(m_stageIndices, tupleIdx * 2);
+                m_lastRows = Arrays.copyOf(m_lastRows, tupleIdx * 2);
+            }
+            m_stageIndices[tupleIdx] = results == null ? m_stagedCount++ : -1;
+        }
+        if (m_rowCount == m_rowTuples.length) {
+            m_rowTuples = Arrays.copyOf(m_rowTuples, m_rowCount * 2);
+        }
+        m_lastRows[tupleIdx] = m_rowCount;
+        m_rowTuples[m_rowCount++] = tupleIdx;
+    }
+
+    /**
+     * Creates the staging table and inserts the tuples that need to be queried
+     *
+     * @return <code>true</code> if the tuples have been staged, <code>false</code> if the tuples have to be executed
+     *         one by one
+     */
+    private boolean stageTuples(final Connection conn, final ExecutionContext exec) throws Exception {
+        try {
+            createStagingTable(conn);
+            insertTuples(conn, exec);
+            return true;
+        } catch (SQLException ex) {
+            // Errors of single tuples are only reported by the individual executions, which fail if required
+            checkCanceled();
+            setWarningMessage("Could not stage the parameter values in a temporary table, executing the statement "
+                + "for every value instead: " + getRootCauseMessage(ex));
+            LOGGER.debug(ex.getMessage(), ex);
+            return false;
+        }
+    }
+
+    private void createStagingTable(final Connection conn) throws SQLException {
+        final DatabaseUtility utility = getConnectionSettings().getUtility();
+        final DataType[] types = getAssembler().getParameterTypes();
+        final Map<Integer, String> typeNames = DBLoopingUtil.getTypeNames(conn);
+        final DBColumn[] columns = new DBColumn[types.length + 1];
+        columns[0] = new DBColumn(BatchQueryBuilder.ROW_TAG_COLUMN,
+            DBLoopingUtil.getSQLTypeName(IntCell.TYPE, 0, typeNames), true);
+        for (int i = 0; i < types.length; i++) {
+            columns[i + 1] = new DBColumn(PARAM_COLUMN_PREFIX + (i + 1),
+                DBLoopingUtil.getSQLTypeName(types[i], getMaxLength(i), typeNames), false);
+        }
+        execute(conn, utility.generateCreateTableQuery("", m_stagingTable, true, columns, new DBKey[0]));
+        m_stagingTableCreated = true;
+    }
+
+    private int getMaxLength(final int paramIdx) {
+        int maxLength = 0;
+        for (final DataCell[] tuple : m_tuples) {
+            final DataCell cell = tuple[paramIdx];
+            if (!cell.isMissing()) {
+                final String value = cell instanceof StringValue ? ((StringValue)cell).getStringValue()
+                    : cell.toString();
+                maxLength = Math.max(maxLength, value.length());
+            }
+        }
+        return maxLength;
+    }
+
+    private void insertTuples(final Connection conn, final ExecutionContext exec) throws Exception {
+        final int paramCount = getAssembler().getParameterCount();
+        final StringBuilder buf = new StringBuilder("INSERT INTO ").append(m_stagingTable).append(" (")
+            .append(BatchQueryBuilder.ROW_TAG_COLUMN);
+        for (int i = 1; i <= paramCount; i++) {
+            buf.append(", ").append(PARAM_COLUMN_PREFIX).append(i);
+        }
+        buf.append(") VALUES (?");
+        for (int i = 0; i < paramCount; i++) {
+            buf.append(", ?");
+        }
+        buf.append(')');
+
+        try (final PreparedStatement stmt = conn.prepareStatement(buf.toString())) {
+            register(stmt);
+            int batchCount = 0;
+            long start = System.nanoTime();
+            for (int t = 0; t < m_tuples.size(); t++) {
+                if (m_stageIndices[t] < 0) {
+                    continue;
+                }
+                stmt.setInt(1, m_stageIndices[t]);
+                DBLoopingUtil.bindParameters(stmt, 1, m_tuples.get(t));
+                stmt.addBatch();
+                if (++batchCount >= nextBatchSize(m_batchSize)) {
+                    stmt.executeBatch();
+                    recordBatch(batchCount, start);
+                    start = System.nanoTime();
+                    batchCount = 0;
+                    exec.checkCanceled();
+                    exec.setProgress((t + 1) / (double)m_tuples.size(), "Staging parameter values");
+                }
+            }
+            if (batchCount > 0) {
+                stmt.executeBatch();
+                recordBatch(batchCount, start);
+            }
+            unregister(stmt);
+        }
+    }
+
+    private void executeJoin(final Connection conn) throws Exception {
+        final String[] paramColumns = new String[getAssembler().getParameterCount()];
+        for (int i = 0; i < paramColumns.length; i++) {
+            paramColumns[i] = PARAM_COLUMN_PREFIX + (i + 1);
+        }
+        final String url = String.valueOf(getConnectionSettings().getJDBCUrl()).toLowerCase();
+        final boolean crossApply = url.startsWith("jdbc:sqlserver:") || url.startsWith("jdbc:jtds:");
+        final BatchQueryBuilder builder = new BatchQueryBuilder(getQuery(), paramColumns.length);
+        if (builder.isOrdered()) {
+            setWarningMessage("The staging table join orders the results by input value only, the ORDER BY of the "
+                + "statement is not guaranteed within the results of one value. Use the row by row mode if the order "
+                + "matters.");
+        }
+        final String sql = builder.createStagingJoinQuery(m_stagingTable, paramColumns, crossApply);
+        try {
+            m_joinStmt = conn.createStatement();
+            register(m_joinStmt);
+            // The rows of the join are streamed later on, so the event only covers the execution of the join
+            final QueryTrace trace = beginQuery(0);
+            final long start = now();
+            try {
+                m_joinResult = m_joinStmt.executeQuery(sql);
+                trace.succeeded(0);
+            } finally {
+                endQuery(trace);
+            }
+            record(Phase.EXECUTE, now() - start, m_tuples.size());
+            initConverter(m_joinResult.getMetaData(), 1);
+            m_hasNext = m_joinResult.next();
+        } catch (SQLException ex) {
+            handleJoinException(ex);
+        }
+    }
+
+    /**
+     * Returns the results of the given tuple, either the results known before staging, from the join result or by
+     * executing the looped statement for the tuple
+     */
+    private List<DataCell[]> fetchResults(final Connection conn, final int tupleIdx) throws Exception {
+        final int stageIdx = m_stageIndices[tupleIdx];
+        if (stageIdx < 0) {
+            // Looked up in the prefilter, the memo and the cache when the tuple was added
+            final List<DataCell[]> results = m_knownResults.get(tupleIdx);
+            m_knownResults.set(tupleIdx, null);
+            return results;
+        }
+        if (m_joinResult != null) {
+            try {
+                final List<DataCell[]> results = readJoinResults(stageIdx);
+                storeResults(m_tuples.get(tupleIdx), results);
+                return results;
+            } catch (SQLException ex) {
+                handleJoinException(ex);
+            }
+        }
+        if (m_singleStmt == null) {
+            m_singleStmt = prepare(conn, getQuery(), 0);
+        }
+        // Not a lookup, the memo and the cache have already been asked when the tuple was added
+        final List<DataCell[]> results = executeQuery(m_singleStmt, m_tuples.get(tupleIdx));
+        storeResults(m_tuples.get(tupleIdx), results);
+        return results;
+    }
+
+    /**
+     * Reads the rows of the given staged tuple from the join result, which is ordered by the staged tuple index and
+     * read in the order in which the tuples were staged
+     */
+    private List<DataCell[]> readJoinResults(final int stageIdx) throws SQLException {
+        final List<DataCell[]> results = new ArrayList<DataCell[]>();
+        long fetchNanos = 0;
+        long convertNanos = 0;
+        while (m_hasNext) {
+            final int rowStageIdx = m_joinResult.getInt(1);
+            if (rowStageIdx > stageIdx) {
+                break;
+            }
+            final long start = now();
+            if (rowStageIdx == stageIdx) {
+                results.add(getConverter().convert(m_joinResult, 1));
+            }
+            final long converted = now();
+            m_hasNext = m_joinResult.next();
+            convertNanos += converted - start;
+            fetchNanos += now() - converted;
+        }
+        record(Phase.FETCH, fetchNanos, results.size());
+        record(Phase.CONVERT, convertNanos, results.size());
+        return results;
+    }
+
+    private void handleJoinException(final SQLException ex) throws CanceledExecutionException {
+        closeJoin();
+        checkCanceled();
+        setWarningMessage("Could not join the statement with the staging table, executing the statement for every "
+            + "value instead: " + getRootCauseMessage(ex));
+        LOGGER.debug(ex.getMessage(), ex);
+    }
+
+    private void closeJoin() {
+        try {
+            if (m_joinResult != null) {
+                m_joinResult.close();
+            }
+            if (m_joinStmt != null) {
+                unregister(m_joinStmt);
+                m_joinStmt.close();
+            }
+        } catch (SQLException ex) {
+            LOGGER.debug("Could not close join statement: " + ex.getMessage(), ex);
+        }
+        m_joinResult = null;
+        m_joinStmt = null;
+        m_hasNext = false;
+    }
+
+    private void dropStagingTable(final Connection conn) {
+        if (!m_stagingTableCreated) {
+            return;
+        }
+        try {
+            execute(conn, getConnectionSettings().getUtility().generateDropTableQuery("", m_stagingTable));
+        } catch (SQLException ex) {
+            LOGGER.debug("Could not drop staging table: " + ex.getMessage(), ex);
+        }
+        m_stagingTableCreated = false;
+    }
+
+    private static void execute(final Connection conn, final String sql) throws SQLException {
+        try (final Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static String getRootCauseMessage(final Exception ex) {
+        Throwable cause = ExceptionUtils.getRootCause(ex);
+        if (cause == null) {
+            cause = ex;
+        }
+        return cause.getMessage();
+    }
+
+}
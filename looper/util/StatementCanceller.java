@@ -0,0 +1,118 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Cancels the running statements of an execution as soon as the user cancels the node. The execution context has no
+ * cancellation callback, so a watchdog thread polls it in a short interval and calls {@link Statement#cancel()} on
+ * every registered statement. The executing thread then returns from the blocking JDBC call with an exception instead
+ * of waiting for the query to finish.
+ */
+public class StatementCanceller implements AutoCloseable {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(StatementCanceller.class);
+
+    /** Interval in milliseconds in which the execution context is polled */
+    private static final long POLL_INTERVAL = 100;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final ExecutionMonitor m_exec;
+
+    private final Set<Statement> m_statements = ConcurrentHashMap.newKeySet();
+
+    private final Thread m_watchdog;
+
+    private volatile boolean m_canceled = false;
+
+    private volatile boolean m_closed = false;
+
+    /**
+     * Creates a new instance of StatementCanceller and starts its watchdog thread
+     *
+     * @param exec the execution monitor to poll for cancellation
+     */
+    public StatementCanceller(final ExecutionMonitor exec) {
+        m_exec = exec;
+        m_watchdog = new Thread(this::watch, "DB Looper Canceller-" + THREAD_COUNTER.incrementAndGet());
+        m_watchdog.setDaemon(true);
+        m_watchdog.start();
+    }
+
+    private void watch() {
+        while (!m_closed) {
+            if (!m_canceled) {
+                try {
+                    m_exec.checkCanceled();
+                } catch (CanceledExecutionException ex) {
+                    m_canceled = true;
+                }
+            }
+            if (m_canceled) {
+                // Keep canceling, statements that are executed after the first cancel request have to stop as well
+                cancelAll();
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private void cancelAll() {
+        for (final Statement stmt : m_statements) {
+            try {
+                stmt.cancel();
+            } catch (SQLException ex) {
+                LOGGER.debug("Could not cancel statement: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Registers a statement that is canceled if the execution is canceled
+     *
+     * @param stmt the statement
+     */
+    public void register(final Statement stmt) {
+        m_statements.add(stmt);
+    }
+
+    /**
+     * Unregisters a statement, e.g. before it is closed
+     *
+     * @param stmt the statement
+     */
+    public void unregister(final Statement stmt) {
+        m_statements.remove(stmt);
+    }
+
+    /**
+     * Returns <code>true</code> if the execution has been canceled and the statements have been canceled
+     *
+     * @return <code>true</code> if the execution has been canceled
+     */
+    public boolean isCanceled() {
+        return m_canceled;
+    }
+
+    /**
+     * Stops the watchdog thread
+     */
+    @Override
+    public void close() {
+        m_closed = true;
+        m_watchdog.interrupt();
+        m_statements.clear();
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Groups the statements of the looper into explicit transactions that are committed every N rows and/or every T
+ * milliseconds. Every unit of work, i.e. a row or a batch, is guarded by a savepoint, so that a failing unit is rolled
+ * back on its own without discarding the other units of the current transaction. The auto-commit state of the
+ * connection is restored when the group is closed.
+ */
+public class TransactionGroup {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(TransactionGroup.class);
+
+    private final Connection m_conn;
+
+    private final int m_commitRows;
+
+    private final long m_commitMillis;
+
+    private final boolean m_autoCommit;
+
+    private final boolean m_supportsSavepoints;
+
+    private int m_pendingRows = 0;
+
+    private long m_lastCommit;
+
+    private long m_commitCount = 0;
+
+    /**
+     * Creates a new instance of TransactionGroup and starts the first transaction by switching off auto-commit
+     *
+     * @param conn the database connection
+     * @param commitRows the number of rows after which the transaction is committed, 0 for no limit
+     * @param commitMillis the number of milliseconds after which the transaction is committed, 0 for no limit
+     * @throws SQLException if auto-commit cannot be switched off
+     */
+    public TransactionGroup(final Connection conn, final int commitRows, final long commitMillis)
+        throws SQLException {
+        m_conn = conn;
+        m_commitRows = commitRows;
+        m_commitMillis = commitMillis;
+        m_autoCommit = conn.getAutoCommit();
+        m_supportsSavepoints = conn.getMetaData().supportsSavepoints();
+        if (!m_supportsSavepoints) {
+            LOGGER.warn("The database does not support savepoints, a failing row might abort its transaction.");
+        }
+        conn.setAutoCommit(false);
+        m_lastCommit = System.currentTimeMillis();
+    }
+
+    /**
+     * Starts a unit of work
+     *
+     * @return the savepoint of the unit or <code>null</code> if the database does not support savepoints
+     * @throws SQLException if the savepoint cannot be set
+     */
+    public Savepoint begin() throws SQLException {
+        return m_supportsSavepoints ? m_conn.setSavepoint() : null;
+    }
+
+    /**
+     * Finishes a successful unit of work and commits the transaction if the row or time limit is reached
+     *
+     * @param savepoint the savepoint returned by {@link #begin()}
+     * @param rows the number of rows of the unit
+     * @throws SQLException if the transaction cannot be committed
+     */
+    public void succeeded(final Savepoint savepoint, final int rows) throws SQLException {
+        if (savepoint != null) {
+            try {
+                m_conn.releaseSavepoint(savepoint);
+            } catch (SQLException ex) {
+                // Releasing is optional, the savepoint is released with the transaction
+                LOGGER.debug("Could not release savepoint: " + ex.getMessage(), ex);
+            }
+        }
+        m_pendingRows += rows;
+        if ((m_commitRows > 0 && m_pendingRows >= m_commitRows)
+            || (m_commitMillis > 0 && System.currentTimeMillis() - m_lastCommit >= m_commitMillis)) {
+            commit();
+        }
+    }
+
+    /**
+     * Rolls back a failed unit of work to its savepoint
+     *
+     * @param savepoint the savepoint returned by {@link #begin()}
+     * @throws SQLException if the rollback fails
+     */
+    public void failed(final Savepoint savepoint) throws SQLException {
+        if (savepoint != null) {
+            m_conn.rollback(savepoint);
+        }
+    }
+
+    /**
+     * Commits the current transaction
+     *
+     * @throws SQLException if the transaction cannot be committed
+     */
+    public void commit() throws SQLException {
+        m_conn.commit();
+        m_commitCount++;
+        m_pendingRows = 0;
+        m_lastCommit = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the number of commits so far
+     *
+     * @return the number of commits
+     */
+    public long getCommitCount() {
+        return m_commitCount;
+    }
+
+    /**
+     * Commits or rolls back the current transaction and restores the auto-commit state of the connection
+     *
+     * @param commit <code>true</code> if the current transaction should be committed, <code>false</code> if it
+     *            should be rolled back, e.g. because the execution failed
+     * @throws SQLException if the transaction cannot be finished
+     */
+    public void close(final boolean commit) throws SQLException {
+        try {
+            if (commit) {
+                commit();
+            } else {
+                m_conn.rollback();
+            }
+        } finally {
+            m_conn.setAutoCommit(m_autoCommit);
+        }
+    }
+
+}
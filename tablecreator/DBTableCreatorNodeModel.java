@@ -6,6 +6,7 @@ import java.sql.SQLException;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.knime.base.node.io.database.DBNodeModel;
 import org.knime.base.node.io.database.tablecreator.util.DBTableCreatorConfiguration;
+import org.knime.base.node.io.database.tablecreator.util.TableCreatorEvent;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
@@ -65,11 +66,27 @@ public class DBTableCreatorNodeModel extends DBNodeModel {
         String schemaTable = (schema == null || schema.isEmpty()) ? tableName : schema + "." + tableName;
 
         synchronized (conn.syncConnection(sqlConn)) {
-            if (dbUtility.tableExists(sqlConn, manipulator.quoteIdentifier(schemaTable))) {
+            final boolean exists;
+            final TableCreatorEvent existsEvent = beginEvent(TableCreatorEvent.TABLE_EXISTS, schemaTable, null);
+            boolean success = false;
+            try {
+                exists = dbUtility.tableExists(sqlConn, manipulator.quoteIdentifier(schemaTable));
+                success = true;
+            } finally {
+                finishEvent(existsEvent, success);
+            }
+            if (exists) {
                 if (m_config.isDropExisting()) {
                     try {
                         final String query = dbUtility.generateDropTableQuery(schema, tableName);
-                        conn.execute(query, getCredentialsProvider());
+                        final TableCreatorEvent event = beginEvent(TableCreatorEvent.DROP, schemaTable, query);
+                        boolean dropped = false;
+                        try {
+                            conn.execute(query, getCredentialsProvider());
+                            dropped = true;
+                        } finally {
+                            finishEvent(event, dropped);
+                        }
                     } catch (SQLException ex) {
                         Throwable cause = ExceptionUtils.getRootCause(ex);
                         if (cause == null) {
@@ -92,7 +109,14 @@ public class DBTableCreatorNodeModel extends DBNodeModel {
 
                 final String query = conn.getUtility().generateCreateTableQuery(schema,
                     tableName, m_config.isTempTable(), m_config.getColumns(), m_config.getKeys());
-                conn.execute(query, getCredentialsProvider());
+                final TableCreatorEvent event = beginEvent(TableCreatorEvent.CREATE, schemaTable, query);
+                boolean created = false;
+                try {
+                    conn.execute(query, getCredentialsProvider());
+                    created = true;
+                } finally {
+                    finishEvent(event, created);
+                }
             } catch (SQLException ex) {
                 Throwable cause = ExceptionUtils.getRootCause(ex);
                 if (cause == null) {
@@ -108,6 +132,22 @@ public class DBTableCreatorNodeModel extends DBNodeModel {
         return new PortObject[]{FlowVariablePortObject.INSTANCE};
     }
 
+    /**
+     * Starts the flight recorder event of a statement, the event is not created if the running Java does not support
+     * flight recorder events
+     *
+     * @return the started event or <code>null</code>
+     */
+    private static TableCreatorEvent beginEvent(final String op, final String tableName, final String sql) {
+        return TableCreatorEvent.begin(op, tableName, sql);
+    }
+
+    private static void finishEvent(final TableCreatorEvent event, final boolean success) {
+        if (event != null) {
+            event.finish(success);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
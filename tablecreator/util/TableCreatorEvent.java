@@ -0,0 +1,122 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright by KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * History
+ *   Oct 18, 2026 (budiyanto): created
+ */
+package org.knime.base.node.io.database.tablecreator.util;
+
+import org.knime.base.node.io.database.looper.util.FlightRecorderEvent;
+import org.knime.base.node.io.database.looper.util.FlightRecorderEvent.Field;
+import org.knime.base.node.io.database.looper.util.FlightRecorderUtil;
+
+/**
+ * Java Flight Recorder event that is emitted for every statement the Database Table Creator sends to the database,
+ * i.e. the check whether the table exists, the DROP and the CREATE statement. The event is only filled and committed
+ * if it is enabled in the running recording. The event type is defined through {@link FlightRecorderEvent}, so
+ * <code>jdk.jfr</code> is not needed at compile time.
+ *
+ * @author Budi Yanto, KNIME.com
+ */
+public final class TableCreatorEvent {
+
+    /** Operation of the check whether the table exists */
+    public static final String TABLE_EXISTS = "TABLE_EXISTS";
+
+    /** Operation of the DROP TABLE statement */
+    public static final String DROP = "DROP";
+
+    /** Operation of the CREATE TABLE statement */
+    public static final String CREATE = "CREATE";
+
+    private static final FlightRecorderEvent.Type TYPE = FlightRecorderEvent.Type.create(
+        "org.knime.database.TableCreator", "Database Table Creator Statement",
+        "Execution of a statement of the Database Table Creator", new String[]{"KNIME", "Database"},
+        new Field("operation", String.class, "Operation", null),
+        new Field("table", String.class, "Table", null),
+        new Field("sqlShapeHash", long.class, "SQL Shape Hash",
+            "Hash of the normalized SQL statement, 0 if the statement is generated by the driver"),
+        new Field("failed", boolean.class, "Failed", null));
+
+    private final FlightRecorderEvent m_event;
+
+    private TableCreatorEvent(final FlightRecorderEvent event, final String op, final String tableName,
+        final String sql) {
+        m_event = event;
+        if (event.isEnabled()) {
+            event.set(0, op);
+            event.set(1, tableName);
+            event.set(2, sql == null ? 0L : FlightRecorderUtil.getShapeHash(sql));
+        }
+        event.begin();
+    }
+
+    /**
+     * Creates a new event and starts its timing
+     *
+     * @param op the operation, one of {@link #TABLE_EXISTS}, {@link #DROP} and {@link #CREATE}
+     * @param tableName the name of the table including the schema
+     * @param sql the executed SQL statement or <code>null</code> if it is not known
+     * @return the started event or <code>null</code> if the running Java does not support flight recorder events
+     */
+    public static TableCreatorEvent begin(final String op, final String tableName, final String sql) {
+        final FlightRecorderEvent event = TYPE == null ? null : TYPE.newEvent();
+        return event == null ? null : new TableCreatorEvent(event, op, tableName, sql);
+    }
+
+    /**
+     * Ends the timing of the event and commits it if the recording wants it
+     *
+     * @param success <code>true</code> if the statement was successfully executed
+     */
+    public void finish(final boolean success) {
+        m_event.end();
+        if (m_event.shouldCommit()) {
+            m_event.set(3, !success);
+            m_event.commit();
+        }
+    }
+
+}
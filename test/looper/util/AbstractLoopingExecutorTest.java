@@ -0,0 +1,105 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knime.core.data.DataRow;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.streamable.DataTableRowInput;
+import org.knime.core.node.streamable.RowOutput;
+
+/**
+ * Tests the streaming execution of {@link AbstractLoopingExecutor}, which pushes the rows to given outputs instead of
+ * creating tables.
+ */
+public class AbstractLoopingExecutorTest {
+
+    /** A lookup whose key column is part of the result, as the prefilter requires */
+    private static final String QUERY = "SELECT customer, id, item FROM orders WHERE customer = ? ORDER BY id";
+
+    private LoopingTestDatabase m_db;
+
+    /**
+     * Creates the database.
+     *
+     * @throws Exception if the database cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        m_db = new LoopingTestDatabase();
+    }
+
+    /**
+     * Drops the database.
+     *
+     * @throws Exception if the database cannot be dropped
+     */
+    @After
+    public void tearDown() throws Exception {
+        m_db.close();
+    }
+
+    private List<String> stream(final AbstractLoopingExecutor executor) throws Exception {
+        final BufferedDataTable input = m_db.createInput();
+        final CollectingRowOutput output = new CollectingRowOutput();
+        final CollectingRowOutput errors = new CollectingRowOutput();
+        executor.execute(new DataTableRowInput(input), -1, m_db.getExec(), output, errors);
+        assertTrue(output.m_closed);
+        assertTrue(errors.m_closed);
+        return LoopingTestDatabase.toStrings(output.m_rows);
+    }
+
+    /**
+     * Tests that the streamed rows equal the rows of the output table.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testStreaming() throws Exception {
+        for (final boolean includeEmptyResults : new boolean[]{false, true}) {
+            assertEquals(m_db.loopRowByRow(QUERY, includeEmptyResults),
+                stream(new RowByRowLoopingExecutor(m_db.getSettings(), null, QUERY, m_db.getInputSpec(),
+                    LoopingTestDatabase.COLUMNS, LoopingTestDatabase.createOptions(includeEmptyResults))));
+        }
+    }
+
+    /**
+     * Tests that the input rows whose queries the prefilter skips are streamed with empty results like the rows whose
+     * queries return no rows.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testPrefilterWithEmptyResults() throws Exception {
+        final RowByRowLoopingExecutor executor = new RowByRowLoopingExecutor(m_db.getSettings(), null, QUERY,
+            m_db.getInputSpec(), LoopingTestDatabase.COLUMNS, LoopingTestDatabase.createOptions(true));
+        executor.setPrefilter(true);
+        assertEquals(m_db.loopRowByRow(QUERY, true), stream(executor));
+        assertTrue(executor.isPrefiltered());
+        assertTrue(executor.getPrefilteredQueries() >= 2);
+    }
+
+    private static final class CollectingRowOutput extends RowOutput {
+
+        private final List<DataRow> m_rows = new ArrayList<DataRow>();
+
+        private boolean m_closed = false;
+
+        @Override
+        public void push(final DataRow row) {
+            m_rows.add(row);
+        }
+
+        @Override
+        public void close() {
+            m_closed = true;
+        }
+    }
+
+}
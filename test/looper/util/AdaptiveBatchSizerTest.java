@@ -0,0 +1,83 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link AdaptiveBatchSizer}.
+ */
+public class AdaptiveBatchSizerTest {
+
+    private static final long MILLIS = 1000L * 1000L;
+
+    /**
+     * Tests that the batch size grows additively while the throughput does not drop and stops at the maximum.
+     */
+    @Test
+    public void testGrowsToMaximum() {
+        final AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1, 200, 0);
+        assertEquals(100, sizer.getBatchSize());
+        sizer.update(100, 100 * MILLIS);
+        assertEquals(125, sizer.getBatchSize());
+        for (int i = 0; i < 10; i++) {
+            // constant time per row
+            sizer.update(sizer.getBatchSize(), sizer.getBatchSize() * MILLIS);
+        }
+        assertEquals(200, sizer.getBatchSize());
+        assertEquals(200, sizer.getMaxUsedBatchSize());
+        assertEquals(100, sizer.getMinUsedBatchSize());
+    }
+
+    /**
+     * Tests that the batch size is halved if the throughput drops after an increase.
+     */
+    @Test
+    public void testShrinksOnThroughputDrop() {
+        final AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1, 1000, 0);
+        sizer.update(100, 100 * MILLIS);
+        assertEquals(125, sizer.getBatchSize());
+        // the larger batch takes four times as long per row
+        sizer.update(125, 500 * MILLIS);
+        assertEquals(62, sizer.getBatchSize());
+    }
+
+    /**
+     * Tests that the batch size is halved if a batch exceeds the latency ceiling, but not below the minimum.
+     */
+    @Test
+    public void testLatencyCeiling() {
+        final AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 40, 1000, 50);
+        sizer.update(100, 60 * MILLIS);
+        assertEquals(50, sizer.getBatchSize());
+        sizer.update(50, 60 * MILLIS);
+        assertEquals(40, sizer.getBatchSize());
+    }
+
+    /**
+     * Tests that a smaller last batch does not change the batch size, but is counted in the statistics.
+     */
+    @Test
+    public void testPartialBatch() {
+        final AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1, 1000, 0);
+        sizer.update(30, 1000 * MILLIS);
+        assertEquals(100, sizer.getBatchSize());
+        assertEquals(30, sizer.getMinUsedBatchSize());
+        assertEquals(30.0, sizer.getMeanBatchSize(), 0);
+        assertEquals(30.0, sizer.getRowsPerSecond(), 1e-9);
+    }
+
+    /**
+     * Tests that the initial size is clamped to the bounds.
+     */
+    @Test
+    public void testBounds() {
+        assertEquals(10, new AdaptiveBatchSizer(1, 10, 20, 0).getBatchSize());
+        assertEquals(20, new AdaptiveBatchSizer(100, 10, 20, 0).getBatchSize());
+        final AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(5, 0, 0, 0);
+        assertTrue(sizer.getBatchSize() >= 1);
+        assertEquals(0, sizer.getMinUsedBatchSize());
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link AdaptiveConcurrencyLimiter}.
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    /** The number of queries of a measurement window of the limiter */
+    private static final int WINDOW_SIZE = 50;
+
+    private static final long MILLIS = 1000L * 1000L;
+
+    /**
+     * Runs the queries of one measurement window, always using the full limit
+     */
+    private static void runWindow(final AdaptiveConcurrencyLimiter limiter, final int maxInFlight,
+        final long latencyNanos, final boolean failed) throws InterruptedException {
+        int remaining = WINDOW_SIZE;
+        while (remaining > 0) {
+            final int inFlight = Math.min(Math.min(maxInFlight, limiter.getLimit()), remaining);
+            for (int i = 0; i < inFlight; i++) {
+                limiter.acquire();
+            }
+            for (int i = 0; i < inFlight; i++) {
+                limiter.release(latencyNanos, failed);
+            }
+            remaining -= inFlight;
+        }
+    }
+
+    /**
+     * Tests that the limit grows to the maximum while the latency stays flat.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testGrowsWithFlatLatency() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8);
+        assertEquals(1, limiter.getLimit());
+        for (int i = 0; i < 100; i++) {
+            runWindow(limiter, Integer.MAX_VALUE, 10 * MILLIS, false);
+        }
+        assertEquals(8, limiter.getLimit());
+        assertEquals(8, limiter.getHighestLimit());
+        assertEquals(1, limiter.getLowestLimit());
+        assertEquals(10.0, limiter.getLatencyP95Millis(), 1e-9);
+    }
+
+    /**
+     * Tests that the limit does not grow if the queries do not use it.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testDoesNotGrowUnused() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 16);
+        for (int i = 0; i < 20; i++) {
+            runWindow(limiter, 1, 10 * MILLIS, false);
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    /**
+     * Tests that the limit shrinks when the latency rises.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testShrinksWithRisingLatency() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8);
+        for (int i = 0; i < 100; i++) {
+            runWindow(limiter, Integer.MAX_VALUE, 10 * MILLIS, false);
+        }
+        for (int i = 0; i < 3; i++) {
+            runWindow(limiter, Integer.MAX_VALUE, 100 * MILLIS, false);
+        }
+        assertTrue(limiter.getLimit() < 8);
+        assertTrue(limiter.getLimit() >= 1);
+    }
+
+    /**
+     * Tests that the limit is halved if the error rate of a window is too high, but not below the minimum.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testHalvesOnErrors() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 8);
+        for (int i = 0; i < 100; i++) {
+            runWindow(limiter, Integer.MAX_VALUE, 10 * MILLIS, false);
+        }
+        assertEquals(8, limiter.getLimit());
+        runWindow(limiter, Integer.MAX_VALUE, 10 * MILLIS, true);
+        assertEquals(4, limiter.getLimit());
+        runWindow(limiter, Integer.MAX_VALUE, 10 * MILLIS, true);
+        runWindow(limiter, Integer.MAX_VALUE, 10 * MILLIS, true);
+        assertEquals(2, limiter.getLimit());
+        assertEquals(2, limiter.getLowestLimit());
+    }
+
+    /**
+     * Tests that the bounds are normalized.
+     */
+    @Test
+    public void testBounds() {
+        assertEquals(1, new AdaptiveConcurrencyLimiter(0, 0).getLimit());
+        assertEquals(2, new AdaptiveConcurrencyLimiter(5, 2).getLimit());
+    }
+
+    /**
+     * Tests that acquire waits until a query is released if the limit is reached.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test(timeout = 10000)
+    public void testAcquireWaitsAtLimit() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1);
+        limiter.acquire();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        limiter.release(MILLIS, false);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        thread.join();
+    }
+
+}
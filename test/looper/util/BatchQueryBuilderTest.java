@@ -0,0 +1,181 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BatchQueryBuilder}.
+ */
+public class BatchQueryBuilderTest {
+
+    /**
+     * Tests the IN list, range and preload rewrite of a single "column = ?" predicate.
+     */
+    @Test
+    public void testSinglePlaceholder() {
+        final BatchQueryBuilder builder = new BatchQueryBuilder("SELECT * FROM t WHERE t.id = ? AND a > 1", 1);
+        assertTrue(builder.supportsInList());
+        assertTrue(builder.supportsPreload());
+        assertEquals("SELECT CASE WHEN t.id = ? THEN 0 WHEN t.id = ? THEN 1 WHEN t.id = ? THEN 2 END AS "
+            + "knime_loop_row, * FROM t WHERE t.id IN (?, ?, ?) AND a > 1", builder.createInListQuery(3));
+        assertEquals("SELECT CASE WHEN t.id = ? THEN 0 WHEN t.id = ? THEN 1 END AS knime_loop_row, * FROM t "
+            + "WHERE t.id BETWEEN ? AND ? AND a > 1", builder.createRangeQuery(2));
+        assertEquals("SELECT * FROM t WHERE 1 = 1 AND a > 1", builder.createPreloadQuery());
+        assertArrayEquals(new String[]{"id"}, builder.getPreloadKeyColumns());
+    }
+
+    /**
+     * Tests that quoted key columns are unquoted and several placeholders are only preloaded.
+     */
+    @Test
+    public void testSeveralPlaceholders() {
+        final BatchQueryBuilder builder =
+            new BatchQueryBuilder("SELECT * FROM t WHERE \"Key\" = ? AND `other` = ?", 2);
+        assertFalse(builder.supportsInList());
+        assertTrue(builder.supportsPreload());
+        assertArrayEquals(new String[]{"Key", "other"}, builder.getPreloadKeyColumns());
+        assertEquals("SELECT * FROM t WHERE 1 = 1 AND 1 = 1", builder.createPreloadQuery());
+        assertEquals("SELECT DISTINCT knime_loop_k.\"Key\", knime_loop_k.`other` FROM (SELECT * FROM t WHERE "
+            + "1 = 1 AND 1 = 1) knime_loop_k", builder.createDistinctKeyQuery());
+    }
+
+    /**
+     * Tests that statements whose results of a tuple depend on other predicates or rows are not rewritten.
+     */
+    @Test
+    public void testNonConjunctiveStatements() {
+        final String[] queries = {"SELECT * FROM t WHERE id = ? OR a = 1",
+            "SELECT * FROM t WHERE NOT (id = ?)",
+            "SELECT * FROM t WHERE id = ? UNION SELECT * FROM u",
+            "SELECT * FROM t WHERE id = ? LIMIT 10",
+            "SELECT TOP 10 * FROM t WHERE id = ?",
+            "SELECT id, COUNT(*) FROM t WHERE id = ? GROUP BY id",
+            "SELECT id, ROW_NUMBER() OVER (ORDER BY a) FROM t WHERE id = ?",
+            "SELECT * FROM t WHERE a IN (SELECT b FROM u WHERE c = 1) AND id = ? AND EXISTS (SELECT 1 FROM v WHERE "
+                + "d = 2)",
+            "SELECT * FROM t",
+            "SELECT ? FROM t WHERE id = 1"};
+        for (final String query : queries) {
+            final BatchQueryBuilder builder = new BatchQueryBuilder(query, query.indexOf('?') < 0 ? 0 : 1);
+            assertFalse(query, builder.supportsInList());
+            assertFalse(query, builder.supportsPreload());
+        }
+    }
+
+    /**
+     * Tests that keywords within identifiers do not prevent the rewrite.
+     */
+    @Test
+    public void testKeywordsInIdentifiers() {
+        final BatchQueryBuilder builder =
+            new BatchQueryBuilder("SELECT * FROM orders WHERE order_id = ? ORDER BY created", 1);
+        assertTrue(builder.supportsInList());
+        assertEquals("SELECT CASE WHEN order_id = ? THEN 0 END AS knime_loop_row, * FROM orders WHERE order_id IN (?) "
+            + "ORDER BY created", builder.createInListQuery(1));
+    }
+
+    /**
+     * Tests that the row tag compares the qualified column of the predicate, whatever the select list returns.
+     */
+    @Test
+    public void testTaggedSelectList() {
+        final BatchQueryBuilder builder = new BatchQueryBuilder(
+            "select distinct o.id, o.total from orders o join customers c on o.customer = c.id where c.id = ?", 1);
+        assertTrue(builder.supportsInList());
+        assertEquals("select distinct CASE WHEN c.id = ? THEN 0 WHEN c.id = ? THEN 1 END AS knime_loop_row, o.id, "
+            + "o.total from orders o join customers c on o.customer = c.id where c.id IN (?, ?)",
+            builder.createInListQuery(2));
+        assertFalse(new BatchQueryBuilder("WITH x AS (SELECT * FROM t) SELECT * FROM x WHERE id = ?", 1)
+            .supportsInList());
+    }
+
+    /**
+     * Tests that question marks in string literals and comments are not counted as placeholders.
+     */
+    @Test
+    public void testPlaceholdersInLiteralsAndComments() {
+        final String query = "SELECT 'why?' AS q FROM t -- really?\nWHERE /* or ? */ id = ? AND name <> 'or ?'";
+        final BatchQueryBuilder builder = new BatchQueryBuilder(query, 1);
+        assertTrue(builder.supportsInList());
+        assertEquals("SELECT CASE WHEN id = ? THEN 0 WHEN id = ? THEN 1 END AS knime_loop_row, 'why?' AS q FROM t "
+            + "-- really?\nWHERE /* or ? */ id IN (?, ?) AND name <> 'or ?'", builder.createInListQuery(2));
+        assertFalse(new BatchQueryBuilder(query, 4).supportsPreload());
+    }
+
+    /**
+     * Tests that the placeholders are replaced with the staging table columns, but not the literals.
+     */
+    @Test
+    public void testStagingJoinQuery() {
+        final BatchQueryBuilder builder =
+            new BatchQueryBuilder("SELECT * FROM t WHERE a = ? AND b <> '?' AND c = ?", 2);
+        assertEquals("SELECT knime_loop_s.knime_loop_row, knime_loop_q.* FROM stage knime_loop_s CROSS JOIN LATERAL "
+            + "(SELECT * FROM t WHERE a = knime_loop_s.p0 AND b <> '?' AND c = knime_loop_s.p1) knime_loop_q "
+            + "ORDER BY knime_loop_s.knime_loop_row",
+            builder.createStagingJoinQuery("stage", new String[]{"p0", "p1"}, false));
+        assertTrue(builder.createStagingJoinQuery("stage", new String[]{"p0", "p1"}, true).contains(" CROSS APPLY ("));
+    }
+
+    /**
+     * Tests that every copy of the statement is tagged with its index.
+     */
+    @Test
+    public void testUnionQuery() {
+        final BatchQueryBuilder builder = new BatchQueryBuilder("SELECT * FROM t WHERE id = ?", 1);
+        assertEquals("SELECT 0 AS knime_loop_row, knime_loop_0.* FROM (SELECT * FROM t WHERE id = ?) knime_loop_0 "
+            + "UNION ALL SELECT 1, knime_loop_1.* FROM (SELECT * FROM t WHERE id = ?) knime_loop_1",
+            builder.createUnionQuery(2));
+    }
+
+    /**
+     * Tests that the statements of the maximum number of tuples stay within the parameter limit.
+     */
+    @Test
+    public void testMaxTuples() {
+        final BatchQueryBuilder single = new BatchQueryBuilder("SELECT * FROM t WHERE id = ?", 1);
+        final BatchQueryBuilder triple = new BatchQueryBuilder("SELECT * FROM t WHERE a = ? AND b = ? AND c = ?", 3);
+        assertTrue(2 * single.getMaxTuples(true) <= BatchQueryBuilder.MAX_PARAMETERS);
+        assertEquals(BatchQueryBuilder.MAX_PARAMETERS, single.getMaxTuples(false));
+        assertTrue(3 * triple.getMaxTuples(false) <= BatchQueryBuilder.MAX_PARAMETERS);
+        assertTrue(3 * (triple.getMaxTuples(false) + 1) > BatchQueryBuilder.MAX_PARAMETERS);
+    }
+
+    /**
+     * Tests that placeholders which are only part of an operand of the conjunction are not rewritten.
+     */
+    @Test
+    public void testPredicateBoundaries() {
+        final String[] queries = {"SELECT * FROM t WHERE id = ? + 1",
+            "SELECT * FROM t WHERE a + id = ?",
+            "SELECT * FROM t WHERE id = ? || 'x'",
+            "SELECT * FROM t WHERE id = ?::int"};
+        for (final String query : queries) {
+            final BatchQueryBuilder builder = new BatchQueryBuilder(query, 1);
+            assertFalse(query, builder.supportsInList());
+            assertFalse(query, builder.supportsPreload());
+        }
+        final String[] validQueries = {"SELECT * FROM t WHERE (id = ?)",
+            "SELECT * FROM t WHERE id = ? ORDER BY a",
+            "SELECT * FROM t WHERE id = ?;",
+            "SELECT * FROM t WHERE a > 1 AND\nid = ?\nAND b < 2"};
+        for (final String query : validQueries) {
+            assertTrue(query, new BatchQueryBuilder(query, 1).supportsInList());
+        }
+    }
+
+    /**
+     * Tests that an ORDER BY of the statement is detected outside of string literals.
+     */
+    @Test
+    public void testOrdered() {
+        assertTrue(new BatchQueryBuilder("SELECT * FROM t WHERE id = ? ORDER BY a", 1).isOrdered());
+        assertTrue(new BatchQueryBuilder("select * from t where id = ? order\nby a", 1).isOrdered());
+        assertFalse(new BatchQueryBuilder("SELECT * FROM t WHERE id = ?", 1).isOrdered());
+        assertFalse(new BatchQueryBuilder("SELECT 'ORDER BY' AS s FROM t WHERE id = ?", 1).isOrdered());
+    }
+
+}
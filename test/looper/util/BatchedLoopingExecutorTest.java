@@ -0,0 +1,107 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link BatchedLoopingExecutor} returns the same output as the {@link RowByRowLoopingExecutor}.
+ */
+public class BatchedLoopingExecutorTest {
+
+    private LoopingTestDatabase m_db;
+
+    /**
+     * Creates the database.
+     *
+     * @throws Exception if the database cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        m_db = new LoopingTestDatabase();
+    }
+
+    /**
+     * Drops the database.
+     *
+     * @throws Exception if the database cannot be dropped
+     */
+    @After
+    public void tearDown() throws Exception {
+        m_db.close();
+    }
+
+    private BatchedLoopingExecutor createBatched(final String query, final boolean includeEmptyResults,
+        final boolean useInList) {
+        // a batch size smaller than the input splits the repeated customers into different chunks
+        return new BatchedLoopingExecutor(m_db.getSettings(), null, query, m_db.getInputSpec(),
+            LoopingTestDatabase.COLUMNS, LoopingTestDatabase.createOptions(includeEmptyResults), 3, useInList);
+    }
+
+    /**
+     * Tests that IN list batching returns the rows of every input row in the order of the input rows.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testInList() throws Exception {
+        final List<String> expected = m_db.loopRowByRow(LoopingTestDatabase.QUERY, false);
+        assertEquals(12, expected.size());
+        assertEquals(expected, m_db.loop(createBatched(LoopingTestDatabase.QUERY, false, true)));
+    }
+
+    /**
+     * Tests that UNION ALL batching returns the rows of every input row in the order of the input rows.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testUnion() throws Exception {
+        final List<String> expected = m_db.loopRowByRow(LoopingTestDatabase.QUERY, false);
+        assertEquals(expected, m_db.loop(createBatched(LoopingTestDatabase.QUERY, false, false)));
+    }
+
+    /**
+     * Tests that both batching modes keep the input rows without results, including the one with a missing value.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testIncludeEmptyResults() throws Exception {
+        final List<String> expected = m_db.loopRowByRow(LoopingTestDatabase.QUERY, true);
+        assertEquals(15, expected.size());
+        assertEquals(expected, m_db.loop(createBatched(LoopingTestDatabase.QUERY, true, true)));
+        assertEquals(expected, m_db.loop(createBatched(LoopingTestDatabase.QUERY, true, false)));
+    }
+
+    /**
+     * Tests that a failing chunk is executed row by row, so that only the failing input rows end up in the error
+     * table and the results of the other rows of the chunk are kept.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFailingChunk() throws Exception {
+        // fails with a division by zero for the orders of customer 20 only
+        final String query = "SELECT id, 10 / (customer - 20) AS ratio FROM orders WHERE customer = ? ORDER BY id";
+        final RowByRowLoopingExecutor rowByRow = new RowByRowLoopingExecutor(m_db.getSettings(), null, query,
+            m_db.getInputSpec(), LoopingTestDatabase.COLUMNS, LoopingTestDatabase.createOptions(false));
+        final List<String> expected = m_db.loop(rowByRow);
+        final List<String> expectedErrors = LoopingTestDatabase.toStrings(rowByRow.getErrorTable());
+        assertEquals(1, expectedErrors.size());
+        assertTrue(expectedErrors.get(0).startsWith("Row1:"));
+        for (final boolean useInList : new boolean[]{true, false}) {
+            final BatchedLoopingExecutor batched = createBatched(query, false, useInList);
+            assertEquals(expected, m_db.loop(batched));
+            final List<String> errors = LoopingTestDatabase.toStrings(batched.getErrorTable());
+            assertEquals(1, errors.size());
+            assertTrue(errors.get(0).startsWith("Row1:"));
+        }
+    }
+
+}
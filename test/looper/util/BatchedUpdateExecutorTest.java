@@ -0,0 +1,113 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link BatchedUpdateExecutor} applies the same changes and reports the same update counts as
+ * executing the statement for one row at a time. Every execution runs on its own database, since the statements
+ * change the orders table.
+ */
+public class BatchedUpdateExecutorTest {
+
+    private static final String UPDATE = "UPDATE orders SET amount = amount * 2 WHERE customer = ?";
+
+    /** Fails with a division by zero for the orders of customer 20 only */
+    private static final String FAILING_UPDATE = "UPDATE orders SET amount = 10 / (customer - 20) WHERE customer = ?";
+
+    private static final String ORDERS = "SELECT id, customer, amount FROM orders ORDER BY id";
+
+    private LoopingTestDatabase m_single;
+
+    private LoopingTestDatabase m_batched;
+
+    /**
+     * Creates the databases of the single row and the batched execution.
+     *
+     * @throws Exception if the databases cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        m_single = new LoopingTestDatabase();
+        m_batched = new LoopingTestDatabase();
+    }
+
+    /**
+     * Drops the databases.
+     *
+     * @throws Exception if the databases cannot be dropped
+     */
+    @After
+    public void tearDown() throws Exception {
+        try {
+            m_single.close();
+        } finally {
+            m_batched.close();
+        }
+    }
+
+    private static BatchedUpdateExecutor createUpdate(final LoopingTestDatabase db, final String sql,
+        final int batchSize) {
+        return new BatchedUpdateExecutor(db.getSettings(), null, sql, db.getInputSpec(), LoopingTestDatabase.COLUMNS,
+            LoopingTestDatabase.createOptions(true), batchSize);
+    }
+
+    /**
+     * Tests that batches of several rows report the update count of every input row and change the same rows as
+     * batches of a single row.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testBatchedUpdate() throws Exception {
+        final List<String> expected = m_single.loop(createUpdate(m_single, UPDATE, 1));
+        assertEquals(9, expected.size());
+        assertEquals(expected, m_batched.loop(createUpdate(m_batched, UPDATE, 4)));
+        assertEquals(Arrays.asList("1 10 6.0", "2 10 10.0", "3 20 7.0", "4 30 null", "5 30 22.0", "6 30 26.0",
+            "7 50 15.0"), m_batched.query(ORDERS));
+        assertEquals(m_single.query(ORDERS), m_batched.query(ORDERS));
+    }
+
+    /**
+     * Tests that only the failing row of a batch ends up in the error table and the other rows of the batch are
+     * applied.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFailingBatch() throws Exception {
+        final List<String> expected = m_single.loop(createUpdate(m_single, FAILING_UPDATE, 1));
+        final BatchedUpdateExecutor batched = createUpdate(m_batched, FAILING_UPDATE, 4);
+        assertEquals(expected, m_batched.loop(batched));
+        final List<String> errors = LoopingTestDatabase.toStrings(batched.getErrorTable());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).startsWith("Row1:"));
+        assertEquals(m_single.query(ORDERS), m_batched.query(ORDERS));
+    }
+
+    /**
+     * Tests that batches in a transaction group roll back only the failing row to its savepoint and commit the
+     * other rows.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFailingBatchInTransaction() throws Exception {
+        final List<String> expected = m_single.loop(createUpdate(m_single, FAILING_UPDATE, 1));
+        final BatchedUpdateExecutor batched = createUpdate(m_batched, FAILING_UPDATE, 4);
+        batched.setTransactions(5, 0);
+        assertEquals(expected, m_batched.loop(batched));
+        assertEquals(1, LoopingTestDatabase.toStrings(batched.getErrorTable()).size());
+        assertTrue(batched.getTransactionCommits() > 0);
+        // queried on another connection, so only committed changes are visible
+        assertEquals(m_single.query(ORDERS), m_batched.query(ORDERS));
+    }
+
+}
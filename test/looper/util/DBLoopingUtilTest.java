@@ -0,0 +1,42 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.knime.core.data.def.BooleanCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.LongCell;
+import org.knime.core.data.def.StringCell;
+
+/**
+ * Tests for {@link DBLoopingUtil}.
+ */
+public class DBLoopingUtilTest {
+
+    /**
+     * Tests that the staging column types are taken from the type names of the database, falling back to similar
+     * types and to generic names if the database lists none of them.
+     */
+    @Test
+    public void testSQLTypeName() {
+        final Map<Integer, String> typeNames = new HashMap<Integer, String>();
+        typeNames.put(Types.BIT, "BIT");
+        typeNames.put(Types.INTEGER, "INT");
+        typeNames.put(Types.NUMERIC, "NUMBER");
+        typeNames.put(Types.VARCHAR, "VARCHAR2");
+        assertEquals("BIT", DBLoopingUtil.getSQLTypeName(BooleanCell.TYPE, 0, typeNames));
+        assertEquals("INT", DBLoopingUtil.getSQLTypeName(IntCell.TYPE, 0, typeNames));
+        assertEquals("NUMBER", DBLoopingUtil.getSQLTypeName(LongCell.TYPE, 0, typeNames));
+        assertEquals("VARCHAR2(12)", DBLoopingUtil.getSQLTypeName(StringCell.TYPE, 12, typeNames));
+        assertEquals("VARCHAR2(1)", DBLoopingUtil.getSQLTypeName(StringCell.TYPE, 0, typeNames));
+
+        final Map<Integer, String> noTypeNames = new HashMap<Integer, String>();
+        assertEquals("bigint", DBLoopingUtil.getSQLTypeName(LongCell.TYPE, 0, noTypeNames));
+        assertEquals("varchar(5)", DBLoopingUtil.getSQLTypeName(StringCell.TYPE, 5, noTypeNames));
+    }
+
+}
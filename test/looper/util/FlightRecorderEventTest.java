@@ -0,0 +1,40 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.knime.base.node.io.database.looper.util.FlightRecorderEvent.Field;
+
+/**
+ * Tests for {@link FlightRecorderEvent}.
+ */
+public class FlightRecorderEventTest {
+
+    /**
+     * Tests that an event type can be defined and its events filled and committed without a running recording, or
+     * that no type is created if the running Java has no flight recorder.
+     */
+    @Test
+    public void testEvent() {
+        final FlightRecorderEvent.Type type = FlightRecorderEvent.Type.create("org.knime.database.Test", "Test",
+            "Test event", new String[]{"KNIME", "Database"}, new Field("count", long.class, "Count", null),
+            new Field("name", String.class, "Name", "The name"));
+        if (!FlightRecorderUtil.isAvailable()) {
+            assertNull(type);
+            return;
+        }
+        assertNotNull(type);
+        final FlightRecorderEvent event = type.newEvent();
+        assertNotNull(event);
+        event.begin();
+        event.set(0, 5L);
+        event.set(1, "name");
+        event.end();
+        if (event.shouldCommit()) {
+            event.commit();
+        }
+        assertNotNull(LooperQueryEvent.create());
+    }
+
+}
@@ -0,0 +1,88 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.util.FileUtil;
+
+/**
+ * Tests for {@link IncrementalResultStore}.
+ */
+public class IncrementalResultStoreTest {
+
+    private static final String KEY = "jdbc:test:db|user|SELECT * FROM t WHERE id = ?";
+
+    private File m_root;
+
+    /**
+     * Creates the root directory of the store.
+     *
+     * @throws Exception if the directory cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        m_root = Files.createTempDirectory("looping-incremental").toFile();
+    }
+
+    /**
+     * Deletes the root directory of the store.
+     */
+    @After
+    public void tearDown() {
+        FileUtil.deleteRecursively(m_root);
+    }
+
+    /**
+     * Tests that rows sharing a key get the results stored with their own parameter values and that changed or
+     * unknown rows are looped again.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testDuplicateKeys() throws Exception {
+        try (final IncrementalResultStore store = new IncrementalResultStore(m_root, KEY)) {
+            store.open();
+            store.put("a", params(1), results("one"));
+            store.put("a", params(2), results("two"));
+            store.put("b", params(3), results("three"));
+            store.commit();
+        }
+        try (final IncrementalResultStore store = new IncrementalResultStore(m_root, KEY)) {
+            store.open();
+            assertEquals(new StringCell("two"), store.get("a", params(2)).get(0)[0]);
+            assertEquals(new StringCell("one"), store.get("a", params(1)).get(0)[0]);
+            assertNull(store.get("a", params(3)));
+            assertNull(store.get("c", params(3)));
+            assertEquals(new StringCell("three"), store.get("b", params(3)).get(0)[0]);
+            assertEquals(3, store.getRetainedRows());
+            assertEquals(2, store.getLoopedRows());
+            store.commit();
+        }
+        try (final IncrementalResultStore store = new IncrementalResultStore(m_root, KEY)) {
+            store.open();
+            // the retained rows are kept for the next execution
+            assertEquals(new StringCell("one"), store.get("a", params(1)).get(0)[0]);
+            assertEquals(new StringCell("three"), store.get("b", params(3)).get(0)[0]);
+        }
+    }
+
+    private static DataCell[] params(final int value) {
+        return new DataCell[]{new IntCell(value)};
+    }
+
+    private static List<DataCell[]> results(final String value) {
+        return Collections.singletonList(new DataCell[]{new StringCell(value)});
+    }
+
+}
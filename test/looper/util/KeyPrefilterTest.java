@@ -0,0 +1,155 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.junit.Test;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.LongCell;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+
+/**
+ * Tests for {@link KeyPrefilter}.
+ */
+public class KeyPrefilterTest {
+
+    private static final int KEY_COUNT = 10000;
+
+    /**
+     * Tests that every loaded key passes the filter and that the rate of false positives is near the target.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testNoFalseNegatives() throws Exception {
+        final Object[][] rows = new Object[KEY_COUNT][];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            rows[i] = new Object[]{2 * i, 3L * i};
+        }
+        final KeyPrefilter filter = load(new int[]{Types.INTEGER, Types.BIGINT}, rows);
+        assertEquals(KEY_COUNT, filter.getKeyCount());
+        for (int i = 0; i < KEY_COUNT; i++) {
+            assertTrue("Key " + i, filter.mightMatch(new DataCell[]{new IntCell(2 * i), new LongCell(3L * i)}));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            if (filter.mightMatch(new DataCell[]{new IntCell(2 * i + 1), new LongCell(3L * i)})) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives,
+            falsePositives < KEY_COUNT * KeyPrefilter.FALSE_POSITIVE_RATE * 3);
+    }
+
+    /**
+     * Tests that integer keys match regardless of the integer type of the parameter column.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testIntegerKeys() throws Exception {
+        final KeyPrefilter filter = load(new int[]{Types.BIGINT}, new Object[][]{{42L}, {7L}});
+        assertTrue(filter.mightMatch(new DataCell[]{new IntCell(42)}));
+        assertTrue(filter.mightMatch(new DataCell[]{new LongCell(7)}));
+    }
+
+    /**
+     * Tests that no filter is created for keys that the database might not compare exactly, e.g. text that is
+     * compared by the collation of the database or decimals.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testInexactKeys() throws Exception {
+        assertNull(load(new int[]{Types.VARCHAR}, new Object[][]{{"a"}}));
+        assertNull(load(new int[]{Types.INTEGER, Types.DOUBLE}, new Object[][]{{1, 1.5}}));
+    }
+
+    /**
+     * Tests that NULL keys are skipped and missing parameters never match.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testMissingValues() throws Exception {
+        final KeyPrefilter filter = load(new int[]{Types.INTEGER}, new Object[][]{{1}, {null}});
+        assertEquals(1, filter.getKeyCount());
+        assertTrue(filter.mightMatch(new DataCell[]{new IntCell(1)}));
+        assertFalse(filter.mightMatch(new DataCell[]{DataType.getMissingCell()}));
+    }
+
+    /**
+     * Tests that an empty key table rules out every tuple.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testEmpty() throws Exception {
+        final KeyPrefilter filter = load(new int[]{Types.INTEGER}, new Object[0][]);
+        assertEquals(0, filter.getKeyCount());
+        assertTrue(filter.getSizeInBytes() > 0);
+        assertFalse(filter.mightMatch(new DataCell[]{new IntCell(1)}));
+    }
+
+    /**
+     * Loads a filter from a statement that returns the given rows
+     */
+    private static KeyPrefilter load(final int[] sqlTypes, final Object[][] rows) throws Exception {
+        final ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (name, args) -> {
+            switch (name) {
+                case "getColumnCount":
+                    return sqlTypes.length;
+                case "getColumnType":
+                    return sqlTypes[(Integer)args[0] - 1];
+                default:
+                    return "c" + args[0];
+            }
+        });
+        final int[] rowIdx = {-1};
+        final Object[] lastValue = new Object[1];
+        final ResultSet rs = proxy(ResultSet.class, (name, args) -> {
+            switch (name) {
+                case "getMetaData":
+                    return metaData;
+                case "next":
+                    return ++rowIdx[0] < rows.length;
+                case "wasNull":
+                    return lastValue[0] == null;
+                case "close":
+                    return null;
+                default:
+                    // the getter of the column type, which returns 0 for NULL like a driver does
+                    lastValue[0] = rows[rowIdx[0]][(Integer)args[0] - 1];
+                    if (lastValue[0] == null) {
+                        return "getLong".equals(name) ? (Object)0L : (Object)0;
+                    }
+                    return lastValue[0];
+            }
+        });
+        final Statement stmt = proxy(Statement.class, (name, args) -> rs);
+        return KeyPrefilter.load(new DatabaseQueryConnectionSettings(), stmt, "SELECT DISTINCT k FROM t",
+            null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<T> type, final Handler handler) {
+        return (T)Proxy.newProxyInstance(KeyPrefilterTest.class.getClassLoader(), new Class<?>[]{type},
+            (p, method, args) -> handler.invoke(method.getName(), args));
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object invoke(String name, Object[] args) throws Exception;
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.BooleanCell;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.LongCell;
+import org.knime.core.data.def.StringCell;
+
+/**
+ * Tests for {@link LookupIndex}.
+ */
+public class LookupIndexTest {
+
+    /**
+     * Tests that a single key returns all rows of the key in the order of the rows and nothing for missing values.
+     */
+    @Test
+    public void testSingleKey() {
+        final List<DataCell[]> rows = Arrays.asList(row(1, "a"), row(2, "b"), row(1, "c"),
+            new DataCell[]{DataType.getMissingCell(), new StringCell("d")});
+        final LookupIndex index = LookupIndex.create(rows, new int[]{0});
+        assertEquals(Arrays.asList(rows.get(0), rows.get(2)), index.get(new DataCell[]{new LongCell(1)}));
+        assertEquals(Collections.singletonList(rows.get(1)), index.get(new DataCell[]{new IntCell(2)}));
+        assertTrue(index.get(new DataCell[]{new IntCell(3)}).isEmpty());
+        assertTrue(index.get(new DataCell[]{DataType.getMissingCell()}).isEmpty());
+    }
+
+    /**
+     * Tests the lookup of several keys.
+     */
+    @Test
+    public void testSeveralKeys() {
+        final List<DataCell[]> rows = Arrays.asList(new DataCell[]{new IntCell(1), new LongCell(10)},
+            new DataCell[]{new IntCell(1), new LongCell(20)});
+        final LookupIndex index = LookupIndex.create(rows, new int[]{0, 1});
+        assertEquals(Collections.singletonList(rows.get(1)),
+            index.get(new DataCell[]{new LongCell(1), new IntCell(20)}));
+        assertTrue(index.get(new DataCell[]{new IntCell(2), new IntCell(20)}).isEmpty());
+    }
+
+    /**
+     * Tests that only integers are exact keys, since the database might compare other values by its collation or
+     * after a conversion.
+     */
+    @Test
+    public void testExactKeyTypes() {
+        assertTrue(DBLoopingUtil.isExactKeyType(IntCell.TYPE));
+        assertTrue(DBLoopingUtil.isExactKeyType(LongCell.TYPE));
+        assertFalse(DBLoopingUtil.isExactKeyType(StringCell.TYPE));
+        assertFalse(DBLoopingUtil.isExactKeyType(DoubleCell.TYPE));
+        assertFalse(DBLoopingUtil.isExactKeyType(BooleanCell.TYPE));
+    }
+
+    private static DataCell[] row(final int key, final String value) {
+        return new DataCell[]{new IntCell(key), new StringCell(value)};
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.FileUtil;
+
+/**
+ * Tests for {@link LoopingCheckpoint}.
+ */
+public class LoopingCheckpointTest {
+
+    private static final String KEY = "connection|SELECT * FROM t WHERE id = ?|settings|input";
+
+    private File m_root;
+
+    /**
+     * Creates the root directory of the checkpoints.
+     *
+     * @throws Exception if the directory cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        m_root = Files.createTempDirectory("looping-checkpoint").toFile();
+    }
+
+    /**
+     * Deletes the root directory of the checkpoints.
+     */
+    @After
+    public void tearDown() {
+        FileUtil.deleteRecursively(m_root);
+    }
+
+    /**
+     * Tests that the rows of a saved checkpoint are restored by the next execution with the same key, and that the
+     * rows pushed after the last save are not.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        final CollectingRowOutput output = new CollectingRowOutput();
+        final CollectingRowOutput errors = new CollectingRowOutput();
+        try (final LoopingCheckpoint checkpoint = new LoopingCheckpoint(m_root, KEY, 2)) {
+            assertEquals(0, checkpoint.load());
+            checkpoint.begin();
+            final RowOutput trackedOutput = checkpoint.trackOutput(output);
+            final RowOutput trackedErrors = checkpoint.trackErrors(errors);
+            trackedOutput.push(row("Row0_0", "a", 1));
+            trackedOutput.push(row("Row0_1", "b", 2));
+            trackedErrors.push(new DefaultRow(new RowKey("Row1"), new StringCell("error")));
+            checkpoint.save(2);
+            // not part of the checkpoint, since the execution failed before the next save
+            trackedOutput.push(row("Row2_0", "c", 3));
+        }
+        assertEquals(3, output.m_rows.size());
+
+        final CollectingRowOutput restoredOutput = new CollectingRowOutput();
+        final CollectingRowOutput restoredErrors = new CollectingRowOutput();
+        try (final LoopingCheckpoint checkpoint = new LoopingCheckpoint(m_root, KEY, 2)) {
+            assertEquals(2, checkpoint.load());
+            assertEquals(2, checkpoint.getOutputRows());
+            checkpoint.begin();
+            checkpoint.restore(checkpoint.trackOutput(restoredOutput), checkpoint.trackErrors(restoredErrors));
+            checkpoint.save(2);
+        }
+        assertRows(output.m_rows.subList(0, 2), restoredOutput.m_rows);
+        assertRows(errors.m_rows, restoredErrors.m_rows);
+
+        // the restored rows have been written to the files of the second execution
+        final CollectingRowOutput thirdOutput = new CollectingRowOutput();
+        try (final LoopingCheckpoint checkpoint = new LoopingCheckpoint(m_root, KEY, 2)) {
+            assertEquals(2, checkpoint.load());
+            checkpoint.begin();
+            checkpoint.restore(thirdOutput, new CollectingRowOutput());
+        }
+        assertRows(output.m_rows.subList(0, 2), thirdOutput.m_rows);
+    }
+
+    /**
+     * Tests that a checkpoint is only loaded by an execution with the same key and is gone after it is deleted.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testKeyAndDelete() throws Exception {
+        try (final LoopingCheckpoint checkpoint = new LoopingCheckpoint(m_root, KEY, 1)) {
+            checkpoint.load();
+            checkpoint.begin();
+            checkpoint.trackOutput(new CollectingRowOutput()).push(row("Row0", "a", 1));
+            checkpoint.save(1);
+        }
+        try (final LoopingCheckpoint checkpoint = new LoopingCheckpoint(m_root, KEY + "changed", 1)) {
+            assertEquals(0, checkpoint.load());
+        }
+        final LoopingCheckpoint checkpoint = new LoopingCheckpoint(m_root, KEY, 1);
+        assertEquals(1, checkpoint.load());
+        checkpoint.delete();
+        try (final LoopingCheckpoint deleted = new LoopingCheckpoint(m_root, KEY, 1)) {
+            assertEquals(0, deleted.load());
+        }
+    }
+
+    private static DataRow row(final String key, final String value, final int number) {
+        return new DefaultRow(new RowKey(key), new StringCell(value), new IntCell(number));
+    }
+
+    private static void assertRows(final List<DataRow> expected, final List<DataRow> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getKey().getString(), actual.get(i).getKey().getString());
+            assertEquals(expected.get(i).getNumCells(), actual.get(i).getNumCells());
+            for (int c = 0; c < expected.get(i).getNumCells(); c++) {
+                assertEquals(expected.get(i).getCell(c), actual.get(i).getCell(c));
+            }
+        }
+    }
+
+    /**
+     * Collects the pushed rows
+     */
+    private static final class CollectingRowOutput extends RowOutput {
+
+        private final List<DataRow> m_rows = new ArrayList<DataRow>();
+
+        @Override
+        public void push(final DataRow row) {
+            m_rows.add(row);
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+
+/**
+ * Tests for {@link LoopingOutput}.
+ */
+public class LoopingOutputTest {
+
+    /**
+     * Tests that the result columns of results pushed before the columns are known are derived from their values.
+     */
+    @Test
+    public void testCreateResultSpec() {
+        final DataTableSpec spec = LoopingOutput.createResultSpec(Arrays.asList(
+            new DataCell[]{new IntCell(1), DataType.getMissingCell()},
+            new DataCell[]{new IntCell(2), DataType.getMissingCell(), new StringCell("a")}));
+        assertEquals(3, spec.getNumColumns());
+        assertEquals(IntCell.TYPE, spec.getColumnSpec(0).getType());
+        assertEquals(StringCell.TYPE, spec.getColumnSpec(1).getType());
+        assertEquals(StringCell.TYPE, spec.getColumnSpec(2).getType());
+        assertEquals(0, LoopingOutput.createResultSpec(Collections.<DataCell[]>emptyList()).getNumColumns());
+    }
+
+}
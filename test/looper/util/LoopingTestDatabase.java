@@ -0,0 +1,241 @@
+package org.knime.base.node.io.database.looper.util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.knime.base.node.io.database.looper.DBLoopingNodeFactory;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.container.ContainerTable;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.Node;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.port.database.DatabaseConnectionSettings;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+import org.knime.core.node.streamable.DataTableRowInput;
+import org.knime.core.node.workflow.DefaultNodeProgressMonitor;
+import org.knime.core.node.workflow.SingleNodeContainer.MemoryPolicy;
+
+/**
+ * An in-memory H2 database with a table of orders, against which the executor tests loop an input table of customer
+ * IDs and compare the output of an executor with the output of the {@link RowByRowLoopingExecutor}. Every instance
+ * uses its own database.
+ */
+final class LoopingTestDatabase implements AutoCloseable {
+
+    /** The looped statement, which returns the orders of a customer */
+    static final String QUERY = "SELECT id, amount, item FROM orders WHERE customer = ? ORDER BY id";
+
+    /** The input column of the placeholder of {@link #QUERY} */
+    static final String[] COLUMNS = {"customer"};
+
+    private static final AtomicInteger DATABASE_COUNTER = new AtomicInteger();
+
+    private final String m_url;
+
+    /** Keeps the in-memory database alive until the test closes it */
+    private final Connection m_conn;
+
+    private final ExecutionContext m_exec;
+
+    /**
+     * Creates a new in-memory database with the orders table
+     *
+     * @throws Exception if the database cannot be created
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    LoopingTestDatabase() throws Exception {
+        m_url = "jdbc:h2:mem:looper" + DATABASE_COUNTER.incrementAndGet();
+        Class.forName("org.h2.Driver");
+        m_conn = DriverManager.getConnection(m_url, "sa", "");
+        execute("CREATE TABLE orders (id INT PRIMARY KEY, customer INT, amount DOUBLE, item VARCHAR(20))");
+        execute("INSERT INTO orders VALUES (1, 10, 1.5, 'apple'), (2, 10, 2.5, 'pear'), (3, 20, 3.5, 'plum'), "
+            + "(4, 30, NULL, NULL), (5, 30, 5.5, 'fig'), (6, 30, 6.5, 'kiwi'), (7, 50, 7.5, 'lime')");
+        m_exec = new ExecutionContext(new DefaultNodeProgressMonitor(),
+            new Node((NodeFactory<NodeModel>)(NodeFactory)new DBLoopingNodeFactory()), MemoryPolicy.CacheSmallInMemory,
+            new HashMap<Integer, ContainerTable>());
+    }
+
+    /**
+     * Returns the settings of a connection to the database
+     *
+     * @return the connection settings
+     */
+    DatabaseQueryConnectionSettings getSettings() {
+        return new DatabaseQueryConnectionSettings(
+            new DatabaseConnectionSettings("org.h2.Driver", m_url, "sa", "", null, "none"), QUERY);
+    }
+
+    /**
+     * Returns the execution context of the executors
+     *
+     * @return the execution context
+     */
+    ExecutionContext getExec() {
+        return m_exec;
+    }
+
+    /**
+     * Returns the looping options that append all input columns to the results
+     *
+     * @param includeEmptyResults <code>true</code> if input rows without any result should be kept
+     * @return the looping options
+     */
+    static LoopingOptions createOptions(final boolean includeEmptyResults) {
+        return new LoopingOptions(true, includeEmptyResults, true, false);
+    }
+
+    /**
+     * Creates the input table with the customer IDs. It contains a repeated ID, IDs without orders and a missing ID.
+     *
+     * @return the input table
+     */
+    BufferedDataTable createInput() {
+        final DataTableSpec spec = new DataTableSpec(new DataColumnSpecCreator("customer", IntCell.TYPE).createSpec(),
+            new DataColumnSpecCreator("name", StringCell.TYPE).createSpec());
+        final BufferedDataContainer container = m_exec.createDataContainer(spec);
+        final int[] customers = {10, 20, 40, -1, 30, 10, 50, 60, 30};
+        for (int i = 0; i < customers.length; i++) {
+            final DataCell customer = customers[i] < 0 ? DataType.getMissingCell() : new IntCell(customers[i]);
+            container.addRowToTable(new DefaultRow(new RowKey("Row" + i), customer, new StringCell("c" + i)));
+        }
+        container.close();
+        return container.getTable();
+    }
+
+    /**
+     * Returns the spec of the input table, see {@link #createInput()}
+     *
+     * @return the input spec
+     */
+    DataTableSpec getInputSpec() {
+        return createInput().getDataTableSpec();
+    }
+
+    /**
+     * Loops the input table with the {@link RowByRowLoopingExecutor}, whose output the other executors must match
+     *
+     * @param query the looped statement
+     * @param includeEmptyResults <code>true</code> if input rows without any result should be kept
+     * @return the rows of the output table, see {@link #toStrings(Iterable)}
+     * @throws Exception if the execution fails
+     */
+    List<String> loopRowByRow(final String query, final boolean includeEmptyResults) throws Exception {
+        return loop(new RowByRowLoopingExecutor(getSettings(), null, query, getInputSpec(), COLUMNS,
+            createOptions(includeEmptyResults)));
+    }
+
+    /**
+     * Loops the input table with the given executor
+     *
+     * @param executor the executor
+     * @return the rows of the output table, see {@link #toStrings(Iterable)}
+     * @throws Exception if the execution fails
+     */
+    List<String> loop(final AbstractLoopingExecutor executor) throws Exception {
+        final BufferedDataTable input = createInput();
+        executor.execute(new DataTableRowInput(input), input.size(), m_exec);
+        return toStrings(executor.getOutputTable());
+    }
+
+    /**
+     * Returns the given rows as strings of the row key and the cells, missing cells are "?"
+     *
+     * @param table the rows, e.g. a table
+     * @return the rows in their order
+     */
+    static List<String> toStrings(final Iterable<DataRow> table) {
+        final List<String> rows = new ArrayList<String>();
+        for (final DataRow row : table) {
+            final StringBuilder buf = new StringBuilder(row.getKey().getString()).append(':');
+            for (final DataCell cell : row) {
+                buf.append(' ').append(cell);
+            }
+            rows.add(buf.toString());
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the cells of the given rows without their row keys, sorted, for executors that do not guarantee the
+     * order of the rows
+     *
+     * @param rows the rows, see {@link #toStrings(Iterable)}
+     * @return the sorted cells of the rows
+     */
+    static List<String> withoutKeys(final List<String> rows) {
+        final List<String> cells = new ArrayList<String>();
+        for (final String row : rows) {
+            cells.add(row.substring(row.indexOf(':') + 1));
+        }
+        Collections.sort(cells);
+        return cells;
+    }
+
+    /**
+     * Executes the given statement on the database
+     *
+     * @param sql the statement
+     * @throws SQLException if the statement fails
+     */
+    void execute(final String sql) throws SQLException {
+        try (final Statement stmt = m_conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Returns the rows of the given query as strings of their values
+     *
+     * @param sql the query
+     * @return the rows of the query
+     * @throws SQLException if the query fails
+     */
+    List<String> query(final String sql) throws SQLException {
+        final List<String> rows = new ArrayList<String>();
+        try (final Statement stmt = m_conn.createStatement(); final ResultSet rs = stmt.executeQuery(sql)) {
+            final int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                final StringBuilder buf = new StringBuilder();
+                for (int i = 1; i <= columns; i++) {
+                    buf.append(i > 1 ? " " : "").append(rs.getString(i));
+                }
+                rows.add(buf.toString());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Drops the database
+     *
+     * @throws SQLException if the database cannot be dropped
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            execute("SHUTDOWN");
+        } finally {
+            m_conn.close();
+        }
+    }
+
+}
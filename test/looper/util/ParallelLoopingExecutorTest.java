@@ -0,0 +1,78 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link ParallelLoopingExecutor} returns the same output as the {@link RowByRowLoopingExecutor}.
+ */
+public class ParallelLoopingExecutorTest {
+
+    private LoopingTestDatabase m_db;
+
+    /**
+     * Creates the database.
+     *
+     * @throws Exception if the database cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        m_db = new LoopingTestDatabase();
+    }
+
+    /**
+     * Drops the database.
+     *
+     * @throws Exception if the database cannot be dropped
+     */
+    @After
+    public void tearDown() throws Exception {
+        m_db.close();
+    }
+
+    private ParallelLoopingExecutor createParallel(final boolean includeEmptyResults, final boolean keepOrder) {
+        return new ParallelLoopingExecutor(m_db.getSettings(), null, LoopingTestDatabase.QUERY, m_db.getInputSpec(),
+            LoopingTestDatabase.COLUMNS, LoopingTestDatabase.createOptions(includeEmptyResults), 3, keepOrder);
+    }
+
+    /**
+     * Tests that the parallel queries return the rows in the order of the input rows if the order is kept.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testKeepOrder() throws Exception {
+        assertEquals(m_db.loopRowByRow(LoopingTestDatabase.QUERY, false), m_db.loop(createParallel(false, true)));
+        assertEquals(m_db.loopRowByRow(LoopingTestDatabase.QUERY, true), m_db.loop(createParallel(true, true)));
+    }
+
+    /**
+     * Tests that the parallel queries return the same rows in any order if the order is not kept.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testUnordered() throws Exception {
+        final List<String> expected = m_db.loopRowByRow(LoopingTestDatabase.QUERY, true);
+        final List<String> actual = m_db.loop(createParallel(true, false));
+        assertEquals(LoopingTestDatabase.withoutKeys(expected), LoopingTestDatabase.withoutKeys(actual));
+    }
+
+    /**
+     * Tests that an adaptive concurrency limit does not change the output.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testAdaptiveConcurrency() throws Exception {
+        final ParallelLoopingExecutor executor = createParallel(false, true);
+        executor.setAdaptiveConcurrency(1);
+        assertEquals(m_db.loopRowByRow(LoopingTestDatabase.QUERY, false), m_db.loop(executor));
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.util.FileUtil;
+
+/**
+ * Tests for {@link PersistentResultCache}.
+ */
+public class PersistentResultCacheTest {
+
+    private static final String CONNECTION = "jdbc:test:db|user";
+
+    private static final String STATEMENT = "SELECT * FROM t WHERE id = $${Iid}$$";
+
+    private static final String SQL = "SELECT * FROM t WHERE id = ?";
+
+    private static final long TTL = 60L * 60L * 1000L;
+
+    private static final long MAX_SIZE = 1024L * 1024L;
+
+    private File m_root;
+
+    /**
+     * Creates the root directory of the cache.
+     *
+     * @throws Exception if the directory cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        m_root = Files.createTempDirectory("looping-cache").toFile();
+    }
+
+    /**
+     * Deletes the root directory of the cache.
+     */
+    @After
+    public void tearDown() {
+        FileUtil.deleteRecursively(m_root);
+    }
+
+    /**
+     * Tests that entries are only read back with the result spec they were written with and that no entries are
+     * written before the spec is known.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testResultSpec() throws Exception {
+        final DataCell[] params = {new IntCell(1)};
+        final List<DataCell[]> results = Collections.singletonList(new DataCell[]{new StringCell("a")});
+        try (final PersistentResultCache cache = open(STATEMENT, SQL)) {
+            cache.put(params, results);
+            cache.setResultSpec(spec("name"));
+            assertNull(cache.get(params));
+            cache.put(params, results);
+            assertNotNull(cache.get(params));
+        }
+        try (final PersistentResultCache cache = open(STATEMENT, SQL)) {
+            assertNull(cache.get(params));
+            cache.setResultSpec(spec("name"));
+            assertEquals(new StringCell("a"), cache.get(params).get(0)[0]);
+            // the table has been altered since the results were stored
+            cache.setResultSpec(spec("name", "age"));
+            assertNull(cache.get(params));
+        }
+    }
+
+    /**
+     * Tests that clearing removes only the statements of the given node and connection.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testClearScope() throws Exception {
+        open(STATEMENT, SQL).close();
+        open(STATEMENT, "SELECT * FROM t WHERE id = ? AND a = 1").close();
+        open("SELECT * FROM u WHERE id = $${Iid}$$", "SELECT * FROM u WHERE id = ?").close();
+        assertEquals(0, PersistentResultCache.clear(m_root, "jdbc:other:db|user", STATEMENT));
+        assertEquals(2, PersistentResultCache.clear(m_root, CONNECTION, STATEMENT));
+        assertEquals(1, m_root.listFiles(File::isDirectory).length);
+
+        assertEquals(0, PersistentResultCache.invalidateTables(m_root, CONNECTION, Arrays.asList("t")));
+        assertEquals(0, PersistentResultCache.invalidateTables(m_root, "jdbc:other:db|user", Arrays.asList("u")));
+        assertEquals(1, PersistentResultCache.invalidateTables(m_root, CONNECTION, Arrays.asList("u")));
+    }
+
+    private PersistentResultCache open(final String statement, final String sql) throws Exception {
+        return new PersistentResultCache(m_root, CONNECTION, statement, sql, TTL, MAX_SIZE);
+    }
+
+    private static DataTableSpec spec(final String... names) {
+        final DataColumnSpec[] columns = new DataColumnSpec[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = new DataColumnSpecCreator(names[i], StringCell.TYPE).createSpec();
+        }
+        return new DataTableSpec(columns);
+    }
+
+}
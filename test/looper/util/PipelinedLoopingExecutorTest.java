@@ -0,0 +1,91 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link PipelinedLoopingExecutor} returns the same output as the {@link RowByRowLoopingExecutor}.
+ */
+public class PipelinedLoopingExecutorTest {
+
+    private LoopingTestDatabase m_db;
+
+    /**
+     * Creates the database.
+     *
+     * @throws Exception if the database cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        m_db = new LoopingTestDatabase();
+    }
+
+    /**
+     * Drops the database.
+     *
+     * @throws Exception if the database cannot be dropped
+     */
+    @After
+    public void tearDown() throws Exception {
+        m_db.close();
+    }
+
+    private PipelinedLoopingExecutor createPipelined(final String query, final boolean includeEmptyResults,
+        final int depth) {
+        return new PipelinedLoopingExecutor(m_db.getSettings(), null, query, m_db.getInputSpec(),
+            LoopingTestDatabase.COLUMNS, LoopingTestDatabase.createOptions(includeEmptyResults), depth);
+    }
+
+    /**
+     * Tests that the pipeline returns the rows in the order of the input rows, with a depth of one and with a depth
+     * larger than the input.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testPipelined() throws Exception {
+        final List<String> expected = m_db.loopRowByRow(LoopingTestDatabase.QUERY, false);
+        for (final int depth : new int[]{1, 4, 32}) {
+            assertEquals("Depth " + depth, expected,
+                m_db.loop(createPipelined(LoopingTestDatabase.QUERY, false, depth)));
+        }
+    }
+
+    /**
+     * Tests that the pipeline keeps the input rows without results, including the one with a missing value.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testIncludeEmptyResults() throws Exception {
+        final List<String> expected = m_db.loopRowByRow(LoopingTestDatabase.QUERY, true);
+        assertEquals(expected, m_db.loop(createPipelined(LoopingTestDatabase.QUERY, true, 4)));
+    }
+
+    /**
+     * Tests that a failing query only moves its input row to the error table and the pipeline continues with the
+     * next rows.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFailingQuery() throws Exception {
+        // fails with a division by zero for the orders of customer 20 only
+        final String query = "SELECT id, 10 / (customer - 20) AS ratio FROM orders WHERE customer = ? ORDER BY id";
+        final RowByRowLoopingExecutor rowByRow = new RowByRowLoopingExecutor(m_db.getSettings(), null, query,
+            m_db.getInputSpec(), LoopingTestDatabase.COLUMNS, LoopingTestDatabase.createOptions(false));
+        final List<String> expected = m_db.loop(rowByRow);
+        final PipelinedLoopingExecutor pipelined = createPipelined(query, false, 4);
+        assertEquals(expected, m_db.loop(pipelined));
+        final List<String> errors = LoopingTestDatabase.toStrings(pipelined.getErrorTable());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).startsWith("Row1:"));
+    }
+
+}
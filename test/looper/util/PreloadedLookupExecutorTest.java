@@ -0,0 +1,84 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link PreloadedLookupExecutor} returns the same output as the {@link RowByRowLoopingExecutor},
+ * whether it answers the input rows from the preloaded index or falls back to row by row execution.
+ */
+public class PreloadedLookupExecutorTest {
+
+    /** A lookup whose key column is part of the result, as the index requires */
+    private static final String QUERY = "SELECT customer, id, item FROM orders WHERE customer = ? ORDER BY id";
+
+    private LoopingTestDatabase m_db;
+
+    /**
+     * Creates the database.
+     *
+     * @throws Exception if the database cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        m_db = new LoopingTestDatabase();
+    }
+
+    /**
+     * Drops the database.
+     *
+     * @throws Exception if the database cannot be dropped
+     */
+    @After
+    public void tearDown() throws Exception {
+        m_db.close();
+    }
+
+    private PreloadedLookupExecutor createPreloaded(final String query, final boolean includeEmptyResults,
+        final int maxRows) {
+        return new PreloadedLookupExecutor(m_db.getSettings(), null, query, m_db.getInputSpec(),
+            LoopingTestDatabase.COLUMNS, LoopingTestDatabase.createOptions(includeEmptyResults), maxRows);
+    }
+
+    /**
+     * Tests that the rows answered from the preloaded index match the rows of the row by row execution.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testPreloaded() throws Exception {
+        for (final boolean includeEmptyResults : new boolean[]{false, true}) {
+            final PreloadedLookupExecutor executor = createPreloaded(QUERY, includeEmptyResults, 100);
+            assertEquals(m_db.loopRowByRow(QUERY, includeEmptyResults), m_db.loop(executor));
+            assertEquals(7, executor.getPreloadedRows());
+        }
+    }
+
+    /**
+     * Tests that a lookup table with more rows than the maximum is executed row by row with the same output.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testTooManyRows() throws Exception {
+        final PreloadedLookupExecutor executor = createPreloaded(QUERY, false, 3);
+        assertEquals(m_db.loopRowByRow(QUERY, false), m_db.loop(executor));
+        assertEquals(-1, executor.getPreloadedRows());
+    }
+
+    /**
+     * Tests that a lookup without the key column in its result is executed row by row with the same output.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testKeyColumnNotInResult() throws Exception {
+        final PreloadedLookupExecutor executor = createPreloaded(LoopingTestDatabase.QUERY, false, 100);
+        assertEquals(m_db.loopRowByRow(LoopingTestDatabase.QUERY, false), m_db.loop(executor));
+        assertEquals(-1, executor.getPreloadedRows());
+    }
+
+}
@@ -0,0 +1,135 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import org.junit.Test;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.date.DateAndTimeCell;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+
+/**
+ * Tests for {@link ResultSetConverter}.
+ */
+public class ResultSetConverterTest {
+
+    private static final long TIME_ZONE_OFFSET = 2L * 60L * 60L * 1000L;
+
+    private static final long MILLIS = 1234567890000L;
+
+    /**
+     * Tests that the result columns are mapped by the database reader of the connection, without the leading columns
+     * of the offset.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testSpec() throws Exception {
+        final ResultSetConverter converter = new ResultSetConverter(new OffsetConnectionSettings(),
+            metaData(Types.INTEGER, Types.NUMERIC, Types.DATE, Types.OTHER), 1, null);
+        final DataTableSpec spec = converter.getDataTableSpec();
+        assertEquals(3, spec.getNumColumns());
+        assertEquals(DoubleCell.TYPE, spec.getColumnSpec(0).getType());
+        assertEquals(DateAndTimeCell.TYPE, spec.getColumnSpec(1).getType());
+        assertEquals(StringCell.TYPE, spec.getColumnSpec(2).getType());
+        assertEquals("c2", spec.getColumnSpec(0).getName());
+    }
+
+    /**
+     * Tests that the values are read like the database reader reads them, including the time zone correction of the
+     * connection, both directly and in two steps.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testConvert() throws Exception {
+        final ResultSetMetaData metaData = metaData(Types.INTEGER, Types.DECIMAL, Types.DATE, Types.TIMESTAMP);
+        final Object[] row = {0, new BigDecimal("1.5"), new Date(MILLIS), new Timestamp(MILLIS)};
+        final ResultSet rs = resultSet(row);
+        final ResultSetConverter converter = new ResultSetConverter(new OffsetConnectionSettings(), metaData, 1, null);
+        final DataCell[] expected = {new DoubleCell(1.5),
+            new DateAndTimeCell(MILLIS + TIME_ZONE_OFFSET, true, false, false),
+            new DateAndTimeCell(MILLIS + TIME_ZONE_OFFSET, true, true, true)};
+        final DataCell[] cells = converter.convert(rs, 1);
+        final DataCell[] twoStepCells = converter.convert(converter.read(rs, 1));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], cells[i]);
+            assertEquals(expected[i], twoStepCells[i]);
+        }
+    }
+
+    /**
+     * Tests that SQL NULL is converted to a missing cell.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testNull() throws Exception {
+        final ResultSetConverter converter =
+            new ResultSetConverter(new OffsetConnectionSettings(), metaData(Types.INTEGER), 0, null);
+        assertTrue(converter.convert(resultSet(new Object[]{null}), 0)[0].isMissing());
+        assertEquals(new IntCell(3), converter.convert(resultSet(new Object[]{3}), 0)[0]);
+    }
+
+    private static ResultSetMetaData metaData(final int... sqlTypes) {
+        return (ResultSetMetaData)Proxy.newProxyInstance(ResultSetConverterTest.class.getClassLoader(),
+            new Class<?>[]{ResultSetMetaData.class}, (p, method, args) -> {
+                switch (method.getName()) {
+                    case "getColumnCount":
+                        return sqlTypes.length;
+                    case "getColumnType":
+                        return sqlTypes[(Integer)args[0] - 1];
+                    default:
+                        return "c" + args[0];
+                }
+            });
+    }
+
+    /**
+     * Returns a result set positioned on the given row whose getters convert the values like a driver does
+     */
+    private static ResultSet resultSet(final Object[] row) {
+        final Object[] lastValue = new Object[1];
+        return (ResultSet)Proxy.newProxyInstance(ResultSetConverterTest.class.getClassLoader(),
+            new Class<?>[]{ResultSet.class}, (p, method, args) -> {
+                if ("wasNull".equals(method.getName())) {
+                    return lastValue[0] == null;
+                }
+                lastValue[0] = row[(Integer)args[0] - 1];
+                switch (method.getName()) {
+                    case "getInt":
+                        return lastValue[0] == null ? 0 : ((Number)lastValue[0]).intValue();
+                    case "getDouble":
+                        return ((Number)lastValue[0]).doubleValue();
+                    case "getString":
+                        return lastValue[0] == null ? null : lastValue[0].toString();
+                    default:
+                        return lastValue[0];
+                }
+            });
+    }
+
+    /**
+     * Connection settings with a fixed time zone offset
+     */
+    private static final class OffsetConnectionSettings extends DatabaseQueryConnectionSettings {
+
+        @Override
+        public long getTimeZoneOffset(final long currentMillis) {
+            return TIME_ZONE_OFFSET;
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.port.database.DatabaseQueryConnectionSettings;
+
+/**
+ * Tests for {@link SQLTemplate}.
+ */
+public class SQLTemplateTest {
+
+    private static final String TABLE = DatabaseQueryConnectionSettings.TABLE_PLACEHOLDER;
+
+    /**
+     * Tests that the table placeholder is replaced with the query and every column placeholder with "?".
+     *
+     * @throws Exception if the statement cannot be compiled
+     */
+    @Test
+    public void testRender() throws Exception {
+        final SQLTemplate template = SQLTemplate.compile("SELECT * FROM " + TABLE + " t WHERE a = $col1$ AND "
+            + "b = $col 2$ OR c = $col1$");
+        assertEquals(Arrays.asList("col1", "col 2", "col1"), template.getColumns());
+        assertEquals("SELECT * FROM (SELECT * FROM x) t WHERE a = ? AND b = ? OR c = ?",
+            template.render("SELECT * FROM x", null));
+    }
+
+    /**
+     * Tests that an escaped "$" is part of the column name.
+     *
+     * @throws Exception if the statement cannot be compiled
+     */
+    @Test
+    public void testEscapedDollar() throws Exception {
+        final SQLTemplate template = SQLTemplate.compile("SELECT * FROM t WHERE a = $price \\$$");
+        assertEquals(Collections.singletonList("price $"), template.getColumns());
+        assertEquals("SELECT * FROM t WHERE a = ?", template.render("", null));
+    }
+
+    /**
+     * Tests that flow variables are not mistaken for columns.
+     *
+     * @throws Exception if the statement cannot be compiled
+     */
+    @Test
+    public void testFlowVariable() throws Exception {
+        final SQLTemplate template = SQLTemplate.compile("SELECT * FROM $${Stable}$$ WHERE a = $col$");
+        assertEquals(Collections.singletonList("col"), template.getColumns());
+    }
+
+    /**
+     * Tests that a statement without placeholders is rendered unchanged.
+     *
+     * @throws Exception if the statement cannot be compiled
+     */
+    @Test
+    public void testNoPlaceholders() throws Exception {
+        final SQLTemplate template = SQLTemplate.compile("SELECT 1");
+        assertEquals(Collections.emptyList(), template.getColumns());
+        assertEquals("SELECT 1", template.render("", null));
+    }
+
+    /**
+     * Tests that an unclosed column placeholder is rejected.
+     *
+     * @throws Exception if the statement cannot be compiled
+     */
+    @Test(expected = InvalidSettingsException.class)
+    public void testUnclosedColumn() throws Exception {
+        SQLTemplate.compile("SELECT * FROM t WHERE a = $col");
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.knime.base.node.io.database.looper.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link StagingTableLoopingExecutor} returns the same output as the {@link RowByRowLoopingExecutor}.
+ * The staging join does not preserve the order of the rows of one tuple, so the rows are compared without their row
+ * keys.
+ */
+public class StagingTableLoopingExecutorTest {
+
+    private LoopingTestDatabase m_db;
+
+    /**
+     * Creates the database.
+     *
+     * @throws Exception if the database cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        m_db = new LoopingTestDatabase();
+    }
+
+    /**
+     * Drops the database.
+     *
+     * @throws Exception if the database cannot be dropped
+     */
+    @After
+    public void tearDown() throws Exception {
+        m_db.close();
+    }
+
+    private StagingTableLoopingExecutor createStaging(final boolean includeEmptyResults) {
+        // a batch size smaller than the number of distinct tuples inserts the staging table in several batches
+        return new StagingTableLoopingExecutor(m_db.getSettings(), null, LoopingTestDatabase.QUERY,
+            m_db.getInputSpec(), LoopingTestDatabase.COLUMNS, LoopingTestDatabase.createOptions(includeEmptyResults),
+            2);
+    }
+
+    /**
+     * Tests that the staging join returns the rows of every input row, including the repeated one.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testStaging() throws Exception {
+        final List<String> expected = m_db.loopRowByRow(LoopingTestDatabase.QUERY, false);
+        final List<String> actual = m_db.loop(createStaging(false));
+        assertEquals(expected.size(), actual.size());
+        assertEquals(LoopingTestDatabase.withoutKeys(expected), LoopingTestDatabase.withoutKeys(actual));
+    }
+
+    /**
+     * Tests that the staging join keeps the input rows without results, including the one with a missing value.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testIncludeEmptyResults() throws Exception {
+        final List<String> expected = m_db.loopRowByRow(LoopingTestDatabase.QUERY, true);
+        final List<String> actual = m_db.loop(createStaging(true));
+        assertEquals(LoopingTestDatabase.withoutKeys(expected), LoopingTestDatabase.withoutKeys(actual));
+    }
+
+    /**
+     * Tests that the staging table is dropped after the execution.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testStagingTableDropped() throws Exception {
+        m_db.loop(createStaging(false));
+        assertEquals(0, m_db.query("SELECT table_name FROM information_schema.tables "
+            + "WHERE LOWER(table_name) LIKE 'knime_loop_%'").size());
+    }
+
+}